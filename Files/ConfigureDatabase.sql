@@ -48,6 +48,161 @@ CREATE TABLE passos (
 	CONSTRAINT passos_receita_id_fkey FOREIGN KEY (receita_id) REFERENCES receitas(id) ON DELETE CASCADE
 );
 
+--Índices usados pela listagem (receitas do usuário e carga em lote dos detalhes por receita_id)
+CREATE INDEX idx_receitas_usuario_nome ON receitas (usuario_id, nome, id);
+CREATE INDEX idx_ingredientes_receita_id ON ingredientes (receita_id, id);
+CREATE INDEX idx_passos_receita_id ON passos (receita_id, ordem);
+
+--Índices da paginação por keyset, um por coluna ordenável (nome usa idx_receitas_usuario_nome)
+CREATE INDEX idx_receitas_usuario_dificuldade ON receitas (usuario_id, COALESCE(dificuldade, ''), id);
+CREATE INDEX idx_receitas_usuario_tempo ON receitas (usuario_id, COALESCE(tempo_preparo_min, 0), id);
+CREATE INDEX idx_receitas_usuario_porcoes ON receitas (usuario_id, COALESCE(porcoes, 0), id);
+CREATE INDEX idx_receitas_usuario_id ON receitas (usuario_id, id);
+
+--Busca textual (receitas?action=buscar): vetor mantido por triggers com nome (peso A), ingredientes (B),
+--descrição (C) e passos (D) no dicionário português. btree_gin permite filtrar por usuário no próprio índice GIN.
+CREATE EXTENSION IF NOT EXISTS btree_gin;
+ALTER TABLE receitas ADD COLUMN IF NOT EXISTS busca tsvector;
+
+CREATE OR REPLACE FUNCTION vetor_busca_receita(p_id int4, p_nome text, p_descricao text) RETURNS tsvector AS $$
+	SELECT setweight(to_tsvector('portuguese', coalesce(p_nome, '')), 'A')
+		|| setweight(to_tsvector('portuguese', coalesce((SELECT string_agg(nome, ' ') FROM ingredientes WHERE receita_id = p_id), '')), 'B')
+		|| setweight(to_tsvector('portuguese', coalesce(p_descricao, '')), 'C')
+		|| setweight(to_tsvector('portuguese', coalesce((SELECT string_agg(descricao, ' ') FROM passos WHERE receita_id = p_id), '')), 'D');
+$$ LANGUAGE sql STABLE;
+
+CREATE OR REPLACE FUNCTION receitas_atualizar_busca() RETURNS trigger AS $$
+BEGIN
+	NEW.busca := vetor_busca_receita(NEW.id, NEW.nome, NEW.descricao);
+	RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+--Recalcula uma vez por comando (e não por linha) as receitas tocadas em ingredientes/passos, o que mantém o COPY da importação rápido
+CREATE OR REPLACE FUNCTION detalhes_atualizar_busca() RETURNS trigger AS $$
+BEGIN
+	IF TG_OP = 'DELETE' THEN
+		UPDATE receitas r SET busca = vetor_busca_receita(r.id, r.nome, r.descricao)
+		WHERE r.id IN (SELECT DISTINCT receita_id FROM linhas_antigas);
+	ELSE
+		UPDATE receitas r SET busca = vetor_busca_receita(r.id, r.nome, r.descricao)
+		WHERE r.id IN (SELECT DISTINCT receita_id FROM linhas_novas);
+	END IF;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_receitas_busca BEFORE INSERT OR UPDATE OF nome, descricao ON receitas
+	FOR EACH ROW EXECUTE FUNCTION receitas_atualizar_busca();
+
+CREATE TRIGGER trg_ingredientes_busca_ins AFTER INSERT ON ingredientes
+	REFERENCING NEW TABLE AS linhas_novas FOR EACH STATEMENT EXECUTE FUNCTION detalhes_atualizar_busca();
+CREATE TRIGGER trg_ingredientes_busca_upd AFTER UPDATE ON ingredientes
+	REFERENCING NEW TABLE AS linhas_novas FOR EACH STATEMENT EXECUTE FUNCTION detalhes_atualizar_busca();
+CREATE TRIGGER trg_ingredientes_busca_del AFTER DELETE ON ingredientes
+	REFERENCING OLD TABLE AS linhas_antigas FOR EACH STATEMENT EXECUTE FUNCTION detalhes_atualizar_busca();
+
+CREATE TRIGGER trg_passos_busca_ins AFTER INSERT ON passos
+	REFERENCING NEW TABLE AS linhas_novas FOR EACH STATEMENT EXECUTE FUNCTION detalhes_atualizar_busca();
+CREATE TRIGGER trg_passos_busca_upd AFTER UPDATE ON passos
+	REFERENCING NEW TABLE AS linhas_novas FOR EACH STATEMENT EXECUTE FUNCTION detalhes_atualizar_busca();
+CREATE TRIGGER trg_passos_busca_del AFTER DELETE ON passos
+	REFERENCING OLD TABLE AS linhas_antigas FOR EACH STATEMENT EXECUTE FUNCTION detalhes_atualizar_busca();
+
+--Preenche o vetor de receitas que já existiam antes da coluna
+UPDATE receitas r SET busca = vetor_busca_receita(r.id, r.nome, r.descricao) WHERE busca IS NULL;
+
+CREATE INDEX idx_receitas_busca ON receitas USING GIN (usuario_id, busca);
+
+--Modelo de leitura (context-param leituraPorDocumento): cada receita já montada em JSONB, no formato da listagem,
+--gravada pelo ReceitaDAO na mesma transação da escrita. A listagem devolve o texto do documento sem remontar a receita;
+--a remoção vem do ON DELETE CASCADE. documento_receita é a única definição do formato: o DAO, a reconstrução e a
+--verificação de consistência (ModeloDeLeitura) a usam, então mudar o formato é mudar a função e deixar a verificação corrigir.
+CREATE OR REPLACE FUNCTION documento_receita(p_id int4) RETURNS jsonb AS $$
+	SELECT jsonb_strip_nulls(jsonb_build_object(
+		'id', r.id,
+		'usuario_id', r.usuario_id,
+		'nome', r.nome,
+		'descricao', r.descricao,
+		'tempoDePreparo', coalesce(r.tempo_preparo_min, 0),
+		'porcoes', coalesce(r.porcoes, 0),
+		'dificuldade', r.dificuldade,
+		'ingredientes', coalesce((SELECT jsonb_agg(jsonb_build_object('nome', i.nome, 'quantidade', coalesce(i.quantidade, 0), 'unidade', i.unidade) ORDER BY i.id)
+			FROM ingredientes i WHERE i.receita_id = r.id), '[]'::jsonb),
+		'passos', coalesce((SELECT jsonb_agg(jsonb_build_object('ordem', p.ordem, 'descricao', p.descricao) ORDER BY p.ordem, p.id)
+			FROM passos p WHERE p.receita_id = r.id), '[]'::jsonb)))
+	FROM receitas r WHERE r.id = p_id;
+$$ LANGUAGE sql STABLE;
+
+CREATE TABLE IF NOT EXISTS receitas_doc (
+	receita_id int4 NOT NULL,
+	documento jsonb NOT NULL,
+	CONSTRAINT receitas_doc_pkey PRIMARY KEY (receita_id),
+	CONSTRAINT receitas_doc_receita_id_fkey FOREIGN KEY (receita_id) REFERENCES receitas(id) ON DELETE CASCADE
+);
+
+--Preenche os documentos das receitas que já existiam (a verificação da aplicação faz o mesmo em lotes, na subida)
+INSERT INTO receitas_doc (receita_id, documento) SELECT id, documento_receita(id) FROM receitas ON CONFLICT (receita_id) DO NOTHING;
+
+--Sincronização incremental (receitas?action=listar&since=N): cada receita guarda em "versao" o ID da última transação
+--que a gravou (pg_current_xact_id), e cada remoção, direta ou em cascata, deixa uma lápide em receitas_removidas.
+--O ID da transação, e não uma sequence, porque ele permite uma marca segura: pg_snapshot_xmin(pg_current_snapshot())
+--é menor que o ID de toda transação ainda em andamento, então nenhuma gravação confirmada depois da leitura fica abaixo
+--da marca devolvida ao cliente (com uma sequence, um número pego antes e confirmado depois se perderia).
+--Mudanças só em ingredientes/passos também renovam a versão, porque os triggers da busca regravam receitas.busca.
+ALTER TABLE receitas ADD COLUMN IF NOT EXISTS versao int8 NOT NULL DEFAULT 0;
+
+CREATE OR REPLACE FUNCTION receitas_atualizar_versao() RETURNS trigger AS $$
+BEGIN
+	NEW.versao := pg_current_xact_id()::text::int8;
+	RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_receitas_versao BEFORE INSERT OR UPDATE ON receitas
+	FOR EACH ROW EXECUTE FUNCTION receitas_atualizar_versao();
+
+CREATE INDEX idx_receitas_usuario_versao ON receitas (usuario_id, versao);
+
+CREATE TABLE IF NOT EXISTS receitas_removidas (
+	receita_id int4 NOT NULL,
+	usuario_id int4 NOT NULL,
+	versao int8 NOT NULL,
+	removida_em timestamptz DEFAULT CURRENT_TIMESTAMP NOT NULL,
+	CONSTRAINT receitas_removidas_pkey PRIMARY KEY (receita_id)
+);
+CREATE INDEX idx_receitas_removidas_usuario_versao ON receitas_removidas (usuario_id, versao);
+CREATE INDEX idx_receitas_removidas_removida_em ON receitas_removidas (removida_em);
+
+--A exclusão da conta (UserDAO.deletarPorUsername) leva as receitas do usuário; sem o cascade ela falhava para quem
+--tinha receitas. As receitas removidas assim também deixam lápides, pelo trigger abaixo
+ALTER TABLE receitas DROP CONSTRAINT IF EXISTS fk_usuario,
+	ADD CONSTRAINT fk_usuario FOREIGN KEY (usuario_id) REFERENCES usuarios(id) ON DELETE CASCADE;
+
+--Uma vez por comando, como os triggers da busca: o deletarEmLote grava as lápides num só INSERT, e a exclusão de um
+--usuário, um INSERT por usuário (o cascade apaga as receitas de cada um em um comando)
+CREATE OR REPLACE FUNCTION receitas_registrar_remocao() RETURNS trigger AS $$
+BEGIN
+	INSERT INTO receitas_removidas (receita_id, usuario_id, versao)
+	SELECT id, usuario_id, pg_current_xact_id()::text::int8 FROM linhas_antigas WHERE usuario_id IS NOT NULL
+	ON CONFLICT (receita_id) DO UPDATE SET versao = EXCLUDED.versao, removida_em = EXCLUDED.removida_em;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_receitas_remocao AFTER DELETE ON receitas
+	REFERENCING OLD TABLE AS linhas_antigas FOR EACH STATEMENT EXECUTE FUNCTION receitas_registrar_remocao();
+
+--Lápides mais antigas que sincronizacaoRetencaoDias são expurgadas pela aplicação; versao_minima guarda até onde,
+--e quem pedir as alterações desde uma versão anterior a ela recebe a listagem completa
+CREATE TABLE IF NOT EXISTS receitas_sincronizacao (
+	id bool DEFAULT true NOT NULL,
+	versao_minima int8 NOT NULL,
+	CONSTRAINT receitas_sincronizacao_pkey PRIMARY KEY (id),
+	CONSTRAINT receitas_sincronizacao_unica CHECK (id)
+);
+INSERT INTO receitas_sincronizacao (id, versao_minima) VALUES (true, 0) ON CONFLICT (id) DO NOTHING;
+
 /**********************************************************************************************/
 --Inserção de Dasos
 /**********************************************************************************************/
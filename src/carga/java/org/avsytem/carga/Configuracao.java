@@ -0,0 +1,114 @@
+package org.avsytem.carga;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Parmetros do teste de carga, lidos dos argumentos no formato chave=valor.
+ *
+ * Alm das chaves abaixo, contexto.&lt;nome&gt;=valor sobrescreve um context-param do web.xml e
+ * servlet.&lt;Servlet&gt;.&lt;nome&gt;=valor sobrescreve um init-param de um servlet.
+ */
+final class Configuracao {
+
+    final String jdbcUrl;
+    final String jdbcUsuario;
+    final String jdbcSenha;
+    final int poolMaximo;
+
+    final String webapp;
+    final String classes;
+    final int porta;
+
+    final int usuarios;
+    final int receitasPorUsuario;
+    final int ingredientesPorReceita;
+    final int passosPorReceita;
+
+    final int aquecimentoSegundos;
+    final int duracaoSegundos;
+    final int pausaMillis;
+    final Mix mix;
+
+    final String relatorio;
+    final boolean manterDados;
+
+    final Map<String, String> parametrosDeContexto = new LinkedHashMap<>();
+    final Map<String, Map<String, String>> parametrosDeServlet = new LinkedHashMap<>();
+
+    private Configuracao(Map<String, String> valores) {
+        jdbcUrl = texto(valores, "jdbc.url", "jdbc:postgresql://localhost:5432/postgres");
+        jdbcUsuario = texto(valores, "jdbc.usuario", "postgres");
+        jdbcSenha = texto(valores, "jdbc.senha", "");
+        poolMaximo = inteiro(valores, "jdbc.poolMaximo", 20);
+
+        webapp = texto(valores, "webapp", "src/main/webapp");
+        classes = texto(valores, "classes", "target/classes");
+        porta = inteiro(valores, "porta", 0);
+
+        usuarios = inteiro(valores, "usuarios", 50);
+        receitasPorUsuario = inteiro(valores, "receitasPorUsuario", 100);
+        ingredientesPorReceita = inteiro(valores, "ingredientesPorReceita", 8);
+        passosPorReceita = inteiro(valores, "passosPorReceita", 6);
+
+        aquecimentoSegundos = inteiro(valores, "aquecimento", 10);
+        duracaoSegundos = inteiro(valores, "duracao", 60);
+        pausaMillis = inteiro(valores, "pausaMillis", 0);
+        mix = Mix.ler(texto(valores, "mix", "login:5,listar:60,salvar:25,deletar:10"));
+
+        relatorio = texto(valores, "relatorio", "target/carga-relatorio.json");
+        manterDados = Boolean.parseBoolean(texto(valores, "manterDados", "false"));
+
+        // Todos os usurios virtuais saem do mesmo IP e repetem o login bem mais que uma pessoa:
+        // sem isso o teste mediria s o 429 do LimitadorDeTentativas
+        servlet("LoginServlet").put("tentativasPorIpPorMinuto", "1000000");
+        servlet("LoginServlet").put("tentativasPorUsuarioPorMinuto", "1000000");
+
+        for (Map.Entry<String, String> e : valores.entrySet()) {
+            String chave = e.getKey();
+            if (chave.startsWith("contexto.")) {
+                parametrosDeContexto.put(chave.substring("contexto.".length()), e.getValue());
+            } else if (chave.startsWith("servlet.")) {
+                int ponto = chave.indexOf('.', "servlet.".length());
+                if (ponto < 0) throw new IllegalArgumentException("Use servlet.<Servlet>.<init-param>=valor: " + chave);
+                servlet(chave.substring("servlet.".length(), ponto)).put(chave.substring(ponto + 1), e.getValue());
+            }
+        }
+
+        // Com o pool da aplicao, as mesmas credenciais e o mesmo tamanho do recurso JNDI, salvo se informados
+        if ("aplicacao".equals(parametrosDeContexto.get("poolDeConexoes"))) {
+            parametrosDeContexto.putIfAbsent("poolUrl", jdbcUrl);
+            parametrosDeContexto.putIfAbsent("poolUsuario", jdbcUsuario);
+            parametrosDeContexto.putIfAbsent("poolSenha", jdbcSenha);
+            parametrosDeContexto.putIfAbsent("poolMaximo", Integer.toString(poolMaximo));
+        }
+        if (parametrosDeContexto.containsKey("replicas")) {
+            parametrosDeContexto.putIfAbsent("replicaUsuario", jdbcUsuario);
+            parametrosDeContexto.putIfAbsent("replicaSenha", jdbcSenha);
+        }
+    }
+
+    static Configuracao ler(String[] args) {
+        Map<String, String> valores = new LinkedHashMap<>();
+        for (String arg : args) {
+            int igual = arg.indexOf('=');
+            if (igual <= 0) throw new IllegalArgumentException("Argumento fora do formato chave=valor: " + arg);
+            valores.put(arg.substring(0, igual).trim(), arg.substring(igual + 1).trim());
+        }
+        return new Configuracao(valores);
+    }
+
+    private Map<String, String> servlet(String nome) {
+        return parametrosDeServlet.computeIfAbsent(nome, k -> new LinkedHashMap<>());
+    }
+
+    private static String texto(Map<String, String> valores, String chave, String padrao) {
+        String valor = valores.get(chave);
+        return valor == null ? padrao : valor;
+    }
+
+    private static int inteiro(Map<String, String> valores, String chave, int padrao) {
+        String valor = valores.get(chave);
+        return valor == null || valor.isEmpty() ? padrao : Integer.parseInt(valor);
+    }
+}
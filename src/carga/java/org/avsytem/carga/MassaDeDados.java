@@ -0,0 +1,78 @@
+package org.avsytem.carga;
+
+import org.avsytem.dao.ReceitaDAO;
+import org.avsytem.dao.ResultadoImportacao;
+import org.avsytem.dao.UserDAO;
+import org.mindrot.jbcrypt.BCrypt;
+import org.postgresql.ds.PGSimpleDataSource;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Cria os usurios e as receitas sintticas do teste direto pelos DAOs (as receitas pela importao
+ * com COPY) e os remove no final. Os usernames levam um prefixo prprio da execuo, ento o teste
+ * pode rodar num banco que j tem outros dados.
+ */
+final class MassaDeDados {
+
+    static final String SENHA = "carga-senha";
+
+    private static final String DELETE_RECEITAS = "DELETE FROM receitas WHERE usuario_id IN (SELECT id FROM usuarios WHERE username LIKE ?)";
+    private static final String DELETE_USUARIOS = "DELETE FROM usuarios WHERE username LIKE ?";
+
+    private final Configuracao config;
+    private final PGSimpleDataSource dataSource = new PGSimpleDataSource();
+    private final String prefixo = "carga_" + System.currentTimeMillis() + "_";
+
+    MassaDeDados(Configuracao config) {
+        this.config = config;
+        dataSource.setURL(config.jdbcUrl);
+        dataSource.setUser(config.jdbcUsuario);
+        dataSource.setPassword(config.jdbcSenha);
+    }
+
+    /**
+     * @return Os usernames criados, um por usurio virtual.
+     */
+    List<String> semear() throws SQLException, IOException {
+        UserDAO userDAO = new UserDAO(dataSource);
+        ReceitaDAO receitaDAO = new ReceitaDAO(dataSource);
+        ReceitasAleatorias gerador = new ReceitasAleatorias(new Random(42), config.ingredientesPorReceita, config.passosPorReceita);
+
+        // Mesmo custo padro do bcryptCusto do web.xml; um hash serve para todos os usurios de carga
+        String hashDaSenha = BCrypt.hashpw(SENHA, BCrypt.gensalt(10));
+        List<String> usernames = new ArrayList<>(config.usuarios);
+        for (int i = 0; i < config.usuarios; i++) {
+            String username = prefixo + i;
+            userDAO.adicionar("Usurio de carga " + i, username + "@carga.invalid", username, hashDaSenha);
+            int usuarioId = userDAO.buscarCredenciais(username).getUsuarioId();
+
+            int[] restantes = {config.receitasPorUsuario};
+            ResultadoImportacao resultado = receitaDAO.importar(usuarioId,
+                    () -> restantes[0]-- > 0 ? gerador.gerar() : null, parcial -> { });
+            if (resultado.getImportadas() != config.receitasPorUsuario) {
+                throw new SQLException("A massa de dados do usurio " + username + " no foi gravada inteira: "
+                        + resultado.getImportadas() + " de " + config.receitasPorUsuario + " receitas.");
+            }
+            usernames.add(username);
+        }
+        return usernames;
+    }
+
+    void remover() throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            for (String sql : new String[]{DELETE_RECEITAS, DELETE_USUARIOS}) {
+                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                    ps.setString(1, prefixo.replace("_", "\\_") + "%");
+                    ps.executeUpdate();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package org.avsytem.carga;
+
+import org.HdrHistogram.Histogram;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Latncias e respostas de uma operao. Cada usurio virtual tem as suas (sem sincronizao);
+ * no final elas so somadas com somar.
+ */
+final class Medicao {
+
+    // At 1 minuto, em microssegundos, com 3 dgitos significativos
+    private final Histogram latenciaMicros = new Histogram(60_000_000L, 3);
+    private final Map<Integer, Long> porStatus = new TreeMap<>();
+    private long requisicoes;
+    private long erros;
+
+    /**
+     * @param status O status HTTP, ou 0 se a requisio falhou antes de ter resposta.
+     */
+    void registrar(long nanos, int status, boolean erro) {
+        latenciaMicros.recordValue(Math.min(nanos / 1000, latenciaMicros.getHighestTrackableValue()));
+        porStatus.merge(status, 1L, Long::sum);
+        requisicoes++;
+        if (erro) erros++;
+    }
+
+    void somar(Medicao outra) {
+        latenciaMicros.add(outra.latenciaMicros);
+        outra.porStatus.forEach((status, total) -> porStatus.merge(status, total, Long::sum));
+        requisicoes += outra.requisicoes;
+        erros += outra.erros;
+    }
+
+    Histogram getLatenciaMicros() {
+        return latenciaMicros;
+    }
+
+    Map<Integer, Long> getPorStatus() {
+        return porStatus;
+    }
+
+    long getRequisicoes() {
+        return requisicoes;
+    }
+
+    long getErros() {
+        return erros;
+    }
+}
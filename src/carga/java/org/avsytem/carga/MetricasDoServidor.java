@@ -0,0 +1,146 @@
+package org.avsytem.carga;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * L o /metrics da aplicao durante o teste: guarda o maior valor visto de cada medidor de fila
+ * (amostrado a cada segundo) e compara os contadores do incio e do fim da medio para mostrar a
+ * saturao do pool de conexes, do executor assncrono e do BCrypt.
+ */
+final class MetricasDoServidor {
+
+    // S existem com o pool da aplicao (contexto.poolDeConexoes=aplicacao)
+    private static final String ATIVAS_DO_POOL = "receitas_pool_conexoes{pool=\"primario\",estado=\"ativas\"}";
+    private static final String AGUARDANDO_O_POOL = "receitas_pool_threads_aguardando{pool=\"primario\"}";
+    private static final String[] MEDIDORES = {"receitas_async_em_execucao", "receitas_async_aguardando",
+            "receitas_login_bcrypt_em_execucao", "receitas_login_bcrypt_fila",
+            ATIVAS_DO_POOL, AGUARDANDO_O_POOL};
+    private static final String ESPERA_DO_POOL = "receitas_pool_espera_segundos";
+
+    private final String url;
+    private final Map<String, Double> maximos = new TreeMap<>();
+    private Map<String, Double> inicio;
+    private Map<String, Double> fim;
+
+    MetricasDoServidor(String urlBase) {
+        this.url = urlBase + "/metrics";
+    }
+
+    void iniciarMedicao() throws IOException {
+        inicio = ler();
+    }
+
+    void encerrarMedicao() throws IOException {
+        fim = ler();
+    }
+
+    synchronized void amostrar() throws IOException {
+        Map<String, Double> atual = ler();
+        for (String medidor : MEDIDORES) {
+            Double valor = atual.get(medidor);
+            if (valor != null) maximos.merge(medidor, valor, Math::max);
+        }
+    }
+
+    synchronized Map<String, Object> resumir() {
+        Map<String, Object> pool = new LinkedHashMap<>();
+        double esperas = diferenca(ESPERA_DO_POOL + "_count");
+        pool.put("conexoesObtidas", (long) esperas);
+        pool.put("esperaMediaMs", esperas == 0 ? 0 : arredondar(diferenca(ESPERA_DO_POOL + "_sum") * 1000 / esperas));
+        pool.put("esperaP99MsAte", limiteDoPercentil(ESPERA_DO_POOL, esperas, 0.99));
+        pool.put("falhas", (long) diferenca("receitas_pool_falhas_total"));
+        if (maximos.containsKey(ATIVAS_DO_POOL)) {
+            pool.put("ativasMaximo", maximos.get(ATIVAS_DO_POOL).longValue());
+            pool.put("aguardandoMaximo", maximos.getOrDefault(AGUARDANDO_O_POOL, 0d).longValue());
+        }
+
+        Map<String, Object> async = new LinkedHashMap<>();
+        async.put("emExecucaoMaximo", maximos.getOrDefault("receitas_async_em_execucao", 0d).longValue());
+        async.put("aguardandoMaximo", maximos.getOrDefault("receitas_async_aguardando", 0d).longValue());
+        async.put("recusadas", (long) diferenca("receitas_async_recusadas_total"));
+
+        Map<String, Object> bcrypt = new LinkedHashMap<>();
+        bcrypt.put("emExecucaoMaximo", maximos.getOrDefault("receitas_login_bcrypt_em_execucao", 0d).longValue());
+        bcrypt.put("filaMaxima", maximos.getOrDefault("receitas_login_bcrypt_fila", 0d).longValue());
+        bcrypt.put("rejeitadasPorFila", (long) diferenca("receitas_login_verificacoes_total{resultado=\"fila_cheia\"}"));
+
+        Map<String, Object> resumo = new LinkedHashMap<>();
+        resumo.put("pool", pool);
+        // S com rplicas (contexto.replicas=...): para onde foram as leituras dos DAOs
+        Map<String, Long> leituras = new LinkedHashMap<>();
+        for (String destino : new String[]{"replica", "primario_apos_escrita", "primario_sem_replica"}) {
+            String serie = "receitas_leituras_total{destino=\"" + destino + "\"}";
+            if (fim.containsKey(serie)) leituras.put(destino, (long) diferenca(serie));
+        }
+        if (!leituras.isEmpty()) resumo.put("leituras", leituras);
+        resumo.put("async", async);
+        resumo.put("bcrypt", bcrypt);
+        return resumo;
+    }
+
+    /**
+     * Soma, entre o incio e o fim, a variao das sries com o nome (todas as combinaes de rtulos)
+     * ou da srie exata, se o nome j trouxer os rtulos.
+     */
+    private double diferenca(String serie) {
+        double total = 0;
+        for (Map.Entry<String, Double> e : fim.entrySet()) {
+            String chave = e.getKey();
+            if (chave.equals(serie) || chave.startsWith(serie + '{')) {
+                total += e.getValue() - inicio.getOrDefault(chave, 0d);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return O limite (le), em ms, da primeira faixa do histograma que acumula a frao pedida das
+     *         observaes do perodo, ou null se no houve observaes.
+     */
+    private Double limiteDoPercentil(String histograma, double total, double fracao) {
+        if (total == 0) return null;
+        String prefixo = histograma + "_bucket{le=\"";
+        Map<Double, Double> porLimite = new TreeMap<>();
+        for (Map.Entry<String, Double> e : fim.entrySet()) {
+            if (!e.getKey().startsWith(prefixo)) continue;
+            String le = e.getKey().substring(prefixo.length(), e.getKey().length() - 2);
+            double limite = "+Inf".equals(le) ? Double.POSITIVE_INFINITY : Double.parseDouble(le);
+            porLimite.put(limite, e.getValue() - inicio.getOrDefault(e.getKey(), 0d));
+        }
+        for (Map.Entry<Double, Double> faixa : porLimite.entrySet()) {
+            if (faixa.getValue() >= fracao * total) {
+                return Double.isInfinite(faixa.getKey()) ? null : arredondar(faixa.getKey() * 1000);
+            }
+        }
+        return null;
+    }
+
+    private Map<String, Double> ler() throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        if (conn.getResponseCode() != HttpURLConnection.HTTP_OK) {
+            throw new IOException("O /metrics respondeu " + conn.getResponseCode() + ".");
+        }
+        Map<String, Double> series = new LinkedHashMap<>();
+        try (BufferedReader linhas = new BufferedReader(new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8))) {
+            String linha;
+            while ((linha = linhas.readLine()) != null) {
+                if (linha.isEmpty() || linha.startsWith("#")) continue;
+                int espaco = linha.lastIndexOf(' ');
+                series.put(linha.substring(0, espaco), Double.parseDouble(linha.substring(espaco + 1)));
+            }
+        }
+        return series;
+    }
+
+    static double arredondar(double valor) {
+        return Math.round(valor * 1000) / 1000.0;
+    }
+}
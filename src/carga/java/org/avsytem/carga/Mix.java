@@ -0,0 +1,52 @@
+package org.avsytem.carga;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Proporo entre as operaes, no formato "login:5,listar:60,salvar:25,deletar:10".
+ * Os pesos so relativos: no precisam somar 100.
+ */
+final class Mix {
+
+    private final Map<Operacao, Integer> pesos;
+    private final Operacao[] operacoes;
+    private final int[] acumulado;
+
+    private Mix(Map<Operacao, Integer> pesos) {
+        this.pesos = pesos;
+        this.operacoes = pesos.keySet().toArray(new Operacao[0]);
+        this.acumulado = new int[operacoes.length];
+        int soma = 0;
+        for (int i = 0; i < operacoes.length; i++) {
+            soma += pesos.get(operacoes[i]);
+            acumulado[i] = soma;
+        }
+        if (soma == 0) throw new IllegalArgumentException("O mix precisa de ao menos uma operao com peso maior que zero.");
+    }
+
+    static Mix ler(String texto) {
+        Map<Operacao, Integer> pesos = new EnumMap<>(Operacao.class);
+        for (String item : texto.split(",")) {
+            String[] partes = item.split(":");
+            if (partes.length != 2) throw new IllegalArgumentException("Item do mix fora do formato operacao:peso: " + item);
+            int peso = Integer.parseInt(partes[1].trim());
+            if (peso < 0) throw new IllegalArgumentException("Peso negativo no mix: " + item);
+            pesos.put(Operacao.deNome(partes[0]), peso);
+        }
+        return new Mix(pesos);
+    }
+
+    Operacao sortear(Random random) {
+        int sorteio = random.nextInt(acumulado[acumulado.length - 1]);
+        for (int i = 0; i < acumulado.length; i++) {
+            if (sorteio < acumulado[i]) return operacoes[i];
+        }
+        return operacoes[operacoes.length - 1];
+    }
+
+    Map<Operacao, Integer> getPesos() {
+        return pesos;
+    }
+}
@@ -0,0 +1,19 @@
+package org.avsytem.carga;
+
+/**
+ * As operaes que um usurio virtual sorteia, com o nome usado no mix e no relatrio.
+ */
+enum Operacao {
+    LOGIN, LISTAR, SALVAR, DELETAR;
+
+    String getNome() {
+        return name().toLowerCase();
+    }
+
+    static Operacao deNome(String nome) {
+        for (Operacao operacao : values()) {
+            if (operacao.getNome().equals(nome.trim().toLowerCase())) return operacao;
+        }
+        throw new IllegalArgumentException("Operao desconhecida no mix: " + nome);
+    }
+}
@@ -0,0 +1,57 @@
+package org.avsytem.carga;
+
+import org.avsytem.model.Ingrediente;
+import org.avsytem.model.Passo;
+import org.avsytem.model.Receita;
+
+import java.util.Random;
+
+/**
+ * Gera receitas com textos e quantidades de ingredientes e passos parecidos com os de receitas reais:
+ * a quantidade de cada uma varia entre metade e uma vez e meia a mdia configurada.
+ */
+final class ReceitasAleatorias {
+
+    private static final String[] INGREDIENTES = {"farinha de trigo", "acar", "ovos", "leite", "manteiga", "sal",
+            "fermento em p", "cebola", "alho", "tomate", "azeite", "arroz", "feijo", "frango", "carne moda",
+            "queijo", "presunto", "cenoura", "batata", "chocolate em p", "creme de leite", "leite condensado"};
+    private static final String[] UNIDADES = {"gramas", "xcaras", "colheres de sopa", "colheres de ch", "unidades", "ml"};
+    private static final String[] DIFICULDADES = {"Fcil", "Mdio", "Difcil"};
+
+    private final Random random;
+    private final int ingredientesPorReceita;
+    private final int passosPorReceita;
+
+    ReceitasAleatorias(Random random, int ingredientesPorReceita, int passosPorReceita) {
+        this.random = random;
+        this.ingredientesPorReceita = ingredientesPorReceita;
+        this.passosPorReceita = passosPorReceita;
+    }
+
+    Receita gerar() {
+        int numero = random.nextInt(1_000_000);
+        Receita receita = new Receita();
+        receita.setNome("Receita de carga " + numero);
+        receita.setDescricao("Receita gerada pelo teste de carga, nmero " + numero + ", com uma descrio de tamanho parecido com a das receitas cadastradas  mo.");
+        receita.setTempoDePreparo(10 + random.nextInt(180));
+        receita.setPorcoes(1 + random.nextInt(12));
+        receita.setDificuldade(DIFICULDADES[random.nextInt(DIFICULDADES.length)]);
+
+        int ingredientes = variar(ingredientesPorReceita);
+        for (int i = 0; i < ingredientes; i++) {
+            receita.getIngredientes().add(new Ingrediente(INGREDIENTES[random.nextInt(INGREDIENTES.length)],
+                    1 + random.nextInt(20) * 0.5, UNIDADES[random.nextInt(UNIDADES.length)]));
+        }
+        int passos = variar(passosPorReceita);
+        for (int p = 1; p <= passos; p++) {
+            receita.getPassos().add(new Passo(p, "Passo " + p + ": misture os ingredientes indicados, leve ao fogo baixo por "
+                    + (5 + random.nextInt(30)) + " minutos e reserve."));
+        }
+        return receita;
+    }
+
+    private int variar(int media) {
+        if (media <= 0) return 0;
+        return Math.max(1, media / 2 + random.nextInt(media + 1));
+    }
+}
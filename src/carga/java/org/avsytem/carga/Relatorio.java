@@ -0,0 +1,122 @@
+package org.avsytem.carga;
+
+import com.google.gson.GsonBuilder;
+import org.HdrHistogram.Histogram;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Junta as medies dos usurios virtuais e as do servidor num relatrio JSON (para comparar
+ * verses no CI) e num resumo em texto no console.
+ */
+final class Relatorio {
+
+    private final Configuracao config;
+    private final Map<Operacao, Medicao> porOperacao = new EnumMap<>(Operacao.class);
+    private final Medicao total = new Medicao();
+    private final double segundos;
+    private final Map<String, Object> servidor;
+
+    Relatorio(Configuracao config, List<UsuarioVirtual> usuarios, double segundos, Map<String, Object> servidor) {
+        this.config = config;
+        this.segundos = segundos;
+        this.servidor = servidor;
+        for (Operacao operacao : Operacao.values()) {
+            porOperacao.put(operacao, new Medicao());
+        }
+        for (UsuarioVirtual usuario : usuarios) {
+            usuario.getMedicoes().forEach((operacao, medicao) -> {
+                porOperacao.get(operacao).somar(medicao);
+                total.somar(medicao);
+            });
+        }
+    }
+
+    void gravar() throws IOException {
+        Map<String, Object> configuracao = new LinkedHashMap<>();
+        configuracao.put("usuariosVirtuais", config.usuarios);
+        configuracao.put("aquecimentoSegundos", config.aquecimentoSegundos);
+        configuracao.put("duracaoSegundos", config.duracaoSegundos);
+        configuracao.put("pausaMillis", config.pausaMillis);
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        config.mix.getPesos().forEach((operacao, peso) -> mix.put(operacao.getNome(), peso));
+        configuracao.put("mix", mix);
+        configuracao.put("receitasPorUsuario", config.receitasPorUsuario);
+        configuracao.put("ingredientesPorReceita", config.ingredientesPorReceita);
+        configuracao.put("passosPorReceita", config.passosPorReceita);
+        configuracao.put("poolMaximo", config.poolMaximo);
+
+        Map<String, Object> operacoes = new LinkedHashMap<>();
+        for (Map.Entry<Operacao, Medicao> e : porOperacao.entrySet()) {
+            if (e.getValue().getRequisicoes() > 0) {
+                operacoes.put(e.getKey().getNome(), resumir(e.getValue()));
+            }
+        }
+
+        Map<String, Object> relatorio = new LinkedHashMap<>();
+        relatorio.put("configuracao", configuracao);
+        relatorio.put("total", resumir(total));
+        relatorio.put("operacoes", operacoes);
+        relatorio.put("servidor", servidor);
+
+        File arquivo = new File(config.relatorio);
+        if (arquivo.getParentFile() != null) arquivo.getParentFile().mkdirs();
+        try (Writer saida = Files.newBufferedWriter(arquivo.toPath(), StandardCharsets.UTF_8)) {
+            new GsonBuilder().setPrettyPrinting().serializeNulls().create().toJson(relatorio, saida);
+        }
+    }
+
+    void imprimir() {
+        System.out.printf("%n%-10s %10s %10s %8s %10s %10s %10s %10s%n",
+                "operao", "requisies", "req/s", "erros", "p50 ms", "p90 ms", "p99 ms", "mx ms");
+        for (Map.Entry<Operacao, Medicao> e : porOperacao.entrySet()) {
+            imprimirLinha(e.getKey().getNome(), e.getValue());
+        }
+        imprimirLinha("total", total);
+        System.out.println("Servidor: " + servidor);
+        System.out.println("Relatrio: " + new File(config.relatorio).getAbsolutePath());
+    }
+
+    private void imprimirLinha(String nome, Medicao medicao) {
+        if (medicao.getRequisicoes() == 0) return;
+        Histogram h = medicao.getLatenciaMicros();
+        System.out.printf("%-10s %10d %10.1f %8d %10.2f %10.2f %10.2f %10.2f%n", nome, medicao.getRequisicoes(),
+                medicao.getRequisicoes() / segundos, medicao.getErros(), ms(h.getValueAtPercentile(50)),
+                ms(h.getValueAtPercentile(90)), ms(h.getValueAtPercentile(99)), ms(h.getMaxValue()));
+    }
+
+    private Map<String, Object> resumir(Medicao medicao) {
+        Map<String, Object> resumo = new LinkedHashMap<>();
+        resumo.put("requisicoes", medicao.getRequisicoes());
+        resumo.put("porSegundo", MetricasDoServidor.arredondar(medicao.getRequisicoes() / segundos));
+        resumo.put("erros", medicao.getErros());
+        resumo.put("taxaDeErros", medicao.getRequisicoes() == 0 ? 0 : MetricasDoServidor.arredondar((double) medicao.getErros() / medicao.getRequisicoes()));
+
+        Map<String, Long> status = new LinkedHashMap<>();
+        medicao.getPorStatus().forEach((codigo, quantidade) -> status.put(codigo == 0 ? "sem_resposta" : codigo.toString(), quantidade));
+        resumo.put("status", status);
+
+        Histogram h = medicao.getLatenciaMicros();
+        Map<String, Object> latencia = new LinkedHashMap<>();
+        latencia.put("media", MetricasDoServidor.arredondar(h.getMean() / 1000));
+        latencia.put("p50", ms(h.getValueAtPercentile(50)));
+        latencia.put("p90", ms(h.getValueAtPercentile(90)));
+        latencia.put("p99", ms(h.getValueAtPercentile(99)));
+        latencia.put("p999", ms(h.getValueAtPercentile(99.9)));
+        latencia.put("maxima", ms(h.getMaxValue()));
+        resumo.put("latenciaMs", latencia);
+        return resumo;
+    }
+
+    private static double ms(long micros) {
+        return MetricasDoServidor.arredondar(micros / 1000.0);
+    }
+}
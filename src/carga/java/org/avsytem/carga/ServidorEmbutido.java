@@ -0,0 +1,123 @@
+package org.avsytem.carga;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.Lifecycle;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.LifecycleState;
+import org.apache.catalina.WebResourceRoot;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.catalina.webresources.DirResourceSet;
+import org.apache.catalina.webresources.StandardRoot;
+import org.apache.tomcat.util.descriptor.web.ApplicationParameter;
+import org.apache.tomcat.util.descriptor.web.ContextResource;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sobe a aplicao num Tomcat embutido, com o web.xml de verdade e o mesmo recurso JNDI
+ * (jdbc/PostgresDB, DBCP) do META-INF/context.xml, mas apontando para o banco do teste.
+ * O target/classes  montado como WEB-INF/classes, como no WAR: as anotaes (@WebListener) so
+ * lidas de l e as classes da aplicao ficam no classloader da webapp, separadas das do teste.
+ */
+final class ServidorEmbutido {
+
+    static final String CONTEXTO = "/receitas";
+
+    private final Configuracao config;
+    private final Tomcat tomcat = new Tomcat();
+
+    ServidorEmbutido(Configuracao config) {
+        this.config = config;
+    }
+
+    void iniciar() throws LifecycleException {
+        tomcat.setBaseDir(new File("target/carga-tomcat").getAbsolutePath());
+        tomcat.setPort(config.porta);
+        tomcat.getConnector();
+        tomcat.enableNaming();
+        // Sem o web.xml padro do Tomcat: as JSPs no fazem parte do teste e o Jasper no est no classpath
+        tomcat.setAddDefaultWebXmlToWebapp(false);
+
+        Context contexto = tomcat.addWebapp(CONTEXTO, new File(config.webapp).getAbsolutePath());
+        contexto.setConfigFile(null);
+        WebResourceRoot recursos = new StandardRoot(contexto);
+        recursos.addPreResources(new DirResourceSet(recursos, "/WEB-INF/classes", new File(config.classes).getAbsolutePath(), "/"));
+        contexto.setResources(recursos);
+        contexto.getNamingResources().addResource(recursoJdbc());
+
+        for (Map.Entry<String, String> e : config.parametrosDeContexto.entrySet()) {
+            ApplicationParameter parametro = new ApplicationParameter();
+            parametro.setName(e.getKey());
+            parametro.setValue(e.getValue());
+            parametro.setOverride(false);
+            contexto.addApplicationParameter(parametro);
+        }
+        // Os servlets s existem depois que o ContextConfig l o web.xml, no mesmo evento
+        contexto.addLifecycleListener(evento -> {
+            if (!Lifecycle.CONFIGURE_START_EVENT.equals(evento.getType())) return;
+            for (Map.Entry<String, Map<String, String>> servlet : config.parametrosDeServlet.entrySet()) {
+                Wrapper wrapper = (Wrapper) contexto.findChild(servlet.getKey());
+                if (wrapper == null) throw new IllegalArgumentException("Servlet inexistente no web.xml: " + servlet.getKey());
+                servlet.getValue().forEach(wrapper::addInitParameter);
+            }
+        });
+
+        tomcat.start();
+        if (contexto.getState() != LifecycleState.STARTED) {
+            throw new LifecycleException("A aplicao no subiu no Tomcat embutido; veja o log acima.");
+        }
+    }
+
+    /**
+     * Espera o /saude responder 200, isto , o aquecimento da aplicao terminar, para que a carga
+     * no comece sobre uma instncia fria.
+     * @return Quanto tempo levou.
+     */
+    long aguardarProntidao(long maximoMillis) throws IOException, InterruptedException {
+        long inicio = System.nanoTime();
+        long prazo = inicio + TimeUnit.MILLISECONDS.toNanos(maximoMillis);
+        while (true) {
+            HttpURLConnection conexao = (HttpURLConnection) new URL(getUrlBase() + "/saude").openConnection();
+            int status = conexao.getResponseCode();
+            conexao.disconnect();
+            if (status == HttpURLConnection.HTTP_OK) {
+                return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio);
+            }
+            if (System.nanoTime() - prazo > 0) {
+                throw new IOException("A aplicao no ficou pronta em " + maximoMillis + " ms (/saude: " + status + ").");
+            }
+            TimeUnit.MILLISECONDS.sleep(200);
+        }
+    }
+
+    String getUrlBase() {
+        return "http://127.0.0.1:" + tomcat.getConnector().getLocalPort() + CONTEXTO;
+    }
+
+    void parar() throws LifecycleException {
+        tomcat.stop();
+        tomcat.destroy();
+    }
+
+    private ContextResource recursoJdbc() {
+        ContextResource recurso = new ContextResource();
+        recurso.setName("jdbc/PostgresDB");
+        recurso.setAuth("Container");
+        recurso.setType(DataSource.class.getName());
+        recurso.setProperty("driverClassName", "org.postgresql.Driver");
+        recurso.setProperty("url", config.jdbcUrl);
+        recurso.setProperty("username", config.jdbcUsuario);
+        recurso.setProperty("password", config.jdbcSenha);
+        recurso.setProperty("maxTotal", Integer.toString(config.poolMaximo));
+        recurso.setProperty("maxIdle", Integer.toString(config.poolMaximo));
+        recurso.setProperty("maxWaitMillis", "10000");
+        return recurso;
+    }
+}
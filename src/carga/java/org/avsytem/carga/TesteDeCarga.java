@@ -0,0 +1,85 @@
+package org.avsytem.carga;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Teste de carga de ponta a ponta: sobe a aplicao num Tomcat embutido contra um PostgreSQL local,
+ * cria a massa de dados, coloca N usurios virtuais fazendo login, listar, salvar e deletar na
+ * proporo do mix e grava o relatrio (vazo, percentis de latncia, erros e saturao do pool).
+ *
+ * mvn -Pcarga test-compile exec:exec -Dcarga.args="usuarios=100 duracao=120 mix=login:5,listar:60,salvar:25,deletar:10"
+ *
+ * O banco precisa do schema de Files/ConfigureDatabase.sql. Os dados criados so removidos no final
+ * (manterDados=true para mant-los).
+ */
+public final class TesteDeCarga {
+
+    private static final Logger LOGGER = Logger.getLogger(TesteDeCarga.class.getName());
+
+    private TesteDeCarga() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Configuracao config = Configuracao.ler(args);
+        MassaDeDados massa = new MassaDeDados(config);
+        ServidorEmbutido servidor = new ServidorEmbutido(config);
+
+        try {
+            System.out.printf("Criando %d usurios com %d receitas cada...%n", config.usuarios, config.receitasPorUsuario);
+            List<String> usernames = massa.semear();
+            servidor.iniciar();
+            System.out.printf("Aplicao pronta (/saude) aps %d ms.%n", servidor.aguardarProntidao(120000));
+            Relatorio relatorio = executar(config, servidor.getUrlBase(), usernames);
+            relatorio.gravar();
+            relatorio.imprimir();
+        } finally {
+            servidor.parar();
+            if (!config.manterDados) massa.remover();
+        }
+    }
+
+    private static Relatorio executar(Configuracao config, String urlBase, List<String> usernames) throws Exception {
+        // O keep-alive do HttpURLConnection guarda s 5 conexes ociosas por destino
+        System.setProperty("http.maxConnections", Integer.toString(config.usuarios));
+
+        long agora = System.nanoTime();
+        long inicioDaMedicao = agora + TimeUnit.SECONDS.toNanos(config.aquecimentoSegundos);
+        long fim = inicioDaMedicao + TimeUnit.SECONDS.toNanos(config.duracaoSegundos);
+
+        List<UsuarioVirtual> usuarios = new ArrayList<>(usernames.size());
+        ExecutorService threads = Executors.newFixedThreadPool(usernames.size());
+        for (int i = 0; i < usernames.size(); i++) {
+            UsuarioVirtual usuario = new UsuarioVirtual(urlBase, usernames.get(i), config, inicioDaMedicao, fim, i);
+            usuarios.add(usuario);
+            threads.execute(usuario);
+        }
+        System.out.printf("%d usurios virtuais: %d s de aquecimento e %d s de medio.%n",
+                usernames.size(), config.aquecimentoSegundos, config.duracaoSegundos);
+
+        MetricasDoServidor metricas = new MetricasDoServidor(urlBase);
+        TimeUnit.NANOSECONDS.sleep(inicioDaMedicao - System.nanoTime());
+        metricas.iniciarMedicao();
+        ScheduledExecutorService amostragem = Executors.newSingleThreadScheduledExecutor();
+        amostragem.scheduleAtFixedRate(() -> {
+            try {
+                metricas.amostrar();
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Falha ao ler o /metrics.", e);
+            }
+        }, 0, 1, TimeUnit.SECONDS);
+
+        threads.shutdown();
+        threads.awaitTermination(config.duracaoSegundos + 60L, TimeUnit.SECONDS);
+        amostragem.shutdownNow();
+        metricas.encerrarMedicao();
+
+        return new Relatorio(config, usuarios, config.duracaoSegundos, metricas.resumir());
+    }
+}
@@ -0,0 +1,232 @@
+package org.avsytem.carga;
+
+import com.google.gson.Gson;
+import org.avsytem.model.Receita;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Um usurio da aplicao, com sua prpria sesso, fazendo as mesmas requisies que o frontend ExtJS:
+ * login pelo formulrio, listagem com GET condicional (If-None-Match, como o navegador faz), salvar
+ * com jsonData e deletar pelo id. Sorteia as operaes pelo mix, uma depois da outra (modelo fechado),
+ * com uma pausa opcional entre elas.
+ *
+ * S as requisies iniciadas depois do aquecimento so medidas.
+ */
+final class UsuarioVirtual implements Runnable {
+
+    // "id" da receita; usuario_id e os campos de ingredientes/passos no casam
+    private static final Pattern ID_DA_RECEITA = Pattern.compile("\"id\"\\s*:\\s*(\\d+)");
+    private static final String FALHA = "\"success\": false";
+
+    private final String urlBase;
+    private final String username;
+    private final Configuracao config;
+    private final long inicioDaMedicao;
+    private final long fim;
+    private final Random random;
+    private final ReceitasAleatorias gerador;
+    private final Gson gson = new Gson();
+
+    private final Map<Operacao, Medicao> medicoes = new EnumMap<>(Operacao.class);
+
+    private String cookie;
+    private String etag;
+    private final List<Integer> receitas = new ArrayList<>();
+
+    /**
+     * @param inicioDaMedicao Fim do aquecimento (System.nanoTime).
+     * @param fim Quando parar de enviar requisies (System.nanoTime).
+     */
+    UsuarioVirtual(String urlBase, String username, Configuracao config, long inicioDaMedicao, long fim, long semente) {
+        this.urlBase = urlBase;
+        this.username = username;
+        this.config = config;
+        this.inicioDaMedicao = inicioDaMedicao;
+        this.fim = fim;
+        this.random = new Random(semente);
+        this.gerador = new ReceitasAleatorias(random, config.ingredientesPorReceita, config.passosPorReceita);
+        for (Operacao operacao : Operacao.values()) {
+            medicoes.put(operacao, new Medicao());
+        }
+    }
+
+    @Override
+    public void run() {
+        while (System.nanoTime() < fim) {
+            Operacao operacao = cookie == null ? Operacao.LOGIN : config.mix.sortear(random);
+            if (operacao == Operacao.DELETAR && receitas.isEmpty()) {
+                // Ainda no sabe o id de nenhuma receita: o frontend tambm lista antes de deletar
+                operacao = Operacao.LISTAR;
+            }
+            executar(operacao);
+
+            if (config.pausaMillis > 0) {
+                try {
+                    Thread.sleep(config.pausaMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    Map<Operacao, Medicao> getMedicoes() {
+        return medicoes;
+    }
+
+    private void executar(Operacao operacao) {
+        long inicio = System.nanoTime();
+        Resposta resposta;
+        try {
+            switch (operacao) {
+                case LOGIN:
+                    resposta = login();
+                    break;
+                case LISTAR:
+                    resposta = listar();
+                    break;
+                case SALVAR:
+                    resposta = salvar();
+                    break;
+                default:
+                    resposta = deletar();
+            }
+        } catch (IOException e) {
+            resposta = new Resposta(0, null, null);
+        }
+        long duracao = System.nanoTime() - inicio;
+
+        // Redirecionado para o login ou sem sesso: o prximo passo  logar de novo
+        if (resposta.status == HttpURLConnection.HTTP_MOVED_TEMP || resposta.status == HttpURLConnection.HTTP_UNAUTHORIZED) {
+            cookie = null;
+        }
+        if (inicio >= inicioDaMedicao) {
+            boolean erro = resposta.status == 0 || resposta.status >= 300 && resposta.status != HttpURLConnection.HTTP_NOT_MODIFIED
+                    || resposta.corpo != null && resposta.corpo.contains(FALHA);
+            medicoes.get(operacao).registrar(duracao, resposta.status, erro);
+        }
+    }
+
+    private Resposta login() throws IOException {
+        cookie = null;
+        etag = null;
+        Resposta resposta = enviar("POST", "/index", "usuario=" + codificar(username) + "&senha=" + codificar(MassaDeDados.SENHA), null);
+        if (resposta.status != HttpURLConnection.HTTP_OK || resposta.corpo == null || resposta.corpo.contains(FALHA)) {
+            cookie = null;
+        }
+        return resposta;
+    }
+
+    private Resposta listar() throws IOException {
+        Resposta resposta = enviar("GET", "/receitas?action=listar", null, etag);
+        if (resposta.status == HttpURLConnection.HTTP_OK && resposta.corpo != null) {
+            etag = resposta.etag;
+            receitas.clear();
+            Matcher ids = ID_DA_RECEITA.matcher(resposta.corpo);
+            while (ids.find()) {
+                receitas.add(Integer.parseInt(ids.group(1)));
+            }
+        }
+        return resposta;
+    }
+
+    private Resposta salvar() throws IOException {
+        Receita receita = gerador.gerar();
+        // Metade das gravaes edita uma receita existente, a outra metade cria uma nova
+        if (!receitas.isEmpty() && random.nextBoolean()) {
+            receita.setId(receitas.get(random.nextInt(receitas.size())));
+        }
+        return enviar("POST", "/receitas", "jsonData=" + codificar(gson.toJson(receita)), null);
+    }
+
+    private Resposta deletar() throws IOException {
+        int id = receitas.remove(random.nextInt(receitas.size()));
+        return enviar("POST", "/receitas?action=deletar", "id=" + id, null);
+    }
+
+    private Resposta enviar(String metodo, String caminho, String formulario, String seNaoCorresponder) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(urlBase + caminho).openConnection();
+        conn.setInstanceFollowRedirects(false);
+        conn.setRequestMethod(metodo);
+        conn.setRequestProperty("Accept-Encoding", "gzip");
+        if (cookie != null) conn.setRequestProperty("Cookie", cookie);
+        if (seNaoCorresponder != null) conn.setRequestProperty("If-None-Match", seNaoCorresponder);
+        if (formulario != null) {
+            // A aplicao l os parmetros em ISO-8859-1 (AuthenticationFilter)
+            byte[] corpo = formulario.getBytes(StandardCharsets.ISO_8859_1);
+            conn.setDoOutput(true);
+            conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded; charset=ISO-8859-1");
+            conn.setFixedLengthStreamingMode(corpo.length);
+            try (OutputStream saida = conn.getOutputStream()) {
+                saida.write(corpo);
+            }
+        }
+
+        int status = conn.getResponseCode();
+        List<String> cookies = conn.getHeaderFields().get("Set-Cookie");
+        if (cookies != null) {
+            for (String c : cookies) {
+                // Sesso ou, com contexto.autenticacao=token, o cookie do token assinado
+                if (c.startsWith("JSESSIONID=") || c.startsWith("receitas_token=")) {
+                    int fimDoValor = c.indexOf(';');
+                    cookie = fimDoValor < 0 ? c : c.substring(0, fimDoValor);
+                }
+            }
+        }
+        // L a resposta inteira, tambm nos erros, para a conexo voltar ao keep-alive
+        InputStream entrada = status >= 400 ? conn.getErrorStream() : conn.getInputStream();
+        String corpo = null;
+        if (entrada != null) {
+            if ("gzip".equalsIgnoreCase(conn.getContentEncoding())) {
+                entrada = new GZIPInputStream(entrada);
+            }
+            try (InputStream in = entrada) {
+                corpo = new String(lerTudo(in), StandardCharsets.ISO_8859_1);
+            }
+        }
+        return new Resposta(status, corpo, conn.getHeaderField("ETag"));
+    }
+
+    private static byte[] lerTudo(InputStream in) throws IOException {
+        ByteArrayOutputStream saida = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int lidos;
+        while ((lidos = in.read(buffer)) != -1) {
+            saida.write(buffer, 0, lidos);
+        }
+        return saida.toByteArray();
+    }
+
+    private static String codificar(String valor) throws IOException {
+        return URLEncoder.encode(valor, "ISO-8859-1");
+    }
+
+    private static final class Resposta {
+        private final int status;
+        private final String corpo;
+        private final String etag;
+
+        Resposta(int status, String corpo, String etag) {
+            this.status = status;
+            this.corpo = corpo;
+            this.etag = etag;
+        }
+    }
+}
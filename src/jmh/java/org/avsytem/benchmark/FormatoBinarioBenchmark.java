@@ -0,0 +1,174 @@
+package org.avsytem.benchmark;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.avsytem.json.FormatoBinario;
+import org.avsytem.json.ReceitaJson;
+import org.avsytem.model.Receita;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A resposta da listagem completa ({total, receitas}) nos formatos que o ReceitaServlet pode enviar:
+ * Gson com pretty printing em ISO-8859-1 (a listagem sem streaming), JSON em streaming (ReceitaJson)
+ * e os binrios negociados pelo Accept (CBOR e Smile). Mede a codificao e a leitura de volta, e o
+ * contador auxiliar "bytes" mostra o tamanho da resposta sem compresso (rode com uma thread).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FormatoBinarioBenchmark {
+
+    @Param({"1", "100", "1000"})
+    public int receitas;
+
+    @Param({"10"})
+    public int ingredientesPorReceita;
+
+    @Param({"8"})
+    public int passosPorReceita;
+
+    private List<Receita> lista;
+    private Gson gsonPretty;
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final ObjectMapper leitorJson = leitor(new JsonFactory());
+    private final ObjectMapper leitorCbor = leitor(new CBORFactory());
+    private final ObjectMapper leitorSmile = leitor(new SmileFactory());
+
+    private byte[] gsonPrettyCodificado;
+    private byte[] jsonCodificado;
+    private byte[] cborCodificado;
+    private byte[] smileCodificado;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Tamanho {
+        // Tamanho da ltima resposta codificada, no uma soma
+        public long bytes;
+    }
+
+    /**
+     * O mesmo envelope da listagem, para ler a resposta de volta.
+     */
+    public static class Envelope {
+        public int total;
+        public List<Receita> receitas;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        lista = ReceitasSinteticas.gerar(receitas, ingredientesPorReceita, passosPorReceita);
+        gsonPretty = new GsonBuilder().setPrettyPrinting().create();
+        gsonPrettyCodificado = codificarGsonPretty();
+        jsonCodificado = codificar(null);
+        cborCodificado = codificar(FormatoBinario.CBOR);
+        smileCodificado = codificar(FormatoBinario.SMILE);
+    }
+
+    @Benchmark
+    public byte[] codificarGsonPretty(Tamanho tamanho) {
+        byte[] bytes = codificarGsonPretty();
+        tamanho.bytes = bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public byte[] codificarJson(Tamanho tamanho) throws IOException {
+        byte[] bytes = codificar(null);
+        tamanho.bytes = bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public byte[] codificarCbor(Tamanho tamanho) throws IOException {
+        byte[] bytes = codificar(FormatoBinario.CBOR);
+        tamanho.bytes = bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public byte[] codificarSmile(Tamanho tamanho) throws IOException {
+        byte[] bytes = codificar(FormatoBinario.SMILE);
+        tamanho.bytes = bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public Envelope lerGsonPretty() {
+        return gsonPretty.fromJson(new String(gsonPrettyCodificado, StandardCharsets.ISO_8859_1), Envelope.class);
+    }
+
+    @Benchmark
+    public Envelope lerJson() throws IOException {
+        return leitorJson.readValue(jsonCodificado, Envelope.class);
+    }
+
+    @Benchmark
+    public Envelope lerCbor() throws IOException {
+        return leitorCbor.readValue(cborCodificado, Envelope.class);
+    }
+
+    @Benchmark
+    public Envelope lerSmile() throws IOException {
+        return leitorSmile.readValue(smileCodificado, Envelope.class);
+    }
+
+    /**
+     * Como a listagem sem streaming: String.format do envelope com o toJson da lista, escrita em ISO-8859-1.
+     */
+    private byte[] codificarGsonPretty() {
+        return String.format("{\"total\": %d, \"receitas\": %s}", lista.size(), gsonPretty.toJson(lista))
+                .getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Como listarEmStreaming: o mesmo envelope, escrito pelo ReceitaJson no gerador do formato.
+     */
+    private byte[] codificar(FormatoBinario formato) throws IOException {
+        ByteArrayOutputStream saida = new ByteArrayOutputStream();
+        try (JsonGenerator json = formato == null
+                ? jsonFactory.createGenerator(saida, JsonEncoding.UTF8)
+                : formato.criarGerador(saida)) {
+            json.writeStartObject();
+            json.writeNumberField("total", lista.size());
+            json.writeArrayFieldStart("receitas");
+            for (Receita receita : lista) {
+                ReceitaJson.escrever(json, receita);
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+        }
+        return saida.toByteArray();
+    }
+
+    private static ObjectMapper leitor(JsonFactory fabrica) {
+        return new ObjectMapper(fabrica).configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+}
@@ -0,0 +1,107 @@
+package org.avsytem.benchmark;
+
+import org.avsytem.model.Ingrediente;
+import org.avsytem.model.Passo;
+import org.avsytem.model.Receita;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Custo do equals/hashCode de Ingrediente e Passo (Objects.hash, com boxing do double e do int)
+ * e das duas formas de eliminar repetidos: List.contains, como fazia a listagem com JOIN, e HashSet.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IgualdadeBenchmark {
+
+    @Param({"10", "50"})
+    public int itensPorReceita;
+
+    private List<Ingrediente> ingredientes;
+    private List<Passo> passos;
+    // Cpias com os mesmos valores e outras instncias, para o equals no parar no ==
+    private List<Ingrediente> ingredientesRepetidos;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Receita receita = ReceitasSinteticas.gerar(1, itensPorReceita, itensPorReceita).get(0);
+        ingredientes = receita.getIngredientes();
+        passos = receita.getPassos();
+        ingredientesRepetidos = new ArrayList<>(ingredientes.size());
+        for (Ingrediente i : ingredientes) {
+            ingredientesRepetidos.add(new Ingrediente(new String(i.getNome()), i.getQuantidade(), new String(i.getUnidade())));
+        }
+    }
+
+    @Benchmark
+    public void hashCodeIngrediente(Blackhole bh) {
+        for (Ingrediente i : ingredientes) {
+            bh.consume(i.hashCode());
+        }
+    }
+
+    @Benchmark
+    public void hashCodePasso(Blackhole bh) {
+        for (Passo p : passos) {
+            bh.consume(p.hashCode());
+        }
+    }
+
+    @Benchmark
+    public void equalsIngrediente(Blackhole bh) {
+        for (int i = 0; i < ingredientes.size(); i++) {
+            bh.consume(ingredientes.get(i).equals(ingredientesRepetidos.get(i)));
+        }
+    }
+
+    @Benchmark
+    public List<Ingrediente> deduplicarComListContains() {
+        List<Ingrediente> unicos = new ArrayList<>();
+        for (List<Ingrediente> origem : listasDeEntrada()) {
+            for (Ingrediente i : origem) {
+                if (!unicos.contains(i)) unicos.add(i);
+            }
+        }
+        return unicos;
+    }
+
+    @Benchmark
+    public Set<Ingrediente> deduplicarComHashSet() {
+        Set<Ingrediente> unicos = new HashSet<>();
+        for (List<Ingrediente> origem : listasDeEntrada()) {
+            unicos.addAll(origem);
+        }
+        return unicos;
+    }
+
+    /**
+     * Cada ingrediente aparece duas vezes, como as linhas repetidas do JOIN com os passos.
+     */
+    private List<List<Ingrediente>> listasDeEntrada() {
+        List<List<Ingrediente>> listas = new ArrayList<>(2);
+        listas.add(ingredientes);
+        listas.add(ingredientesRepetidos);
+        return listas;
+    }
+}
@@ -0,0 +1,130 @@
+package org.avsytem.benchmark;
+
+import org.avsytem.model.Ingrediente;
+import org.avsytem.model.Passo;
+import org.avsytem.model.Receita;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DataSource em memria (proxies de Connection, PreparedStatement e ResultSet) que devolve sempre as
+ * mesmas receitas, para medir a montagem das receitas no ReceitaDAO sem rede nem banco.
+ *
+ * A tabela lida  deduzida do SQL (FROM ingredientes, FROM passos, COUNT(*) ou receitas); parmetros
+ * so ignorados. O custo de cada chamada ao proxy entra na medida, ento os nmeros servem para
+ * comparar verses do DAO entre si, no como o tempo absoluto com um driver real.
+ */
+final class JdbcFalso {
+
+    private static final String[] COLUNAS_RECEITAS = {"id", "nome", "descricao", "tempo_preparo_min", "porcoes", "dificuldade"};
+    private static final String[] COLUNAS_INGREDIENTES = {"receita_id", "nome", "quantidade", "unidade"};
+    private static final String[] COLUNAS_PASSOS = {"receita_id", "ordem", "descricao"};
+
+    private JdbcFalso() {
+    }
+
+    static DataSource dataSource(List<Receita> receitas) {
+        Tabela tabelaReceitas = new Tabela(COLUNAS_RECEITAS);
+        Tabela tabelaIngredientes = new Tabela(COLUNAS_INGREDIENTES);
+        Tabela tabelaPassos = new Tabela(COLUNAS_PASSOS);
+        for (Receita r : receitas) {
+            tabelaReceitas.linhas.add(new Object[]{r.getId(), r.getNome(), r.getDescricao(), r.getTempoDePreparo(), r.getPorcoes(), r.getDificuldade()});
+            for (Ingrediente i : r.getIngredientes()) {
+                tabelaIngredientes.linhas.add(new Object[]{r.getId(), i.getNome(), i.getQuantidade(), i.getUnidade()});
+            }
+            for (Passo p : r.getPassos()) {
+                tabelaPassos.linhas.add(new Object[]{r.getId(), p.getOrdem(), p.getDescricao()});
+            }
+        }
+        Tabela total = new Tabela(new String[]{"count"});
+        total.linhas.add(new Object[]{receitas.size()});
+
+        Connection conexao = proxy(Connection.class, (p, metodo, args) -> {
+            switch (metodo.getName()) {
+                case "prepareStatement":
+                    String sql = (String) args[0];
+                    Tabela tabela = sql.startsWith("SELECT COUNT(*)") ? total
+                            : sql.contains("FROM ingredientes") ? tabelaIngredientes
+                            : sql.contains("FROM passos") ? tabelaPassos
+                            : tabelaReceitas;
+                    return statement(tabela);
+                case "createArrayOf":
+                    return proxy(Array.class, (a, m, x) -> padrao(m));
+                case "getAutoCommit":
+                    return Boolean.TRUE;
+                case "getTransactionIsolation":
+                    return Connection.TRANSACTION_READ_COMMITTED;
+                default:
+                    return padrao(metodo);
+            }
+        });
+        return proxy(DataSource.class, (p, metodo, args) -> "getConnection".equals(metodo.getName()) ? conexao : padrao(metodo));
+    }
+
+    private static PreparedStatement statement(Tabela tabela) {
+        return proxy(PreparedStatement.class, (p, metodo, args) ->
+                "executeQuery".equals(metodo.getName()) ? resultSet(tabela) : padrao(metodo));
+    }
+
+    private static ResultSet resultSet(Tabela tabela) {
+        int[] posicao = {-1};
+        return proxy(ResultSet.class, (p, metodo, args) -> {
+            switch (metodo.getName()) {
+                case "next":
+                    return ++posicao[0] < tabela.linhas.size();
+                case "getInt":
+                    return ((Number) tabela.valor(posicao[0], args[0])).intValue();
+                case "getDouble":
+                    return ((Number) tabela.valor(posicao[0], args[0])).doubleValue();
+                case "getString":
+                    return tabela.valor(posicao[0], args[0]);
+                default:
+                    return padrao(metodo);
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> tipo, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(JdbcFalso.class.getClassLoader(), new Class<?>[]{tipo}, handler);
+    }
+
+    private static final class Tabela {
+        private final Map<String, Integer> colunas = new HashMap<>();
+        private final List<Object[]> linhas = new ArrayList<>();
+
+        Tabela(String[] nomes) {
+            for (int i = 0; i < nomes.length; i++) {
+                colunas.put(nomes[i], i);
+            }
+        }
+
+        Object valor(int linha, Object coluna) {
+            int indice = coluna instanceof Integer ? (Integer) coluna - 1 : colunas.get(coluna);
+            return linhas.get(linha)[indice];
+        }
+    }
+
+    /**
+     * Resposta dos mtodos no tratados (close, setInt, setFetchSize...): nada, ou zero/false
+     * quando o retorno  primitivo.
+     */
+    private static Object padrao(Method metodo) {
+        Class<?> tipo = metodo.getReturnType();
+        if (tipo == boolean.class) return Boolean.FALSE;
+        if (tipo == int.class) return 0;
+        if (tipo == long.class) return 0L;
+        return null;
+    }
+}
@@ -0,0 +1,178 @@
+package org.avsytem.benchmark;
+
+import org.avsytem.dao.ReceitaDAO;
+import org.avsytem.model.Ingrediente;
+import org.avsytem.model.Passo;
+import org.avsytem.model.Receita;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.postgresql.ds.PGSimpleDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compara a listagem antiga (um nico LEFT JOIN com produto cartesiano ingredientes x passos)
+ * com a listagem atual do ReceitaDAO (uma query para as receitas e uma query em lote por tabela filha).
+ *
+ * Precisa de um PostgreSQL com o schema de Files/ConfigureDatabase.sql. A conexo  configurada por
+ * -Dbench.jdbc.url, -Dbench.jdbc.user e -Dbench.jdbc.password. Um usurio sinttico  criado no setup
+ * e removido (junto com suas receitas) no teardown.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListarReceitasBenchmark {
+
+    private static final String SELECT_ALL_RECEITAS_JOINED = "SELECT " +
+            "r.id AS receita_id, r.nome AS receita_nome, r.descricao AS receita_descricao, " +
+            "r.tempo_preparo_min, r.porcoes, r.dificuldade, " +
+            "i.nome AS ingrediente_nome, i.quantidade, i.unidade, " +
+            "p.ordem AS passo_ordem, p.descricao AS passo_descricao " +
+            "FROM receitas r " +
+            "LEFT JOIN ingredientes i ON r.id = i.receita_id " +
+            "LEFT JOIN passos p ON r.id = p.receita_id " +
+            "WHERE r.usuario_id = ? " +
+            "ORDER BY r.nome ASC, p.ordem ASC";
+
+    @Param({"100", "1000"})
+    public int receitas;
+
+    @Param({"20"})
+    public int ingredientesPorReceita;
+
+    @Param({"15"})
+    public int passosPorReceita;
+
+    private DataSource dataSource;
+    private ReceitaDAO dao;
+    private int usuarioId;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        PGSimpleDataSource pg = new PGSimpleDataSource();
+        pg.setURL(System.getProperty("bench.jdbc.url", "jdbc:postgresql://localhost:5432/postgres"));
+        pg.setUser(System.getProperty("bench.jdbc.user", "postgres"));
+        pg.setPassword(System.getProperty("bench.jdbc.password", ""));
+        dataSource = pg;
+        dao = new ReceitaDAO(dataSource);
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                     "INSERT INTO usuarios (username, password_hash) VALUES (?, 'bench') RETURNING id")) {
+            ps.setString(1, "bench_" + System.nanoTime());
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                usuarioId = rs.getInt(1);
+            }
+        }
+
+        for (int r = 0; r < receitas; r++) {
+            Receita receita = new Receita();
+            receita.setUsuario_id(usuarioId);
+            receita.setNome("Receita sinttica " + r);
+            receita.setDescricao("Descrio da receita sinttica nmero " + r);
+            receita.setTempoDePreparo(10 + r % 120);
+            receita.setPorcoes(1 + r % 8);
+            receita.setDificuldade(r % 3 == 0 ? "Fcil" : r % 3 == 1 ? "Mdio" : "Difcil");
+            for (int i = 0; i < ingredientesPorReceita; i++) {
+                receita.getIngredientes().add(new Ingrediente("Ingrediente " + i, 1 + i % 5, "gramas"));
+            }
+            for (int p = 1; p <= passosPorReceita; p++) {
+                receita.getPassos().add(new Passo(p, p + ". Passo sinttico de preparo da receita " + r));
+            }
+            dao.adicionar(receita);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            try (PreparedStatement ps = conn.prepareStatement("DELETE FROM receitas WHERE usuario_id = ?")) {
+                ps.setInt(1, usuarioId);
+                ps.executeUpdate();
+            }
+            try (PreparedStatement ps = conn.prepareStatement("DELETE FROM usuarios WHERE id = ?")) {
+                ps.setInt(1, usuarioId);
+                ps.executeUpdate();
+            }
+        }
+    }
+
+    @Benchmark
+    public List<Receita> multiConsulta() throws SQLException {
+        return dao.listar(usuarioId);
+    }
+
+    @Benchmark
+    public List<Receita> joinCartesiano() throws SQLException {
+        Map<Integer, Receita> mapaDeReceitas = new LinkedHashMap<>();
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SELECT_ALL_RECEITAS_JOINED)) {
+            stmt.setInt(1, usuarioId);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    int receitaId = rs.getInt("receita_id");
+                    Receita receitaAtual = mapaDeReceitas.get(receitaId);
+
+                    if (receitaAtual == null) {
+                        receitaAtual = new Receita();
+                        receitaAtual.setId(receitaId);
+                        receitaAtual.setNome(rs.getString("receita_nome"));
+                        receitaAtual.setDescricao(rs.getString("receita_descricao"));
+                        receitaAtual.setTempoDePreparo(rs.getInt("tempo_preparo_min"));
+                        receitaAtual.setPorcoes(rs.getInt("porcoes"));
+                        receitaAtual.setDificuldade(rs.getString("dificuldade"));
+                        mapaDeReceitas.put(receitaId, receitaAtual);
+                    }
+
+                    if (rs.getString("ingrediente_nome") != null) {
+                        Ingrediente ingrediente = new Ingrediente(
+                                rs.getString("ingrediente_nome"),
+                                rs.getDouble("quantidade"),
+                                rs.getString("unidade")
+                        );
+                        if (!receitaAtual.getIngredientes().contains(ingrediente)) {
+                            receitaAtual.getIngredientes().add(ingrediente);
+                        }
+                    }
+
+                    if (rs.getString("passo_descricao") != null) {
+                        Passo passo = new Passo(
+                                rs.getInt("passo_ordem"),
+                                rs.getString("passo_descricao")
+                        );
+                        if (!receitaAtual.getPassos().contains(passo)) {
+                            receitaAtual.getPassos().add(passo);
+                        }
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(mapaDeReceitas.values());
+    }
+}
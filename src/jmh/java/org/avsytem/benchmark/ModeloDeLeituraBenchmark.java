@@ -0,0 +1,205 @@
+package org.avsytem.benchmark;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.avsytem.dao.ConsultaPaginada;
+import org.avsytem.dao.ConsumidorDeDocumentos;
+import org.avsytem.dao.ConsumidorDeReceitas;
+import org.avsytem.dao.ModeloDeLeitura;
+import org.avsytem.dao.OrdenacaoReceita;
+import org.avsytem.dao.PaginaDeDocumentos;
+import org.avsytem.dao.PaginaReceitas;
+import org.avsytem.dao.ReceitaDAO;
+import org.avsytem.json.ReceitaJson;
+import org.avsytem.model.Ingrediente;
+import org.avsytem.model.Passo;
+import org.avsytem.model.Receita;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.postgresql.ds.PGSimpleDataSource;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Modelo de leitura por documento contra o caminho normalizado, do banco at os bytes da resposta:
+ * - pagina: listarPagina + Gson (como o ReceitaServlet) contra listarPaginaDeDocumentos + cpia dos documentos;
+ * - completa: percorrer + ReceitaJson contra percorrerDocumentos + cpia dos documentos.
+ *
+ * Precisa de um PostgreSQL com o schema de Files/ConfigureDatabase.sql (inclusive receitas_doc). A conexo 
+ * configurada por -Dbench.jdbc.url, -Dbench.jdbc.user e -Dbench.jdbc.password. Um usurio sinttico  criado no
+ * setup, com as receitas gravadas pelo DAO com o modelo ligado, e removido (junto com elas) no teardown.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModeloDeLeituraBenchmark {
+
+    private static final byte[] FIM_DA_LISTAGEM = "]}".getBytes(StandardCharsets.UTF_8);
+
+    @Param({"100", "1000"})
+    public int receitas;
+
+    @Param({"20"})
+    public int ingredientesPorReceita;
+
+    @Param({"15"})
+    public int passosPorReceita;
+
+    @Param({"50"})
+    public int tamanhoDaPagina;
+
+    private DataSource dataSource;
+    private ReceitaDAO dao;
+    private int usuarioId;
+    private Gson gson;
+    private JsonFactory jsonFactory;
+    private ConsultaPaginada consulta;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        PGSimpleDataSource pg = new PGSimpleDataSource();
+        pg.setURL(System.getProperty("bench.jdbc.url", "jdbc:postgresql://localhost:5432/postgres"));
+        pg.setUser(System.getProperty("bench.jdbc.user", "postgres"));
+        pg.setPassword(System.getProperty("bench.jdbc.password", ""));
+        dataSource = pg;
+        dao = new ReceitaDAO(dataSource, new ModeloDeLeitura(dataSource));
+        gson = new GsonBuilder().setPrettyPrinting().create();
+        jsonFactory = new JsonFactory();
+        consulta = new ConsultaPaginada(OrdenacaoReceita.NOME, false, 0, tamanhoDaPagina, null);
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                     "INSERT INTO usuarios (username, password_hash) VALUES (?, 'bench') RETURNING id")) {
+            ps.setString(1, "bench_" + System.nanoTime());
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                usuarioId = rs.getInt(1);
+            }
+        }
+
+        for (int r = 0; r < receitas; r++) {
+            Receita receita = new Receita();
+            receita.setUsuario_id(usuarioId);
+            receita.setNome("Receita sinttica " + r);
+            receita.setDescricao("Descrio da receita sinttica nmero " + r);
+            receita.setTempoDePreparo(10 + r % 120);
+            receita.setPorcoes(1 + r % 8);
+            receita.setDificuldade(r % 3 == 0 ? "Fcil" : r % 3 == 1 ? "Mdio" : "Difcil");
+            for (int i = 0; i < ingredientesPorReceita; i++) {
+                receita.getIngredientes().add(new Ingrediente("Ingrediente " + i, 1 + i % 5, "gramas"));
+            }
+            for (int p = 1; p <= passosPorReceita; p++) {
+                receita.getPassos().add(new Passo(p, p + ". Passo sinttico de preparo da receita " + r));
+            }
+            dao.adicionar(receita);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            try (PreparedStatement ps = conn.prepareStatement("DELETE FROM receitas WHERE usuario_id = ?")) {
+                ps.setInt(1, usuarioId);
+                ps.executeUpdate();
+            }
+            try (PreparedStatement ps = conn.prepareStatement("DELETE FROM usuarios WHERE id = ?")) {
+                ps.setInt(1, usuarioId);
+                ps.executeUpdate();
+            }
+        }
+    }
+
+    @Benchmark
+    public byte[] normalizadoPagina() throws SQLException {
+        PaginaReceitas pagina = dao.listarPagina(usuarioId, consulta);
+        String json = String.format("{\"total\": %d, \"proximoCursor\": %s, \"receitas\": %s}",
+                pagina.getTotal(), gson.toJson(pagina.getProximoCursor()), gson.toJson(pagina.getReceitas()));
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] documentoPagina() throws SQLException, IOException {
+        PaginaDeDocumentos pagina = dao.listarPaginaDeDocumentos(usuarioId, consulta);
+        ByteArrayOutputStream saida = new ByteArrayOutputStream(64 + (int) pagina.getBytes());
+        saida.write(String.format("{\"total\": %d, \"proximoCursor\": %s, \"receitas\": [",
+                pagina.getTotal(), gson.toJson(pagina.getProximoCursor())).getBytes(StandardCharsets.UTF_8));
+        boolean primeiro = true;
+        for (byte[] documento : pagina.getDocumentos()) {
+            if (!primeiro) saida.write(',');
+            primeiro = false;
+            saida.write(documento);
+        }
+        saida.write(FIM_DA_LISTAGEM);
+        return saida.toByteArray();
+    }
+
+    @Benchmark
+    public int normalizadoCompleta() throws SQLException, IOException {
+        ByteArrayOutputStream saida = new ByteArrayOutputStream();
+        JsonGenerator json = jsonFactory.createGenerator(saida, JsonEncoding.UTF8);
+        dao.percorrer(usuarioId, new ConsumidorDeReceitas() {
+            @Override
+            public void total(int total) throws IOException {
+                json.writeStartObject();
+                json.writeNumberField("total", total);
+                json.writeArrayFieldStart("receitas");
+            }
+
+            @Override
+            public void receita(Receita receita) throws IOException {
+                ReceitaJson.escrever(json, receita);
+            }
+        });
+        json.writeEndArray();
+        json.writeEndObject();
+        json.close();
+        return saida.size();
+    }
+
+    @Benchmark
+    public int documentoCompleta() throws SQLException, IOException {
+        ByteArrayOutputStream saida = new ByteArrayOutputStream();
+        dao.percorrerDocumentos(usuarioId, new ConsumidorDeDocumentos() {
+            private boolean primeiro = true;
+
+            @Override
+            public void total(int total) throws IOException {
+                saida.write(("{\"total\":" + total + ",\"receitas\":[").getBytes(StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public void documento(byte[] json) throws IOException {
+                if (!primeiro) saida.write(',');
+                primeiro = false;
+                saida.write(json);
+            }
+        });
+        saida.write(FIM_DA_LISTAGEM);
+        return saida.size();
+    }
+}
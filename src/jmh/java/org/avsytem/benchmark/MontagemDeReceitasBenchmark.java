@@ -0,0 +1,73 @@
+package org.avsytem.benchmark;
+
+import org.avsytem.dao.ConsumidorDeReceitas;
+import org.avsytem.dao.ReceitaDAO;
+import org.avsytem.model.Receita;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Montagem das receitas a partir das linhas do banco, no ReceitaDAO real (listar, que materializa a
+ * lista, e percorrer, que faz o merge dos trs cursores), sobre o JdbcFalso em vez de um PostgreSQL.
+ * Mede s o custo em CPU e a alocao do DAO: rode com -prof gc (padro do perfil benchmark).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MontagemDeReceitasBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int receitas;
+
+    @Param({"10"})
+    public int ingredientesPorReceita;
+
+    @Param({"8"})
+    public int passosPorReceita;
+
+    private ReceitaDAO dao;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        dao = new ReceitaDAO(JdbcFalso.dataSource(ReceitasSinteticas.gerar(receitas, ingredientesPorReceita, passosPorReceita)));
+    }
+
+    @Benchmark
+    public List<Receita> listar() throws SQLException {
+        return dao.listar(1);
+    }
+
+    @Benchmark
+    public void percorrer(Blackhole bh) throws SQLException, IOException {
+        dao.percorrer(1, new ConsumidorDeReceitas() {
+            @Override
+            public void total(int total) {
+                bh.consume(total);
+            }
+
+            @Override
+            public void receita(Receita receita) {
+                bh.consume(receita);
+            }
+        });
+    }
+}
@@ -0,0 +1,62 @@
+package org.avsytem.benchmark;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.avsytem.model.Receita;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Leitura do jsonData do doPost (salvar) para uma Receita: o Gson do ReceitaServlet contra o
+ * ObjectMapper configurado como no LeitorDeReceitas. O payload  o que o formulrio envia.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseDoPostBenchmark {
+
+    @Param({"10", "40"})
+    public int itensPorReceita;
+
+    private String jsonData;
+    private Gson gson;
+    private ObjectMapper mapper;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Receita receita = ReceitasSinteticas.gerar(1, itensPorReceita, itensPorReceita).get(0);
+        receita.setId(0);
+        receita.setUsuario_id(0);
+        jsonData = new Gson().toJson(receita);
+        gson = new GsonBuilder().setPrettyPrinting().create();
+        mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+
+    @Benchmark
+    public Receita gson() {
+        return gson.fromJson(jsonData, Receita.class);
+    }
+
+    @Benchmark
+    public Receita jackson() throws IOException {
+        return mapper.readValue(jsonData, Receita.class);
+    }
+}
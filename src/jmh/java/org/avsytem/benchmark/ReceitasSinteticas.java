@@ -0,0 +1,43 @@
+package org.avsytem.benchmark;
+
+import org.avsytem.model.Ingrediente;
+import org.avsytem.model.Passo;
+import org.avsytem.model.Receita;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Receitas sintticas com textos de tamanho realista, para os benchmarks que no usam banco.
+ * J vm em ordem de nome (e de id), a mesma ordem em que o ReceitaDAO l as linhas.
+ */
+final class ReceitasSinteticas {
+
+    private static final String[] UNIDADES = {"gramas", "xcaras", "colheres de sopa", "unidades", "ml"};
+    private static final String[] DIFICULDADES = {"Fcil", "Mdio", "Difcil"};
+
+    private ReceitasSinteticas() {
+    }
+
+    static List<Receita> gerar(int receitas, int ingredientesPorReceita, int passosPorReceita) {
+        List<Receita> lista = new ArrayList<>(receitas);
+        for (int r = 0; r < receitas; r++) {
+            Receita receita = new Receita();
+            receita.setId(r + 1);
+            receita.setUsuario_id(1);
+            receita.setNome(String.format("Receita sinttica %06d", r));
+            receita.setDescricao("Descrio da receita sinttica nmero " + r + ", com um texto de tamanho parecido com o das receitas reais.");
+            receita.setTempoDePreparo(10 + r % 120);
+            receita.setPorcoes(1 + r % 8);
+            receita.setDificuldade(DIFICULDADES[r % DIFICULDADES.length]);
+            for (int i = 0; i < ingredientesPorReceita; i++) {
+                receita.getIngredientes().add(new Ingrediente("Ingrediente " + (r * 7 + i) % 300, 0.5 + i % 5, UNIDADES[i % UNIDADES.length]));
+            }
+            for (int p = 1; p <= passosPorReceita; p++) {
+                receita.getPassos().add(new Passo(p, p + ". Passo sinttico de preparo da receita " + r + ": misture bem e reserve."));
+            }
+            lista.add(receita);
+        }
+        return lista;
+    }
+}
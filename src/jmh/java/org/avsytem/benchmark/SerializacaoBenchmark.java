@@ -0,0 +1,92 @@
+package org.avsytem.benchmark;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.avsytem.json.ReceitaJson;
+import org.avsytem.model.Receita;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializao da listagem: o Gson com pretty printing que o ReceitaServlet usa, o Gson compacto,
+ * o databind do Jackson e o JsonGenerator do Jackson campo a campo (ReceitaJson, usado no streaming).
+ * Todos escrevem para uma String, como na resposta de listar.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializacaoBenchmark {
+
+    @Param({"1", "100", "1000"})
+    public int receitas;
+
+    @Param({"10"})
+    public int ingredientesPorReceita;
+
+    @Param({"8"})
+    public int passosPorReceita;
+
+    private List<Receita> lista;
+    private Gson gsonPretty;
+    private Gson gsonCompacto;
+    private ObjectMapper mapper;
+    private JsonFactory fabrica;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        lista = ReceitasSinteticas.gerar(receitas, ingredientesPorReceita, passosPorReceita);
+        gsonPretty = new GsonBuilder().setPrettyPrinting().create();
+        gsonCompacto = new Gson();
+        mapper = new ObjectMapper();
+        fabrica = new JsonFactory();
+    }
+
+    @Benchmark
+    public String gsonPretty() {
+        return gsonPretty.toJson(lista);
+    }
+
+    @Benchmark
+    public String gsonCompacto() {
+        return gsonCompacto.toJson(lista);
+    }
+
+    @Benchmark
+    public String jacksonDatabind() throws IOException {
+        return mapper.writeValueAsString(lista);
+    }
+
+    @Benchmark
+    public String jacksonStreaming() throws IOException {
+        StringWriter saida = new StringWriter();
+        try (JsonGenerator json = fabrica.createGenerator(saida)) {
+            json.writeStartArray();
+            for (Receita receita : lista) {
+                ReceitaJson.escrever(json, receita);
+            }
+            json.writeEndArray();
+        }
+        return saida.toString();
+    }
+}
@@ -0,0 +1,178 @@
+package org.avsytem.async;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Executor onde as servlets processam as requisies despachadas com AsyncContext, liberando a thread
+ * do Tomcat enquanto a requisio espera conexo e resposta do banco.
+ *
+ * Duas modalidades:
+ * - virtual: uma thread virtual por requisio (Java 21+). No mximo "threads" executam ao mesmo tempo;
+ *   as demais ficam estacionadas esperando vez, o que custa quase nada.
+ * - pool: um pool fixo de "threads" threads de plataforma com uma fila limitada.
+ * Em ambas, no mximo threads + fila requisies so aceitas de uma vez; acima disso executar()
+ * rejeita na hora, para que o cliente receba 503 em vez de ficar pendurado.
+ * Sem suporte a threads virtuais no runtime, "virtual" cai para "pool".
+ */
+public final class ExecutorDeRequisicoes {
+
+    private static final Logger LOGGER = Logger.getLogger(ExecutorDeRequisicoes.class.getName());
+
+    private final ExecutorService executor;
+    // S na modalidade virtual (no pool, a prpria fila limitada faz esse papel)
+    private final Semaphore vagas;
+    private final Semaphore emExecucao;
+    private final ScheduledExecutorService relogio;
+    private final long esperaMaximaMillis;
+    private final String descricao;
+    private final int threads;
+    private final int fila;
+
+    private ExecutorDeRequisicoes(ExecutorService executor, Semaphore vagas, Semaphore emExecucao, int threads, int fila,
+                                  long esperaMaximaMillis, String descricao) {
+        this.executor = executor;
+        this.threads = threads;
+        this.fila = fila;
+        this.vagas = vagas;
+        this.emExecucao = emExecucao;
+        this.esperaMaximaMillis = esperaMaximaMillis;
+        this.descricao = descricao;
+        this.relogio = Executors.newSingleThreadScheduledExecutor(fabrica("receitas-async-prazo"));
+    }
+
+    /**
+     * @param modalidade "virtual" ou "pool".
+     * @param threads Quantas requisies executam ao mesmo tempo.
+     * @param fila Quantas requisies podem esperar vez alm dessas.
+     * @param esperaMaximaMillis Quanto uma requisio pode esperar vez antes de receber 503.
+     */
+    public static ExecutorDeRequisicoes criar(String modalidade, int threads, int fila, long esperaMaximaMillis) {
+        if (threads < 1 || fila < 0 || esperaMaximaMillis < 1) {
+            throw new IllegalArgumentException("Configurao invlida do executor: threads=" + threads + ", fila=" + fila
+                    + ", esperaMaximaMillis=" + esperaMaximaMillis);
+        }
+        if ("virtual".equals(modalidade)) {
+            ExecutorService virtual = criarExecutorVirtual();
+            if (virtual != null) {
+                return new ExecutorDeRequisicoes(virtual, new Semaphore(threads + fila), new Semaphore(threads), threads, fila,
+                        esperaMaximaMillis, "threads virtuais (" + threads + " simultneas, fila " + fila + ")");
+            }
+            LOGGER.info("Threads virtuais indisponveis neste runtime (Java 21+). Usando pool de threads.");
+        } else if (!"pool".equals(modalidade)) {
+            throw new IllegalArgumentException("Modalidade de executor desconhecida: " + modalidade);
+        }
+
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(fila, 1)), fabrica("receitas-async"), new ThreadPoolExecutor.AbortPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        return new ExecutorDeRequisicoes(pool, null, null, threads, fila, esperaMaximaMillis,
+                "pool de " + threads + " threads (fila " + fila + ")");
+    }
+
+    /**
+     * @throws RejectedExecutionException Se j houver threads + fila requisies aceitas ou o executor estiver encerrado.
+     */
+    void executar(Runnable tarefa) {
+        if (vagas == null) {
+            executor.execute(tarefa);
+            return;
+        }
+        if (!vagas.tryAcquire()) {
+            throw new RejectedExecutionException("Fila de requisies cheia.");
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    emExecucao.acquireUninterruptibly();
+                    try {
+                        tarefa.run();
+                    } finally {
+                        emExecucao.release();
+                    }
+                } finally {
+                    vagas.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            vagas.release();
+            throw e;
+        }
+    }
+
+    ScheduledFuture<?> agendarPrazo(Runnable expiracao) {
+        return relogio.schedule(expiracao, esperaMaximaMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public String getDescricao() {
+        return descricao;
+    }
+
+    /**
+     * @return Quantas requisies esto executando neste momento.
+     */
+    public int getEmExecucao() {
+        if (vagas == null) return ((ThreadPoolExecutor) executor).getActiveCount();
+        return threads - emExecucao.availablePermits();
+    }
+
+    /**
+     * @return Quantas requisies aceitas esperam vez neste momento.
+     */
+    public int getAguardando() {
+        if (vagas == null) return ((ThreadPoolExecutor) executor).getQueue().size();
+        return Math.max(0, threads + fila - vagas.availablePermits() - getEmExecucao());
+    }
+
+    /**
+     * Para de aceitar requisies e espera as que esto em andamento terminarem, at o tempo informado.
+     */
+    public void encerrar(long esperaMillis) {
+        executor.shutdown();
+        relogio.shutdown();
+        try {
+            if (!executor.awaitTermination(esperaMillis, TimeUnit.MILLISECONDS)) {
+                LOGGER.warning("Requisies ainda em andamento ao encerrar o executor; interrompendo.");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor() por reflexo, j que o projeto compila para Java 8.
+     * @return O executor, ou null se o runtime no tiver threads virtuais.
+     */
+    private static ExecutorService criarExecutorVirtual() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (ReflectiveOperationException e) {
+            LOGGER.log(Level.WARNING, "Falha ao criar o executor de threads virtuais.", e);
+            return null;
+        }
+    }
+
+    private static ThreadFactory fabrica(String prefixo) {
+        AtomicInteger contador = new AtomicInteger();
+        return tarefa -> {
+            Thread thread = new Thread(tarefa, prefixo + "-" + contador.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,107 @@
+package org.avsytem.async;
+
+import org.avsytem.metricas.Contador;
+import org.avsytem.metricas.Metricas;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Despacha o processamento de uma requisio para o ExecutorDeRequisicoes com AsyncContext.
+ *
+ * A requisio recebe 503 (com Retry-After) se o executor recusar por estar cheio ou se ela esperar
+ * vez alm do prazo configurado. Depois que comea a executar, ela vai at o fim: o tempo de execuo
+ * j  limitado pela espera de conexo do pool (maxWaitMillis) e, ao contrrio de um timeout do
+ * AsyncContext, no corre o risco de a resposta ser reciclada enquanto a tarefa ainda escreve nela.
+ */
+public final class ProcessamentoAssincrono {
+
+    private static final Logger LOGGER = Logger.getLogger(ProcessamentoAssincrono.class.getName());
+
+    private static final int NA_FILA = 0;
+    private static final int EM_EXECUCAO = 1;
+    private static final int RECUSADA = 2;
+
+    private static final Contador RECUSADAS_FILA_CHEIA = Metricas.contador("receitas_async_recusadas_total",
+            "Requisies respondidas com 503 pelo executor assncrono.", "motivo", "fila_cheia");
+    private static final Contador RECUSADAS_PRAZO = Metricas.contador("receitas_async_recusadas_total",
+            "Requisies respondidas com 503 pelo executor assncrono.", "motivo", "prazo");
+
+    private ProcessamentoAssincrono() {
+    }
+
+    public interface Tarefa {
+        void executar() throws ServletException, IOException;
+    }
+
+    /**
+     * Executa a tarefa no executor ou, se ele for null ou a requisio no aceitar modo assncrono
+     * (algum filtro da cadeia sem async-supported), direto na thread atual.
+     */
+    public static void despachar(HttpServletRequest request, HttpServletResponse response, ExecutorDeRequisicoes executor,
+                                 Tarefa tarefa) throws ServletException, IOException {
+        if (executor == null || !request.isAsyncSupported()) {
+            tarefa.executar();
+            return;
+        }
+
+        AsyncContext async = request.startAsync(request, response);
+        async.setTimeout(0);
+        AtomicInteger estado = new AtomicInteger(NA_FILA);
+
+        ScheduledFuture<?> prazo;
+        try {
+            prazo = executor.agendarPrazo(() -> recusar(estado, async, response, RECUSADAS_PRAZO));
+        } catch (RejectedExecutionException e) {
+            recusar(estado, async, response, RECUSADAS_FILA_CHEIA);
+            return;
+        }
+        try {
+            executor.executar(() -> {
+                if (!estado.compareAndSet(NA_FILA, EM_EXECUCAO)) return;
+                prazo.cancel(false);
+                try {
+                    tarefa.executar();
+                } catch (ServletException | IOException | RuntimeException e) {
+                    LOGGER.log(Level.SEVERE, "Erro ao processar " + request.getRequestURI(), e);
+                    if (!response.isCommitted()) {
+                        response.reset();
+                        response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                    }
+                } finally {
+                    async.complete();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            prazo.cancel(false);
+            recusar(estado, async, response, RECUSADAS_FILA_CHEIA);
+        }
+    }
+
+    /**
+     * Responde 503 e encerra a requisio, se ela ainda no comeou a executar.
+     */
+    private static void recusar(AtomicInteger estado, AsyncContext async, HttpServletResponse response, Contador motivo) {
+        if (!estado.compareAndSet(NA_FILA, RECUSADA)) return;
+        motivo.incrementar();
+        try {
+            response.reset();
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setHeader("Retry-After", "1");
+            response.setContentType("application/json; charset=ISO-8859-1");
+            response.getWriter().write("{\"success\": false, \"message\": \"Servidor ocupado. Tente novamente em instantes.\"}");
+        } catch (IOException | IllegalStateException e) {
+            LOGGER.log(Level.FINE, "No foi possvel responder 503.", e);
+        } finally {
+            async.complete();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package org.avsytem.controller;
+
+import org.avsytem.eventos.CentralDeEventos;
+import org.avsytem.security.UsuarioAutenticado;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Feed de alteraes das receitas do usurio logado (GET /receitas/eventos), em Server-Sent Events.
+ * Passa pelo AuthenticationFilter; a conexo em si fica com a CentralDeEventos, em modo assncrono.
+ *
+ * Cada evento "receitas" traz {"tipo": "criada"|"atualizada"|"removida"|"recarregar", "ids": [...]};
+ * o cliente busca as receitas criadas e atualizadas com receitas?action=obter&ids=...
+ *
+ * - 404 se o feed no estiver habilitado (context-param eventos);
+ * - 401 sem usurio logado;
+ * - 503 com Retry-After se o n j atingiu eventosMaximoAssinantes.
+ */
+public class EventosServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+    // Segundos sugeridos ao cliente (Retry-After) quando o n est cheio
+    private static final String TENTAR_DE_NOVO = "30";
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        CentralDeEventos central = (CentralDeEventos) getServletContext().getAttribute("centralDeEventos");
+        if (central == null) {
+            responderErro(response, HttpServletResponse.SC_NOT_FOUND, "Feed de alteraes desabilitado.");
+            return;
+        }
+
+        UsuarioAutenticado usuario = UsuarioAutenticado.da(request);
+        if (usuario == null) {
+            responderErro(response, HttpServletResponse.SC_UNAUTHORIZED, "Sesso invlida ou expirada.");
+            return;
+        }
+
+        if (!central.assinar(request, response, usuario.getId())) {
+            response.setHeader("Retry-After", TENTAR_DE_NOVO);
+            responderErro(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Limite de conexes atingido; tente de novo mais tarde.");
+        }
+    }
+
+    private static void responderErro(HttpServletResponse response, int status, String mensagem) throws IOException {
+        response.setStatus(status);
+        response.setContentType("application/json; charset=ISO-8859-1");
+        response.getWriter().write("{\"success\": false, \"message\": \"" + mensagem + "\"}");
+    }
+}
@@ -1,10 +1,9 @@
 package org.avsytem.controller;
 
 import java.io.IOException;
-import java.sql.Connection;
-import javax.naming.Context;
-import javax.naming.InitialContext;
-import javax.naming.NamingException;
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.concurrent.RejectedExecutionException;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -13,14 +12,26 @@ import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import javax.sql.DataSource;
 
-import com.google.gson.Gson;
+import org.avsytem.async.ExecutorDeRequisicoes;
+import org.avsytem.async.ProcessamentoAssincrono;
+import org.avsytem.dao.Credenciais;
 import org.avsytem.dao.UserDAO;
-import org.mindrot.jbcrypt.BCrypt;
+import org.avsytem.metricas.Metricas;
+import org.avsytem.security.LimitadorDeTentativas;
+import org.avsytem.security.TokenDeAcesso;
+import org.avsytem.security.VerificadorDeSenhas;
 
 public class LoginServlet extends HttpServlet
 {
     private static final long serialVersionUID = 1L;
     private UserDAO userDAO;
+    private VerificadorDeSenhas verificador;
+    private LimitadorDeTentativas limitePorUsuario;
+    private LimitadorDeTentativas limitePorIp;
+    // Criado pelo AppLifecycleListener; null processa na prpria thread do Tomcat
+    private ExecutorDeRequisicoes executor;
+    // Com autenticacao=token, o login emite um token assinado em vez de criar a sesso
+    private TokenDeAcesso tokens;
 
     @Override
     public void init() throws ServletException
@@ -35,43 +46,112 @@ public class LoginServlet extends HttpServlet
         }
         // 3. Cria o DAO com a instncia compartilhada do DataSource
         this.userDAO = new UserDAO(dataSource);
+        // 4. Pool do BCrypt (do listener, compartilhado com o cadastro) e limites de tentativas (init-params no web.xml)
+        this.verificador = (VerificadorDeSenhas) servletContext.getAttribute("verificadorDeSenhas");
+        if (verificador == null) {
+            throw new ServletException("VerificadorDeSenhas no encontrado no ServletContext. O AppLifecycleListener falhou ao iniciar?");
+        }
+        this.limitePorUsuario = new LimitadorDeTentativas(parametro("tentativasPorUsuarioPorMinuto", 5));
+        this.limitePorIp = new LimitadorDeTentativas(parametro("tentativasPorIpPorMinuto", 30));
+        this.executor = (ExecutorDeRequisicoes) servletContext.getAttribute("executorDeRequisicoes");
+        this.tokens = (TokenDeAcesso) servletContext.getAttribute("tokenDeAcesso");
+        registrarMetricas();
+    }
+
+    private void registrarMetricas() {
+        String ajuda = "Verificaes de senha no pool BCrypt, por resultado.";
+        Metricas.contador("receitas_login_verificacoes_total", ajuda, verificador::getAceitas, "resultado", "aceita");
+        Metricas.contador("receitas_login_verificacoes_total", ajuda, verificador::getRecusadas, "resultado", "recusada");
+        Metricas.contador("receitas_login_verificacoes_total", ajuda, verificador::getRejeitadasPorFila, "resultado", "fila_cheia");
+        Metricas.contador("receitas_login_rehashes_total", "Hashes regravados por mudana de custo.", verificador::getRehashes);
+        Metricas.contador("receitas_cadastro_hashes_total", "Hashes de senhas novas calculados no pool BCrypt.", verificador::getGerados);
+        Metricas.medidor("receitas_login_bcrypt_fila", "Verificaes esperando vez no pool BCrypt.", verificador::getTamanhoDaFila);
+        Metricas.medidor("receitas_login_bcrypt_em_execucao", "Verificaes sendo calculadas no pool BCrypt.", verificador::getEmExecucao);
+        ajuda = "Tentativas de login recusadas pelo limite por minuto.";
+        Metricas.contador("receitas_login_limitadas_total", ajuda, limitePorUsuario::getBloqueios, "por", "usuario");
+        Metricas.contador("receitas_login_limitadas_total", ajuda, limitePorIp::getBloqueios, "por", "ip");
     }
 
     @Override
     protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+    {
+        ProcessamentoAssincrono.despachar(request, response, executor, () -> autenticar(request, response));
+    }
+
+    /**
+     * Ordem pensada para gastar o mnimo com tentativas abusivas: limites (memria), uma consulta
+     * ao banco (ID e hash juntos) e s ento o BCrypt, no pool dedicado.
+     */
+    private void autenticar(HttpServletRequest request, HttpServletResponse response) throws IOException
     {
         response.setContentType("application/json; charset=ISO-8859-1");
         String username = request.getParameter("usuario");
         String password = request.getParameter("senha");
 
+        long espera = limitePorIp.tentar(request.getRemoteAddr());
+        if (espera == 0 && username != null) {
+            espera = limitePorUsuario.tentar(username.trim().toLowerCase(Locale.ROOT));
+        }
+        if (espera > 0) {
+            response.setStatus(429);
+            response.setHeader("Retry-After", Long.toString(espera));
+            response.getWriter().write("{\"success\": false, \"message\": \"Muitas tentativas de login. Aguarde " + espera + " segundo(s).\"}");
+            return;
+        }
+
         try
         {
-            String storedHash = userDAO.getPasswordHashByUsername(username);
+            Credenciais credenciais = userDAO.buscarCredenciais(username);
 
-            if(storedHash == null) {
+            if(credenciais == null) {
                 response.getWriter().write("{\"success\": false, \"message\": \"Usurio ou senha invlidos.\"}");
+                return;
             }
-            else {
-                if (BCrypt.checkpw(password, storedHash))
-                {
-                    int userId = userDAO.getIdByUsername(username);
-                    HttpSession session = request.getSession();
-                    session.setAttribute("username", username);
-                    session.setAttribute("usuario_id", userId);
 
-                    response.getWriter().write("{\"success\": true}");
+            VerificadorDeSenhas.Resultado resultado = verificador.verificar(password, credenciais.getHashDaSenha());
+            if (resultado.isValida())
+            {
+                if (resultado.getHashNovo() != null) {
+                    // O custo configurado mudou: regrava o hash agora que a senha em texto est disponvel
+                    userDAO.atualizarHash(credenciais.getUsuarioId(), credenciais.getHashDaSenha(), resultado.getHashNovo());
                 }
-                else {
-                    // Falha na autenticao
-                    response.getWriter().write("{\"success\": false, \"message\": \"Usurio ou senha invlidos.\"}");
+                if (tokens != null) {
+                    // Cookie para o navegador; o mesmo token no corpo para clientes que usam "Authorization: Bearer"
+                    String token = tokens.emitir(credenciais.getUsuarioId(), username);
+                    response.addCookie(tokens.criarCookie(token, request));
+                    response.getWriter().write("{\"success\": true, \"token\": \"" + token + "\"}");
+                    return;
                 }
-            }
+                HttpSession session = request.getSession();
+                session.setAttribute("username", username);
+                session.setAttribute("usuario_id", credenciais.getUsuarioId());
 
+                response.getWriter().write("{\"success\": true}");
+            }
+            else {
+                // Falha na autenticao
+                response.getWriter().write("{\"success\": false, \"message\": \"Usurio ou senha invlidos.\"}");
+            }
         }
-        catch (Exception e) {
+        catch (RejectedExecutionException e) {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setHeader("Retry-After", "1");
+            response.getWriter().write("{\"success\": false, \"message\": \"Servidor ocupado. Tente novamente em instantes.\"}");
+        }
+        catch (SQLException | RuntimeException e) {
             e.printStackTrace();
             response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
             response.getWriter().write("{\"success\": false, \"message\": \"Erro interno no servidor.\"}");
         }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.getWriter().write("{\"success\": false, \"message\": \"Servidor ocupado. Tente novamente em instantes.\"}");
+        }
+    }
+
+    private int parametro(String nome, int padrao) {
+        String valor = getInitParameter(nome);
+        return valor == null || valor.trim().isEmpty() ? padrao : Integer.parseInt(valor.trim());
     }
 }
@@ -7,6 +7,8 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 
+import org.avsytem.security.TokenDeAcesso;
+
 public class LogoutServlet extends HttpServlet {
     private static final long serialVersionUID = 1L;
 
@@ -21,6 +23,11 @@ public class LogoutServlet extends HttpServlet {
                 // Invalida a sesso, removendo todos os atributos (como o 'username')
                 session.invalidate();
             }
+            // Com autenticacao=token, apaga o cookie; o token em si vale at expirar (tokenValidadeSegundos)
+            TokenDeAcesso tokens = (TokenDeAcesso) getServletContext().getAttribute("tokenDeAcesso");
+            if (tokens != null) {
+                response.addCookie(tokens.criarCookie(null, request));
+            }
             // Retorna uma resposta de sucesso para o cliente
             response.getWriter().write("{\"success\": true}");
         }
@@ -0,0 +1,45 @@
+package org.avsytem.controller;
+
+import org.avsytem.metricas.Metricas;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Exposio das mtricas (GET /metrics) no formato texto do Prometheus.
+ * Fica fora do AuthenticationFilter (o coletor no tem sesso); o acesso  restrito aos
+ * endereos do init-param "enderecosPermitidos" (por padro, s a prpria mquina).
+ */
+public class MetricasServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+    private Set<String> enderecosPermitidos;
+
+    @Override
+    public void init() throws ServletException {
+        String enderecos = getInitParameter("enderecosPermitidos");
+        if (enderecos == null || enderecos.trim().isEmpty()) {
+            enderecos = "127.0.0.1,0:0:0:0:0:0:0:1";
+        }
+        enderecosPermitidos = new HashSet<>(Arrays.asList(enderecos.trim().split("\\s*,\\s*")));
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        if (!enderecosPermitidos.contains("*") && !enderecosPermitidos.contains(request.getRemoteAddr())) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+        response.setContentType("text/plain; version=0.0.4; charset=UTF-8");
+        response.setHeader("Cache-Control", "no-store");
+        PrintWriter saida = response.getWriter();
+        Metricas.escrever(saida);
+        saida.flush();
+    }
+}
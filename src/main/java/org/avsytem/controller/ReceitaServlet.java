@@ -1,19 +1,57 @@
 package org.avsytem.controller;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
 import javax.naming.NamingException;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.*;
 
+import org.avsytem.async.ExecutorDeRequisicoes;
+import org.avsytem.async.ProcessamentoAssincrono;
+import org.avsytem.csv.ReceitaCsv;
+import org.avsytem.dao.AlteracoesDesde;
+import org.avsytem.dao.ConsultaPaginada;
+import org.avsytem.dao.ConsumidorDeDocumentos;
+import org.avsytem.dao.ConsumidorDeReceitas;
+import org.avsytem.dao.ModeloDeLeitura;
+import org.avsytem.dao.OrdenacaoReceita;
+import org.avsytem.dao.PaginaDeDocumentos;
+import org.avsytem.dao.PaginaReceitas;
 import org.avsytem.dao.ReceitaDAO;
-import org.avsytem.dao.ReceitaDAO;
+import org.avsytem.dao.ReceitaDAOComCache;
+import org.avsytem.dao.ReceitaEncontrada;
+import org.avsytem.dao.ResultadoAtualizacao;
+import org.avsytem.dao.ResultadoBusca;
+import org.avsytem.dao.ResultadoDoLote;
+import org.avsytem.dao.ResultadoImportacao;
+import org.avsytem.dao.SugestaoDeReceita;
+import org.avsytem.eventos.CentralDeEventos;
+import org.avsytem.json.FormatoBinario;
+import org.avsytem.json.LeitorDeReceitas;
+import org.avsytem.json.ReceitaJson;
+import org.avsytem.metricas.Metricas;
 import org.avsytem.model.Receita;
+import org.avsytem.security.UsuarioAutenticado;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
 
 import javax.naming.Context;
 import javax.naming.InitialContext;
@@ -26,12 +64,25 @@ public class ReceitaServlet extends HttpServlet {
     private static final long serialVersionUID = 1L;
     private Gson gson;
     private ReceitaDAO dao;
+    private final JsonFactory jsonFactory = new JsonFactory();
+    // Parmetros da listagem que mudam o contedo da resposta e, portanto, entram no ETag
+    private static final String[] PARAMETROS_DA_LISTAGEM = {"action", "q", "start", "limit", "sort", "dir", "cursor"};
+    private final String epoca = Long.toString(System.currentTimeMillis(), 36);
+    private static final byte[] FIM_DA_LISTAGEM = "]}".getBytes(StandardCharsets.US_ASCII);
+    // Habilitado pelo init-param "listagemEmStreaming" no web.xml
+    private boolean listagemEmStreaming;
+    // Com o context-param "leituraPorDocumento", a listagem em JSON copia os documentos de receitas_doc
+    private boolean leituraPorDocumento;
+    // Criado pelo AppLifecycleListener; null processa na prpria thread do Tomcat
+    private ExecutorDeRequisicoes executor;
 
     @Override
     public void init() throws ServletException {
-        gson = new GsonBuilder().setPrettyPrinting().create();
         // 1. Pega o ServletContext (disponvel em qualquer servlet)
         ServletContext servletContext = getServletContext();
+        // O Gson do listener j foi aquecido; sem ele (testes, outro listener), um prprio
+        Gson compartilhado = (Gson) servletContext.getAttribute("gson");
+        gson = compartilhado != null ? compartilhado : new GsonBuilder().setPrettyPrinting().create();
         // 2. Pega o atributo "dataSource" que o nosso Listener armazenou
         DataSource dataSource = (DataSource) servletContext.getAttribute("dataSource");
         // Validao importante
@@ -39,11 +90,46 @@ public class ReceitaServlet extends HttpServlet {
             throw new ServletException("DataSource no encontrado no ServletContext. O AppLifecycleListener falhou ao iniciar?");
         }
         // 3. Cria o DAO com a instncia compartilhada do DataSource
-        this.dao = new ReceitaDAO(dataSource);
+        // 4. Com oramento de cache configurado, as leituras passam pelo cache por usurio
+        // 5. Com o modelo de leitura por documento (criado pelo listener), as escritas do DAO tambm mantm receitas_doc
+        // 6. Com o feed de alteraes ligado, as escritas do DAO avisam os ouvintes pelo NOTIFY e os avisos dos outros
+        //    ns avanam as verses (ETag) e invalidam o cache deste
+        ModeloDeLeitura documentos = (ModeloDeLeitura) servletContext.getAttribute("modeloDeLeitura");
+        CentralDeEventos centralDeEventos = (CentralDeEventos) servletContext.getAttribute("centralDeEventos");
+        boolean avisarAlteracoes = centralDeEventos != null;
+        long cacheMaxBytes = getInitParameter("cacheMaxBytes") == null ? 0 : Long.parseLong(getInitParameter("cacheMaxBytes"));
+        this.dao = cacheMaxBytes > 0 ? new ReceitaDAOComCache(dataSource, cacheMaxBytes, documentos, avisarAlteracoes)
+                : new ReceitaDAO(dataSource, documentos, avisarAlteracoes);
+        if (centralDeEventos != null) {
+            centralDeEventos.acompanhar(dao);
+        }
+        this.leituraPorDocumento = documentos != null;
+        if (dao instanceof ReceitaDAOComCache) {
+            ReceitaDAOComCache comCache = (ReceitaDAOComCache) dao;
+            Metricas.contador("receitas_cache_acertos_total", "Leituras atendidas pelo cache de receitas.", () -> comCache.getEstatisticas().hitCount());
+            Metricas.contador("receitas_cache_faltas_total", "Leituras que foram ao banco.", () -> comCache.getEstatisticas().missCount());
+            Metricas.contador("receitas_cache_remocoes_total", "Entradas removidas por falta de espao.", () -> comCache.getEstatisticas().evictionCount());
+            Metricas.medidor("receitas_cache_bytes", "Peso estimado das entradas do cache.", comCache::getBytesEmUso);
+        }
+        this.listagemEmStreaming = Boolean.parseBoolean(getInitParameter("listagemEmStreaming"));
+        this.executor = (ExecutorDeRequisicoes) servletContext.getAttribute("executorDeRequisicoes");
     }
 
+    /**
+     * As consultas vo para o executor assncrono, liberando a thread do Tomcat durante a espera pelo banco.
+     * A exportao continua na thread do Tomcat: ela depende de o servidor abortar a conexo em caso
+     * de falha no meio do envio, e  limitada pela banda do cliente, no pelo banco.
+     */
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        if ("exportar".equals(request.getParameter("action"))) {
+            processarGet(request, response);
+            return;
+        }
+        ProcessamentoAssincrono.despachar(request, response, executor, () -> processarGet(request, response));
+    }
+
+    private void processarGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
 
         String action = request.getParameter("action");
         response.setContentType("application/json; charset=ISO-8859-1");
@@ -51,8 +137,7 @@ public class ReceitaServlet extends HttpServlet {
         try
         {
             if ("listar".equals(action)) {
-                HttpSession session = request.getSession(false);
-                Integer usuarioId = (Integer) session.getAttribute("usuario_id");
+                Integer usuarioId = usuarioId(request);
 
                 if (usuarioId == null) {
                     response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
@@ -60,43 +145,658 @@ public class ReceitaServlet extends HttpServlet {
                     return;
                 }
 
+                // Sincronizao incremental (listar&since=N): s o que mudou desde a verso N. Sem ETag: a verso
+                // deste processo no enxerga as escritas feitas em outros ns, e a consulta j  proporcional s alteraes
+                String since = request.getParameter("since");
+                if (since != null) {
+                    response.setHeader("Cache-Control", "no-store");
+                    AlteracoesDesde alteracoes = dao.listarAlteracoes(usuarioId, Long.parseLong(since.trim()));
+                    response.getWriter().write(String.format("{\"versao\": %d, \"completa\": %b, \"receitas\": %s, \"removidas\": %s}",
+                            alteracoes.getVersao(), alteracoes.isCompleta(), gson.toJson(alteracoes.getReceitas()), gson.toJson(alteracoes.getRemovidas())));
+                    return;
+                }
+
+                // Integraes podem pedir CBOR ou Smile pelo Accept; o ExtJS continua recebendo JSON
+                FormatoBinario formato = FormatoBinario.negociar(request.getHeader("Accept"));
+                response.addHeader("Vary", "Accept");
+
+                // GET condicional: se nada mudou desde a ltima resposta, 304 sem consultar o banco
+                String etag = calcularEtag(usuarioId, request, formato);
+                response.setHeader("Cache-Control", "private, no-cache");
+                response.setHeader("ETag", etag);
+                if (etagCorresponde(request.getHeader("If-None-Match"), etag)) {
+                    response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                    return;
+                }
+
+                if (request.getParameter("limit") != null) {
+                    // Paginao no servidor (PagingToolbar envia start/limit e, com remoteSort, sort/dir)
+                    if (leituraPorDocumento && formato == null) {
+                        escreverPaginaDeDocumentos(dao.listarPaginaDeDocumentos(usuarioId, lerConsultaPaginada(request)), response);
+                        return;
+                    }
+                    PaginaReceitas pagina = dao.listarPagina(usuarioId, lerConsultaPaginada(request));
+                    if (formato != null) {
+                        escreverPaginaBinaria(pagina, formato, response);
+                        return;
+                    }
+                    String jsonResponse = String.format("{\"total\": %d, \"proximoCursor\": %s, \"receitas\": %s}",
+                            pagina.getTotal(), gson.toJson(pagina.getProximoCursor()), gson.toJson(pagina.getReceitas()));
+                    response.getWriter().write(jsonResponse);
+                    return;
+                }
+
+                // Os documentos j esto em JSON; os formatos binrios continuam montando as receitas
+                if (leituraPorDocumento && formato == null) {
+                    listarDocumentosEmStreaming(usuarioId, response);
+                    return;
+                }
+
+                // Os formatos binrios so sempre escritos em streaming, direto do cursor
+                if (listagemEmStreaming || formato != null) {
+                    listarEmStreaming(usuarioId, formato, response);
+                    return;
+                }
+
                 List<Receita> receitas = dao.listar(usuarioId);
                 String jsonResponse = String.format("{\"total\": %d, \"receitas\": %s}", receitas.size(), gson.toJson(receitas));
                 response.getWriter().write(jsonResponse);
             }
+            else if ("buscar".equals(action))
+            {
+                Integer usuarioId = usuarioId(request);
+
+                if (usuarioId == null) {
+                    response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+                    response.getWriter().write("{\"success\": false, \"message\": \"Sesso invlida ou expirada.\"}");
+                    return;
+                }
+
+                // Mesmo ETag da listagem: o resultado s muda quando as receitas do usurio mudam
+                String etag = calcularEtag(usuarioId, request, null);
+                response.setHeader("Cache-Control", "private, no-cache");
+                response.setHeader("ETag", etag);
+                if (etagCorresponde(request.getHeader("If-None-Match"), etag)) {
+                    response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                    return;
+                }
+
+                String start = request.getParameter("start");
+                String limit = request.getParameter("limit");
+                ResultadoBusca resultado = dao.buscar(usuarioId, request.getParameter("q"),
+                        start == null ? 0 : Integer.parseInt(start), limit == null ? 30 : Integer.parseInt(limit));
+                escreverBusca(resultado, response);
+            }
+            else if ("sugerir".equals(action))
+            {
+                Integer usuarioId = usuarioId(request);
+
+                if (usuarioId == null) {
+                    response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+                    response.getWriter().write("{\"success\": false, \"message\": \"Sesso invlida ou expirada.\"}");
+                    return;
+                }
+
+                String maxFaltando = request.getParameter("maxFaltando");
+                String limit = request.getParameter("limit");
+                List<SugestaoDeReceita> sugestoes = dao.sugerir(usuarioId, lerIngredientesDisponiveis(request),
+                        maxFaltando == null ? 2 : Integer.parseInt(maxFaltando), limit == null ? 30 : Integer.parseInt(limit));
+                String jsonResponse = String.format("{\"total\": %d, \"sugestoes\": %s}", sugestoes.size(), gson.toJson(sugestoes));
+                response.getWriter().write(jsonResponse);
+            }
+            else if ("obter".equals(action))
+            {
+                Integer usuarioId = usuarioId(request);
+
+                if (usuarioId == null) {
+                    response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+                    response.getWriter().write("{\"success\": false, \"message\": \"Sesso invlida ou expirada.\"}");
+                    return;
+                }
+
+                // Receitas avisadas pelo feed de alteraes (/receitas/eventos), lidas do primrio; as que no
+                // existem mais (ou no so do usurio) simplesmente no voltam
+                List<Integer> ids = new ArrayList<>();
+                String separados = request.getParameter("ids");
+                if (separados != null) {
+                    for (String id : separados.split(",")) {
+                        if (!id.trim().isEmpty()) ids.add(Integer.parseInt(id.trim()));
+                    }
+                }
+                List<Receita> receitas = dao.listarPorIds(usuarioId, ids);
+                String jsonResponse = String.format("{\"total\": %d, \"receitas\": %s}", receitas.size(), gson.toJson(receitas));
+                response.getWriter().write(jsonResponse);
+            }
+            else if ("exportar".equals(action))
+            {
+                Integer usuarioId = usuarioId(request);
+
+                if (usuarioId == null) {
+                    response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+                    response.getWriter().write("{\"success\": false, \"message\": \"Sesso invlida ou expirada.\"}");
+                    return;
+                }
+
+                String formato = request.getParameter("formato");
+                String aposId = request.getParameter("aposId");
+                if (formato != null && !"ndjson".equals(formato) && !"csv".equals(formato)) {
+                    throw new IllegalArgumentException("Formato de exportao invlido: " + formato);
+                }
+                exportar(usuarioId, "csv".equals(formato), aposId == null ? 0 : Integer.parseInt(aposId), response);
+            }
             else
             {
                 response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
                 response.getWriter().write("{\"success\": false, \"message\": \"Ao invlida ou no especificada.\"}");
             }
         }
+        catch (IllegalArgumentException e)
+        {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            response.getWriter().write("{\"success\": false, \"message\": \"Parmetros invlidos.\"}");
+        }
         catch (SQLException e)
         {
+            // A exportao j trocou o corpo para bytes; o erro sai sempre como JSON
+            response.reset();
+            response.setContentType("application/json; charset=ISO-8859-1");
             response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
             response.getWriter().write("{\"success\": false, \"message\": \"Erro no banco de dados.\"}");
             e.printStackTrace();
         }
     }
 
+    /**
+     * ETag forte da listagem: identifica o processo (as verses recomeam a cada inicializao),
+     * o usurio, a verso das suas receitas e os parmetros que mudam o contedo da resposta.
+     * A verso  lida antes da consulta, ento uma escrita concorrente s pode gerar um ETag
+     * mais antigo que o corpo enviado, nunca o contrrio.
+     * @param formato O formato binrio negociado, ou null para JSON: cada codificao tem seu ETag.
+     */
+    private String calcularEtag(int usuarioId, HttpServletRequest request, FormatoBinario formato) {
+        StringBuilder parametros = new StringBuilder();
+        for (String nome : PARAMETROS_DA_LISTAGEM) {
+            parametros.append(nome).append('=').append(request.getParameter(nome)).append('&');
+        }
+        if (formato != null) {
+            parametros.append(formato.getTipo());
+        }
+        return "\"" + epoca + '-' + usuarioId + '-' + dao.versao(usuarioId) + '-'
+                + Integer.toHexString(parametros.toString().hashCode()) + "\"";
+    }
+
+    private static boolean etagCorresponde(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+        for (String candidato : ifNoneMatch.split(",")) {
+            candidato = candidato.trim();
+            if (candidato.startsWith("W/")) candidato = candidato.substring(2);
+            if (candidato.equals(etag) || candidato.equals("*")) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Escreve a listagem completa diretamente no OutputStream da resposta, uma receita por vez,
+     *  medida que chegam do cursor do banco. Mantm o envelope {total, receitas} da listagem
+     * normal, mas em UTF-8 (o JsonGenerator s escreve bytes em codificaes Unicode).
+     * Se o banco falhar depois que a resposta j foi enviada, o JSON fica propositalmente
+     * incompleto para que o cliente no confunda uma lista truncada com uma lista vlida, e a
+     * verso do usurio avana: o ETag que saiu com esse corpo nunca mais recebe 304.
+     * @param formato CBOR ou Smile, com o mesmo envelope; null para JSON.
+     */
+    private void listarEmStreaming(int usuarioId, FormatoBinario formato, HttpServletResponse response) throws IOException {
+        JsonGenerator json;
+        if (formato == null) {
+            response.setContentType("application/json; charset=UTF-8");
+            json = jsonFactory.createGenerator(response.getOutputStream(), JsonEncoding.UTF8);
+        } else {
+            tipoBinario(response, formato);
+            json = formato.criarGerador(response.getOutputStream());
+        }
+        json.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+        try {
+            dao.percorrer(usuarioId, new ConsumidorDeReceitas() {
+                @Override
+                public void total(int total) throws IOException {
+                    json.writeStartObject();
+                    json.writeNumberField("total", total);
+                    json.writeArrayFieldStart("receitas");
+                }
+
+                @Override
+                public void receita(Receita receita) throws IOException {
+                    ReceitaJson.escrever(json, receita);
+                }
+            });
+            json.writeEndArray();
+            json.writeEndObject();
+            json.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            if (response.isCommitted()) {
+                json.close();
+                dao.descartarVersao(usuarioId);
+            } else {
+                response.reset();
+                response.setContentType("application/json; charset=ISO-8859-1");
+                response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                response.getWriter().write("{\"success\": false, \"message\": \"Erro no banco de dados.\"}");
+            }
+        }
+    }
+
+    /**
+     * Listagem completa no modelo de leitura por documento: o mesmo envelope {total, receitas} de listarEmStreaming,
+     * com o JSON de cada receita copiado byte a byte do cursor do banco para a resposta, sem montar nem serializar a receita.
+     * Como l, uma falha do banco depois do envio comear deixa o JSON propositalmente incompleto e descarta a verso do ETag.
+     */
+    private void listarDocumentosEmStreaming(int usuarioId, HttpServletResponse response) throws IOException {
+        response.setContentType("application/json; charset=UTF-8");
+        OutputStream saida = response.getOutputStream();
+        try {
+            dao.percorrerDocumentos(usuarioId, new ConsumidorDeDocumentos() {
+                private boolean primeiro = true;
+
+                @Override
+                public void total(int total) throws IOException {
+                    saida.write(("{\"total\": " + total + ", \"receitas\": [").getBytes(StandardCharsets.UTF_8));
+                }
+
+                @Override
+                public void documento(byte[] json) throws IOException {
+                    if (!primeiro) saida.write(',');
+                    primeiro = false;
+                    saida.write(json);
+                }
+            });
+            saida.write(FIM_DA_LISTAGEM);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            if (response.isCommitted()) {
+                dao.descartarVersao(usuarioId);
+            } else {
+                response.reset();
+                response.setContentType("application/json; charset=ISO-8859-1");
+                response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                response.getWriter().write("{\"success\": false, \"message\": \"Erro no banco de dados.\"}");
+            }
+        }
+    }
+
+    /**
+     * Pgina no modelo de leitura por documento, no envelope {total, proximoCursor, receitas} da paginao.
+     */
+    private void escreverPaginaDeDocumentos(PaginaDeDocumentos pagina, HttpServletResponse response) throws IOException {
+        response.setContentType("application/json; charset=UTF-8");
+        OutputStream saida = response.getOutputStream();
+        saida.write(String.format("{\"total\": %d, \"proximoCursor\": %s, \"receitas\": [",
+                pagina.getTotal(), gson.toJson(pagina.getProximoCursor())).getBytes(StandardCharsets.UTF_8));
+        boolean primeiro = true;
+        for (byte[] documento : pagina.getDocumentos()) {
+            if (!primeiro) saida.write(',');
+            primeiro = false;
+            saida.write(documento);
+        }
+        saida.write(FIM_DA_LISTAGEM);
+    }
+
+    /**
+     * O processarGet comea definindo JSON em ISO-8859-1; um corpo binrio no tem charset.
+     */
+    private static void tipoBinario(HttpServletResponse response, FormatoBinario formato) {
+        response.setCharacterEncoding(null);
+        response.setContentType(formato.getTipo());
+    }
+
+    /**
+     * Pgina da listagem em CBOR ou Smile, com o mesmo envelope {total, proximoCursor, receitas} do JSON.
+     */
+    private static void escreverPaginaBinaria(PaginaReceitas pagina, FormatoBinario formato, HttpServletResponse response) throws IOException {
+        tipoBinario(response, formato);
+        try (JsonGenerator saida = formato.criarGerador(response.getOutputStream())) {
+            saida.writeStartObject();
+            saida.writeNumberField("total", pagina.getTotal());
+            saida.writeStringField("proximoCursor", pagina.getProximoCursor());
+            saida.writeArrayFieldStart("receitas");
+            for (Receita receita : pagina.getReceitas()) {
+                ReceitaJson.escrever(saida, receita);
+            }
+            saida.writeEndArray();
+            saida.writeEndObject();
+        }
+    }
+
+    /**
+     * @return O ID do usurio logado (sesso ou token), ou null.
+     */
+    private static Integer usuarioId(HttpServletRequest request) {
+        UsuarioAutenticado usuario = UsuarioAutenticado.da(request);
+        return usuario == null ? null : usuario.getId();
+    }
+
+    /**
+     * Ingredientes em mos: o parmetro "ingrediente" repetido e/ou "ingredientes" separados por vrgula ou ponto e vrgula.
+     */
+    private static List<String> lerIngredientesDisponiveis(HttpServletRequest request) {
+        List<String> ingredientes = new ArrayList<>();
+        String[] repetidos = request.getParameterValues("ingrediente");
+        if (repetidos != null) {
+            ingredientes.addAll(Arrays.asList(repetidos));
+        }
+        String lista = request.getParameter("ingredientes");
+        if (lista != null) {
+            for (String nome : lista.split("[,;\\n]")) {
+                if (!nome.trim().isEmpty()) ingredientes.add(nome.trim());
+            }
+        }
+        return ingredientes;
+    }
+
+    /**
+     * Resultado da busca no mesmo envelope da listagem paginada ({total, receitas}), para que a mesma
+     * store atenda os dois casos; cada receita ganha relevancia, destaqueNome e destaqueTrecho (HTML).
+     */
+    private void escreverBusca(ResultadoBusca resultado, HttpServletResponse response) throws IOException {
+        response.setContentType("application/json; charset=UTF-8");
+        try (JsonGenerator json = jsonFactory.createGenerator(response.getOutputStream(), JsonEncoding.UTF8)) {
+            json.writeStartObject();
+            json.writeNumberField("total", resultado.getTotal());
+            json.writeArrayFieldStart("receitas");
+            for (ReceitaEncontrada encontrada : resultado.getReceitas()) {
+                json.writeStartObject();
+                ReceitaJson.escreverCampos(json, encontrada.getReceita());
+                json.writeNumberField("relevancia", encontrada.getRelevancia());
+                json.writeStringField("destaqueNome", encontrada.getDestaqueNome());
+                json.writeStringField("destaqueTrecho", encontrada.getDestaqueTrecho());
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+        }
+    }
+
+    /**
+     * Exportao completa (GET receitas?action=exportar&formato=ndjson|csv&aposId=N), escrita direto
+     * do cursor do banco, em ordem de id. O cabealho X-Total-Receitas informa quantas receitas viro;
+     * se a transferncia cair, basta pedir de novo com aposId = id da ltima receita recebida.
+     * Uma falha do banco depois do envio comear  propagada para que o servidor aborte a conexo:
+     * assim o cliente nunca confunde um arquivo truncado com uma exportao completa.
+     */
+    private void exportar(int usuarioId, boolean csv, int aposId, HttpServletResponse response) throws IOException, SQLException {
+        response.setContentType(csv ? "text/csv; charset=UTF-8" : "application/x-ndjson; charset=UTF-8");
+        response.setHeader("Content-Disposition", "attachment; filename=\"receitas." + (csv ? "csv" : "ndjson") + "\"");
+        response.setHeader("Cache-Control", "private, no-store");
+        OutputStream saida = response.getOutputStream();
+        Writer escritor = csv ? new BufferedWriter(new OutputStreamWriter(saida, StandardCharsets.UTF_8)) : null;
+        JsonGenerator json = csv ? null : jsonFactory.createGenerator(saida, JsonEncoding.UTF8);
+        if (json != null) {
+            json.setRootValueSeparator(null);
+        }
+
+        try {
+            dao.exportar(usuarioId, aposId, new ConsumidorDeReceitas() {
+                @Override
+                public void total(int total) throws IOException {
+                    response.setIntHeader("X-Total-Receitas", total);
+                    if (escritor != null) {
+                        escritor.write(ReceitaCsv.CABECALHO);
+                    }
+                }
+
+                @Override
+                public void receita(Receita receita) throws IOException {
+                    if (escritor != null) {
+                        ReceitaCsv.escrever(escritor, receita);
+                    } else {
+                        ReceitaJson.escrever(json, receita);
+                        json.writeRaw('\n');
+                    }
+                }
+            });
+        } catch (SQLException e) {
+            if (response.isCommitted()) {
+                throw new IOException("Exportao interrompida por erro no banco de dados.", e);
+            }
+            throw e;
+        }
+
+        if (escritor != null) {
+            escritor.close();
+        } else {
+            json.close();
+        }
+    }
+
+    /**
+     * Monta a consulta paginada a partir dos parmetros do PagingToolbar (start, limit, sort, dir)
+     * e do cursor opcional enviado pela store para seguir para a prxima pgina por keyset.
+     * @throws IllegalArgumentException Se start/limit no forem numricos ou o cursor for invlido.
+     */
+    private ConsultaPaginada lerConsultaPaginada(HttpServletRequest request) {
+        String start = request.getParameter("start");
+        return new ConsultaPaginada(
+                OrdenacaoReceita.deCampo(request.getParameter("sort")),
+                "DESC".equalsIgnoreCase(request.getParameter("dir")),
+                start == null ? 0 : Integer.parseInt(start),
+                Integer.parseInt(request.getParameter("limit")),
+                request.getParameter("cursor"));
+    }
+
+    /**
+     * Gravao em lote (POST receitas?action=salvarLote): jsonData com um array de receitas, as de id 0
+     * criadas e as demais atualizadas, tudo numa transao. Responde um item por receita, na ordem enviada.
+     * Cada item  conferido antes de abrir a transao: um que no seja um objeto (null, nmero, texto, array)
+     * ou que no forme uma receita recusa o lote com 400 e o ndice dele.
+     */
+    private void salvarLote(int usuarioId, HttpServletRequest request, HttpServletResponse response) throws IOException, SQLException {
+        JsonElement jsonData;
+        try {
+            jsonData = gson.fromJson(request.getParameter("jsonData"), JsonElement.class);
+        } catch (JsonParseException e) {
+            jsonData = null;
+        }
+        if (jsonData == null || !jsonData.isJsonArray()) {
+            responderLoteInvalido(response, "Informe em jsonData um array de receitas.");
+            return;
+        }
+        JsonArray itens = jsonData.getAsJsonArray();
+        List<Receita> receitas = new ArrayList<>(itens.size());
+        for (int i = 0; i < itens.size(); i++) {
+            Receita receita = null;
+            if (itens.get(i).isJsonObject()) {
+                try {
+                    receita = gson.fromJson(itens.get(i), Receita.class);
+                } catch (JsonParseException e) {
+                    receita = null;
+                }
+            }
+            if (receita == null) {
+                responderLoteInvalido(response, "O item " + i + " de jsonData no  uma receita.", i);
+                return;
+            }
+            receitas.add(receita);
+        }
+        try {
+            ResultadoDoLote resultado = dao.salvarEmLote(usuarioId, receitas);
+            escreverLote(resultado, (resultado.contar(ResultadoDoLote.CRIADA) + resultado.contar(ResultadoDoLote.ATUALIZADA)
+                    + resultado.contar(ResultadoDoLote.INALTERADA)) + " receita(s) salva(s).", response);
+        } catch (IllegalArgumentException e) {
+            responderLoteInvalido(response, e.getMessage());
+        }
+    }
+
+    /**
+     * Remoo em lote (POST receitas?action=deletarLote): os IDs em "ids", separados por vrgula, e/ou no
+     * parmetro "id" repetido, removidos num nico DELETE. Responde um item por ID, na ordem enviada.
+     */
+    private void deletarLote(int usuarioId, HttpServletRequest request, HttpServletResponse response) throws IOException, SQLException {
+        List<String> informados = new ArrayList<>();
+        String separados = request.getParameter("ids");
+        if (separados != null) {
+            for (String id : separados.split(",")) {
+                if (!id.trim().isEmpty()) informados.add(id.trim());
+            }
+        }
+        String[] repetidos = request.getParameterValues("id");
+        if (repetidos != null) {
+            informados.addAll(Arrays.asList(repetidos));
+        }
+        // Todos conferidos antes da transao; o ndice  a posio entre os de "ids" seguidos pelos "id"
+        List<Integer> ids = new ArrayList<>(informados.size());
+        for (int i = 0; i < informados.size(); i++) {
+            try {
+                ids.add(Integer.parseInt(informados.get(i).trim()));
+            } catch (NumberFormatException e) {
+                responderLoteInvalido(response, "O item " + i + " dos IDs no  um ID vlido.", i);
+                return;
+            }
+        }
+        if (ids.isEmpty()) {
+            responderLoteInvalido(response, "Informe os IDs em ids.");
+            return;
+        }
+        try {
+            ResultadoDoLote resultado = dao.deletarEmLote(usuarioId, ids);
+            escreverLote(resultado, resultado.contar(ResultadoDoLote.REMOVIDA) + " receita(s) removida(s).", response);
+        } catch (IllegalArgumentException e) {
+            responderLoteInvalido(response, e.getMessage());
+        }
+    }
+
+    /**
+     * success  true se a transao foi gravada, mesmo que algum item tenha vindo como nao_encontrada.
+     */
+    private void escreverLote(ResultadoDoLote resultado, String mensagem, HttpServletResponse response) throws IOException {
+        response.getWriter().write(String.format("{\"success\": true, \"message\": %s, \"resultados\": %s}",
+                gson.toJson(mensagem), gson.toJson(resultado.getItens())));
+    }
+
+    private void responderLoteInvalido(HttpServletResponse response, String mensagem) throws IOException {
+        response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+        response.getWriter().write("{\"success\": false, \"message\": " + gson.toJson(mensagem) + "}");
+    }
+
+    /**
+     * @param indice A posio (a partir de 0) do item recusado, devolvida tambm em "indice".
+     */
+    private void responderLoteInvalido(HttpServletResponse response, String mensagem, int indice) throws IOException {
+        response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+        response.getWriter().write("{\"success\": false, \"message\": " + gson.toJson(mensagem) + ", \"indice\": " + indice + "}");
+    }
+
+    /**
+     * Importao em massa (POST receitas?action=importar). O corpo  um array JSON de receitas ou,
+     * com Content-Type application/x-ndjson, uma receita por linha. A resposta  NDJSON: uma linha
+     * com os contadores a cada lote gravado e, por ltimo, o resultado com os erros por registro.
+     */
+    private void importar(int usuarioId, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String tipo = request.getContentType();
+        boolean ndjson = tipo != null && tipo.toLowerCase(Locale.ROOT).startsWith("application/x-ndjson");
+        LeitorDeReceitas leitor = new LeitorDeReceitas(request.getInputStream(), ndjson);
+
+        response.setContentType("application/x-ndjson; charset=UTF-8");
+        JsonGenerator json = jsonFactory.createGenerator(response.getOutputStream(), JsonEncoding.UTF8);
+        json.setRootValueSeparator(null);
+
+        ResultadoImportacao resultado;
+        try {
+            resultado = dao.importar(usuarioId, leitor, parcial -> {
+                json.writeStartObject();
+                escreverContadores(json, parcial);
+                json.writeEndObject();
+                json.writeRaw('\n');
+                json.flush();
+            });
+        } catch (SQLException e) {
+            // Os lotes j confirmados continuam gravados; a ltima linha avisa que a importao no terminou
+            e.printStackTrace();
+            if (!response.isCommitted()) {
+                response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+            json.writeStartObject();
+            json.writeBooleanField("success", false);
+            json.writeStringField("message", "Erro no banco de dados.");
+            json.writeEndObject();
+            json.writeRaw('\n');
+            json.close();
+            return;
+        }
+
+        json.writeStartObject();
+        json.writeBooleanField("success", resultado.getInterrupcao() == null);
+        escreverContadores(json, resultado);
+        json.writeArrayFieldStart("erros");
+        for (ResultadoImportacao.Erro erro : resultado.getErros()) {
+            json.writeStartObject();
+            json.writeNumberField("registro", erro.getRegistro());
+            json.writeStringField("mensagem", erro.getMensagem());
+            json.writeEndObject();
+        }
+        json.writeEndArray();
+        if (resultado.getInterrupcao() != null) {
+            json.writeStringField("message", "Leitura interrompida: " + resultado.getInterrupcao());
+        }
+        json.writeEndObject();
+        json.writeRaw('\n');
+        json.close();
+    }
+
+    private static void escreverContadores(JsonGenerator json, ResultadoImportacao resultado) throws IOException {
+        json.writeNumberField("lidos", resultado.getLidos());
+        json.writeNumberField("importadas", resultado.getImportadas());
+        json.writeNumberField("rejeitadas", resultado.getRejeitadas());
+    }
+
+    /**
+     * Como no GET, a importao em massa (streaming nos dois sentidos) fica na thread do Tomcat.
+     */
     @Override
     protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+    {
+        if ("importar".equals(request.getParameter("action"))) {
+            processarPost(request, response);
+            return;
+        }
+        ProcessamentoAssincrono.despachar(request, response, executor, () -> processarPost(request, response));
+    }
+
+    private void processarPost(HttpServletRequest request, HttpServletResponse response) throws IOException
     {
         String action = request.getParameter("action");
         response.setContentType("application/json; charset=ISO-8859-1");
         try
         {
-            String jsonPayload = request.getParameter("jsonData");
-
-            HttpSession session = request.getSession(false);
-            if (session == null || session.getAttribute("usuario_id") == null) {
+            Integer usuarioId = usuarioId(request);
+            if (usuarioId == null) {
                 response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
                 response.getWriter().write("{\"success\": false, \"message\": \"Sesso invlida para salvar. Faa o login novamente.\"}");
                 return;
             }
-            Integer usuarioId = (Integer) session.getAttribute("usuario_id");
 
-            if (jsonPayload != null) {
-                Receita receita = gson.fromJson(jsonPayload, Receita.class);
+            // O corpo da importao  o prprio JSON/NDJSON, no um formulrio com jsonData
+            if ("importar".equals(action)) {
+                importar(usuarioId, request, response);
+                return;
+            }
+            // Seleo mltipla do grid e integraes: o lote inteiro numa requisio e numa transao
+            if ("salvarLote".equals(action)) {
+                salvarLote(usuarioId, request, response);
+                return;
+            }
+            if ("deletarLote".equals(action)) {
+                deletarLote(usuarioId, request, response);
+                return;
+            }
+
+            String jsonPayload = request.getParameter("jsonData");
+            // Integraes podem enviar a receita no prprio corpo, em CBOR ou Smile, em vez do jsonData do formulrio
+            FormatoBinario formatoDoCorpo = action == null || "salvar".equals(action)
+                    ? FormatoBinario.doConteudo(request.getContentType()) : null;
+
+            if (jsonPayload != null || formatoDoCorpo != null) {
+                Receita receita = formatoDoCorpo != null
+                        ? formatoDoCorpo.lerReceita(request.getInputStream())
+                        : gson.fromJson(jsonPayload, Receita.class);
                 receita.setUsuario_id(usuarioId);
 
                 if (usuarioId == null) {
@@ -105,16 +805,18 @@ public class ReceitaServlet extends HttpServlet {
                     return;
                 }
 
-                if (receita.getId() == 0)
+                if (receita.getId() == 0) {
                     dao.adicionar(receita);
-                else
-                    dao.atualizar(receita);
-
-                response.getWriter().write("{\"success\": true, \"message\": \"Receita salva com sucesso!\"}");
+                    response.getWriter().write("{\"success\": true, \"message\": \"Receita salva com sucesso!\"}");
+                } else {
+                    // linhasAlteradas = 0 indica que nada mudou (o cliente reenviou a receita como estava)
+                    ResultadoAtualizacao resultado = dao.atualizar(receita);
+                    response.getWriter().write("{\"success\": true, \"message\": \"Receita salva com sucesso!\", \"linhasAlteradas\": " + resultado.getTotal() + "}");
+                }
 
             } else if ("deletar".equals(action)) {
                 int receitaId = Integer.parseInt(request.getParameter("id"));
-                if (dao.deletar(receitaId)) {
+                if (dao.deletar(receitaId, usuarioId)) {
                     response.getWriter().write("{\"success\": true}");
                 } else {
                     response.getWriter().write("{\"success\": false, \"message\": \"Erro ao deletar receita.\"}");
@@ -123,6 +825,10 @@ public class ReceitaServlet extends HttpServlet {
                 response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
                 response.getWriter().write("{\"success\": false, \"message\": \"Operao POST invlida.\"}");
             }
+        } catch (JsonProcessingException e) {
+            // Corpo CBOR/Smile malformado ou com tipos errados
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            response.getWriter().write("{\"success\": false, \"message\": \"Receita invlida no corpo da requisio.\"}");
         } catch (Exception e) {
             response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
             response.getWriter().write("{\"success\": false, \"message\": \"Erro interno do servidor.\"}");
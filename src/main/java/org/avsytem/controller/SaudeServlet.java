@@ -0,0 +1,61 @@
+package org.avsytem.controller;
+
+import org.avsytem.listener.Aquecimento;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Prontido da aplicao (GET /saude), para o balanceador e o orquestrador s mandarem trfego
+ * a uma instncia aquecida. Fica fora do AuthenticationFilter.
+ *
+ * - 503 {"status": "aquecendo"} enquanto o aquecimento do AppLifecycleListener no terminou;
+ * - 503 {"status": "banco_indisponivel"} se o primrio no entregar uma conexo vlida;
+ * - 200 {"status": "pronto", "aquecimentoMillis": ...} caso contrrio.
+ */
+public class SaudeServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+    // Segundos sugeridos ao cliente (Retry-After) enquanto a instncia aquece
+    private static final String TENTAR_DE_NOVO = "2";
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        response.setContentType("application/json");
+        response.setCharacterEncoding("ISO-8859-1");
+        response.setHeader("Cache-Control", "no-store");
+
+        Aquecimento aquecimento = (Aquecimento) getServletContext().getAttribute("aquecimento");
+        if (aquecimento != null && !aquecimento.isPronto()) {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setHeader("Retry-After", TENTAR_DE_NOVO);
+            response.getWriter().write("{\"status\": \"aquecendo\"}");
+            return;
+        }
+
+        DataSource dataSource = (DataSource) getServletContext().getAttribute("dataSource");
+        if (!bancoDisponivel(dataSource)) {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setHeader("Retry-After", TENTAR_DE_NOVO);
+            response.getWriter().write("{\"status\": \"banco_indisponivel\"}");
+            return;
+        }
+
+        response.getWriter().write(String.format("{\"status\": \"pronto\", \"aquecimentoMillis\": %d}",
+                aquecimento == null ? 0 : aquecimento.getDuracaoMillis()));
+    }
+
+    private static boolean bancoDisponivel(DataSource dataSource) {
+        if (dataSource == null) return false;
+        try (Connection conn = dataSource.getConnection()) {
+            return conn.isValid(2);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+}
@@ -2,8 +2,13 @@ package org.avsytem.controller;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
+import org.avsytem.async.ExecutorDeRequisicoes;
+import org.avsytem.async.ProcessamentoAssincrono;
 import org.avsytem.dao.ReceitaDAO;
 import org.avsytem.dao.UserDAO;
+import org.avsytem.security.TokenDeAcesso;
+import org.avsytem.security.UsuarioAutenticado;
+import org.avsytem.security.VerificadorDeSenhas;
 
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
@@ -15,6 +20,7 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.naming.Context;
 import javax.naming.InitialContext;
@@ -27,6 +33,12 @@ public class UsuarioServlet extends HttpServlet {
     private static final long serialVersionUID = 1L;
     private Gson gson;
     private UserDAO userDAO;
+    // Pool do BCrypt do login: o hash da senha nova usa o mesmo custo e o mesmo limite de CPU
+    private VerificadorDeSenhas verificador;
+    // Criado pelo AppLifecycleListener; null processa na prpria thread do Tomcat
+    private ExecutorDeRequisicoes executor;
+    // S com autenticacao=token: a excluso da conta revoga os tokens j emitidos
+    private TokenDeAcesso tokens;
 
     @Override
     public void init() throws ServletException {
@@ -38,12 +50,25 @@ public class UsuarioServlet extends HttpServlet {
         if (dataSource == null) {
             throw new ServletException("DataSource no encontrado no ServletContext. O AppLifecycleListener falhou ao iniciar?");
         }
-        // 3. Cria o DAO com a instncia compartilhada do DataSource
-        this.userDAO = new UserDAO(dataSource);
+        // 3. Cria o DAO com a instncia compartilhada do DataSource; com tokens e feed de alteraes, a excluso
+        //    da conta avisa os outros ns para revogarem os tokens dela
+        this.tokens = (TokenDeAcesso) servletContext.getAttribute("tokenDeAcesso");
+        boolean avisarRevogacoes = tokens != null && servletContext.getAttribute("centralDeEventos") != null;
+        this.userDAO = new UserDAO(dataSource, avisarRevogacoes);
+        this.verificador = (VerificadorDeSenhas) servletContext.getAttribute("verificadorDeSenhas");
+        if (verificador == null) {
+            throw new ServletException("VerificadorDeSenhas no encontrado no ServletContext. O AppLifecycleListener falhou ao iniciar?");
+        }
+        this.gson = new Gson();
+        this.executor = (ExecutorDeRequisicoes) servletContext.getAttribute("executorDeRequisicoes");
     }
 
     @Override
     protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        ProcessamentoAssincrono.despachar(request, response, executor, () -> cadastrar(request, response));
+    }
+
+    private void cadastrar(HttpServletRequest request, HttpServletResponse response) throws IOException {
         response.setContentType("application/json; charset=ISO-8859-1");
         StringBuilder sb = new StringBuilder();
         try (BufferedReader reader = request.getReader())
@@ -58,7 +83,8 @@ public class UsuarioServlet extends HttpServlet {
 
         try 
         {
-            userDAO.adicionar(userData.get("nome_completo").getAsString(), userData.get("email").getAsString(), userData.get("username").getAsString(), userData.get("senha").getAsString());
+            String hashDaSenha = verificador.gerarHash(userData.get("senha").getAsString());
+            userDAO.adicionar(userData.get("nome_completo").getAsString(), userData.get("email").getAsString(), userData.get("username").getAsString(), hashDaSenha);
 
             response.getWriter().write("{\"success\": true, \"message\": \"Usurio cadastrado com sucesso!\"}");
 
@@ -76,6 +102,18 @@ public class UsuarioServlet extends HttpServlet {
             response.getWriter().write("{\"success\": false, \"message\": \"" + errorMessage + "\"}");
             e.printStackTrace();
         }
+        catch (RejectedExecutionException e)
+        {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setHeader("Retry-After", "1");
+            response.getWriter().write("{\"success\": false, \"message\": \"Servidor ocupado. Tente novamente em instantes.\"}");
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.getWriter().write("{\"success\": false, \"message\": \"Servidor ocupado. Tente novamente em instantes.\"}");
+        }
         catch (Exception e)
         {
             response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
@@ -87,23 +125,36 @@ public class UsuarioServlet extends HttpServlet {
     
     @Override
     protected void doDelete(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        ProcessamentoAssincrono.despachar(request, response, executor, () -> excluirConta(request, response));
+    }
+
+    private void excluirConta(HttpServletRequest request, HttpServletResponse response) throws IOException {
         response.setContentType("application/json");
         response.setCharacterEncoding("UTF-8");
 
-        HttpSession session = request.getSession(false);
+        UsuarioAutenticado usuario = UsuarioAutenticado.da(request);
 
-        if (session == null || session.getAttribute("username") == null) {
+        if (usuario == null) {
             response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
             response.getWriter().write("{\"success\": false, \"message\": \"Sesso invlida ou expirada.\"}");
             return;
         }
 
-        String username = (String) session.getAttribute("username");
+        String username = usuario.getUsername();
 
         try  {
             
             if (userDAO.deletarPorUsername(username)) {
-                session.invalidate(); // Invalida a sesso aps deletar
+                HttpSession session = request.getSession(false);
+                if (session != null) {
+                    session.invalidate(); // Invalida a sesso aps deletar
+                }
+                if (tokens != null) {
+                    // Neste n, os tokens j emitidos param de valer agora; nos demais, ao chegar o aviso do feed de
+                    // alteraes (eventos=true) ou, sem ele, s quando expirarem (tokenValidadeSegundos)
+                    tokens.revogar(usuario.getId());
+                    response.addCookie(tokens.criarCookie(null, request));
+                }
                 response.getWriter().write("{\"success\": true, \"message\": \"Conta excluda com sucesso.\"}");
             } else {
                 response.setStatus(HttpServletResponse.SC_NOT_FOUND);
@@ -0,0 +1,89 @@
+package org.avsytem.csv;
+
+import org.avsytem.model.Ingrediente;
+import org.avsytem.model.Passo;
+import org.avsytem.model.Receita;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Escrita de receitas em CSV "achatado" (RFC 4180, separador vrgula, quebra de linha CRLF).
+ * Cada ingrediente e cada passo vira uma linha, repetindo os campos da receita; uma receita
+ * sem ingredientes nem passos sai em uma nica linha com a coluna "tipo" vazia.
+ */
+public final class ReceitaCsv {
+
+    public static final String CABECALHO =
+            "receita_id,nome,descricao,tempo_preparo_min,porcoes,dificuldade,tipo,ordem,item,quantidade,unidade\r\n";
+
+    private ReceitaCsv() {
+    }
+
+    public static void escrever(Writer csv, Receita receita) throws IOException {
+        boolean vazia = true;
+        if (receita.getIngredientes() != null) {
+            for (Ingrediente ingrediente : receita.getIngredientes()) {
+                escreverReceita(csv, receita);
+                csv.write("ingrediente,,");
+                campo(csv, ingrediente.getNome());
+                csv.write(',');
+                csv.write(Double.toString(ingrediente.getQuantidade()));
+                csv.write(',');
+                campo(csv, ingrediente.getUnidade());
+                csv.write("\r\n");
+                vazia = false;
+            }
+        }
+        if (receita.getPassos() != null) {
+            for (Passo passo : receita.getPassos()) {
+                escreverReceita(csv, receita);
+                csv.write("passo,");
+                csv.write(Integer.toString(passo.getOrdem()));
+                csv.write(',');
+                campo(csv, passo.getDescricao());
+                csv.write(",,\r\n");
+                vazia = false;
+            }
+        }
+        if (vazia) {
+            escreverReceita(csv, receita);
+            csv.write(",,,,\r\n");
+        }
+    }
+
+    private static void escreverReceita(Writer csv, Receita receita) throws IOException {
+        csv.write(Integer.toString(receita.getId()));
+        csv.write(',');
+        campo(csv, receita.getNome());
+        csv.write(',');
+        campo(csv, receita.getDescricao());
+        csv.write(',');
+        csv.write(Integer.toString(receita.getTempoDePreparo()));
+        csv.write(',');
+        csv.write(Integer.toString(receita.getPorcoes()));
+        csv.write(',');
+        campo(csv, receita.getDificuldade());
+        csv.write(',');
+    }
+
+    /**
+     * Campos com vrgula, aspas ou quebra de linha vo entre aspas, com as aspas internas duplicadas.
+     * Nulo vira campo vazio.
+     */
+    private static void campo(Writer csv, String valor) throws IOException {
+        if (valor == null) return;
+        boolean precisaAspas = false;
+        for (int i = 0; i < valor.length() && !precisaAspas; i++) {
+            char c = valor.charAt(i);
+            precisaAspas = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!precisaAspas) {
+            csv.write(valor);
+            return;
+        }
+        csv.write('"');
+        csv.write(valor.replace("\"", "\"\""));
+        csv.write('"');
+    }
+}
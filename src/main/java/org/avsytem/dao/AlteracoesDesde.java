@@ -0,0 +1,53 @@
+package org.avsytem.dao;
+
+import org.avsytem.model.Receita;
+
+import java.util.List;
+
+/**
+ * Resultado da sincronizao incremental (ReceitaDAO.listarAlteracoes): as receitas criadas ou alteradas e os IDs
+ * das removidas desde a verso informada pelo cliente, e a verso a informar na prxima vez.
+ *
+ * Se completa for true, a verso do cliente era antiga demais (ou zero): as receitas so todas as do usurio e o
+ * cliente deve descartar o que tinha em vez de aplicar a diferena.
+ */
+public class AlteracoesDesde {
+
+    private final long versao;
+    private final boolean completa;
+    private final List<Receita> receitas;
+    private final List<Integer> removidas;
+
+    public AlteracoesDesde(long versao, boolean completa, List<Receita> receitas, List<Integer> removidas) {
+        this.versao = versao;
+        this.completa = completa;
+        this.receitas = receitas;
+        this.removidas = removidas;
+    }
+
+    /**
+     * @return A marca para o prximo since. Algumas receitas podem voltar de novo na prxima sincronizao
+     * (as gravadas durante esta), nunca faltar.
+     */
+    public long getVersao() {
+        return versao;
+    }
+
+    public boolean isCompleta() {
+        return completa;
+    }
+
+    /**
+     * @return As receitas criadas ou alteradas (ou todas, se completa), com ingredientes e passos.
+     */
+    public List<Receita> getReceitas() {
+        return receitas;
+    }
+
+    /**
+     * @return Os IDs das receitas removidas; podem incluir receitas que o cliente nunca recebeu.
+     */
+    public List<Integer> getRemovidas() {
+        return removidas;
+    }
+}
@@ -0,0 +1,131 @@
+package org.avsytem.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Aviso das escritas do ReceitaDAO pelo LISTEN/NOTIFY do PostgreSQL, no canal receitas_alteradas.
+ *
+ * O NOTIFY  emitido na transao da escrita: o banco s o entrega aos ouvintes (um por n, em
+ * org.avsytem.eventos) depois do commit, e nunca se a transao for desfeita. A mensagem tem o formato
+ * "usuarioId:tipo:id,id,...:origem" e cabe no limite de 8000 bytes do NOTIFY; listas maiores viram vrias
+ * mensagens. A origem identifica o processo que escreveu, para que cada n reconhea os prprios avisos.
+ */
+public final class CanalDeAlteracoes {
+
+    public static final String CANAL = "receitas_alteradas";
+
+    public static final String CRIADA = ResultadoDoLote.CRIADA;
+    public static final String ATUALIZADA = ResultadoDoLote.ATUALIZADA;
+    public static final String REMOVIDA = ResultadoDoLote.REMOVIDA;
+    // Muitas receitas de uma vez (importao): o cliente recarrega em vez de aplicar uma a uma
+    public static final String RECARREGAR = "recarregar";
+    // Conta excluda (UserDAO): cada n revoga os tokens de acesso do usurio; no vai s abas
+    public static final String REVOGAR = "revogar";
+
+    // Sorteada a cada subida: os avisos com ela so as escritas deste n, cujo DAO j avanou as verses
+    static final String ORIGEM = UUID.randomUUID().toString();
+
+    private static final String NOTIFICAR = "SELECT pg_notify('" + CANAL + "', ?)";
+    private static final int TAMANHO_MAXIMO_MENSAGEM = 7900;
+
+    private CanalDeAlteracoes() {
+    }
+
+    /**
+     * Emite, na transao do chamador, o aviso de que as receitas mudaram.
+     * @param receitaIds As receitas alteradas; vazio s faz sentido para RECARREGAR e REVOGAR.
+     */
+    static void avisar(Connection conn, int usuarioId, String tipo, Collection<Integer> receitaIds) throws SQLException {
+        if (receitaIds.isEmpty() && !RECARREGAR.equals(tipo) && !REVOGAR.equals(tipo)) return;
+
+        String prefixo = usuarioId + ":" + tipo + ":";
+        String sufixo = ":" + ORIGEM;
+        List<String> mensagens = new ArrayList<>();
+        StringBuilder mensagem = new StringBuilder(prefixo);
+        for (Integer id : receitaIds) {
+            if (mensagem.length() > TAMANHO_MAXIMO_MENSAGEM) {
+                mensagens.add(mensagem.append(sufixo).toString());
+                mensagem.setLength(0);
+                mensagem.append(prefixo);
+            }
+            if (mensagem.length() > prefixo.length()) mensagem.append(',');
+            mensagem.append(id);
+        }
+        mensagens.add(mensagem.append(sufixo).toString());
+
+        try (PreparedStatement ps = conn.prepareStatement(NOTIFICAR)) {
+            for (String texto : mensagens) {
+                ps.setString(1, texto);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    static void avisar(Connection conn, int usuarioId, String tipo, int receitaId) throws SQLException {
+        avisar(conn, usuarioId, tipo, Collections.singletonList(receitaId));
+    }
+
+    /**
+     * Interpreta uma mensagem recebida no canal.
+     * @return A alterao, ou null se a mensagem no estiver no formato esperado. Sem a origem, a alterao
+     *  tratada como de outro n.
+     */
+    public static Alteracao ler(String mensagem) {
+        if (mensagem == null) return null;
+        String[] partes = mensagem.split(":", 4);
+        if (partes.length < 3) return null;
+        try {
+            int usuarioId = Integer.parseInt(partes[0]);
+            List<Integer> ids = new ArrayList<>();
+            for (String id : partes[2].split(",")) {
+                if (!id.isEmpty()) ids.add(Integer.parseInt(id));
+            }
+            return new Alteracao(usuarioId, partes[1], ids, partes.length == 4 ? partes[3] : null);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Uma mensagem do canal: o tipo da escrita e as receitas do usurio que ela alterou.
+     */
+    public static final class Alteracao {
+        private final int usuarioId;
+        private final String tipo;
+        private final List<Integer> receitaIds;
+        private final String origem;
+
+        Alteracao(int usuarioId, String tipo, List<Integer> receitaIds, String origem) {
+            this.usuarioId = usuarioId;
+            this.tipo = tipo;
+            this.receitaIds = Collections.unmodifiableList(receitaIds);
+            this.origem = origem;
+        }
+
+        public int getUsuarioId() {
+            return usuarioId;
+        }
+
+        /** @return CRIADA, ATUALIZADA, REMOVIDA, RECARREGAR ou REVOGAR. */
+        public String getTipo() {
+            return tipo;
+        }
+
+        public List<Integer> getReceitaIds() {
+            return receitaIds;
+        }
+
+        /** @return true se a escrita foi feita neste processo. */
+        public boolean isDesteNo() {
+            return ORIGEM.equals(origem);
+        }
+    }
+}
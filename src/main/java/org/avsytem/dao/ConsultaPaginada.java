@@ -0,0 +1,85 @@
+package org.avsytem.dao;
+
+/**
+ * Parmetros de uma consulta paginada de receitas.
+ * Quando h cursor, a pgina  buscada por keyset (seek) a partir dele e o deslocamento  ignorado;
+ * sem cursor, cai no OFFSET, usado apenas para a primeira pgina ou para saltos arbitrrios.
+ *
+ * O cursor tem o formato "id:valor", onde valor  a chave de ordenao da ltima receita
+ * da pgina anterior. O id vem primeiro porque nunca contm ':'.
+ */
+public class ConsultaPaginada {
+
+    public static final int LIMITE_MAXIMO = 500;
+
+    private final OrdenacaoReceita ordenacao;
+    private final boolean descendente;
+    private final int deslocamento;
+    private final int limite;
+    private final Integer cursorId;
+    private final Object cursorValor;
+
+    /**
+     * @param ordenacao A coluna de ordenao (j validada pela lista branca).
+     * @param descendente true para ordem decrescente.
+     * @param deslocamento O ndice da primeira receita da pgina (usado apenas sem cursor).
+     * @param limite O tamanho da pgina; limitado a LIMITE_MAXIMO.
+     * @param cursor O cursor devolvido na pgina anterior, ou null.
+     * @throws IllegalArgumentException Se o cursor estiver malformado.
+     */
+    public ConsultaPaginada(OrdenacaoReceita ordenacao, boolean descendente, int deslocamento, int limite, String cursor) {
+        this.ordenacao = ordenacao;
+        this.descendente = descendente;
+        this.deslocamento = Math.max(0, deslocamento);
+        this.limite = Math.max(1, Math.min(limite, LIMITE_MAXIMO));
+
+        if (cursor == null || cursor.isEmpty()) {
+            this.cursorId = null;
+            this.cursorValor = null;
+        } else {
+            int separador = cursor.indexOf(':');
+            if (separador <= 0) {
+                throw new IllegalArgumentException("Cursor invlido: " + cursor);
+            }
+            this.cursorId = Integer.valueOf(cursor.substring(0, separador));
+            this.cursorValor = ordenacao.converterValor(cursor.substring(separador + 1));
+        }
+    }
+
+    public OrdenacaoReceita getOrdenacao() {
+        return ordenacao;
+    }
+
+    public boolean isDescendente() {
+        return descendente;
+    }
+
+    public int getDeslocamento() {
+        return deslocamento;
+    }
+
+    public int getLimite() {
+        return limite;
+    }
+
+    public boolean temCursor() {
+        return cursorId != null;
+    }
+
+    Integer getCursorId() {
+        return cursorId;
+    }
+
+    Object getCursorValor() {
+        return cursorValor;
+    }
+
+    /**
+     * Monta o cursor da prxima pgina no formato lido pelo construtor.
+     * @param id O ID da ltima receita da pgina.
+     * @param chave A chave de ordenao dessa receita (OrdenacaoReceita.chave ou a expresso SQL da ordenao).
+     */
+    static String cursor(int id, Object chave) {
+        return id + ":" + chave;
+    }
+}
@@ -0,0 +1,22 @@
+package org.avsytem.dao;
+
+import java.io.IOException;
+
+/**
+ * Recebe os documentos JSON das receitas de um usurio (modelo de leitura por documento) um a um,
+ *  medida que so lidos do cursor do banco.
+ */
+public interface ConsumidorDeDocumentos {
+
+    /**
+     * Chamado uma nica vez, antes do primeiro documento.
+     * @param total O nmero de documentos que sero entregues.
+     */
+    void total(int total) throws IOException;
+
+    /**
+     * Chamado para cada receita, na ordem da listagem.
+     * @param json O documento da receita, um objeto JSON em UTF-8, exatamente como veio do banco.
+     */
+    void documento(byte[] json) throws IOException;
+}
@@ -0,0 +1,24 @@
+package org.avsytem.dao;
+
+import org.avsytem.model.Receita;
+
+import java.io.IOException;
+
+/**
+ * Recebe as receitas de um usurio uma a uma,  medida que so lidas do cursor do banco.
+ * Usado pela listagem em streaming para escrever a resposta sem materializar a lista inteira.
+ */
+public interface ConsumidorDeReceitas {
+
+    /**
+     * Chamado uma nica vez, antes da primeira receita.
+     * @param total O nmero de receitas que sero entregues.
+     */
+    void total(int total) throws IOException;
+
+    /**
+     * Chamado para cada receita, j com ingredientes e passos carregados.
+     * A instncia no  reutilizada pelo DAO, mas tambm no deve ser retida pelo consumidor.
+     */
+    void receita(Receita receita) throws IOException;
+}
@@ -0,0 +1,23 @@
+package org.avsytem.dao;
+
+/**
+ * O ID e o hash BCrypt da senha de um usurio ativo, lidos juntos para o login.
+ */
+public class Credenciais {
+
+    private final int usuarioId;
+    private final String hashDaSenha;
+
+    public Credenciais(int usuarioId, String hashDaSenha) {
+        this.usuarioId = usuarioId;
+        this.hashDaSenha = hashDaSenha;
+    }
+
+    public int getUsuarioId() {
+        return usuarioId;
+    }
+
+    public String getHashDaSenha() {
+        return hashDaSenha;
+    }
+}
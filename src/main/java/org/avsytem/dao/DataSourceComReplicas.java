@@ -0,0 +1,275 @@
+package org.avsytem.dao;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.avsytem.metricas.Contador;
+import org.avsytem.metricas.Metricas;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * DataSource que separa as leituras dos DAOs entre o banco primrio e uma ou mais rplicas de leitura.
+ *
+ * getConnection() sempre devolve o primrio: escritas e qualquer cdigo que no pea explicitamente
+ * uma conexo de leitura continuam indo para ele. Os mtodos de leitura dos DAOs usam
+ * getConnectionDeLeitura(chave), que escolhe uma rplica saudvel (em rodzio ou a com menos conexes
+ * emprestadas), exceto quando a chave (o usurio dono dos dados) escreveu h menos de janelaMillis.
+ * Nesse caso a leitura fica no primrio, para que quem acabou de salvar veja o que salvou mesmo com
+ * a rplica atrasada, e para que o cache de receitas nunca guarde dados antigos na verso nova.
+ *
+ * Cada rplica  verificada a cada verificacaoMillis (conexo e atraso da replicao); a que falha,
+ * ou est atrasada mais que atrasoMaximoMillis, sai do rodzio at passar de novo. Sem rplica
+ * saudvel, ou se a rplica escolhida no entregar a conexo, a leitura vai para o primrio.
+ */
+public final class DataSourceComReplicas implements DataSource, AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(DataSourceComReplicas.class.getName());
+
+    // Atraso de replay em ms; 0 fora de recuperao (cpia comum) e quando no h WAL pendente de aplicar
+    private static final String VERIFICAR_ATRASO = "SELECT CASE WHEN NOT pg_is_in_recovery() " +
+            "OR pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 " +
+            "ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000, 0) END";
+
+    /**
+     * Como escolher entre as rplicas saudveis.
+     */
+    public enum Estrategia {
+        RODIZIO, MENOS_CARREGADA;
+
+        public static Estrategia deNome(String nome) {
+            return "menosCarregada".equals(nome) ? MENOS_CARREGADA : RODIZIO;
+        }
+    }
+
+    private final DataSource primario;
+    private final List<Replica> replicas;
+    private final Estrategia estrategia;
+    private final long atrasoMaximoMillis;
+    private final Cache<Object, Boolean> escritasRecentes;
+    private final AtomicInteger proxima = new AtomicInteger();
+    private final ScheduledExecutorService verificador;
+
+    private final Contador leiturasNaReplica = contadorDeLeituras("replica");
+    private final Contador leiturasAposEscrita = contadorDeLeituras("primario_apos_escrita");
+    private final Contador leiturasSemReplica = contadorDeLeituras("primario_sem_replica");
+
+    /**
+     * @param primario Onde vo as escritas e as leituras que no podem ir para uma rplica.
+     * @param replicas Os pools das rplicas; passam a ser deste objeto e so fechados por close().
+     * @param janelaMillis Por quanto tempo, depois de uma escrita, as leituras da mesma chave ficam no primrio.
+     * @param verificacaoMillis Intervalo entre as verificaes de cada rplica.
+     * @param atrasoMaximoMillis Atraso de replicao acima do qual a rplica sai do rodzio (0 ignora o atraso).
+     */
+    public DataSourceComReplicas(DataSource primario, List<PoolDeConexoes> replicas, Estrategia estrategia,
+                                 long janelaMillis, long verificacaoMillis, long atrasoMaximoMillis) {
+        this.primario = primario;
+        this.estrategia = estrategia;
+        this.atrasoMaximoMillis = atrasoMaximoMillis;
+        this.escritasRecentes = Caffeine.newBuilder()
+                .expireAfterWrite(janelaMillis, TimeUnit.MILLISECONDS)
+                .build();
+
+        List<Replica> lista = new ArrayList<>();
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = new Replica("replica" + (i + 1), replicas.get(i));
+            Metricas.medidor("receitas_replica_saudavel", "1 se a rplica est no rodzio das leituras, 0 se foi retirada.",
+                    () -> replica.saudavel ? 1 : 0, "replica", replica.nome);
+            Metricas.medidor("receitas_replica_atraso_millis", "Atraso de replicao medido na ltima verificao.",
+                    () -> replica.atrasoMillis, "replica", replica.nome);
+            lista.add(replica);
+        }
+        this.replicas = Collections.unmodifiableList(lista);
+
+        this.verificador = Executors.newSingleThreadScheduledExecutor(tarefa -> {
+            Thread thread = new Thread(tarefa, "verificador-de-replicas");
+            thread.setDaemon(true);
+            return thread;
+        });
+        verificador.scheduleWithFixedDelay(this::verificar, 0, verificacaoMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return Uma conexo com o primrio.
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        return primario.getConnection();
+    }
+
+    /**
+     * Conexo para uma leitura dos dados de uma chave (o ID do usurio no ReceitaDAO, o username no UserDAO).
+     * @return Uma conexo com uma rplica saudvel ou, se a chave escreveu h pouco ou nenhuma rplica
+     *         estiver disponvel, com o primrio.
+     */
+    public Connection getConnectionDeLeitura(Object chave) throws SQLException {
+        if (escritasRecentes.getIfPresent(chave) != null) {
+            leiturasAposEscrita.incrementar();
+            return primario.getConnection();
+        }
+        Replica replica = escolher();
+        if (replica != null) {
+            try {
+                Connection conn = replica.pool.getDataSource().getConnection();
+                leiturasNaReplica.incrementar();
+                return conn;
+            } catch (SQLException e) {
+                retirar(replica, e.getMessage());
+            }
+        }
+        leiturasSemReplica.incrementar();
+        return primario.getConnection();
+    }
+
+    /**
+     * Avisa que a chave acabou de escrever no primrio: suas leituras ficam nele pelos prximos janelaMillis.
+     */
+    public void escreveu(Object chave) {
+        escritasRecentes.put(chave, Boolean.TRUE);
+    }
+
+    /**
+     * Para as verificaes e fecha os pools das rplicas. O primrio no  fechado aqui.
+     */
+    @Override
+    public void close() {
+        verificador.shutdownNow();
+        for (Replica replica : replicas) {
+            replica.pool.close();
+        }
+    }
+
+    /**
+     * @return Uma descrio curta, para o log de inicializao.
+     */
+    public String getDescricao() {
+        StringBuilder descricao = new StringBuilder();
+        for (Replica replica : replicas) {
+            if (descricao.length() > 0) descricao.append(", ");
+            descricao.append(replica.nome).append(": ").append(replica.pool.getDescricao());
+        }
+        return descricao.append("; estratgia ").append(estrategia == Estrategia.RODIZIO ? "rodzio" : "menos carregada").toString();
+    }
+
+    // --- MTODOS PRIVADOS AUXILIARES ---
+
+    private Replica escolher() {
+        int quantidade = replicas.size();
+        int inicio = Math.floorMod(proxima.getAndIncrement(), quantidade);
+        Replica escolhida = null;
+        int menosAtivas = Integer.MAX_VALUE;
+        for (int i = 0; i < quantidade; i++) {
+            Replica replica = replicas.get((inicio + i) % quantidade);
+            if (!replica.saudavel) continue;
+            if (estrategia == Estrategia.RODIZIO) return replica;
+            // Comeando do ponteiro do rodzio, o empate fica com quem no foi escolhido por ltimo
+            int ativas = replica.pool.getAtivas();
+            if (ativas < menosAtivas) {
+                escolhida = replica;
+                menosAtivas = ativas;
+            }
+        }
+        return escolhida;
+    }
+
+    private void verificar() {
+        for (Replica replica : replicas) {
+            try (Connection conn = replica.pool.getDataSource().getConnection();
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(VERIFICAR_ATRASO)) {
+                rs.next();
+                replica.atrasoMillis = rs.getLong(1);
+                if (atrasoMaximoMillis > 0 && replica.atrasoMillis > atrasoMaximoMillis) {
+                    retirar(replica, "atraso de " + replica.atrasoMillis + " ms");
+                } else if (!replica.saudavel) {
+                    replica.saudavel = true;
+                    LOGGER.info("Rplica " + replica.nome + " no rodzio das leituras.");
+                }
+            } catch (SQLException | RuntimeException e) {
+                retirar(replica, e.getMessage());
+            }
+        }
+    }
+
+    private static void retirar(Replica replica, String motivo) {
+        if (replica.saudavel) {
+            replica.saudavel = false;
+            LOGGER.log(Level.WARNING, "Rplica " + replica.nome + " retirada do rodzio das leituras: " + motivo);
+        }
+    }
+
+    private static Contador contadorDeLeituras(String destino) {
+        return Metricas.contador("receitas_leituras_total", "Conexes de leitura entregues aos DAOs, por destino.",
+                "destino", destino);
+    }
+
+    private static final class Replica {
+        private final String nome;
+        private final PoolDeConexoes pool;
+        // Comea fora do rodzio: entra na primeira verificao bem-sucedida
+        private volatile boolean saudavel;
+        private volatile long atrasoMillis;
+
+        Replica(String nome, PoolDeConexoes pool) {
+            this.nome = nome;
+            this.pool = pool;
+        }
+    }
+
+    // --- DataSource: o restante vai para o primrio ---
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return primario.getConnection(username, password);
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return primario.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        primario.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        primario.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return primario.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return primario.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) return iface.cast(this);
+        return primario.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || primario.isWrapperFor(iface);
+    }
+}
@@ -0,0 +1,47 @@
+package org.avsytem.dao;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Diferena entre as linhas gravadas (id -> valor) e a lista enviada pelo cliente, para o update por diferena
+ * de ingredientes e passos.
+ *
+ * A ordem das linhas  a dos seus ids (ingredientes so lidos por id; passos por ordem e, no empate, por id),
+ * ento a diferena  posicional: a linha na posio i recebe o item i da lista nova e s fica intacta se j
+ * tiver o mesmo contedo (equals, que nos modelos compara todo o contedo). O que sobra da lista nova vira
+ * INSERT, com ids maiores que todos os atuais, e o que sobra das linhas vira DELETE. Inserir ou remover no
+ * meio regrava tudo dali em diante, mas a lista volta do banco exatamente na ordem enviada.
+ */
+final class Diferenca<T> {
+
+    final List<Map.Entry<Integer, T>> alterar = new ArrayList<>();
+    final List<T> inserir = new ArrayList<>();
+    final List<Integer> remover = new ArrayList<>();
+
+    private Diferenca() {
+    }
+
+    static <T> Diferenca<T> calcular(Map<Integer, T> atuais, List<T> novos) {
+        List<Integer> ids = new ArrayList<>(atuais.keySet());
+        Collections.sort(ids);
+        int quantidadeNova = novos == null ? 0 : novos.size();
+
+        Diferenca<T> diferenca = new Diferenca<>();
+        for (int i = 0; i < ids.size(); i++) {
+            Integer id = ids.get(i);
+            if (i >= quantidadeNova) {
+                diferenca.remover.add(id);
+            } else if (!novos.get(i).equals(atuais.get(id))) {
+                diferenca.alterar.add(new AbstractMap.SimpleImmutableEntry<>(id, novos.get(i)));
+            }
+        }
+        for (int i = ids.size(); i < quantidadeNova; i++) {
+            diferenca.inserir.add(novos.get(i));
+        }
+        return diferenca;
+    }
+}
@@ -0,0 +1,20 @@
+package org.avsytem.dao;
+
+import org.avsytem.model.Receita;
+
+import java.io.IOException;
+
+/**
+ * Entrega ao DAO, uma a uma, as receitas de uma importao em massa.
+ * Usado pelo ReceitaDAO.importar para gravar o arquivo enviado sem materializ-lo inteiro em memria.
+ */
+public interface FonteDeReceitas {
+
+    /**
+     * L o prximo registro.
+     * @return A prxima receita, ou null quando no houver mais registros.
+     * @throws RegistroInvalidoException Se apenas este registro no pde ser lido; a fonte continua no prximo.
+     * @throws IOException Se a leitura no puder continuar (ex.: JSON malformado fora de um registro).
+     */
+    Receita proxima() throws IOException;
+}
@@ -0,0 +1,262 @@
+package org.avsytem.dao;
+
+import org.avsytem.model.Ingrediente;
+import org.avsytem.model.Passo;
+import org.avsytem.model.Receita;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Importao em massa das receitas de um usurio pelo COPY do PostgreSQL (CopyManager do pgjdbc).
+ *
+ * Os registros so validados um a um e agrupados em lotes; cada lote  gravado em uma transao
+ * prpria com trs COPY (receitas, ingredientes e passos). Os IDs das receitas so reservados
+ * antes na sequence, em uma nica consulta, para que as linhas filhas j saiam com o receita_id.
+ * Um lote recusado pelo banco  desfeito inteiro e seus registros so reportados como erro;
+ * os lotes anteriores continuam gravados.
+ */
+class ImportadorDeReceitas {
+
+    private static final Logger LOGGER = Logger.getLogger(ImportadorDeReceitas.class.getName());
+
+    static final int TAMANHO_LOTE = 1000;
+
+    private static final String RESERVAR_IDS_RECEITAS = "SELECT nextval(pg_get_serial_sequence('receitas', 'id')) FROM generate_series(1, ?)";
+    private static final String COPY_RECEITAS = "COPY receitas (id, usuario_id, nome, descricao, tempo_preparo_min, porcoes, dificuldade) FROM STDIN";
+    private static final String COPY_INGREDIENTES = "COPY ingredientes (receita_id, nome, quantidade, unidade) FROM STDIN";
+    private static final String COPY_PASSOS = "COPY passos (receita_id, ordem, descricao) FROM STDIN";
+
+    // Tamanhos das colunas varchar (ConfigureDatabase.sql)
+    private static final int TAMANHO_NOME = 255;
+    private static final int TAMANHO_DIFICULDADE = 50;
+    private static final int TAMANHO_UNIDADE = 50;
+
+    private final DataSource dataSource;
+    // Regrava os documentos do modelo de leitura na transao de cada lote; null se ele estiver desligado
+    private final ModeloDeLeitura documentos;
+    // Avisa no CanalDeAlteracoes, na transao de cada lote, que as receitas do usurio devem ser recarregadas
+    private final boolean avisarAlteracoes;
+    private final int usuarioId;
+    private final int tamanhoLote;
+
+    private final List<Receita> lote = new ArrayList<>();
+    private final List<Integer> registrosDoLote = new ArrayList<>();
+    private final StringBuilder receitas = new StringBuilder();
+    private final StringBuilder ingredientes = new StringBuilder();
+    private final StringBuilder passos = new StringBuilder();
+
+    ImportadorDeReceitas(DataSource dataSource, ModeloDeLeitura documentos, boolean avisarAlteracoes, int usuarioId, int tamanhoLote) {
+        this.dataSource = dataSource;
+        this.documentos = documentos;
+        this.avisarAlteracoes = avisarAlteracoes;
+        this.usuarioId = usuarioId;
+        this.tamanhoLote = tamanhoLote;
+    }
+
+    /**
+     * L a fonte at o fim, gravando um lote a cada tamanhoLote receitas vlidas.
+     * Se a fonte falhar de forma irrecupervel, as receitas vlidas j lidas ainda so gravadas
+     * e o motivo fica em ResultadoImportacao.getInterrupcao().
+     * @throws SQLException Se no for possvel obter a conexo ou controlar a transao.
+     * @throws IOException Se o acompanhamento do progresso falhar (ex.: cliente desconectou).
+     */
+    ResultadoImportacao importar(FonteDeReceitas fonte, ProgressoDaImportacao progresso) throws SQLException, IOException {
+        ResultadoImportacao resultado = new ResultadoImportacao();
+        try (Connection conn = dataSource.getConnection()) {
+            CopyManager copy = conn.unwrap(PGConnection.class).getCopyAPI();
+            boolean autoCommitOriginal = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                while (true) {
+                    int registro = resultado.getLidos() + 1;
+                    Receita receita;
+                    try {
+                        receita = fonte.proxima();
+                    } catch (RegistroInvalidoException e) {
+                        resultado.lido();
+                        resultado.rejeitar(registro, e.getMessage());
+                        continue;
+                    } catch (IOException e) {
+                        resultado.interromper(e.getMessage());
+                        break;
+                    }
+                    if (receita == null) break;
+                    resultado.lido();
+
+                    String erro = validar(receita);
+                    if (erro != null) {
+                        resultado.rejeitar(registro, erro);
+                        continue;
+                    }
+                    lote.add(receita);
+                    registrosDoLote.add(registro);
+                    if (lote.size() >= tamanhoLote) {
+                        gravarLote(conn, copy, resultado);
+                        progresso.loteConcluido(resultado);
+                    }
+                }
+                if (!lote.isEmpty()) {
+                    gravarLote(conn, copy, resultado);
+                    progresso.loteConcluido(resultado);
+                }
+            } finally {
+                conn.setAutoCommit(autoCommitOriginal);
+            }
+        }
+        return resultado;
+    }
+
+    private void gravarLote(Connection conn, CopyManager copy, ResultadoImportacao resultado) throws SQLException {
+        receitas.setLength(0);
+        ingredientes.setLength(0);
+        passos.setLength(0);
+        try {
+            long[] ids = reservarIds(conn, lote.size());
+            for (int i = 0; i < lote.size(); i++) {
+                Receita receita = lote.get(i);
+                String id = Long.toString(ids[i]);
+
+                receitas.append(id).append('\t').append(usuarioId).append('\t');
+                texto(receitas, receita.getNome()).append('\t');
+                texto(receitas, receita.getDescricao()).append('\t');
+                receitas.append(receita.getTempoDePreparo()).append('\t').append(receita.getPorcoes()).append('\t');
+                texto(receitas, receita.getDificuldade()).append('\n');
+
+                if (receita.getIngredientes() != null) {
+                    for (Ingrediente ingrediente : receita.getIngredientes()) {
+                        ingredientes.append(id).append('\t');
+                        texto(ingredientes, ingrediente.getNome()).append('\t');
+                        ingredientes.append(ingrediente.getQuantidade()).append('\t');
+                        texto(ingredientes, ingrediente.getUnidade()).append('\n');
+                    }
+                }
+                if (receita.getPassos() != null) {
+                    for (Passo passo : receita.getPassos()) {
+                        passos.append(id).append('\t').append(passo.getOrdem()).append('\t');
+                        texto(passos, passo.getDescricao()).append('\n');
+                    }
+                }
+            }
+
+            copiar(copy, COPY_RECEITAS, receitas);
+            copiar(copy, COPY_INGREDIENTES, ingredientes);
+            copiar(copy, COPY_PASSOS, passos);
+            if (documentos != null) {
+                List<Integer> receitaIds = new ArrayList<>(ids.length);
+                for (long id : ids) {
+                    receitaIds.add((int) id);
+                }
+                documentos.gravar(conn, receitaIds);
+            }
+            if (avisarAlteracoes) {
+                CanalDeAlteracoes.avisar(conn, usuarioId, CanalDeAlteracoes.RECARREGAR, Collections.<Integer>emptyList());
+            }
+            conn.commit();
+            resultado.importadas(lote.size());
+        } catch (SQLException | IOException e) {
+            conn.rollback();
+            LOGGER.log(Level.WARNING, "Lote de importao recusado pelo banco. Rollback executado.", e);
+            for (int registro : registrosDoLote) {
+                resultado.rejeitar(registro, "Lote recusado pelo banco: " + e.getMessage());
+            }
+        } finally {
+            lote.clear();
+            registrosDoLote.clear();
+        }
+    }
+
+    private long[] reservarIds(Connection conn, int quantidade) throws SQLException {
+        long[] ids = new long[quantidade];
+        try (PreparedStatement ps = conn.prepareStatement(RESERVAR_IDS_RECEITAS)) {
+            ps.setInt(1, quantidade);
+            try (ResultSet rs = ps.executeQuery()) {
+                for (int i = 0; i < quantidade; i++) {
+                    if (!rs.next()) throw new SQLException("A sequence de receitas devolveu menos IDs que o pedido.");
+                    ids[i] = rs.getLong(1);
+                }
+            }
+        }
+        return ids;
+    }
+
+    private static void copiar(CopyManager copy, String sql, StringBuilder linhas) throws SQLException, IOException {
+        if (linhas.length() == 0) return;
+        copy.copyIn(sql, new StringReader(linhas.toString()));
+    }
+
+    /**
+     * Escreve um campo no formato texto do COPY: \N para nulo e barra, tabulao e quebras de linha escapadas.
+     */
+    private static StringBuilder texto(StringBuilder linha, String valor) {
+        if (valor == null) return linha.append("\\N");
+        for (int i = 0; i < valor.length(); i++) {
+            char c = valor.charAt(i);
+            switch (c) {
+                case '\\': linha.append("\\\\"); break;
+                case '\t': linha.append("\\t"); break;
+                case '\n': linha.append("\\n"); break;
+                case '\r': linha.append("\\r"); break;
+                default: linha.append(c);
+            }
+        }
+        return linha;
+    }
+
+    /**
+     * Confere o registro contra as restries das tabelas, para que um nico registro ruim
+     * no derrube o lote inteiro no COPY.
+     * @return A mensagem de erro, ou null se a receita puder ser gravada.
+     */
+    static String validar(Receita receita) {
+        String erro = validarTexto("nome", receita.getNome(), TAMANHO_NOME, true);
+        if (erro == null) erro = validarTexto("descricao", receita.getDescricao(), Integer.MAX_VALUE, false);
+        if (erro == null) erro = validarTexto("dificuldade", receita.getDificuldade(), TAMANHO_DIFICULDADE, false);
+        if (erro != null) return erro;
+
+        if (receita.getIngredientes() != null) {
+            for (Ingrediente ingrediente : receita.getIngredientes()) {
+                if (ingrediente == null) return "Ingrediente nulo.";
+                erro = validarTexto("ingrediente.nome", ingrediente.getNome(), TAMANHO_NOME, true);
+                if (erro == null) erro = validarTexto("ingrediente.unidade", ingrediente.getUnidade(), TAMANHO_UNIDADE, false);
+                if (erro == null && (Double.isNaN(ingrediente.getQuantidade()) || Double.isInfinite(ingrediente.getQuantidade()))) {
+                    erro = "Quantidade invlida no ingrediente " + ingrediente.getNome() + ".";
+                }
+                if (erro != null) return erro;
+            }
+        }
+        if (receita.getPassos() != null) {
+            for (Passo passo : receita.getPassos()) {
+                if (passo == null) return "Passo nulo.";
+                erro = validarTexto("passo.descricao", passo.getDescricao(), Integer.MAX_VALUE, true);
+                if (erro != null) return erro;
+            }
+        }
+        return null;
+    }
+
+    private static String validarTexto(String campo, String valor, int tamanhoMaximo, boolean obrigatorio) {
+        if (valor == null || valor.trim().isEmpty()) {
+            return obrigatorio ? "Campo obrigatrio ausente: " + campo + "." : null;
+        }
+        if (valor.length() > tamanhoMaximo) {
+            return "Campo " + campo + " excede " + tamanhoMaximo + " caracteres.";
+        }
+        if (valor.indexOf('\0') >= 0) {
+            return "Campo " + campo + " contm caractere nulo.";
+        }
+        return null;
+    }
+}
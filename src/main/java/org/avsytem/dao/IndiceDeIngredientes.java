@@ -0,0 +1,226 @@
+package org.avsytem.dao;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.roaringbitmap.IntConsumer;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.text.Normalizer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * ndice em memria, por usurio, dos ingredientes de cada receita, usado pelo "o que d para cozinhar".
+ *
+ * Os nomes de ingrediente so normalizados (minsculas, sem acento, espaos simples) e codificados
+ * em inteiros por um dicionrio do usurio. Cada receita vira um RoaringBitmap com os cdigos dos
+ * seus ingredientes, e cada ingrediente tem a lista invertida (tambm um RoaringBitmap) das receitas
+ * que o usam. A busca percorre s as listas invertidas dos ingredientes disponveis, contando quantos
+ * deles cada receita usa, sem nenhuma consulta ao banco. O bitmap da receita s  usado para listar
+ * os ingredientes que faltam nas sugestes devolvidas.
+ *
+ * O ndice de um usurio  montado do banco na primeira consulta (ReceitaDAO.sugerir) e, a partir da,
+ * mantido pelas escritas do ReceitaDAO. ndices sem uso so descartados depois de um tempo.
+ */
+class IndiceDeIngredientes {
+
+    private static final Pattern ACENTOS = Pattern.compile("\\p{M}+");
+    private static final Pattern ESPACOS = Pattern.compile("\\s+");
+
+    private final Cache<Integer, DoUsuario> porUsuario = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterAccess(30, TimeUnit.MINUTES)
+            .build();
+
+    /**
+     * @return O ndice do usurio, ou null se ainda no foi montado (ou foi descartado).
+     */
+    DoUsuario obter(int usuarioId) {
+        return porUsuario.getIfPresent(usuarioId);
+    }
+
+    void instalar(int usuarioId, DoUsuario indice) {
+        porUsuario.put(usuarioId, indice);
+    }
+
+    /**
+     * Remove o ndice do usurio, mas s se ainda for o informado (ou qualquer um, se indice == null).
+     */
+    void descartar(int usuarioId, DoUsuario indice) {
+        if (indice == null) {
+            porUsuario.invalidate(usuarioId);
+        } else {
+            porUsuario.asMap().remove(usuarioId, indice);
+        }
+    }
+
+    /**
+     * Remove os ndices de todos os usurios (avisos de escritas de outros ns perdidos).
+     */
+    void descartarTodos() {
+        porUsuario.invalidateAll();
+    }
+
+    void receitaGravada(int usuarioId, int receitaId, String nome, Collection<String> ingredientes) {
+        DoUsuario indice = porUsuario.getIfPresent(usuarioId);
+        if (indice != null) {
+            indice.gravar(receitaId, nome, ingredientes);
+        }
+    }
+
+    void receitaRemovida(int usuarioId, int receitaId) {
+        DoUsuario indice = porUsuario.getIfPresent(usuarioId);
+        if (indice != null) {
+            indice.remover(receitaId);
+        }
+    }
+
+    static String normalizar(String nome) {
+        if (nome == null) return "";
+        String semAcento = ACENTOS.matcher(Normalizer.normalize(nome, Normalizer.Form.NFD)).replaceAll("");
+        return ESPACOS.matcher(semAcento.trim()).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * O ndice de um usurio. Os mtodos so sincronizados: as consultas levam microssegundos,
+     * ento uma escrita nunca espera muito por elas, nem o contrrio.
+     */
+    static final class DoUsuario {
+
+        private final Map<String, Integer> dicionario = new HashMap<>();
+        // cdigo -> nome como foi cadastrado na primeira vez que apareceu
+        private final List<String> nomes = new ArrayList<>();
+        // cdigo -> posies (slots) das receitas que usam o ingrediente
+        private final List<RoaringBitmap> receitasPorIngrediente = new ArrayList<>();
+
+        private final Map<Integer, Integer> slotPorReceita = new HashMap<>();
+        private final List<ReceitaIndexada> receitas = new ArrayList<>();
+        private final Deque<Integer> slotsLivres = new ArrayDeque<>();
+
+        /**
+         * Inclui ou substitui a receita. Receitas sem ingredientes no entram: nunca seriam sugeridas.
+         */
+        synchronized void gravar(int receitaId, String nome, Collection<String> ingredientes) {
+            remover(receitaId);
+            if (ingredientes == null || ingredientes.isEmpty()) return;
+
+            RoaringBitmap codigos = new RoaringBitmap();
+            for (String ingrediente : ingredientes) {
+                String chave = normalizar(ingrediente);
+                if (chave.isEmpty()) continue;
+                Integer codigo = dicionario.get(chave);
+                if (codigo == null) {
+                    codigo = nomes.size();
+                    dicionario.put(chave, codigo);
+                    nomes.add(ingrediente.trim());
+                    receitasPorIngrediente.add(new RoaringBitmap());
+                }
+                codigos.add(codigo);
+            }
+            if (codigos.isEmpty()) return;
+            codigos.runOptimize();
+
+            Integer slot = slotsLivres.poll();
+            if (slot == null) {
+                slot = receitas.size();
+                receitas.add(null);
+            }
+            receitas.set(slot, new ReceitaIndexada(receitaId, nome, codigos, codigos.getCardinality()));
+            slotPorReceita.put(receitaId, slot);
+            for (IntIterator it = codigos.getIntIterator(); it.hasNext(); ) {
+                receitasPorIngrediente.get(it.next()).add(slot);
+            }
+        }
+
+        synchronized void remover(int receitaId) {
+            Integer slot = slotPorReceita.remove(receitaId);
+            if (slot == null) return;
+            ReceitaIndexada receita = receitas.set(slot, null);
+            for (IntIterator it = receita.ingredientes.getIntIterator(); it.hasNext(); ) {
+                receitasPorIngrediente.get(it.next()).remove(slot);
+            }
+            slotsLivres.push(slot);
+        }
+
+        /**
+         * @param disponiveis Os nomes dos ingredientes que o usurio tem.
+         * @param maximoFaltando Descarta receitas com mais ingredientes faltando que isso.
+         * @param limite Quantas sugestes devolver, no mximo.
+         * @return As receitas que usam ao menos um dos ingredientes, das que faltam menos para as que
+         *         faltam mais; no empate, a de maior cobertura e depois pelo nome.
+         */
+        synchronized List<SugestaoDeReceita> sugerir(Collection<String> disponiveis, int maximoFaltando, int limite) {
+            RoaringBitmap temEmMaos = new RoaringBitmap();
+            for (String nome : disponiveis) {
+                Integer codigo = dicionario.get(normalizar(nome));
+                if (codigo != null) temEmMaos.add(codigo);
+            }
+
+            // Cada lista invertida soma 1  contagem das receitas que usam o ingrediente
+            int[] presentesPorSlot = new int[receitas.size()];
+            for (IntIterator it = temEmMaos.getIntIterator(); it.hasNext(); ) {
+                receitasPorIngrediente.get(it.next()).forEach((IntConsumer) slot -> presentesPorSlot[slot]++);
+            }
+
+            List<Cobertura> coberturas = new ArrayList<>();
+            for (int slot = 0; slot < presentesPorSlot.length; slot++) {
+                int presentes = presentesPorSlot[slot];
+                if (presentes == 0) continue;
+                ReceitaIndexada receita = receitas.get(slot);
+                if (receita.total - presentes <= maximoFaltando) {
+                    coberturas.add(new Cobertura(receita, receita.total, presentes));
+                }
+            }
+            coberturas.sort(Comparator.comparingInt((Cobertura c) -> c.total - c.presentes)
+                    .thenComparing(Comparator.comparingDouble((Cobertura c) -> (double) c.presentes / c.total).reversed())
+                    .thenComparing(c -> c.receita.nome, Comparator.nullsLast(Comparator.naturalOrder())));
+
+            List<SugestaoDeReceita> sugestoes = new ArrayList<>(Math.min(limite, coberturas.size()));
+            for (Cobertura c : coberturas) {
+                if (sugestoes.size() == limite) break;
+                List<String> faltando = new ArrayList<>(c.total - c.presentes);
+                for (IntIterator it = RoaringBitmap.andNot(c.receita.ingredientes, temEmMaos).getIntIterator(); it.hasNext(); ) {
+                    faltando.add(nomes.get(it.next()));
+                }
+                sugestoes.add(new SugestaoDeReceita(c.receita.receitaId, c.receita.nome, c.total, c.presentes, faltando));
+            }
+            return sugestoes;
+        }
+    }
+
+    private static final class ReceitaIndexada {
+        private final int receitaId;
+        private final String nome;
+        private final RoaringBitmap ingredientes;
+        private final int total;
+
+        ReceitaIndexada(int receitaId, String nome, RoaringBitmap ingredientes, int total) {
+            this.receitaId = receitaId;
+            this.nome = nome;
+            this.ingredientes = ingredientes;
+            this.total = total;
+        }
+    }
+
+    private static final class Cobertura {
+        private final ReceitaIndexada receita;
+        private final int total;
+        private final int presentes;
+
+        Cobertura(ReceitaIndexada receita, int total, int presentes) {
+            this.receita = receita;
+            this.total = total;
+            this.presentes = presentes;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package org.avsytem.dao;
+
+import javax.sql.DataSource;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Modelo de leitura por documento (context-param leituraPorDocumento): a tabela receitas_doc guarda cada receita
+ * j montada em JSONB, no formato da listagem, e a listagem devolve o texto desses documentos sem montar objetos
+ * nem serializar de novo (ReceitaDAO.percorrerDocumentos e listarPaginaDeDocumentos).
+ *
+ * O documento  produzido pela funo documento_receita do banco, a partir das tabelas normalizadas, que continuam
+ * sendo a fonte da verdade:
+ * - as escritas do ReceitaDAO (e a importao) chamam gravar() na prpria transao, depois de escrever as linhas;
+ * - a remoo vem do ON DELETE CASCADE;
+ * - verificar() percorre todas as receitas em lotes, conta os documentos que faltam ou divergem do que a funo
+ *   produz hoje e, se pedido, os regrava:  a reconstruo dos dados que j existiam e a verificao peridica.
+ *
+ * Uma receita sem documento (gravada com o modo desligado, por exemplo) continua aparecendo na listagem: o
+ * documento  montado na hora pela mesma funo, at a verificao grav-lo.
+ */
+public class ModeloDeLeitura {
+
+    private static final Logger LOGGER = Logger.getLogger(ModeloDeLeitura.class.getName());
+
+    private static final String GRAVAR_DOCUMENTOS = "INSERT INTO receitas_doc (receita_id, documento) " +
+            "SELECT id, documento_receita(id) FROM receitas WHERE id = ANY(?) " +
+            "ON CONFLICT (receita_id) DO UPDATE SET documento = EXCLUDED.documento";
+
+    // Verificao por faixas de id: cada lote  uma consulta curta, sem segurar um snapshot da tabela inteira
+    private static final String FIM_DO_LOTE = "SELECT max(id) FROM (SELECT id FROM receitas WHERE id > ? ORDER BY id LIMIT ?) lote";
+    private static final String SELECT_DIVERGENTES = "SELECT r.id, d.receita_id IS NULL AS faltando " +
+            "FROM receitas r LEFT JOIN receitas_doc d ON d.receita_id = r.id " +
+            "WHERE r.id > ? AND r.id <= ? AND d.documento IS DISTINCT FROM documento_receita(r.id)";
+    // Trava as receitas como o update por diferena, para que a correo no grave um documento anterior a uma escrita concorrente
+    private static final String TRAVAR_RECEITAS = "SELECT id FROM receitas WHERE id = ANY(?) ORDER BY id FOR UPDATE";
+
+    static final int TAMANHO_LOTE = 1000;
+
+    private final DataSource dataSource;
+
+    private volatile Verificacao ultimaVerificacao;
+    private ScheduledExecutorService verificador;
+
+    /**
+     * @param dataSource O primrio: a verificao compara e corrige os documentos onde eles so escritos.
+     */
+    public ModeloDeLeitura(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Regrava, na transao do chamador, os documentos das receitas informadas a partir das linhas que ela j escreveu.
+     */
+    void gravar(Connection conn, Collection<Integer> receitaIds) throws SQLException {
+        if (receitaIds.isEmpty()) return;
+
+        Array ids = conn.createArrayOf("integer", receitaIds.toArray());
+        try (PreparedStatement ps = conn.prepareStatement(GRAVAR_DOCUMENTOS)) {
+            ps.setArray(1, ids);
+            ps.executeUpdate();
+        } finally {
+            ids.free();
+        }
+    }
+
+    /**
+     * Confere o documento de todas as receitas com o que documento_receita produz a partir das tabelas normalizadas.
+     * @param corrigir true para tambm gravar os que faltam e os divergentes (reconstruo), cada lote em sua transao.
+     * @return Os contadores da passada; tambm ficam em getUltimaVerificacao().
+     * @throws SQLException Se ocorrer um erro no banco de dados; os lotes j corrigidos continuam gravados.
+     */
+    public Verificacao verificar(boolean corrigir) throws SQLException {
+        long inicio = System.nanoTime();
+        Verificacao verificacao = new Verificacao();
+        try (Connection conn = dataSource.getConnection()) {
+            int aposId = 0;
+            while (!Thread.currentThread().isInterrupted()) {
+                int fim;
+                try (PreparedStatement ps = conn.prepareStatement(FIM_DO_LOTE)) {
+                    ps.setInt(1, aposId);
+                    ps.setInt(2, TAMANHO_LOTE);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        rs.next();
+                        fim = rs.getInt(1);
+                        if (rs.wasNull()) break;
+                    }
+                }
+
+                List<Integer> divergentes = new ArrayList<>();
+                try (PreparedStatement ps = conn.prepareStatement(SELECT_DIVERGENTES)) {
+                    ps.setInt(1, aposId);
+                    ps.setInt(2, fim);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            divergentes.add(rs.getInt("id"));
+                            if (rs.getBoolean("faltando")) {
+                                verificacao.faltando++;
+                            } else {
+                                verificacao.divergentes++;
+                            }
+                        }
+                    }
+                }
+                if (corrigir && !divergentes.isEmpty()) {
+                    verificacao.corrigidos += corrigir(conn, divergentes);
+                }
+                verificacao.ultimoId = fim;
+                aposId = fim;
+            }
+        }
+        verificacao.duracaoMillis = (System.nanoTime() - inicio) / 1_000_000;
+        ultimaVerificacao = verificacao;
+        LOGGER.log(verificacao.faltando + verificacao.divergentes > 0 ? Level.WARNING : Level.INFO,
+                "Verificao dos documentos de receitas: {0}", verificacao);
+        return verificacao;
+    }
+
+    /**
+     * Agenda verificar(true) em segundo plano: logo em seguida (reconstri o que faltar, como na primeira subida
+     * com o modo ligado) e, se intervaloMillis > 0, repetida com esse intervalo entre o fim de uma e o incio da outra.
+     */
+    public synchronized void verificarPeriodicamente(long intervaloMillis) {
+        if (verificador != null) return;
+        verificador = Executors.newSingleThreadScheduledExecutor(tarefa -> {
+            Thread thread = new Thread(tarefa, "verificador-de-documentos");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Runnable tarefa = () -> {
+            try {
+                verificar(true);
+            } catch (SQLException e) {
+                LOGGER.log(Level.WARNING, "Falha ao verificar os documentos de receitas; a listagem segue montando os que faltarem.", e);
+            }
+        };
+        if (intervaloMillis > 0) {
+            verificador.scheduleWithFixedDelay(tarefa, 0, intervaloMillis, TimeUnit.MILLISECONDS);
+        } else {
+            verificador.execute(tarefa);
+        }
+    }
+
+    /**
+     * Interrompe a verificao em andamento (o lote corrente termina ou  desfeito) e cancela as prximas.
+     */
+    public synchronized void close() {
+        if (verificador != null) {
+            verificador.shutdownNow();
+        }
+    }
+
+    /**
+     * @return O resultado da ltima verificao concluda, ou null se nenhuma terminou ainda.
+     */
+    public Verificacao getUltimaVerificacao() {
+        return ultimaVerificacao;
+    }
+
+    // --- MTODOS PRIVADOS AUXILIARES ---
+
+    private int corrigir(Connection conn, List<Integer> receitaIds) throws SQLException {
+        boolean autoCommitOriginal = conn.getAutoCommit();
+        try {
+            conn.setAutoCommit(false);
+            List<Integer> existentes = new ArrayList<>();
+            Array ids = conn.createArrayOf("integer", receitaIds.toArray());
+            try (PreparedStatement ps = conn.prepareStatement(TRAVAR_RECEITAS)) {
+                ps.setArray(1, ids);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        existentes.add(rs.getInt(1));
+                    }
+                }
+            } finally {
+                ids.free();
+            }
+            gravar(conn, existentes);
+            conn.commit();
+            return existentes.size();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommitOriginal);
+        }
+    }
+
+    /**
+     * Contadores de uma passada de verificar().
+     */
+    public static class Verificacao {
+        private int faltando;
+        private int divergentes;
+        private int corrigidos;
+        private int ultimoId;
+        private long duracaoMillis;
+
+        /** @return Receitas sem documento. */
+        public int getFaltando() {
+            return faltando;
+        }
+
+        /** @return Receitas cujo documento no corresponde mais s tabelas normalizadas. */
+        public int getDivergentes() {
+            return divergentes;
+        }
+
+        /** @return Documentos gravados pela passada (0 sem corrigir). */
+        public int getCorrigidos() {
+            return corrigidos;
+        }
+
+        public long getDuracaoMillis() {
+            return duracaoMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "Verificacao{faltando=" + faltando + ", divergentes=" + divergentes + ", corrigidos=" + corrigidos
+                    + ", ateId=" + ultimoId + ", duracaoMillis=" + duracaoMillis + '}';
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package org.avsytem.dao;
+
+import org.avsytem.model.Receita;
+
+/**
+ * Colunas pelas quais a listagem paginada de receitas pode ser ordenada.
+ * Funciona como lista branca: o nome vindo do cliente nunca  concatenado no SQL,
+ * apenas a expresso fixa associada a cada constante.
+ * Colunas que aceitam NULL so ordenadas via COALESCE para que a comparao de
+ * tuplas do keyset ((chave, id) > (?, ?)) nunca descarte linhas.
+ */
+public enum OrdenacaoReceita {
+
+    NOME("nome", "nome", false) {
+        @Override
+        Object chave(Receita receita) {
+            return receita.getNome();
+        }
+    },
+    DIFICULDADE("dificuldade", "COALESCE(dificuldade, '')", false) {
+        @Override
+        Object chave(Receita receita) {
+            return receita.getDificuldade() == null ? "" : receita.getDificuldade();
+        }
+    },
+    TEMPO_PREPARO("tempoDePreparo", "COALESCE(tempo_preparo_min, 0)", true) {
+        @Override
+        Object chave(Receita receita) {
+            return receita.getTempoDePreparo();
+        }
+    },
+    PORCOES("porcoes", "COALESCE(porcoes, 0)", true) {
+        @Override
+        Object chave(Receita receita) {
+            return receita.getPorcoes();
+        }
+    },
+    ID("id", "id", true) {
+        @Override
+        Object chave(Receita receita) {
+            return receita.getId();
+        }
+    };
+
+    private final String campo;
+    private final String expressaoSql;
+    private final boolean numerica;
+
+    OrdenacaoReceita(String campo, String expressaoSql, boolean numerica) {
+        this.campo = campo;
+        this.expressaoSql = expressaoSql;
+        this.numerica = numerica;
+    }
+
+    /**
+     * Resolve o campo enviado pelo cliente (nome do campo no JSON ou da coluna no banco).
+     * @param campo O valor do parmetro 'sort'.
+     * @return A ordenao correspondente, ou NOME se o campo no estiver na lista branca.
+     */
+    public static OrdenacaoReceita deCampo(String campo) {
+        if (campo != null) {
+            for (OrdenacaoReceita ordenacao : values()) {
+                if (ordenacao.campo.equals(campo) || ordenacao.name().equalsIgnoreCase(campo)) {
+                    return ordenacao;
+                }
+            }
+            if ("tempo_preparo_min".equals(campo)) return TEMPO_PREPARO;
+        }
+        return NOME;
+    }
+
+    String getExpressaoSql() {
+        return expressaoSql;
+    }
+
+    /**
+     * Converte o valor textual do cursor para o tipo da coluna.
+     */
+    Object converterValor(String valor) {
+        return numerica ? (Object) Integer.valueOf(valor) : valor;
+    }
+
+    /**
+     * Valor da chave de ordenao de uma receita, equivalente  expresso SQL.
+     */
+    abstract Object chave(Receita receita);
+}
@@ -0,0 +1,46 @@
+package org.avsytem.dao;
+
+import java.util.List;
+
+/**
+ * Uma pgina da listagem no modelo de leitura por documento: os mesmos total e cursor de PaginaReceitas,
+ * mas com cada receita j em JSON (UTF-8), pronta para ser copiada na resposta.
+ */
+public class PaginaDeDocumentos {
+
+    private final List<byte[]> documentos;
+    private final int total;
+    private final String proximoCursor;
+
+    public PaginaDeDocumentos(List<byte[]> documentos, int total, String proximoCursor) {
+        this.documentos = documentos;
+        this.total = total;
+        this.proximoCursor = proximoCursor;
+    }
+
+    public List<byte[]> getDocumentos() {
+        return documentos;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * @return O cursor da prxima pgina, ou null se esta pgina no estiver cheia.
+     */
+    public String getProximoCursor() {
+        return proximoCursor;
+    }
+
+    /**
+     * @return A soma do tamanho dos documentos, em bytes.
+     */
+    public long getBytes() {
+        long bytes = 0;
+        for (byte[] documento : documentos) {
+            bytes += documento.length;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,38 @@
+package org.avsytem.dao;
+
+import org.avsytem.model.Receita;
+
+import java.util.List;
+
+/**
+ * Resultado de uma consulta paginada de receitas.
+ * Alm das receitas da pgina, carrega o total do usurio (para o PagingToolbar)
+ * e o cursor que aponta para a ltima receita da pgina, usado para buscar a prxima.
+ */
+public class PaginaReceitas {
+
+    private final List<Receita> receitas;
+    private final int total;
+    private final String proximoCursor;
+
+    public PaginaReceitas(List<Receita> receitas, int total, String proximoCursor) {
+        this.receitas = receitas;
+        this.total = total;
+        this.proximoCursor = proximoCursor;
+    }
+
+    public List<Receita> getReceitas() {
+        return receitas;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * @return O cursor da prxima pgina, ou null se esta pgina no estiver cheia.
+     */
+    public String getProximoCursor() {
+        return proximoCursor;
+    }
+}
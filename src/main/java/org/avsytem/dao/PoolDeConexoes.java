@@ -0,0 +1,159 @@
+package org.avsytem.dao;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import org.avsytem.metricas.Contador;
+import org.avsytem.metricas.Histograma;
+import org.avsytem.metricas.Metricas;
+import org.postgresql.ds.PGSimpleDataSource;
+
+import javax.sql.DataSource;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+/**
+ * Pool de conexes gerenciado pela prpria aplicao (HikariCP), alternativa ao jdbc/PostgresDB do Tomcat
+ * quando se quer ajustar e observar o pool a partir do web.xml (context-param poolDeConexoes=aplicacao).
+ *
+ * - Emprstimo e devoluo sem lock: cada thread tenta primeiro as conexes que ela mesma devolveu e depois
+ *   disputa as ociosas por CAS; s quem encontra o pool vazio espera, at poolEsperaMaximaMillis.
+ * - Cache de PreparedStatement por conexo: feito pelo prprio pgjdbc, que guarda por conexo os
+ *   statements preparados no servidor, indexados pelo texto do SQL. Como os DAOs usam SQL constante,
+ *   o prepareStatement() repetido a cada chamada reaproveita o plano j preparado (poolPrepararApos
+ *   execues do mesmo SQL) em vez de fazer o parse de novo no banco.
+ * - Validao e keepalive: a conexo ociosa h mais de meio segundo  validada (isValid) antes de ser
+ *   entregue; as ociosas so testadas a cada poolKeepaliveMillis e todas so renovadas antes de poolVidaMaximaMillis.
+ * - Vazamento: conexo emprestada por mais de poolVazamentoMillis gera um aviso no log com a pilha de quem
+ *   a pegou (capturada no emprstimo). Nada  fechado  fora; exportaes longas podem disparar o aviso.
+ *
+ * A aplicao sobe mesmo com o banco fora do ar: as conexes so abertas quando ele voltar.
+ */
+public final class PoolDeConexoes implements AutoCloseable {
+
+    private final HikariDataSource dataSource;
+
+    /**
+     * @param nome Identifica o pool nos logs e no rtulo "pool" das mtricas (ex.: primario, replica1).
+     * @param parametro L uma configurao pelo nome (poolUrl, poolMaximo...), devolvendo null se ausente.
+     */
+    public PoolDeConexoes(String nome, UnaryOperator<String> parametro) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("receitas-" + nome);
+        config.setDriverClassName("org.postgresql.Driver");
+        config.setJdbcUrl(texto(parametro, "poolUrl", "jdbc:postgresql://localhost:5432/postgres"));
+        config.setUsername(texto(parametro, "poolUsuario", "postgres"));
+        config.setPassword(texto(parametro, "poolSenha", ""));
+
+        int maximo = inteiro(parametro, "poolMaximo", 20);
+        config.setMaximumPoolSize(maximo);
+        config.setMinimumIdle(Math.min(maximo, inteiro(parametro, "poolMinimoOcioso", 10)));
+        config.setConnectionTimeout(inteiro(parametro, "poolEsperaMaximaMillis", 10000));
+        config.setValidationTimeout(inteiro(parametro, "poolValidacaoMillis", 3000));
+        config.setKeepaliveTime(inteiro(parametro, "poolKeepaliveMillis", 120000));
+        config.setIdleTimeout(inteiro(parametro, "poolOciosaMillis", 600000));
+        config.setMaxLifetime(inteiro(parametro, "poolVidaMaximaMillis", 1800000));
+        config.setLeakDetectionThreshold(inteiro(parametro, "poolVazamentoMillis", 60000));
+        // No derruba a aplicao se o banco estiver indisponvel na subida
+        config.setInitializationFailTimeout(-1);
+
+        // Cache de statements do pgjdbc, por conexo
+        config.addDataSourceProperty("prepareThreshold", texto(parametro, "poolPrepararApos", "1"));
+        config.addDataSourceProperty("preparedStatementCacheQueries", texto(parametro, "poolStatementsPorConexao", "256"));
+        config.addDataSourceProperty("preparedStatementCacheSizeMiB", texto(parametro, "poolStatementsMiB", "5"));
+
+        config.setMetricsTrackerFactory(new Telemetria(nome));
+        this.dataSource = new HikariDataSource(config);
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * Conexes abertas fora do pool, com a mesma URL e credenciais, para quem segura uma conexo indefinidamente
+     * (o ouvinte do feed de alteraes) sem ocupar uma vaga do pool nem disparar o aviso de vazamento.
+     */
+    public DataSource getDataSourceDedicado() {
+        PGSimpleDataSource dedicado = new PGSimpleDataSource();
+        dedicado.setURL(dataSource.getJdbcUrl());
+        dedicado.setUser(dataSource.getUsername());
+        dedicado.setPassword(dataSource.getPassword());
+        return dedicado;
+    }
+
+    /**
+     * @return Quantas conexes esto emprestadas agora.
+     */
+    public int getAtivas() {
+        return dataSource.getHikariPoolMXBean().getActiveConnections();
+    }
+
+    /**
+     * @return Uma descrio curta da configurao, para o log de inicializao.
+     */
+    public String getDescricao() {
+        return dataSource.getJdbcUrl() + " (mximo " + dataSource.getMaximumPoolSize() + " conexes, espera at "
+                + dataSource.getConnectionTimeout() + " ms, aviso de vazamento aps " + dataSource.getLeakDetectionThreshold() + " ms)";
+    }
+
+    /**
+     * Fecha as conexes ociosas e espera as emprestadas serem devolvidas (o HikariCP aborta as que
+     * continuarem emprestadas depois de alguns segundos). Chamado no contextDestroyed.
+     */
+    @Override
+    public void close() {
+        dataSource.close();
+    }
+
+    private static String texto(UnaryOperator<String> parametro, String nome, String padrao) {
+        String valor = parametro.apply(nome);
+        return valor == null || valor.trim().isEmpty() ? padrao : valor.trim();
+    }
+
+    private static int inteiro(UnaryOperator<String> parametro, String nome, int padrao) {
+        return Integer.parseInt(texto(parametro, nome, Integer.toString(padrao)));
+    }
+
+    /**
+     * Publica o estado do pool no /metrics. O HikariCP chama create() uma vez, na criao do pool.
+     */
+    private static final class Telemetria implements MetricsTrackerFactory {
+
+        private final String nome;
+
+        Telemetria(String nome) {
+            this.nome = nome;
+        }
+
+        @Override
+        public IMetricsTracker create(String poolName, PoolStats estado) {
+            Metricas.medidor("receitas_pool_conexoes", "Conexes do pool da aplicao, por estado.",
+                    estado::getActiveConnections, "pool", nome, "estado", "ativas");
+            Metricas.medidor("receitas_pool_conexoes", "Conexes do pool da aplicao, por estado.",
+                    estado::getIdleConnections, "pool", nome, "estado", "ociosas");
+            Metricas.medidor("receitas_pool_threads_aguardando", "Threads esperando uma conexo do pool da aplicao.",
+                    estado::getPendingThreads, "pool", nome);
+            Metricas.medidor("receitas_pool_conexoes_maximo", "Tamanho mximo do pool da aplicao.",
+                    estado::getMaxConnections, "pool", nome);
+
+            Histograma uso = Metricas.histograma("receitas_pool_uso_segundos",
+                    "Tempo entre o emprstimo e a devoluo de cada conexo do pool da aplicao.", "pool", nome);
+            Contador esgotado = Metricas.contador("receitas_pool_esgotado_total",
+                    "Pedidos que desistiram aps esperar poolEsperaMaximaMillis por uma conexo.", "pool", nome);
+            return new IMetricsTracker() {
+                @Override
+                public void recordConnectionUsageMillis(long millis) {
+                    uso.registrar(TimeUnit.MILLISECONDS.toNanos(millis));
+                }
+
+                @Override
+                public void recordConnectionTimeout() {
+                    esgotado.incrementar();
+                }
+            };
+        }
+    }
+}
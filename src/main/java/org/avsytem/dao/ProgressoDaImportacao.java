@@ -0,0 +1,15 @@
+package org.avsytem.dao;
+
+import java.io.IOException;
+
+/**
+ * Avisado pelo ReceitaDAO.importar a cada lote gravado (ou recusado) pelo banco.
+ */
+public interface ProgressoDaImportacao {
+
+    /**
+     * @param parcial Os contadores acumulados at aqui. A instncia continua sendo atualizada
+     *                pelo DAO depois que o mtodo retorna, ento no deve ser retida.
+     */
+    void loteConcluido(ResultadoImportacao parcial) throws IOException;
+}
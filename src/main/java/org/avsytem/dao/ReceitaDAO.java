@@ -1,19 +1,32 @@
 package org.avsytem.dao;
 
+import org.avsytem.metricas.MetodoMedido;
 import org.avsytem.model.Ingrediente;
 import org.avsytem.model.Passo;
 import org.avsytem.model.Receita;
 
 import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.Array;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -33,23 +46,130 @@ public class ReceitaDAO {
 
     private static final String UPDATE_RECEITA = "UPDATE receitas SET nome = ?, descricao = ?, tempo_preparo_min = ?, porcoes = ?, dificuldade = ? WHERE id = ?";
 
-    private static final String DELETE_RECEITA = "DELETE FROM receitas WHERE id = ?";
-    private static final String DELETE_INGREDIENTES_BY_RECEITA_ID = "DELETE FROM ingredientes WHERE receita_id = ?";
-    private static final String DELETE_PASSOS_BY_RECEITA_ID = "DELETE FROM passos WHERE receita_id = ?";
+    private static final String DELETE_RECEITA = "DELETE FROM receitas WHERE id = ? AND usuario_id = ?";
+    private static final String DELETE_RECEITAS_BY_IDS = "DELETE FROM receitas WHERE id = ANY(?) AND usuario_id = ? RETURNING id";
+    private static final String DELETE_INGREDIENTES_BY_IDS = "DELETE FROM ingredientes WHERE id = ANY(?)";
+    private static final String DELETE_PASSOS_BY_IDS = "DELETE FROM passos WHERE id = ANY(?)";
 
-    private static final String SELECT_ALL_RECEITAS_JOINED = "SELECT " +
-            "r.id AS receita_id, r.nome AS receita_nome, r.descricao AS receita_descricao, " +
-            "r.tempo_preparo_min, r.porcoes, r.dificuldade, " +
-            "i.nome AS ingrediente_nome, i.quantidade, i.unidade, " +
-            "p.ordem AS passo_ordem, p.descricao AS passo_descricao " +
-            "FROM receitas r " +
-            "LEFT JOIN ingredientes i ON r.id = i.receita_id " +
-            "LEFT JOIN passos p ON r.id = p.receita_id " +
-            "WHERE r.usuario_id = ? " +
-            "ORDER BY r.nome ASC, p.ordem ASC";
+    // Queries do update por diferena
+    private static final String SELECT_RECEITA_PARA_ATUALIZAR = "SELECT id, nome, descricao, tempo_preparo_min, porcoes, dificuldade " +
+            "FROM receitas WHERE id = ? AND usuario_id = ? FOR UPDATE";
+    private static final String SELECT_INGREDIENTES_BY_RECEITA_ID = "SELECT id, nome, quantidade, unidade FROM ingredientes WHERE receita_id = ? ORDER BY id ASC";
+    private static final String SELECT_PASSOS_BY_RECEITA_ID = "SELECT id, ordem, descricao FROM passos WHERE receita_id = ? ORDER BY ordem ASC, id ASC";
+    private static final String UPDATE_INGREDIENTE = "UPDATE ingredientes SET nome = ?, quantidade = ?, unidade = ? WHERE id = ?";
+    private static final String UPDATE_PASSO = "UPDATE passos SET ordem = ?, descricao = ? WHERE id = ?";
+
+    // Queries do update por diferena em lote: travadas em ordem de id para no haver deadlock entre lotes
+    private static final String SELECT_RECEITAS_PARA_ATUALIZAR_EM_LOTE = "SELECT id, nome, descricao, tempo_preparo_min, porcoes, dificuldade " +
+            "FROM receitas WHERE id = ANY(?) AND usuario_id = ? ORDER BY id ASC FOR UPDATE";
+    private static final String SELECT_INGREDIENTES_COM_ID_BY_RECEITA_IDS = "SELECT id, receita_id, nome, quantidade, unidade " +
+            "FROM ingredientes WHERE receita_id = ANY(?) ORDER BY receita_id ASC, id ASC";
+    private static final String SELECT_PASSOS_COM_ID_BY_RECEITA_IDS = "SELECT id, receita_id, ordem, descricao " +
+            "FROM passos WHERE receita_id = ANY(?) ORDER BY receita_id ASC, ordem ASC, id ASC";
+
+    private static final String SELECT_RECEITAS_BY_USUARIO = "SELECT id, nome, descricao, tempo_preparo_min, porcoes, dificuldade " +
+            "FROM receitas WHERE usuario_id = ? ORDER BY nome ASC, id ASC";
+    private static final String SELECT_INGREDIENTES_BY_RECEITA_IDS = "SELECT receita_id, nome, quantidade, unidade " +
+            "FROM ingredientes WHERE receita_id = ANY(?) ORDER BY receita_id ASC, id ASC";
+    private static final String SELECT_PASSOS_BY_RECEITA_IDS = "SELECT receita_id, ordem, descricao " +
+            "FROM passos WHERE receita_id = ANY(?) ORDER BY receita_id ASC, ordem ASC, id ASC";
+    private static final String COUNT_RECEITAS_BY_USUARIO = "SELECT COUNT(*) FROM receitas WHERE usuario_id = ?";
+    private static final String SELECT_RECEITAS_BY_IDS = "SELECT id, nome, descricao, tempo_preparo_min, porcoes, dificuldade " +
+            "FROM receitas WHERE id = ANY(?) AND usuario_id = ? ORDER BY id ASC";
+
+    // Sincronizao incremental (Files/ConfigureDatabase.sql): versao  o ID da transao que gravou a receita, e a
+    // marca devolvida  o xmin do snapshot da leitura, abaixo do qual no h mais transao em andamento
+    private static final String SELECT_MARCA_DE_SINCRONIZACAO = "SELECT pg_snapshot_xmin(pg_current_snapshot())::text::int8, " +
+            "(SELECT versao_minima FROM receitas_sincronizacao)";
+    private static final String SELECT_RECEITAS_ALTERADAS = "SELECT id, nome, descricao, tempo_preparo_min, porcoes, dificuldade " +
+            "FROM receitas WHERE usuario_id = ? AND versao >= ? ORDER BY id ASC";
+    private static final String SELECT_RECEITAS_REMOVIDAS = "SELECT receita_id FROM receitas_removidas " +
+            "WHERE usuario_id = ? AND versao >= ? ORDER BY receita_id ASC";
+    private static final String EXPURGAR_REMOCOES = "WITH expurgadas AS (" +
+            "DELETE FROM receitas_removidas WHERE removida_em < CURRENT_TIMESTAMP - make_interval(days => ?) RETURNING versao) " +
+            "UPDATE receitas_sincronizacao SET versao_minima = GREATEST(versao_minima, (SELECT MAX(versao) + 1 FROM expurgadas)) " +
+            "RETURNING (SELECT COUNT(*) FROM expurgadas)";
+
+    // Queries do streaming: as trs usam a mesma ordenao (nome, id) para permitir o merge dos cursores
+    private static final String SELECT_INGREDIENTES_BY_USUARIO = "SELECT i.receita_id, i.nome, i.quantidade, i.unidade " +
+            "FROM ingredientes i JOIN receitas r ON r.id = i.receita_id " +
+            "WHERE r.usuario_id = ? ORDER BY r.nome ASC, r.id ASC, i.id ASC";
+    private static final String SELECT_PASSOS_BY_USUARIO = "SELECT p.receita_id, p.ordem, p.descricao " +
+            "FROM passos p JOIN receitas r ON r.id = p.receita_id " +
+            "WHERE r.usuario_id = ? ORDER BY r.nome ASC, r.id ASC, p.ordem ASC, p.id ASC";
+
+    // Queries da exportao: ordenadas por id para que uma exportao interrompida possa ser retomada
+    private static final String SELECT_RECEITAS_PARA_EXPORTACAO = "SELECT id, nome, descricao, tempo_preparo_min, porcoes, dificuldade " +
+            "FROM receitas WHERE usuario_id = ? AND id > ? ORDER BY id ASC";
+    private static final String SELECT_INGREDIENTES_PARA_EXPORTACAO = "SELECT i.receita_id, i.nome, i.quantidade, i.unidade " +
+            "FROM ingredientes i JOIN receitas r ON r.id = i.receita_id " +
+            "WHERE r.usuario_id = ? AND r.id > ? ORDER BY i.receita_id ASC, i.id ASC";
+    private static final String SELECT_PASSOS_PARA_EXPORTACAO = "SELECT p.receita_id, p.ordem, p.descricao " +
+            "FROM passos p JOIN receitas r ON r.id = p.receita_id " +
+            "WHERE r.usuario_id = ? AND r.id > ? ORDER BY p.receita_id ASC, p.ordem ASC, p.id ASC";
+    private static final String COUNT_RECEITAS_PARA_EXPORTACAO = "SELECT COUNT(*) FROM receitas WHERE usuario_id = ? AND id > ?";
+
+    // Busca textual: a pgina  escolhida pelo ndice GIN e s as receitas da pgina passam pelo ts_headline
+    private static final String OPCOES_DESTAQUE = "'StartSel=' || chr(1) || ', StopSel=' || chr(2)";
+    private static final String BUSCAR_RECEITAS = "SELECT r.id, r.nome, r.descricao, r.tempo_preparo_min, r.porcoes, r.dificuldade, e.relevancia, e.total, " +
+            "ts_headline('portuguese', r.nome, e.consulta, " + OPCOES_DESTAQUE + " || ', HighlightAll=true') AS destaque_nome, " +
+            "ts_headline('portuguese', coalesce(r.descricao, ''), e.consulta, " + OPCOES_DESTAQUE + " || ', MaxFragments=2, MaxWords=20, MinWords=8') AS destaque_trecho " +
+            "FROM (SELECT r.id, ts_rank_cd(r.busca, q.consulta) AS relevancia, COUNT(*) OVER () AS total, q.consulta " +
+            "      FROM receitas r, to_tsquery('portuguese', ?) AS q(consulta) " +
+            "      WHERE r.usuario_id = ? AND r.busca @@ q.consulta " +
+            "      ORDER BY relevancia DESC, r.id ASC LIMIT ? OFFSET ?) e " +
+            "JOIN receitas r ON r.id = e.id ORDER BY e.relevancia DESC, r.id ASC";
+    private static final String COUNT_BUSCA = "SELECT COUNT(*) FROM receitas WHERE usuario_id = ? AND busca @@ to_tsquery('portuguese', ?)";
+    static final int MAXIMO_TERMOS_BUSCA = 16;
+
+    // Modelo de leitura por documento: o JSON de receitas_doc (ou montado na hora, se ainda no houver) na ordem da listagem
+    private static final String DOCUMENTO = "COALESCE(d.documento, documento_receita(r.id))::text AS documento";
+    private static final String FROM_RECEITAS_COM_DOCUMENTO = "FROM receitas r LEFT JOIN receitas_doc d ON d.receita_id = r.id ";
+    private static final String SELECT_DOCUMENTOS_BY_USUARIO = "SELECT " + DOCUMENTO + " " + FROM_RECEITAS_COM_DOCUMENTO +
+            "WHERE r.usuario_id = ? ORDER BY r.nome ASC, r.id ASC";
+
+    // Carga do ndice de ingredientes ("o que d para cozinhar")
+    private static final String SELECT_INGREDIENTES_PARA_INDICE = "SELECT r.id, r.nome, i.nome AS ingrediente " +
+            "FROM receitas r JOIN ingredientes i ON i.receita_id = r.id WHERE r.usuario_id = ? ORDER BY r.id ASC";
+
+    // Quantidade de linhas trazidas por ida ao banco quando a leitura  feita por cursor
+    private static final int TAMANHO_LOTE_CURSOR = 200;
+
+    // Tempo e linhas lidas de cada mtodo pblico (receitas_dao_segundos / receitas_dao_linhas_lidas_total)
+    private static final MetodoMedido LISTAR = MetodoMedido.de("ReceitaDAO", "listar");
+    private static final MetodoMedido LISTAR_PAGINA = MetodoMedido.de("ReceitaDAO", "listarPagina");
+    private static final MetodoMedido LISTAR_POR_IDS = MetodoMedido.de("ReceitaDAO", "listarPorIds");
+    private static final MetodoMedido LISTAR_ALTERACOES = MetodoMedido.de("ReceitaDAO", "listarAlteracoes");
+    private static final MetodoMedido EXPURGAR = MetodoMedido.de("ReceitaDAO", "expurgarRemocoes");
+    private static final MetodoMedido LISTAR_PAGINA_DE_DOCUMENTOS = MetodoMedido.de("ReceitaDAO", "listarPaginaDeDocumentos");
+    private static final MetodoMedido PERCORRER_DOCUMENTOS = MetodoMedido.de("ReceitaDAO", "percorrerDocumentos");
+    private static final MetodoMedido BUSCAR = MetodoMedido.de("ReceitaDAO", "buscar");
+    private static final MetodoMedido PERCORRER = MetodoMedido.de("ReceitaDAO", "percorrer");
+    private static final MetodoMedido EXPORTAR = MetodoMedido.de("ReceitaDAO", "exportar");
+    private static final MetodoMedido ADICIONAR = MetodoMedido.de("ReceitaDAO", "adicionar");
+    private static final MetodoMedido ATUALIZAR = MetodoMedido.de("ReceitaDAO", "atualizar");
+    private static final MetodoMedido DELETAR = MetodoMedido.de("ReceitaDAO", "deletar");
+    private static final MetodoMedido SALVAR_EM_LOTE = MetodoMedido.de("ReceitaDAO", "salvarEmLote");
+    private static final MetodoMedido DELETAR_EM_LOTE = MetodoMedido.de("ReceitaDAO", "deletarEmLote");
+    private static final MetodoMedido IMPORTAR = MetodoMedido.de("ReceitaDAO", "importar");
+    private static final MetodoMedido SUGERIR = MetodoMedido.de("ReceitaDAO", "sugerir");
 
 
     private final DataSource dataSource;
+    // Com rplicas de leitura, os mtodos que s leem vo para elas (null: tudo no dataSource)
+    private final DataSourceComReplicas replicas;
+    // Com o modelo de leitura por documento, as escritas tambm regravam receitas_doc (null: s as tabelas normalizadas)
+    private final ModeloDeLeitura documentos;
+    // Com o feed de alteraes, as escritas emitem NOTIFY no CanalDeAlteracoes (false: nenhum aviso)
+    private final boolean avisarAlteracoes;
+
+    // Verso das receitas de cada usurio neste processo, avanada a cada escrita feita por este DAO
+    private final ConcurrentMap<Integer, AtomicLong> versoes = new ConcurrentHashMap<>();
+    // Somada  verso de todos os usurios; avana quando os avisos de escritas de outros ns se perderam
+    private final AtomicLong geracao = new AtomicLong();
+
+    // ndice em memria dos ingredientes, mantido pelas escritas deste DAO
+    private final IndiceDeIngredientes indiceDeIngredientes = new IndiceDeIngredientes();
 
     /**
      * Construtor que recebe o DataSource. A injeo do DataSource
@@ -57,181 +177,1193 @@ public class ReceitaDAO {
      * @param dataSource O pool de conexes a ser usado.
      */
     public ReceitaDAO(DataSource dataSource) {
+        this(dataSource, null);
+    }
+
+    /**
+     * @param dataSource O pool de conexes a ser usado.
+     * @param documentos O modelo de leitura por documento, mantido por todas as escritas deste DAO; null para deslig-lo.
+     */
+    public ReceitaDAO(DataSource dataSource, ModeloDeLeitura documentos) {
+        this(dataSource, documentos, false);
+    }
+
+    /**
+     * @param dataSource O pool de conexes a ser usado.
+     * @param documentos O modelo de leitura por documento, mantido por todas as escritas deste DAO; null para deslig-lo.
+     * @param avisarAlteracoes true para que cada escrita avise, na prpria transao, as receitas alteradas (CanalDeAlteracoes).
+     */
+    public ReceitaDAO(DataSource dataSource, ModeloDeLeitura documentos, boolean avisarAlteracoes) {
         this.dataSource = dataSource;
+        this.replicas = dataSource instanceof DataSourceComReplicas ? (DataSourceComReplicas) dataSource : null;
+        this.documentos = documentos;
+        this.avisarAlteracoes = avisarAlteracoes;
     }
 
     /**
-     * Lista todas as receitas de um usurio especfico. A estrutura foi ajustada
-     * para garantir que o parmetro do usurio seja definido ANTES da execuo da query.
+     * Lista todas as receitas de um usurio especfico.
+     * Em vez de um nico JOIN (que gera o produto cartesiano ingredientes x passos),
+     * executa uma query para as receitas e uma query em lote (receita_id = ANY(?))
+     * para cada tabela filha, montando o resultado em uma nica passada.
      * @param usuarioId O ID do usurio.
-     * @return Uma lista de receitas do usurio.
+     * @return Uma lista de receitas do usurio, ordenada por nome.
      * @throws SQLException
      */
     public List<Receita> listar(int usuarioId) throws SQLException {
-        Map<Integer, Receita> mapaDeReceitas = new LinkedHashMap<>();
-
-        // A query agora est aqui para maior clareza
-        String sql = "SELECT " +
-                "r.id AS receita_id, r.nome AS receita_nome, r.descricao AS receita_descricao, " +
-                "r.tempo_preparo_min, r.porcoes, r.dificuldade, " +
-                "i.nome AS ingrediente_nome, i.quantidade, i.unidade, " +
-                "p.ordem AS passo_ordem, p.descricao AS passo_descricao " +
-                "FROM receitas r " +
-                "LEFT JOIN ingredientes i ON r.id = i.receita_id " +
-                "LEFT JOIN passos p ON r.id = p.receita_id " +
-                "WHERE r.usuario_id = ? " + // Filtro por usurio
-                "ORDER BY r.nome ASC, p.ordem ASC";
-
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) { // 1. Prepara o statement
+        long inicio = System.nanoTime();
+        try {
+            Map<Integer, Receita> mapaDeReceitas = new LinkedHashMap<>();
 
-            stmt.setInt(1, usuarioId); // 2. Define o parmetro (O PASSO QUE FALTAVA)
-
-            try (ResultSet rs = stmt.executeQuery()) { // 3. Executa a query
-                while (rs.next()) {
-                    int receitaId = rs.getInt("receita_id");
-                    Receita receitaAtual = mapaDeReceitas.get(receitaId);
-
-                    if (receitaAtual == null) {
-                        receitaAtual = new Receita();
-                        receitaAtual.setId(receitaId);
-                        receitaAtual.setNome(rs.getString("receita_nome"));
-                        receitaAtual.setDescricao(rs.getString("receita_descricao"));
-                        receitaAtual.setTempoDePreparo(rs.getInt("tempo_preparo_min"));
-                        receitaAtual.setPorcoes(rs.getInt("porcoes"));
-                        receitaAtual.setDificuldade(rs.getString("dificuldade"));
-                        mapaDeReceitas.put(receitaId, receitaAtual);
-                    }
-
-                    // Lgica para ingredientes e passos permanece a mesma...
-                    if (rs.getString("ingrediente_nome") != null) {
-                        Ingrediente ingrediente = new Ingrediente(
-                                rs.getString("ingrediente_nome"),
-                                rs.getDouble("quantidade"),
-                                rs.getString("unidade")
-                        );
-                        if (!receitaAtual.getIngredientes().contains(ingrediente)) {
-                            receitaAtual.getIngredientes().add(ingrediente);
+            try (Connection conn = conexaoDeLeitura(usuarioId)) {
+                try (PreparedStatement stmt = conn.prepareStatement(SELECT_RECEITAS_BY_USUARIO)) {
+                    stmt.setInt(1, usuarioId);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            Receita receita = mapearReceita(rs);
+                            mapaDeReceitas.put(receita.getId(), receita);
                         }
                     }
+                }
+                carregarDetalhes(conn, mapaDeReceitas);
+            }
+            LISTAR.linhasLidas(contarLinhas(mapaDeReceitas.values()));
+            return new ArrayList<>(mapaDeReceitas.values());
+        } finally {
+            LISTAR.registrar(inicio);
+        }
+    }
+
+    /**
+     * Carrega algumas receitas do usurio pelo ID, com ingredientes e passos:  o que o cliente pede ao
+     * receber um aviso de alterao. L sempre do primrio, j que o aviso pode chegar antes de a rplica
+     * aplicar a escrita (feita, talvez, em outro n).
+     * @param usuarioId O ID do usurio.
+     * @param receitaIds Os IDs, no mximo ConsultaPaginada.LIMITE_MAXIMO.
+     * @return As receitas encontradas, em ordem de id; as inexistentes ou de outro usurio so omitidas.
+     * @throws IllegalArgumentException Se forem IDs demais.
+     * @throws SQLException Se ocorrer um erro no banco de dados.
+     */
+    public List<Receita> listarPorIds(int usuarioId, Collection<Integer> receitaIds) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            if (receitaIds.size() > ConsultaPaginada.LIMITE_MAXIMO) {
+                throw new IllegalArgumentException("No mximo " + ConsultaPaginada.LIMITE_MAXIMO + " receitas por consulta.");
+            }
+            Map<Integer, Receita> mapaDeReceitas = new LinkedHashMap<>();
+            if (receitaIds.isEmpty()) return new ArrayList<>();
 
-                    if (rs.getString("passo_descricao") != null) {
-                        Passo passo = new Passo(
-                                rs.getInt("passo_ordem"),
-                                rs.getString("passo_descricao")
-                        );
-                        if (!receitaAtual.getPassos().contains(passo)) {
-                            receitaAtual.getPassos().add(passo);
+            try (Connection conn = dataSource.getConnection()) {
+                Array ids = conn.createArrayOf("integer", receitaIds.toArray());
+                try (PreparedStatement stmt = conn.prepareStatement(SELECT_RECEITAS_BY_IDS)) {
+                    stmt.setArray(1, ids);
+                    stmt.setInt(2, usuarioId);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            Receita receita = mapearReceita(rs);
+                            mapaDeReceitas.put(receita.getId(), receita);
                         }
                     }
+                } finally {
+                    ids.free();
                 }
+                carregarDetalhes(conn, mapaDeReceitas);
             }
+            LISTAR_POR_IDS.linhasLidas(contarLinhas(mapaDeReceitas.values()));
+            return new ArrayList<>(mapaDeReceitas.values());
+        } finally {
+            LISTAR_POR_IDS.registrar(inicio);
         }
-        return new ArrayList<>(mapaDeReceitas.values());
     }
 
     /**
-     * Adiciona uma nova receita associada a um usurio.
-     * @param receita O objeto Receita a ser salvo.
+     * Sincronizao incremental: o que mudou nas receitas do usurio desde a verso que o cliente recebeu da ltima vez.
+     * O custo depende do volume de alteraes, no do total de receitas, graas aos ndices (usuario_id, versao) de
+     * receitas e receitas_removidas. Marca, receitas, detalhes e lpides so lidos no mesmo snapshot (REPEATABLE READ).
+     * @param usuarioId O ID do usurio.
+     * @param desde A verso devolvida pela sincronizao anterior; 0 (ou uma anterior ao ltimo expurgo das lpides)
+     *              devolve todas as receitas, com completa = true.
+     * @return As receitas criadas ou alteradas, os IDs das removidas e a verso para a prxima chamada.
      * @throws SQLException Se ocorrer um erro no banco de dados.
      */
-    public void adicionar(Receita receita) throws SQLException {
-        try (Connection conn = dataSource.getConnection()) {
+    public AlteracoesDesde listarAlteracoes(int usuarioId, long desde) throws SQLException {
+        long inicio = System.nanoTime();
+        try (Connection conn = conexaoDeLeitura(usuarioId)) {
+            boolean autoCommitOriginal = conn.getAutoCommit();
+            int isolamentoOriginal = conn.getTransactionIsolation();
             try {
                 conn.setAutoCommit(false);
-                try (PreparedStatement psReceita = conn.prepareStatement(INSERT_RECEITA, Statement.RETURN_GENERATED_KEYS)) {
-                    psReceita.setString(1, receita.getNome());
-                    psReceita.setString(2, receita.getDescricao());
-                    psReceita.setInt(3, receita.getTempoDePreparo());
-                    psReceita.setInt(4, receita.getPorcoes());
-                    psReceita.setString(5, receita.getDificuldade());
-                    psReceita.setInt(6, receita.getUsuario_id());
-                    psReceita.executeUpdate();
-
-                    try (ResultSet generatedKeys = psReceita.getGeneratedKeys()) {
-                        if (generatedKeys.next()) {
-                            receita.setId(generatedKeys.getInt(1));
-                        } else {
-                            throw new SQLException("Falha ao criar receita, nenhum ID obtido.");
+                conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+                conn.setReadOnly(true);
+
+                long versao;
+                long versaoMinima;
+                try (Statement st = conn.createStatement();
+                     ResultSet rs = st.executeQuery(SELECT_MARCA_DE_SINCRONIZACAO)) {
+                    rs.next();
+                    versao = rs.getLong(1);
+                    versaoMinima = rs.getLong(2);
+                }
+                boolean completa = exigeListaCompleta(desde, versaoMinima);
+
+                Map<Integer, Receita> mapaDeReceitas = new LinkedHashMap<>();
+                try (PreparedStatement stmt = conn.prepareStatement(completa ? SELECT_RECEITAS_BY_USUARIO : SELECT_RECEITAS_ALTERADAS)) {
+                    stmt.setInt(1, usuarioId);
+                    if (!completa) stmt.setLong(2, desde);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            Receita receita = mapearReceita(rs);
+                            mapaDeReceitas.put(receita.getId(), receita);
                         }
                     }
                 }
+                carregarDetalhes(conn, mapaDeReceitas);
 
-                inserirIngredientesEmLote(conn, receita.getId(), receita.getIngredientes());
-                inserirPassosEmLote(conn, receita.getId(), receita.getPassos());
-
+                List<Integer> removidas = new ArrayList<>();
+                if (!completa) {
+                    try (PreparedStatement stmt = conn.prepareStatement(SELECT_RECEITAS_REMOVIDAS)) {
+                        stmt.setInt(1, usuarioId);
+                        stmt.setLong(2, desde);
+                        try (ResultSet rs = stmt.executeQuery()) {
+                            while (rs.next()) {
+                                removidas.add(rs.getInt(1));
+                            }
+                        }
+                    }
+                }
                 conn.commit();
+                LISTAR_ALTERACOES.linhasLidas(contarLinhas(mapaDeReceitas.values()) + removidas.size());
+                return new AlteracoesDesde(versao, completa, new ArrayList<>(mapaDeReceitas.values()), removidas);
             } catch (SQLException e) {
                 conn.rollback();
-                LOGGER.log(Level.SEVERE, "Falha ao adicionar receita. Rollback executado.", e);
                 throw e;
+            } finally {
+                conn.setReadOnly(false);
+                conn.setTransactionIsolation(isolamentoOriginal);
+                conn.setAutoCommit(autoCommitOriginal);
             }
+        } finally {
+            LISTAR_ALTERACOES.registrar(inicio);
         }
     }
 
     /**
-     * Atualiza uma receita existente e seus detalhes.
-     * A estratgia  deletar os detalhes antigos e inserir os novos em lote.
-     * @param receita O objeto Receita com os dados atualizados.
+     * Apaga as lpides (receitas_removidas) mais antigas que a reteno e avana receitas_sincronizacao.versao_minima
+     * para depois delas; clientes que no sincronizam h mais tempo que isso recebem a listagem completa.
+     * @param retencaoDias Por quantos dias as lpides so mantidas.
+     * @return Quantas lpides foram apagadas.
      * @throws SQLException Se ocorrer um erro no banco de dados.
      */
-    public void atualizar(Receita receita) throws SQLException {
-        try (Connection conn = dataSource.getConnection()) {
+    public int expurgarRemocoes(int retencaoDias) throws SQLException {
+        long inicio = System.nanoTime();
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(EXPURGAR_REMOCOES)) {
+            stmt.setInt(1, retencaoDias);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        } finally {
+            EXPURGAR.registrar(inicio);
+        }
+    }
+
+    /**
+     * Lista uma pgina das receitas de um usurio, ordenada por uma coluna da lista branca.
+     * Com cursor, usa paginao por keyset ((chave, id) > (?, ?)), cujo custo depende apenas
+     * do tamanho da pgina; sem cursor, usa OFFSET. Os detalhes so carregados em lote
+     * somente para as receitas da pgina.
+     * @param usuarioId O ID do usurio.
+     * @param consulta Ordenao, tamanho da pgina e cursor/deslocamento.
+     * @return A pgina, com o total de receitas do usurio e o cursor da prxima pgina.
+     * @throws SQLException
+     */
+    public PaginaReceitas listarPagina(int usuarioId, ConsultaPaginada consulta) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            Map<Integer, Receita> mapaDeReceitas = new LinkedHashMap<>();
+            OrdenacaoReceita ordenacao = consulta.getOrdenacao();
+            String sql = montarSqlDaPagina(consulta, "SELECT id, nome, descricao, tempo_preparo_min, porcoes, dificuldade FROM receitas ");
+
+            int total;
+            try (Connection conn = conexaoDeLeitura(usuarioId)) {
+                try (PreparedStatement stmt = prepararPagina(conn, sql, usuarioId, consulta);
+                     ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        Receita receita = mapearReceita(rs);
+                        mapaDeReceitas.put(receita.getId(), receita);
+                    }
+                }
+                total = contarReceitas(conn, usuarioId);
+
+                carregarDetalhes(conn, mapaDeReceitas);
+            }
+
+            List<Receita> receitas = new ArrayList<>(mapaDeReceitas.values());
+            LISTAR_PAGINA.linhasLidas(contarLinhas(receitas));
+            String proximoCursor = null;
+            if (receitas.size() == consulta.getLimite()) {
+                Receita ultima = receitas.get(receitas.size() - 1);
+                proximoCursor = ConsultaPaginada.cursor(ultima.getId(), ordenacao.chave(ultima));
+            }
+            return new PaginaReceitas(receitas, total, proximoCursor);
+        } finally {
+            LISTAR_PAGINA.registrar(inicio);
+        }
+    }
+
+    /**
+     * A mesma pgina de listarPagina (ordenao, keyset ou OFFSET, total e cursor), no modelo de leitura por
+     * documento: cada receita vem pronta em JSON de receitas_doc, sem carregar ingredientes e passos nem montar objetos.
+     * @param usuarioId O ID do usurio.
+     * @param consulta Ordenao, tamanho da pgina e cursor/deslocamento.
+     * @return Os documentos da pgina, com o total de receitas do usurio e o cursor da prxima pgina.
+     * @throws SQLException Se ocorrer um erro no banco de dados.
+     */
+    public PaginaDeDocumentos listarPaginaDeDocumentos(int usuarioId, ConsultaPaginada consulta) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            String sql = montarSqlDaPagina(consulta, "SELECT r.id, " + consulta.getOrdenacao().getExpressaoSql() + " AS chave, "
+                    + DOCUMENTO + " " + FROM_RECEITAS_COM_DOCUMENTO);
+
+            List<byte[]> pagina = new ArrayList<>(consulta.getLimite());
+            String proximoCursor = null;
+            int total;
+            try (Connection conn = conexaoDeLeitura(usuarioId)) {
+                try (PreparedStatement stmt = prepararPagina(conn, sql, usuarioId, consulta);
+                     ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        // Os bytes do texto, como chegaram do servidor (UTF-8): nem String  criada
+                        pagina.add(rs.getBytes("documento"));
+                        if (pagina.size() == consulta.getLimite()) {
+                            proximoCursor = ConsultaPaginada.cursor(rs.getInt("id"), rs.getString("chave"));
+                        }
+                    }
+                }
+                total = contarReceitas(conn, usuarioId);
+            }
+            LISTAR_PAGINA_DE_DOCUMENTOS.linhasLidas(pagina.size());
+            return new PaginaDeDocumentos(pagina, total, proximoCursor);
+        } finally {
+            LISTAR_PAGINA_DE_DOCUMENTOS.registrar(inicio);
+        }
+    }
+
+    /**
+     * Como percorrer, no modelo de leitura por documento: entrega o JSON de cada receita, na ordem da listagem,
+     * lido por um nico cursor do servidor (uma linha por receita, em vez do merge de trs cursores).
+     * @param usuarioId O ID do usurio.
+     * @param consumidor Quem recebe o total e, em seguida, cada documento.
+     * @throws SQLException Se ocorrer um erro no banco de dados.
+     * @throws IOException Se o consumidor falhar ao escrever.
+     */
+    public void percorrerDocumentos(int usuarioId, ConsumidorDeDocumentos consumidor) throws SQLException, IOException {
+        long inicio = System.nanoTime();
+        try (Connection conn = conexaoDeLeitura(usuarioId)) {
+            boolean autoCommitOriginal = conn.getAutoCommit();
+            int isolamentoOriginal = conn.getTransactionIsolation();
             try {
                 conn.setAutoCommit(false);
+                conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+                conn.setReadOnly(true);
 
-                try (PreparedStatement psReceita = conn.prepareStatement(UPDATE_RECEITA)) {
-                    psReceita.setString(1, receita.getNome());
-                    psReceita.setString(2, receita.getDescricao());
-                    psReceita.setInt(3, receita.getTempoDePreparo());
-                    psReceita.setInt(4, receita.getPorcoes());
-                    psReceita.setString(5, receita.getDificuldade());
-                    psReceita.setInt(6, receita.getId());
-                    psReceita.executeUpdate();
+                consumidor.total(contarReceitas(conn, usuarioId));
+                try (PreparedStatement ps = prepararCursor(conn, SELECT_DOCUMENTOS_BY_USUARIO, usuarioId);
+                     ResultSet rs = ps.executeQuery()) {
+                    long linhas = 0;
+                    while (rs.next()) {
+                        consumidor.documento(rs.getBytes(1));
+                        linhas++;
+                    }
+                    PERCORRER_DOCUMENTOS.linhasLidas(linhas);
                 }
+                conn.commit();
+            } catch (SQLException | IOException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setReadOnly(false);
+                conn.setTransactionIsolation(isolamentoOriginal);
+                conn.setAutoCommit(autoCommitOriginal);
+            }
+        } finally {
+            PERCORRER_DOCUMENTOS.registrar(inicio);
+        }
+    }
 
-                deletarDetalhes(conn, receita.getId());
-                inserirIngredientesEmLote(conn, receita.getId(), receita.getIngredientes());
-                inserirPassosEmLote(conn, receita.getId(), receita.getPassos());
+    /**
+     * Busca textual nas receitas do usurio (nome, ingredientes, descrio e passos, nessa ordem de peso),
+     * usando o vetor "busca" mantido por triggers e o ndice GIN. Cada palavra digitada vale como prefixo
+     * e todas precisam aparecer. Os resultados vm em ordem de relevncia, paginados por deslocamento.
+     * @param usuarioId O ID do usurio.
+     * @param termos O texto digitado.
+     * @param deslocamento Quantos resultados pular.
+     * @param limite O tamanho da pgina; limitado a ConsultaPaginada.LIMITE_MAXIMO.
+     * @return A pgina de resultados, com destaques, e o total encontrado.
+     * @throws IllegalArgumentException Se o texto no tiver nenhuma palavra.
+     * @throws SQLException Se ocorrer um erro no banco de dados.
+     */
+    public ResultadoBusca buscar(int usuarioId, String termos, int deslocamento, int limite) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            String consulta = montarConsultaPorPrefixo(termos);
+            if (consulta == null) {
+                throw new IllegalArgumentException("A busca precisa de ao menos uma palavra.");
+            }
+            limite = Math.max(1, Math.min(limite, ConsultaPaginada.LIMITE_MAXIMO));
+            deslocamento = Math.max(0, deslocamento);
 
+            Map<Integer, Receita> mapaDeReceitas = new LinkedHashMap<>();
+            List<ReceitaEncontrada> encontradas = new ArrayList<>();
+            int total = 0;
+            try (Connection conn = conexaoDeLeitura(usuarioId)) {
+                try (PreparedStatement stmt = conn.prepareStatement(BUSCAR_RECEITAS)) {
+                    stmt.setString(1, consulta);
+                    stmt.setInt(2, usuarioId);
+                    stmt.setInt(3, limite);
+                    stmt.setInt(4, deslocamento);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            Receita receita = mapearReceita(rs);
+                            mapaDeReceitas.put(receita.getId(), receita);
+                            total = rs.getInt("total");
+                            encontradas.add(new ReceitaEncontrada(receita, rs.getDouble("relevancia"),
+                                    destacar(rs.getString("destaque_nome")), destacar(rs.getString("destaque_trecho"))));
+                        }
+                    }
+                }
+                // Pgina alm do fim: a janela COUNT(*) OVER () no chegou a ser lida
+                if (encontradas.isEmpty() && deslocamento > 0) {
+                    try (PreparedStatement stmt = conn.prepareStatement(COUNT_BUSCA)) {
+                        stmt.setInt(1, usuarioId);
+                        stmt.setString(2, consulta);
+                        try (ResultSet rs = stmt.executeQuery()) {
+                            rs.next();
+                            total = rs.getInt(1);
+                        }
+                    }
+                }
+                carregarDetalhes(conn, mapaDeReceitas);
+            }
+            BUSCAR.linhasLidas(contarLinhas(mapaDeReceitas.values()));
+            return new ResultadoBusca(encontradas, total);
+        } finally {
+            BUSCAR.registrar(inicio);
+        }
+    }
+
+    /**
+     * Percorre todas as receitas de um usurio entregando-as uma a uma ao consumidor,
+     * sem materializar a lista. Receitas, ingredientes e passos so lidos por trs cursores
+     * do servidor (autocommit desligado + fetchSize) abertos na mesma transao REPEATABLE READ,
+     * todos na mesma ordem, e combinados em uma nica passada (merge).
+     * O uso de memria depende apenas do tamanho do lote e da maior receita, no da conta.
+     * @param usuarioId O ID do usurio.
+     * @param consumidor Quem recebe o total e, em seguida, cada receita na ordem da listagem.
+     * @throws SQLException Se ocorrer um erro no banco de dados.
+     * @throws IOException Se o consumidor falhar ao escrever.
+     */
+    public void percorrer(int usuarioId, ConsumidorDeReceitas consumidor) throws SQLException, IOException {
+        long inicio = System.nanoTime();
+        try {
+            percorrerCursores(PERCORRER, consumidor, COUNT_RECEITAS_BY_USUARIO, SELECT_RECEITAS_BY_USUARIO,
+                    SELECT_INGREDIENTES_BY_USUARIO, SELECT_PASSOS_BY_USUARIO, usuarioId);
+        } finally {
+            PERCORRER.registrar(inicio);
+        }
+    }
+
+    /**
+     * Igual a percorrer, mas na ordem do id e apenas a partir de um id: usado na exportao
+     * completa, que pode ser retomada informando o id da ltima receita recebida.
+     * @param usuarioId O ID do usurio.
+     * @param aposId Entrega apenas receitas com id maior que este (0 para todas).
+     * @param consumidor Quem recebe o total restante e, em seguida, cada receita em ordem de id.
+     * @throws SQLException Se ocorrer um erro no banco de dados.
+     * @throws IOException Se o consumidor falhar ao escrever.
+     */
+    public void exportar(int usuarioId, int aposId, ConsumidorDeReceitas consumidor) throws SQLException, IOException {
+        long inicio = System.nanoTime();
+        try {
+            percorrerCursores(EXPORTAR, consumidor, COUNT_RECEITAS_PARA_EXPORTACAO, SELECT_RECEITAS_PARA_EXPORTACAO,
+                    SELECT_INGREDIENTES_PARA_EXPORTACAO, SELECT_PASSOS_PARA_EXPORTACAO, usuarioId, aposId);
+        } finally {
+            EXPORTAR.registrar(inicio);
+        }
+    }
+
+    /**
+     * Abre os trs cursores e faz o merge. As queries recebem os mesmos parmetros (o primeiro  o ID
+     * do usurio) e precisam devolver as linhas na mesma ordem de receita.
+     */
+    private void percorrerCursores(MetodoMedido metodo, ConsumidorDeReceitas consumidor, String sqlTotal, String sqlReceitas,
+                                   String sqlIngredientes, String sqlPassos, int... parametros) throws SQLException, IOException {
+        try (Connection conn = conexaoDeLeitura(parametros[0])) {
+            boolean autoCommitOriginal = conn.getAutoCommit();
+            int isolamentoOriginal = conn.getTransactionIsolation();
+            try {
+                conn.setAutoCommit(false);
+                conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+                conn.setReadOnly(true);
+
+                try (PreparedStatement stmt = conn.prepareStatement(sqlTotal)) {
+                    for (int i = 0; i < parametros.length; i++) {
+                        stmt.setInt(i + 1, parametros[i]);
+                    }
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        rs.next();
+                        consumidor.total(rs.getInt(1));
+                    }
+                }
+
+                try (PreparedStatement psReceitas = prepararCursor(conn, sqlReceitas, parametros);
+                     PreparedStatement psIngredientes = prepararCursor(conn, sqlIngredientes, parametros);
+                     PreparedStatement psPassos = prepararCursor(conn, sqlPassos, parametros);
+                     ResultSet rsReceitas = psReceitas.executeQuery();
+                     ResultSet rsIngredientes = psIngredientes.executeQuery();
+                     ResultSet rsPassos = psPassos.executeQuery()) {
+
+                    boolean temIngrediente = rsIngredientes.next();
+                    boolean temPasso = rsPassos.next();
+                    long linhas = 0;
+
+                    while (rsReceitas.next()) {
+                        Receita receita = mapearReceita(rsReceitas);
+
+                        while (temIngrediente && rsIngredientes.getInt("receita_id") == receita.getId()) {
+                            receita.getIngredientes().add(new Ingrediente(
+                                    rsIngredientes.getString("nome"),
+                                    rsIngredientes.getDouble("quantidade"),
+                                    rsIngredientes.getString("unidade")
+                            ));
+                            temIngrediente = rsIngredientes.next();
+                        }
+                        while (temPasso && rsPassos.getInt("receita_id") == receita.getId()) {
+                            receita.getPassos().add(new Passo(
+                                    rsPassos.getInt("ordem"),
+                                    rsPassos.getString("descricao")
+                            ));
+                            temPasso = rsPassos.next();
+                        }
+
+                        linhas += 1 + receita.getIngredientes().size() + receita.getPassos().size();
+                        consumidor.receita(receita);
+                    }
+                    metodo.linhasLidas(linhas);
+                }
                 conn.commit();
-            } catch (SQLException e) {
+            } catch (SQLException | IOException e) {
                 conn.rollback();
-                LOGGER.log(Level.SEVERE, "Falha ao atualizar receita. Rollback executado.", e);
                 throw e;
+            } finally {
+                conn.setReadOnly(false);
+                conn.setTransactionIsolation(isolamentoOriginal);
+                conn.setAutoCommit(autoCommitOriginal);
+            }
+        }
+    }
+
+    /**
+     * Adiciona uma nova receita associada a um usurio.
+     * @param receita O objeto Receita a ser salvo.
+     * @throws SQLException Se ocorrer um erro no banco de dados.
+     */
+    public void adicionar(Receita receita) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            boolean gravada = false;
+            try (Connection conn = dataSource.getConnection()) {
+                try {
+                    conn.setAutoCommit(false);
+                    try (PreparedStatement psReceita = conn.prepareStatement(INSERT_RECEITA, Statement.RETURN_GENERATED_KEYS)) {
+                        psReceita.setString(1, receita.getNome());
+                        psReceita.setString(2, receita.getDescricao());
+                        psReceita.setInt(3, receita.getTempoDePreparo());
+                        psReceita.setInt(4, receita.getPorcoes());
+                        psReceita.setString(5, receita.getDificuldade());
+                        psReceita.setInt(6, receita.getUsuario_id());
+                        psReceita.executeUpdate();
+
+                        try (ResultSet generatedKeys = psReceita.getGeneratedKeys()) {
+                            if (generatedKeys.next()) {
+                                receita.setId(generatedKeys.getInt(1));
+                            } else {
+                                throw new SQLException("Falha ao criar receita, nenhum ID obtido.");
+                            }
+                        }
+                    }
+
+                    inserirIngredientesEmLote(conn, receita.getId(), receita.getIngredientes());
+                    inserirPassosEmLote(conn, receita.getId(), receita.getPassos());
+                    if (documentos != null) {
+                        documentos.gravar(conn, Collections.singletonList(receita.getId()));
+                    }
+                    if (avisarAlteracoes) {
+                        CanalDeAlteracoes.avisar(conn, receita.getUsuario_id(), CanalDeAlteracoes.CRIADA, receita.getId());
+                    }
+
+                    conn.commit();
+                    gravada = true;
+                } catch (SQLException e) {
+                    conn.rollback();
+                    LOGGER.log(Level.SEVERE, "Falha ao adicionar receita. Rollback executado.", e);
+                    throw e;
+                } finally {
+                    avancarVersao(receita.getUsuario_id());
+                    sincronizarIndice(receita, gravada);
+                }
+            }
+        } finally {
+            ADICIONAR.registrar(inicio);
+        }
+    }
+
+    /**
+     * Atualiza uma receita existente e seus detalhes escrevendo apenas o que mudou.
+     * Carrega a receita (travando a linha) e seus detalhes atuais, calcula a diferena e:
+     * - s executa o UPDATE em receitas se algum campo mudou;
+     * - mantm intactos os ingredientes/passos idnticos aos enviados;
+     * - reaproveita, por posio, as linhas restantes com UPDATE;
+     * - insere ou remove apenas o excedente.
+     * A receita precisa pertencer ao usurio informado em receita.getUsuario_id().
+     * @param receita O objeto Receita com os dados atualizados.
+     * @return Quantas linhas foram escritas em cada operao.
+     * @throws SQLException Se ocorrer um erro no banco de dados ou a receita no for do usurio.
+     */
+    public ResultadoAtualizacao atualizar(Receita receita) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            ResultadoAtualizacao resultado = null;
+            try (Connection conn = dataSource.getConnection()) {
+                try {
+                    conn.setAutoCommit(false);
+                    ResultadoAtualizacao parcial = new ResultadoAtualizacao();
+
+                    Receita atual;
+                    try (PreparedStatement ps = conn.prepareStatement(SELECT_RECEITA_PARA_ATUALIZAR)) {
+                        ps.setInt(1, receita.getId());
+                        ps.setInt(2, receita.getUsuario_id());
+                        try (ResultSet rs = ps.executeQuery()) {
+                            if (!rs.next()) {
+                                throw new SQLException("Receita " + receita.getId() + " no encontrada para o usurio.");
+                            }
+                            atual = mapearReceita(rs);
+                        }
+                    }
+
+                    if (camposAlterados(atual, receita)) {
+                        try (PreparedStatement psReceita = conn.prepareStatement(UPDATE_RECEITA)) {
+                            psReceita.setString(1, receita.getNome());
+                            psReceita.setString(2, receita.getDescricao());
+                            psReceita.setInt(3, receita.getTempoDePreparo());
+                            psReceita.setInt(4, receita.getPorcoes());
+                            psReceita.setString(5, receita.getDificuldade());
+                            psReceita.setInt(6, receita.getId());
+                            psReceita.executeUpdate();
+                        }
+                        parcial.receitaAtualizada();
+                    }
+
+                    atualizarIngredientes(conn, receita.getId(), receita.getIngredientes(), parcial);
+                    atualizarPassos(conn, receita.getId(), receita.getPassos(), parcial);
+                    if (documentos != null && parcial.getTotal() > 0) {
+                        documentos.gravar(conn, Collections.singletonList(receita.getId()));
+                    }
+                    if (avisarAlteracoes && parcial.getTotal() > 0) {
+                        CanalDeAlteracoes.avisar(conn, receita.getUsuario_id(), CanalDeAlteracoes.ATUALIZADA, receita.getId());
+                    }
+
+                    conn.commit();
+                    resultado = parcial;
+                    LOGGER.log(Level.FINE, "Receita {0} atualizada: {1}", new Object[]{receita.getId(), resultado});
+                    return resultado;
+                } catch (SQLException e) {
+                    conn.rollback();
+                    LOGGER.log(Level.SEVERE, "Falha ao atualizar receita. Rollback executado.", e);
+                    throw e;
+                } finally {
+                    // Uma atualizao que no escreveu nada no muda a verso (e mantm ETags/cache vlidos)
+                    if (resultado == null || resultado.getTotal() > 0) {
+                        avancarVersao(receita.getUsuario_id());
+                        sincronizarIndice(receita, resultado != null);
+                    }
+                }
             }
+        } finally {
+            ATUALIZAR.registrar(inicio);
         }
     }
 
     /**
      * Deleta uma receita do banco de dados usando seu ID.
      * Confia no 'ON DELETE CASCADE' configurado no banco para remover os detalhes.
+     * S remove a receita se ela pertencer ao usurio informado. Com o aviso de alteraes ligado, o DELETE
+     * e o NOTIFY vo na mesma transao.
      * @param receitaId O ID da receita a ser deletada.
+     * @param usuarioId O ID do usurio dono da receita.
      * @return true se a receita foi deletada, false caso contrrio.
      * @throws SQLException Se ocorrer um erro no banco de dados.
      */
-    public boolean deletar(int receitaId) throws SQLException {
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement ps = conn.prepareStatement(DELETE_RECEITA)) {
-            ps.setInt(1, receitaId);
-            int affectedRows = ps.executeUpdate();
-            return affectedRows > 0;
+    public boolean deletar(int receitaId, int usuarioId) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            boolean executado = false;
+            try (Connection conn = dataSource.getConnection()) {
+                boolean deletada = emTransacaoSeAvisar(conn, () -> {
+                    int affectedRows;
+                    try (PreparedStatement ps = conn.prepareStatement(DELETE_RECEITA)) {
+                        ps.setInt(1, receitaId);
+                        ps.setInt(2, usuarioId);
+                        affectedRows = ps.executeUpdate();
+                    }
+                    if (avisarAlteracoes && affectedRows > 0) {
+                        CanalDeAlteracoes.avisar(conn, usuarioId, CanalDeAlteracoes.REMOVIDA, receitaId);
+                    }
+                    return affectedRows > 0;
+                });
+                executado = true;
+                return deletada;
+            } finally {
+                avancarVersao(usuarioId);
+                if (executado) {
+                    indiceDeIngredientes.receitaRemovida(usuarioId, receitaId);
+                } else {
+                    indiceDeIngredientes.descartar(usuarioId, null);
+                }
+            }
+        } finally {
+            DELETAR.registrar(inicio);
+        }
+    }
+
+    /**
+     * Grava vrias receitas do usurio em uma nica transao: as de ID 0 so criadas, as demais
+     * atualizadas pelo mesmo update por diferena de atualizar(). Cada tipo de escrita (receitas,
+     * ingredientes e passos; insert, update e delete) vai ao banco em um nico lote JDBC para o lote
+     * inteiro, e as receitas a atualizar so travadas e carregadas, com seus detalhes, em trs consultas.
+     * Uma receita a atualizar que no existe ou no  do usurio no impede as demais: vira NAO_ENCONTRADA.
+     * Qualquer erro do banco desfaz o lote inteiro.
+     * @param usuarioId O ID do usurio dono das receitas.
+     * @param receitas As receitas, no mximo ConsultaPaginada.LIMITE_MAXIMO; o usuario_id delas  ignorado.
+     * @return Um item por receita, na ordem recebida; as criadas ganham o ID gerado (tambm em receita.getId()).
+     * @throws IllegalArgumentException Se o lote for grande demais, tiver um item nulo ou repetir uma receita.
+     * @throws SQLException Se ocorrer um erro no banco de dados.
+     */
+    public ResultadoDoLote salvarEmLote(int usuarioId, List<Receita> receitas) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            if (receitas.size() > ConsultaPaginada.LIMITE_MAXIMO) {
+                throw new IllegalArgumentException("No mximo " + ConsultaPaginada.LIMITE_MAXIMO + " receitas por lote.");
+            }
+            ResultadoDoLote parcial = new ResultadoDoLote(receitas.size());
+            List<Receita> novas = new ArrayList<>();
+            List<ResultadoDoLote.Item> itensNovos = new ArrayList<>();
+            Map<Integer, Receita> existentes = new LinkedHashMap<>();
+            Map<Integer, ResultadoDoLote.Item> itensExistentes = new HashMap<>();
+            for (int i = 0; i < receitas.size(); i++) {
+                Receita receita = receitas.get(i);
+                if (receita == null) {
+                    throw new IllegalArgumentException("O item " + i + " do lote  nulo.");
+                }
+                receita.setUsuario_id(usuarioId);
+                ResultadoDoLote.Item item = parcial.adicionar(receita.getId(), ResultadoDoLote.NAO_ENCONTRADA);
+                if (receita.getId() == 0) {
+                    novas.add(receita);
+                    itensNovos.add(item);
+                } else if (existentes.put(receita.getId(), receita) == null) {
+                    itensExistentes.put(receita.getId(), item);
+                } else {
+                    throw new IllegalArgumentException("Receita " + receita.getId() + " repetida no lote.");
+                }
+            }
+
+            ResultadoDoLote resultado = null;
+            try (Connection conn = dataSource.getConnection()) {
+                try {
+                    conn.setAutoCommit(false);
+                    inserirReceitasEmLote(conn, novas, itensNovos);
+                    atualizarReceitasEmLote(conn, usuarioId, existentes, itensExistentes);
+                    if (documentos != null) {
+                        documentos.gravar(conn, alteradas(parcial));
+                    }
+                    if (avisarAlteracoes) {
+                        CanalDeAlteracoes.avisar(conn, usuarioId, CanalDeAlteracoes.CRIADA, comStatus(parcial, ResultadoDoLote.CRIADA));
+                        CanalDeAlteracoes.avisar(conn, usuarioId, CanalDeAlteracoes.ATUALIZADA, comStatus(parcial, ResultadoDoLote.ATUALIZADA));
+                    }
+                    conn.commit();
+                    resultado = parcial;
+                    LOGGER.log(Level.FINE, "Lote de {0} receitas gravado: {1}", new Object[]{receitas.size(), resultado});
+                    return resultado;
+                } catch (SQLException e) {
+                    conn.rollback();
+                    LOGGER.log(Level.SEVERE, "Falha ao gravar lote de receitas. Rollback executado.", e);
+                    throw e;
+                } finally {
+                    if (resultado == null || resultado.getLinhasAlteradas() > 0) {
+                        avancarVersao(usuarioId);
+                        if (resultado == null) {
+                            indiceDeIngredientes.descartar(usuarioId, null);
+                        } else {
+                            for (int i = 0; i < receitas.size(); i++) {
+                                String status = resultado.getItens().get(i).getStatus();
+                                if (ResultadoDoLote.CRIADA.equals(status) || ResultadoDoLote.ATUALIZADA.equals(status)) {
+                                    sincronizarIndice(receitas.get(i), true);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        } finally {
+            SALVAR_EM_LOTE.registrar(inicio);
+        }
+    }
+
+    /**
+     * Deleta vrias receitas do usurio com um nico DELETE ... WHERE id = ANY(?) AND usuario_id = ?.
+     * Como deletar(), confia no 'ON DELETE CASCADE' para os detalhes.
+     * @param usuarioId O ID do usurio dono das receitas.
+     * @param receitaIds Os IDs, no mximo ConsultaPaginada.LIMITE_MAXIMO.
+     * @return Um item por ID, na ordem recebida: REMOVIDA ou NAO_ENCONTRADA (inexistente ou de outro usurio).
+     * @throws IllegalArgumentException Se o lote for grande demais ou tiver um ID nulo.
+     * @throws SQLException Se ocorrer um erro no banco de dados.
+     */
+    public ResultadoDoLote deletarEmLote(int usuarioId, List<Integer> receitaIds) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            if (receitaIds.size() > ConsultaPaginada.LIMITE_MAXIMO) {
+                throw new IllegalArgumentException("No mximo " + ConsultaPaginada.LIMITE_MAXIMO + " receitas por lote.");
+            }
+            int nulo = receitaIds.indexOf(null);
+            if (nulo >= 0) {
+                throw new IllegalArgumentException("O item " + nulo + " do lote  nulo.");
+            }
+            Set<Integer> removidas = new LinkedHashSet<>();
+            boolean executado = false;
+            try (Connection conn = dataSource.getConnection()) {
+                emTransacaoSeAvisar(conn, () -> {
+                    Array array = conn.createArrayOf("integer", receitaIds.toArray());
+                    try (PreparedStatement ps = conn.prepareStatement(DELETE_RECEITAS_BY_IDS)) {
+                        ps.setArray(1, array);
+                        ps.setInt(2, usuarioId);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            while (rs.next()) {
+                                removidas.add(rs.getInt(1));
+                            }
+                        }
+                    } finally {
+                        array.free();
+                    }
+                    if (avisarAlteracoes) {
+                        CanalDeAlteracoes.avisar(conn, usuarioId, CanalDeAlteracoes.REMOVIDA, removidas);
+                    }
+                    return null;
+                });
+                executado = true;
+            } finally {
+                avancarVersao(usuarioId);
+                if (executado) {
+                    for (Integer receitaId : removidas) {
+                        indiceDeIngredientes.receitaRemovida(usuarioId, receitaId);
+                    }
+                } else {
+                    indiceDeIngredientes.descartar(usuarioId, null);
+                }
+            }
+
+            ResultadoDoLote resultado = new ResultadoDoLote(receitaIds.size());
+            for (Integer receitaId : receitaIds) {
+                if (removidas.contains(receitaId)) {
+                    resultado.adicionar(receitaId, ResultadoDoLote.REMOVIDA).concluir(ResultadoDoLote.REMOVIDA, 1);
+                } else {
+                    resultado.adicionar(receitaId, ResultadoDoLote.NAO_ENCONTRADA);
+                }
+            }
+            return resultado;
+        } finally {
+            DELETAR_EM_LOTE.registrar(inicio);
+        }
+    }
+
+    /**
+     * Importa em massa as receitas lidas da fonte para o usurio, usando COPY em lotes de
+     * ImportadorDeReceitas.TAMANHO_LOTE receitas, cada lote em sua prpria transao.
+     * Os IDs e usuario_id vindos na fonte so ignorados: toda receita importada  nova.
+     * @param usuarioId O ID do usurio dono das receitas importadas.
+     * @param fonte De onde as receitas so lidas, uma a uma.
+     * @param progresso Avisado a cada lote gravado.
+     * @return Contadores e erros por registro.
+     * @throws SQLException Se no for possvel obter a conexo ou controlar a transao.
+     * @throws IOException Se o acompanhamento do progresso falhar.
+     */
+    public ResultadoImportacao importar(int usuarioId, FonteDeReceitas fonte, ProgressoDaImportacao progresso) throws SQLException, IOException {
+        long inicio = System.nanoTime();
+        try {
+            try {
+                return new ImportadorDeReceitas(dataSource, documentos, avisarAlteracoes, usuarioId, ImportadorDeReceitas.TAMANHO_LOTE).importar(fonte, progresso);
+            } finally {
+                avancarVersao(usuarioId);
+                // Milhares de receitas novas: mais barato remontar o ndice na prxima consulta
+                indiceDeIngredientes.descartar(usuarioId, null);
+            }
+        } finally {
+            IMPORTAR.registrar(inicio);
+        }
+    }
+
+    /**
+     * "O que d para cozinhar": as receitas do usurio que usam os ingredientes informados,
+     * das que faltam menos ingredientes para as que faltam mais. Responde a partir do ndice
+     * em memria (IndiceDeIngredientes), que  montado do banco na primeira chamada do usurio.
+     * Os nomes so comparados sem diferenciar maisculas, acentos e espaos repetidos.
+     * @param usuarioId O ID do usurio.
+     * @param disponiveis Os nomes dos ingredientes que o usurio tem em mos.
+     * @param maximoFaltando Quantos ingredientes podem faltar, no mximo.
+     * @param limite Quantas sugestes devolver; limitado a ConsultaPaginada.LIMITE_MAXIMO.
+     * @return As sugestes, com os ingredientes que faltam em cada uma.
+     * @throws SQLException Se ocorrer um erro ao montar o ndice.
+     */
+    public List<SugestaoDeReceita> sugerir(int usuarioId, Collection<String> disponiveis, int maximoFaltando, int limite) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            IndiceDeIngredientes.DoUsuario indice = indiceDeIngredientes.obter(usuarioId);
+            if (indice == null) {
+                long versaoLida = versao(usuarioId);
+                indice = carregarIndice(usuarioId);
+                indiceDeIngredientes.instalar(usuarioId, indice);
+                // Uma escrita terminou durante a carga e pode no ter chegado ao ndice: usa, mas no guarda
+                if (versao(usuarioId) != versaoLida) {
+                    indiceDeIngredientes.descartar(usuarioId, indice);
+                }
+            }
+            return indice.sugerir(disponiveis, Math.max(0, maximoFaltando),
+                    Math.max(1, Math.min(limite, ConsultaPaginada.LIMITE_MAXIMO)));
+        } finally {
+            SUGERIR.registrar(inicio);
+        }
+    }
+
+    /**
+     * Verso atual das receitas de um usurio. Muda sempre que uma escrita passa por este DAO
+     * (mesmo as que falham, por precauo) e, com o feed de alteraes ligado, quando chega o aviso de uma
+     * escrita feita em outro n (registrarAlteracaoExterna), ento duas leituras com a mesma verso veem os
+     * mesmos dados. O valor s tem sentido dentro deste processo.
+     * @param usuarioId O ID do usurio.
+     * @return Um contador que s cresce.
+     */
+    public long versao(int usuarioId) {
+        AtomicLong versao = versoes.get(usuarioId);
+        return geracao.get() + (versao == null ? 0 : versao.get());
+    }
+
+    /**
+     * Chamado pela CentralDeEventos para cada aviso do CanalDeAlteracoes: uma escrita de outro n avana a
+     * verso do usurio, como as deste DAO, e descarta o ndice de ingredientes dele. Os avisos das escritas
+     * deste processo so ignorados; quem escreveu j avanou a verso.
+     */
+    public void registrarAlteracaoExterna(CanalDeAlteracoes.Alteracao alteracao) {
+        if (alteracao.isDesteNo()) return;
+        avancarVersao(alteracao.getUsuarioId());
+        indiceDeIngredientes.descartar(alteracao.getUsuarioId(), null);
+    }
+
+    /**
+     * Chamado pela CentralDeEventos quando o ouvinte (re)conecta: os avisos do intervalo se perderam,
+     * ento a verso de todos os usurios avana e todos os ndices de ingredientes so descartados.
+     */
+    public void registrarAvisosPerdidos() {
+        geracao.incrementAndGet();
+        indiceDeIngredientes.descartarTodos();
+    }
+
+    /**
+     * Avana a verso do usurio sem escrita nenhuma: chamado quando uma listagem falhou depois que a resposta,
+     * com o ETag da verso atual, j tinha sido enviada, para que esse corpo truncado nunca seja revalidado (304).
+     */
+    public void descartarVersao(int usuarioId) {
+        avancarVersao(usuarioId);
+    }
+
+    protected void avancarVersao(int usuarioId) {
+        versoes.computeIfAbsent(usuarioId, id -> new AtomicLong()).incrementAndGet();
+        // As leituras seguintes do usurio ficam no primrio at a rplica alcan-lo: sem isso a
+        // verso nova poderia ser lida (e guardada no cache) com os dados de antes da escrita
+        if (replicas != null) {
+            replicas.escreveu(usuarioId);
         }
     }
 
     // --- MTODOS PRIVADOS AUXILIARES ---
 
+    /**
+     * Conexo para os mtodos que s leem: uma rplica, se houver, salvo logo depois de uma escrita do usurio.
+     */
+    private Connection conexaoDeLeitura(int usuarioId) throws SQLException {
+        return replicas != null ? replicas.getConnectionDeLeitura(usuarioId) : dataSource.getConnection();
+    }
+
+    /**
+     * Executa uma escrita de um nico comando em autocommit, como sempre foi, ou, com o aviso de alteraes
+     * ligado, numa transao junto com o NOTIFY.
+     */
+    private <T> T emTransacaoSeAvisar(Connection conn, Escrita<T> escrita) throws SQLException {
+        if (!avisarAlteracoes) return escrita.executar();
+        boolean autoCommitOriginal = conn.getAutoCommit();
+        try {
+            conn.setAutoCommit(false);
+            T resultado = escrita.executar();
+            conn.commit();
+            return resultado;
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommitOriginal);
+        }
+    }
+
+    /**
+     * Leva ao ndice de ingredientes uma receita que acabou de ser gravada. Se a escrita falhou,
+     * no h como saber o que ficou no banco: o ndice do usurio  descartado e remontado depois.
+     */
+    private void sincronizarIndice(Receita receita, boolean gravada) {
+        if (!gravada) {
+            indiceDeIngredientes.descartar(receita.getUsuario_id(), null);
+            return;
+        }
+        List<String> nomes = new ArrayList<>();
+        if (receita.getIngredientes() != null) {
+            for (Ingrediente ingrediente : receita.getIngredientes()) {
+                nomes.add(ingrediente.getNome());
+            }
+        }
+        indiceDeIngredientes.receitaGravada(receita.getUsuario_id(), receita.getId(), receita.getNome(), nomes);
+    }
+
+    private IndiceDeIngredientes.DoUsuario carregarIndice(int usuarioId) throws SQLException {
+        IndiceDeIngredientes.DoUsuario indice = new IndiceDeIngredientes.DoUsuario();
+        try (Connection conn = conexaoDeLeitura(usuarioId)) {
+            boolean autoCommitOriginal = conn.getAutoCommit();
+            try {
+                conn.setAutoCommit(false);
+                try (PreparedStatement ps = prepararCursor(conn, SELECT_INGREDIENTES_PARA_INDICE, usuarioId);
+                     ResultSet rs = ps.executeQuery()) {
+                    int receitaAtual = -1;
+                    String nomeAtual = null;
+                    List<String> ingredientes = new ArrayList<>();
+                    long linhas = 0;
+                    while (rs.next()) {
+                        linhas++;
+                        int receitaId = rs.getInt("id");
+                        if (receitaId != receitaAtual) {
+                            if (receitaAtual != -1) indice.gravar(receitaAtual, nomeAtual, ingredientes);
+                            receitaAtual = receitaId;
+                            nomeAtual = rs.getString("nome");
+                            ingredientes = new ArrayList<>();
+                        }
+                        ingredientes.add(rs.getString("ingrediente"));
+                    }
+                    if (receitaAtual != -1) indice.gravar(receitaAtual, nomeAtual, ingredientes);
+                    SUGERIR.linhasLidas(linhas);
+                }
+                conn.commit();
+            } finally {
+                conn.setAutoCommit(autoCommitOriginal);
+            }
+        }
+        return indice;
+    }
+
+    /**
+     * Decide se a sincronizao incremental devolve todas as receitas em vez da diferena. As receitas e as
+     * lpides so lidas com versao >= desde, e o expurgo s apaga lpides com versao < versaoMinima: a partir
+     * de desde = versaoMinima nenhuma remoo que o cliente ainda no viu se perdeu. Antes disso (ou sem
+     * sincronizao anterior, desde <= 0), alguma pode ter sido expurgada e s a lista completa  segura.
+     */
+    static boolean exigeListaCompleta(long desde, long versaoMinima) {
+        return desde <= 0 || desde < versaoMinima;
+    }
+
+    /**
+     * Converte o texto digitado em uma tsquery de prefixos ("bolo choc" -> "bolo:* & choc:*").
+     * S letras e dgitos passam, ento o usurio no consegue injetar operadores da tsquery.
+     * @return A consulta, ou null se o texto no tiver nenhuma palavra.
+     */
+    static String montarConsultaPorPrefixo(String termos) {
+        if (termos == null) return null;
+        StringBuilder consulta = new StringBuilder();
+        int quantidade = 0;
+        for (String palavra : termos.split("[^\\p{L}\\p{N}]+")) {
+            if (palavra.isEmpty()) continue;
+            if (consulta.length() > 0) consulta.append(" & ");
+            consulta.append(palavra.toLowerCase(Locale.ROOT)).append(":*");
+            if (++quantidade == MAXIMO_TERMOS_BUSCA) break;
+        }
+        return quantidade == 0 ? null : consulta.toString();
+    }
+
+    /**
+     * Escapa o HTML do texto devolvido pelo ts_headline e troca os marcadores chr(1)/chr(2) por &lt;mark&gt;.
+     */
+    static String destacar(String texto) {
+        if (texto == null) return "";
+        StringBuilder html = new StringBuilder(texto.length() + 16);
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            switch (c) {
+                case '\u0001': html.append("<mark>"); break;
+                case '\u0002': html.append("</mark>"); break;
+                case '&': html.append("&amp;"); break;
+                case '<': html.append("&lt;"); break;
+                case '>': html.append("&gt;"); break;
+                case '"': html.append("&quot;"); break;
+                case '\'': html.append("&#39;"); break;
+                default: html.append(c);
+            }
+        }
+        return html.toString();
+    }
+
+    private PreparedStatement prepararCursor(Connection conn, String sql, int... parametros) throws SQLException {
+        PreparedStatement ps = conn.prepareStatement(sql);
+        ps.setFetchSize(TAMANHO_LOTE_CURSOR);
+        for (int i = 0; i < parametros.length; i++) {
+            ps.setInt(i + 1, parametros[i]);
+        }
+        return ps;
+    }
+
+    /**
+     * SELECT de uma pgina da listagem: "colunasEOrigem" (o SELECT ... FROM, com a tabela receitas) seguido do filtro
+     * do usurio, do keyset ou OFFSET e da ordenao da lista branca. Os parmetros so os de prepararPagina.
+     */
+    private static String montarSqlDaPagina(ConsultaPaginada consulta, String colunasEOrigem) {
+        OrdenacaoReceita ordenacao = consulta.getOrdenacao();
+        String direcao = consulta.isDescendente() ? " DESC" : " ASC";
+
+        StringBuilder sql = new StringBuilder(colunasEOrigem).append("WHERE usuario_id = ?");
+        if (consulta.temCursor()) {
+            sql.append(" AND (").append(ordenacao.getExpressaoSql()).append(", id) ")
+                    .append(consulta.isDescendente() ? "<" : ">").append(" (?, ?)");
+        }
+        sql.append(" ORDER BY ").append(ordenacao.getExpressaoSql()).append(direcao).append(", id").append(direcao)
+                .append(" LIMIT ?");
+        if (!consulta.temCursor()) {
+            sql.append(" OFFSET ?");
+        }
+        return sql.toString();
+    }
+
+    private static PreparedStatement prepararPagina(Connection conn, String sql, int usuarioId, ConsultaPaginada consulta) throws SQLException {
+        PreparedStatement stmt = conn.prepareStatement(sql);
+        int i = 1;
+        stmt.setInt(i++, usuarioId);
+        if (consulta.temCursor()) {
+            stmt.setObject(i++, consulta.getCursorValor());
+            stmt.setInt(i++, consulta.getCursorId());
+        }
+        stmt.setInt(i++, consulta.getLimite());
+        if (!consulta.temCursor()) {
+            stmt.setInt(i, consulta.getDeslocamento());
+        }
+        return stmt;
+    }
+
+    private static int contarReceitas(Connection conn, int usuarioId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(COUNT_RECEITAS_BY_USUARIO)) {
+            stmt.setInt(1, usuarioId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    /**
+     * IDs das receitas do lote que foram criadas ou tiveram alguma linha escrita.
+     */
+    private static List<Integer> comStatus(ResultadoDoLote lote, String status) {
+        List<Integer> ids = new ArrayList<>();
+        for (ResultadoDoLote.Item item : lote.getItens()) {
+            if (status.equals(item.getStatus())) {
+                ids.add(item.getId());
+            }
+        }
+        return ids;
+    }
+
+    private static List<Integer> alteradas(ResultadoDoLote lote) {
+        List<Integer> ids = new ArrayList<>();
+        for (ResultadoDoLote.Item item : lote.getItens()) {
+            if (ResultadoDoLote.CRIADA.equals(item.getStatus()) || ResultadoDoLote.ATUALIZADA.equals(item.getStatus())) {
+                ids.add(item.getId());
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Linhas lidas para montar as receitas: a da receita e as de seus ingredientes e passos.
+     */
+    private static long contarLinhas(Collection<Receita> receitas) {
+        long linhas = 0;
+        for (Receita receita : receitas) {
+            linhas += 1 + receita.getIngredientes().size() + receita.getPassos().size();
+        }
+        return linhas;
+    }
+
+    private Receita mapearReceita(ResultSet rs) throws SQLException {
+        Receita receita = new Receita();
+        receita.setId(rs.getInt("id"));
+        receita.setNome(rs.getString("nome"));
+        receita.setDescricao(rs.getString("descricao"));
+        receita.setTempoDePreparo(rs.getInt("tempo_preparo_min"));
+        receita.setPorcoes(rs.getInt("porcoes"));
+        receita.setDificuldade(rs.getString("dificuldade"));
+        return receita;
+    }
+
+    /**
+     * Carrega ingredientes e passos de todas as receitas do mapa com uma query por tabela filha.
+     * Cada linha  anexada diretamente  sua receita, sem verificaes de duplicidade.
+     */
+    private void carregarDetalhes(Connection conn, Map<Integer, Receita> mapaDeReceitas) throws SQLException {
+        if (mapaDeReceitas.isEmpty()) return;
+
+        Array ids = conn.createArrayOf("integer", mapaDeReceitas.keySet().toArray());
+        try {
+            try (PreparedStatement ps = conn.prepareStatement(SELECT_INGREDIENTES_BY_RECEITA_IDS)) {
+                ps.setArray(1, ids);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        mapaDeReceitas.get(rs.getInt("receita_id")).getIngredientes().add(new Ingrediente(
+                                rs.getString("nome"),
+                                rs.getDouble("quantidade"),
+                                rs.getString("unidade")
+                        ));
+                    }
+                }
+            }
+            try (PreparedStatement ps = conn.prepareStatement(SELECT_PASSOS_BY_RECEITA_IDS)) {
+                ps.setArray(1, ids);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        mapaDeReceitas.get(rs.getInt("receita_id")).getPassos().add(new Passo(
+                                rs.getInt("ordem"),
+                                rs.getString("descricao")
+                        ));
+                    }
+                }
+            }
+        } finally {
+            ids.free();
+        }
+    }
+
     private void inserirIngredientesEmLote(Connection conn, int receitaId, List<Ingrediente> ingredientes) throws SQLException {
         if (ingredientes == null || ingredientes.isEmpty()) return;
 
         try (PreparedStatement ps = conn.prepareStatement(INSERT_INGREDIENTE)) {
-            for (Ingrediente ingrediente : ingredientes) {
-                ps.setInt(1, receitaId);
-                ps.setString(2, ingrediente.getNome());
-                ps.setDouble(3, ingrediente.getQuantidade());
-                ps.setString(4, ingrediente.getUnidade());
-                ps.addBatch();
-            }
+            loteDeIngredientes(ps, receitaId, ingredientes);
             ps.executeBatch();
         }
     }
@@ -240,24 +1372,291 @@ public class ReceitaDAO {
         if (passos == null || passos.isEmpty()) return;
 
         try (PreparedStatement ps = conn.prepareStatement(INSERT_PASSO)) {
-            for (Passo passo : passos) {
-                ps.setInt(1, receitaId);
-                ps.setInt(2, passo.getOrdem());
-                ps.setString(3, passo.getDescricao());
-                ps.addBatch();
-            }
+            loteDePassos(ps, receitaId, passos);
             ps.executeBatch();
         }
     }
 
-    private void deletarDetalhes(Connection conn, int receitaId) throws SQLException {
-        try (PreparedStatement ps = conn.prepareStatement(DELETE_INGREDIENTES_BY_RECEITA_ID)) {
+    /**
+     * Acrescenta ao lote do INSERT_INGREDIENTE os ingredientes de uma receita.
+     * @return Quantos foram acrescentados.
+     */
+    private static int loteDeIngredientes(PreparedStatement ps, int receitaId, List<Ingrediente> ingredientes) throws SQLException {
+        if (ingredientes == null) return 0;
+        for (Ingrediente ingrediente : ingredientes) {
+            ps.setInt(1, receitaId);
+            ps.setString(2, ingrediente.getNome());
+            ps.setDouble(3, ingrediente.getQuantidade());
+            ps.setString(4, ingrediente.getUnidade());
+            ps.addBatch();
+        }
+        return ingredientes.size();
+    }
+
+    /**
+     * Acrescenta ao lote do INSERT_PASSO os passos de uma receita.
+     * @return Quantos foram acrescentados.
+     */
+    private static int loteDePassos(PreparedStatement ps, int receitaId, List<Passo> passos) throws SQLException {
+        if (passos == null) return 0;
+        for (Passo passo : passos) {
+            ps.setInt(1, receitaId);
+            ps.setInt(2, passo.getOrdem());
+            ps.setString(3, passo.getDescricao());
+            ps.addBatch();
+        }
+        return passos.size();
+    }
+
+    /**
+     * Insere as receitas novas de um lote: um INSERT em lote para as receitas (os IDs gerados voltam
+     * na mesma ordem) e um para os ingredientes e outro para os passos de todas elas.
+     */
+    private void inserirReceitasEmLote(Connection conn, List<Receita> novas, List<ResultadoDoLote.Item> itens) throws SQLException {
+        if (novas.isEmpty()) return;
+
+        try (PreparedStatement psReceita = conn.prepareStatement(INSERT_RECEITA, Statement.RETURN_GENERATED_KEYS)) {
+            for (Receita receita : novas) {
+                psReceita.setString(1, receita.getNome());
+                psReceita.setString(2, receita.getDescricao());
+                psReceita.setInt(3, receita.getTempoDePreparo());
+                psReceita.setInt(4, receita.getPorcoes());
+                psReceita.setString(5, receita.getDificuldade());
+                psReceita.setInt(6, receita.getUsuario_id());
+                psReceita.addBatch();
+            }
+            psReceita.executeBatch();
+            try (ResultSet generatedKeys = psReceita.getGeneratedKeys()) {
+                for (Receita receita : novas) {
+                    if (!generatedKeys.next()) {
+                        throw new SQLException("Falha ao criar receitas em lote, IDs insuficientes.");
+                    }
+                    receita.setId(generatedKeys.getInt(1));
+                }
+            }
+        }
+
+        try (PreparedStatement psIngredientes = conn.prepareStatement(INSERT_INGREDIENTE);
+             PreparedStatement psPassos = conn.prepareStatement(INSERT_PASSO)) {
+            int ingredientes = 0;
+            int passos = 0;
+            for (int i = 0; i < novas.size(); i++) {
+                Receita receita = novas.get(i);
+                ingredientes += loteDeIngredientes(psIngredientes, receita.getId(), receita.getIngredientes());
+                passos += loteDePassos(psPassos, receita.getId(), receita.getPassos());
+                ResultadoDoLote.Item item = itens.get(i);
+                item.setId(receita.getId());
+                item.concluir(ResultadoDoLote.CRIADA, 1 + tamanho(receita.getIngredientes()) + tamanho(receita.getPassos()));
+            }
+            if (ingredientes > 0) psIngredientes.executeBatch();
+            if (passos > 0) psPassos.executeBatch();
+        }
+    }
+
+    /**
+     * Update por diferena de vrias receitas: trava e carrega as receitas e os detalhes atuais em trs
+     * consultas (ordenadas por id, para que lotes concorrentes travem na mesma ordem), calcula a diferena
+     * de cada uma e envia cada tipo de escrita num nico lote JDBC.
+     */
+    private void atualizarReceitasEmLote(Connection conn, int usuarioId, Map<Integer, Receita> receitas,
+                                         Map<Integer, ResultadoDoLote.Item> itens) throws SQLException {
+        if (receitas.isEmpty()) return;
+
+        Map<Integer, Receita> atuais = new HashMap<>();
+        Array ids = conn.createArrayOf("integer", receitas.keySet().toArray());
+        try {
+            try (PreparedStatement ps = conn.prepareStatement(SELECT_RECEITAS_PARA_ATUALIZAR_EM_LOTE)) {
+                ps.setArray(1, ids);
+                ps.setInt(2, usuarioId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        Receita atual = mapearReceita(rs);
+                        atuais.put(atual.getId(), atual);
+                    }
+                }
+            }
+            if (atuais.isEmpty()) return;
+            ids.free();
+            ids = conn.createArrayOf("integer", atuais.keySet().toArray());
+
+            Map<Integer, Map<Integer, Ingrediente>> ingredientesAtuais = new HashMap<>();
+            try (PreparedStatement ps = conn.prepareStatement(SELECT_INGREDIENTES_COM_ID_BY_RECEITA_IDS)) {
+                ps.setArray(1, ids);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        ingredientesAtuais.computeIfAbsent(rs.getInt("receita_id"), k -> new LinkedHashMap<>())
+                                .put(rs.getInt("id"), new Ingrediente(rs.getString("nome"), rs.getDouble("quantidade"), rs.getString("unidade")));
+                    }
+                }
+            }
+            Map<Integer, Map<Integer, Passo>> passosAtuais = new HashMap<>();
+            try (PreparedStatement ps = conn.prepareStatement(SELECT_PASSOS_COM_ID_BY_RECEITA_IDS)) {
+                ps.setArray(1, ids);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        passosAtuais.computeIfAbsent(rs.getInt("receita_id"), k -> new LinkedHashMap<>())
+                                .put(rs.getInt("id"), new Passo(rs.getInt("ordem"), rs.getString("descricao")));
+                    }
+                }
+            }
+
+            try (PreparedStatement psReceita = conn.prepareStatement(UPDATE_RECEITA);
+                 PreparedStatement psAlterarIngrediente = conn.prepareStatement(UPDATE_INGREDIENTE);
+                 PreparedStatement psInserirIngrediente = conn.prepareStatement(INSERT_INGREDIENTE);
+                 PreparedStatement psAlterarPasso = conn.prepareStatement(UPDATE_PASSO);
+                 PreparedStatement psInserirPasso = conn.prepareStatement(INSERT_PASSO)) {
+                int[] pendentes = new int[5];
+                List<Integer> ingredientesRemovidos = new ArrayList<>();
+                List<Integer> passosRemovidos = new ArrayList<>();
+
+                for (Receita receita : receitas.values()) {
+                    Receita atual = atuais.get(receita.getId());
+                    if (atual == null) continue;
+                    ResultadoAtualizacao parcial = new ResultadoAtualizacao();
+
+                    if (camposAlterados(atual, receita)) {
+                        psReceita.setString(1, receita.getNome());
+                        psReceita.setString(2, receita.getDescricao());
+                        psReceita.setInt(3, receita.getTempoDePreparo());
+                        psReceita.setInt(4, receita.getPorcoes());
+                        psReceita.setString(5, receita.getDificuldade());
+                        psReceita.setInt(6, receita.getId());
+                        psReceita.addBatch();
+                        pendentes[0]++;
+                        parcial.receitaAtualizada();
+                    }
+
+                    Diferenca<Ingrediente> ingredientes = Diferenca.calcular(
+                            ingredientesAtuais.getOrDefault(receita.getId(), Collections.emptyMap()), receita.getIngredientes());
+                    for (Map.Entry<Integer, Ingrediente> item : ingredientes.alterar) {
+                        psAlterarIngrediente.setString(1, item.getValue().getNome());
+                        psAlterarIngrediente.setDouble(2, item.getValue().getQuantidade());
+                        psAlterarIngrediente.setString(3, item.getValue().getUnidade());
+                        psAlterarIngrediente.setInt(4, item.getKey());
+                        psAlterarIngrediente.addBatch();
+                    }
+                    pendentes[1] += ingredientes.alterar.size();
+                    pendentes[2] += loteDeIngredientes(psInserirIngrediente, receita.getId(), ingredientes.inserir);
+                    ingredientesRemovidos.addAll(ingredientes.remover);
+
+                    Diferenca<Passo> passos = Diferenca.calcular(
+                            passosAtuais.getOrDefault(receita.getId(), Collections.emptyMap()), receita.getPassos());
+                    for (Map.Entry<Integer, Passo> item : passos.alterar) {
+                        psAlterarPasso.setInt(1, item.getValue().getOrdem());
+                        psAlterarPasso.setString(2, item.getValue().getDescricao());
+                        psAlterarPasso.setInt(3, item.getKey());
+                        psAlterarPasso.addBatch();
+                    }
+                    pendentes[3] += passos.alterar.size();
+                    pendentes[4] += loteDePassos(psInserirPasso, receita.getId(), passos.inserir);
+                    passosRemovidos.addAll(passos.remover);
+
+                    parcial.atualizadas(ingredientes.alterar.size() + passos.alterar.size());
+                    parcial.inseridas(ingredientes.inserir.size() + passos.inserir.size());
+                    parcial.removidas(ingredientes.remover.size() + passos.remover.size());
+                    itens.get(receita.getId()).concluir(parcial.getTotal() > 0 ? ResultadoDoLote.ATUALIZADA : ResultadoDoLote.INALTERADA,
+                            parcial.getTotal());
+                }
+
+                if (pendentes[0] > 0) psReceita.executeBatch();
+                if (pendentes[1] > 0) psAlterarIngrediente.executeBatch();
+                if (pendentes[2] > 0) psInserirIngrediente.executeBatch();
+                if (pendentes[3] > 0) psAlterarPasso.executeBatch();
+                if (pendentes[4] > 0) psInserirPasso.executeBatch();
+                removerPorIds(conn, DELETE_INGREDIENTES_BY_IDS, ingredientesRemovidos);
+                removerPorIds(conn, DELETE_PASSOS_BY_IDS, passosRemovidos);
+            }
+        } finally {
+            ids.free();
+        }
+    }
+
+    private static int tamanho(List<?> lista) {
+        return lista == null ? 0 : lista.size();
+    }
+
+    private static boolean camposAlterados(Receita atual, Receita nova) {
+        return !Objects.equals(atual.getNome(), nova.getNome())
+                || !Objects.equals(atual.getDescricao(), nova.getDescricao())
+                || atual.getTempoDePreparo() != nova.getTempoDePreparo()
+                || atual.getPorcoes() != nova.getPorcoes()
+                || !Objects.equals(atual.getDificuldade(), nova.getDificuldade());
+    }
+
+    private void atualizarIngredientes(Connection conn, int receitaId, List<Ingrediente> novos, ResultadoAtualizacao resultado) throws SQLException {
+        Map<Integer, Ingrediente> atuais = new LinkedHashMap<>();
+        try (PreparedStatement ps = conn.prepareStatement(SELECT_INGREDIENTES_BY_RECEITA_ID)) {
             ps.setInt(1, receitaId);
-            ps.executeUpdate();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    atuais.put(rs.getInt("id"), new Ingrediente(rs.getString("nome"), rs.getDouble("quantidade"), rs.getString("unidade")));
+                }
+            }
         }
-        try (PreparedStatement ps = conn.prepareStatement(DELETE_PASSOS_BY_RECEITA_ID)) {
+
+        Diferenca<Ingrediente> diferenca = Diferenca.calcular(atuais, novos);
+
+        if (!diferenca.alterar.isEmpty()) {
+            try (PreparedStatement ps = conn.prepareStatement(UPDATE_INGREDIENTE)) {
+                for (Map.Entry<Integer, Ingrediente> item : diferenca.alterar) {
+                    ps.setString(1, item.getValue().getNome());
+                    ps.setDouble(2, item.getValue().getQuantidade());
+                    ps.setString(3, item.getValue().getUnidade());
+                    ps.setInt(4, item.getKey());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            resultado.atualizadas(diferenca.alterar.size());
+        }
+        inserirIngredientesEmLote(conn, receitaId, diferenca.inserir);
+        resultado.inseridas(diferenca.inserir.size());
+        resultado.removidas(removerPorIds(conn, DELETE_INGREDIENTES_BY_IDS, diferenca.remover));
+    }
+
+    private void atualizarPassos(Connection conn, int receitaId, List<Passo> novos, ResultadoAtualizacao resultado) throws SQLException {
+        Map<Integer, Passo> atuais = new LinkedHashMap<>();
+        try (PreparedStatement ps = conn.prepareStatement(SELECT_PASSOS_BY_RECEITA_ID)) {
             ps.setInt(1, receitaId);
-            ps.executeUpdate();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    atuais.put(rs.getInt("id"), new Passo(rs.getInt("ordem"), rs.getString("descricao")));
+                }
+            }
+        }
+
+        Diferenca<Passo> diferenca = Diferenca.calcular(atuais, novos);
+
+        if (!diferenca.alterar.isEmpty()) {
+            try (PreparedStatement ps = conn.prepareStatement(UPDATE_PASSO)) {
+                for (Map.Entry<Integer, Passo> item : diferenca.alterar) {
+                    ps.setInt(1, item.getValue().getOrdem());
+                    ps.setString(2, item.getValue().getDescricao());
+                    ps.setInt(3, item.getKey());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            resultado.atualizadas(diferenca.alterar.size());
         }
+        inserirPassosEmLote(conn, receitaId, diferenca.inserir);
+        resultado.inseridas(diferenca.inserir.size());
+        resultado.removidas(removerPorIds(conn, DELETE_PASSOS_BY_IDS, diferenca.remover));
+    }
+
+    private int removerPorIds(Connection conn, String sql, List<Integer> ids) throws SQLException {
+        if (ids.isEmpty()) return 0;
+
+        Array array = conn.createArrayOf("integer", ids.toArray());
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setArray(1, array);
+            return ps.executeUpdate();
+        } finally {
+            array.free();
+        }
+    }
+
+    private interface Escrita<T> {
+        T executar() throws SQLException;
     }
-}
\ No newline at end of file
+}
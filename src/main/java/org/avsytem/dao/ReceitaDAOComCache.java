@@ -0,0 +1,376 @@
+package org.avsytem.dao;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.avsytem.model.Ingrediente;
+import org.avsytem.model.Passo;
+import org.avsytem.model.Receita;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * ReceitaDAO com um cache em memria, por usurio, na frente das leituras.
+ *
+ * Guarda a listagem completa e as pginas j consultadas de cada usurio, inclusive as do modelo de leitura
+ * por documento. O cache  limitado por um oramento total de memria (peso estimado em bytes) e usa a
+ * poltica W-TinyLFU do Caffeine.
+ *
+ * A verso do usurio (ReceitaDAO.versao) faz parte da chave. Toda escrita (adicionar, atualizar, deletar, importar)
+ * avana a verso antes de retornar, de modo que nenhuma leitura posterior enxerga dados antigos,
+ * mesmo com vrias abas do mesmo usurio consultando em paralelo. Na mesma escrita, a listagem
+ * completa  corrigida no lugar quando possvel (deleo e atualizao que no muda o nome, com a
+ * receita relida do banco) e as pginas so descartadas, j que as posies mudam. As chaves de
+ * cada usurio ficam registradas  parte, para que a escrita remova s as dele. Leituras
+ * concorrentes da mesma chave so agrupadas em uma nica consulta ao banco.
+ *
+ * As escritas de outros ns s chegam aqui pelo feed de alteraes (CentralDeEventos.acompanhar): sem ele,
+ * com mais de um n, o cache de cada um s enxerga as prprias escritas.
+ */
+public class ReceitaDAOComCache extends ReceitaDAO {
+
+    private static final String LISTAGEM_COMPLETA = "*";
+
+    private final Cache<Chave, Object> cache;
+    // Chaves presentes no cache, por usurio: a escrita remove as do usurio sem percorrer as dos outros
+    private final ConcurrentMap<Integer, Set<Chave>> chavesPorUsuario = new ConcurrentHashMap<>();
+
+    /**
+     * @param dataSource O pool de conexes a ser usado.
+     * @param orcamentoEmBytes O tamanho mximo estimado, em bytes, de todas as entradas somadas.
+     */
+    public ReceitaDAOComCache(DataSource dataSource, long orcamentoEmBytes) {
+        this(dataSource, orcamentoEmBytes, null);
+    }
+
+    /**
+     * @param dataSource O pool de conexes a ser usado.
+     * @param orcamentoEmBytes O tamanho mximo estimado, em bytes, de todas as entradas somadas.
+     * @param documentos O modelo de leitura por documento, ou null para deslig-lo.
+     */
+    public ReceitaDAOComCache(DataSource dataSource, long orcamentoEmBytes, ModeloDeLeitura documentos) {
+        this(dataSource, orcamentoEmBytes, documentos, false);
+    }
+
+    /**
+     * @param dataSource O pool de conexes a ser usado.
+     * @param orcamentoEmBytes O tamanho mximo estimado, em bytes, de todas as entradas somadas.
+     * @param documentos O modelo de leitura por documento, ou null para deslig-lo.
+     * @param avisarAlteracoes true para que as escritas avisem as receitas alteradas no CanalDeAlteracoes.
+     */
+    public ReceitaDAOComCache(DataSource dataSource, long orcamentoEmBytes, ModeloDeLeitura documentos, boolean avisarAlteracoes) {
+        super(dataSource, documentos, avisarAlteracoes);
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(orcamentoEmBytes)
+                .weigher((Chave chave, Object valor) -> estimarBytes(valor))
+                // Na prpria thread, para que a chave removida por falta de espao saia logo do registro
+                .executor(Runnable::run)
+                .removalListener((Chave chave, Object valor, RemovalCause causa) -> {
+                    if (causa.wasEvicted()) esquecer(chave);
+                })
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Receita> listar(int usuarioId) throws SQLException {
+        return (List<Receita>) carregar(usuarioId, LISTAGEM_COMPLETA, () -> Collections.unmodifiableList(super.listar(usuarioId)));
+    }
+
+    @Override
+    public PaginaReceitas listarPagina(int usuarioId, ConsultaPaginada consulta) throws SQLException {
+        return (PaginaReceitas) carregar(usuarioId, "p:" + descrever(consulta), () -> super.listarPagina(usuarioId, consulta));
+    }
+
+    @Override
+    public PaginaDeDocumentos listarPaginaDeDocumentos(int usuarioId, ConsultaPaginada consulta) throws SQLException {
+        return (PaginaDeDocumentos) carregar(usuarioId, "d:" + descrever(consulta), () -> super.listarPaginaDeDocumentos(usuarioId, consulta));
+    }
+
+    @Override
+    public void adicionar(Receita receita) throws SQLException {
+        try {
+            super.adicionar(receita);
+        } finally {
+            invalidar(receita.getUsuario_id(), null, false);
+        }
+    }
+
+    @Override
+    public ResultadoAtualizacao atualizar(Receita receita) throws SQLException {
+        ResultadoAtualizacao resultado = null;
+        try {
+            resultado = super.atualizar(receita);
+            return resultado;
+        } finally {
+            if (resultado == null) {
+                invalidar(receita.getUsuario_id(), null, false);
+            } else if (resultado.getTotal() > 0) {
+                invalidar(receita.getUsuario_id(), receita.getId(), false);
+            }
+        }
+    }
+
+    @Override
+    public boolean deletar(int receitaId, int usuarioId) throws SQLException {
+        boolean deletada = false;
+        try {
+            deletada = super.deletar(receitaId, usuarioId);
+            return deletada;
+        } finally {
+            invalidar(usuarioId, deletada ? receitaId : null, true);
+        }
+    }
+
+    @Override
+    public ResultadoDoLote salvarEmLote(int usuarioId, List<Receita> receitas) throws SQLException {
+        ResultadoDoLote resultado = null;
+        try {
+            resultado = super.salvarEmLote(usuarioId, receitas);
+            return resultado;
+        } finally {
+            if (resultado == null || resultado.getLinhasAlteradas() > 0) {
+                invalidar(usuarioId, null, false);
+            }
+        }
+    }
+
+    @Override
+    public ResultadoDoLote deletarEmLote(int usuarioId, List<Integer> receitaIds) throws SQLException {
+        try {
+            return super.deletarEmLote(usuarioId, receitaIds);
+        } finally {
+            invalidar(usuarioId, null, false);
+        }
+    }
+
+    @Override
+    public ResultadoImportacao importar(int usuarioId, FonteDeReceitas fonte, ProgressoDaImportacao progresso) throws SQLException, IOException {
+        try {
+            return super.importar(usuarioId, fonte, progresso);
+        } finally {
+            invalidar(usuarioId, null, false);
+        }
+    }
+
+    /**
+     * @return Contadores de acertos, faltas e remoes por falta de espao.
+     */
+    public CacheStats getEstatisticas() {
+        return cache.stats();
+    }
+
+    @Override
+    public void registrarAlteracaoExterna(CanalDeAlteracoes.Alteracao alteracao) {
+        if (alteracao.isDesteNo()) return;
+        super.registrarAlteracaoExterna(alteracao);
+        invalidar(alteracao.getUsuarioId(), null, false);
+    }
+
+    @Override
+    public void registrarAvisosPerdidos() {
+        super.registrarAvisosPerdidos();
+        chavesPorUsuario.clear();
+        cache.invalidateAll();
+    }
+
+    /**
+     * @return O peso estimado, em bytes, ocupado hoje pelas entradas.
+     */
+    public long getBytesEmUso() {
+        return cache.policy().eviction().map(e -> e.weightedSize().orElse(0L)).orElse(0L);
+    }
+
+    // --- MTODOS PRIVADOS AUXILIARES ---
+
+    private static String descrever(ConsultaPaginada consulta) {
+        return consulta.getOrdenacao() + ":" + consulta.isDescendente() + ':' + consulta.getLimite() + ':'
+                + (consulta.temCursor() ? "c" + consulta.getCursorId() + ':' + consulta.getCursorValor() : "o" + consulta.getDeslocamento());
+    }
+
+    private Object carregar(int usuarioId, String descricao, Carga carga) throws SQLException {
+        long versaoLida = versao(usuarioId);
+        Chave chave = new Chave(usuarioId, versaoLida, descricao);
+        Object valor;
+        try {
+            valor = cache.get(chave, k -> {
+                try {
+                    Object carregado = carga.executar();
+                    registrar(chave);
+                    return carregado;
+                } catch (SQLException e) {
+                    throw new FalhaDeCarga(e);
+                }
+            });
+        } catch (FalhaDeCarga e) {
+            throw e.getCause();
+        }
+        // Uma escrita terminou durante a carga: o valor pode estar desatualizado e nunca mais ser lido
+        if (versao(usuarioId) != versaoLida) {
+            cache.invalidate(chave);
+        }
+        return valor;
+    }
+
+    /**
+     * Chamado depois da escrita, que j avanou a verso do usurio: remove as entradas dele e,
+     * se a alterao for pontual (receitaAlterada != null), corrige a listagem completa da verso
+     * imediatamente anterior e a republica na verso atual. A receita atualizada  relida do banco
+     * (listarPorIds), no copiada do chamador, para que o acerto devolva o mesmo corpo que a falta,
+     * com ingredientes e passos na ordem em que o DAO os l.
+     * @param receitaAlterada O ID da receita deletada ou atualizada, ou null para apenas invalidar.
+     * @param removida true se a receita foi deletada.
+     */
+    private void invalidar(int usuarioId, Integer receitaAlterada, boolean removida) {
+        long nova = versao(usuarioId);
+        long antiga = nova - 1;
+
+        Object listagem = cache.getIfPresent(new Chave(usuarioId, antiga, LISTAGEM_COMPLETA));
+        Set<Chave> chaves = chavesPorUsuario.remove(usuarioId);
+        if (chaves != null) {
+            cache.invalidateAll(chaves);
+        }
+
+        if (receitaAlterada == null || listagem == null) return;
+
+        Receita novaVersao = null;
+        if (!removida) {
+            try {
+                List<Receita> relida = listarPorIds(usuarioId, Collections.singletonList(receitaAlterada));
+                if (relida.isEmpty()) return;
+                novaVersao = relida.get(0);
+            } catch (SQLException e) {
+                // Sem a receita, a listagem fica s invalidada e a prxima leitura vai ao banco
+                return;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        List<Receita> corrigida = corrigir((List<Receita>) listagem, receitaAlterada, novaVersao);
+        if (corrigida != null) {
+            Chave chave = new Chave(usuarioId, nova, LISTAGEM_COMPLETA);
+            if (cache.asMap().putIfAbsent(chave, corrigida) == null) {
+                registrar(chave);
+            }
+            if (versao(usuarioId) != nova) {
+                cache.invalidate(chave);
+            }
+        }
+    }
+
+    // registrar e esquecer alteram o conjunto dentro do compute, para que um conjunto vazio removido
+    // do mapa no receba mais chaves
+    private void registrar(Chave chave) {
+        chavesPorUsuario.compute(chave.usuarioId, (id, chaves) -> {
+            Set<Chave> conjunto = chaves != null ? chaves : ConcurrentHashMap.newKeySet();
+            conjunto.add(chave);
+            return conjunto;
+        });
+    }
+
+    private void esquecer(Chave chave) {
+        chavesPorUsuario.computeIfPresent(chave.usuarioId, (id, chaves) -> {
+            chaves.remove(chave);
+            return chaves.isEmpty() ? null : chaves;
+        });
+    }
+
+    private List<Receita> corrigir(List<Receita> listagem, int receitaId, Receita novaVersao) {
+        List<Receita> corrigida = new ArrayList<>(listagem.size());
+        boolean encontrada = false;
+        for (Receita receita : listagem) {
+            if (receita.getId() != receitaId) {
+                corrigida.add(receita);
+                continue;
+            }
+            encontrada = true;
+            if (novaVersao != null) {
+                // Nome diferente muda a posio na ordenao: mais simples recarregar do banco
+                if (!Objects.equals(receita.getNome(), novaVersao.getNome())) return null;
+                corrigida.add(novaVersao);
+            }
+        }
+        return encontrada ? Collections.unmodifiableList(corrigida) : null;
+    }
+
+    private static int estimarBytes(Object valor) {
+        if (valor instanceof PaginaDeDocumentos) {
+            PaginaDeDocumentos pagina = (PaginaDeDocumentos) valor;
+            return (int) Math.min(64 + 16L * pagina.getDocumentos().size() + pagina.getBytes(), Integer.MAX_VALUE);
+        }
+        List<Receita> receitas = valor instanceof PaginaReceitas ? ((PaginaReceitas) valor).getReceitas() : castLista(valor);
+        long bytes = 64;
+        for (Receita receita : receitas) {
+            bytes += 80 + bytes(receita.getNome()) + bytes(receita.getDescricao()) + bytes(receita.getDificuldade());
+            for (Ingrediente i : receita.getIngredientes()) {
+                bytes += 48 + bytes(i.getNome()) + bytes(i.getUnidade());
+            }
+            for (Passo p : receita.getPassos()) {
+                bytes += 32 + bytes(p.getDescricao());
+            }
+        }
+        return (int) Math.min(bytes, Integer.MAX_VALUE);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Receita> castLista(Object valor) {
+        return (List<Receita>) valor;
+    }
+
+    private static long bytes(String texto) {
+        return texto == null ? 0 : 40 + 2L * texto.length();
+    }
+
+    private interface Carga {
+        Object executar() throws SQLException;
+    }
+
+    private static final class FalhaDeCarga extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        FalhaDeCarga(SQLException causa) {
+            super(causa);
+        }
+
+        @Override
+        public synchronized SQLException getCause() {
+            return (SQLException) super.getCause();
+        }
+    }
+
+    private static final class Chave {
+        private final int usuarioId;
+        private final long versao;
+        private final String consulta;
+
+        Chave(int usuarioId, long versao, String consulta) {
+            this.usuarioId = usuarioId;
+            this.versao = versao;
+            this.consulta = consulta;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Chave)) return false;
+            Chave chave = (Chave) o;
+            return usuarioId == chave.usuarioId && versao == chave.versao && consulta.equals(chave.consulta);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(usuarioId, versao, consulta);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package org.avsytem.dao;
+
+import org.avsytem.model.Receita;
+
+/**
+ * Uma receita devolvida pela busca textual, com a relevncia e os trechos destacados.
+ * Os destaques j vm com o HTML escapado e os termos encontrados entre &lt;mark&gt; e &lt;/mark&gt;.
+ */
+public class ReceitaEncontrada {
+
+    private final Receita receita;
+    private final double relevancia;
+    private final String destaqueNome;
+    private final String destaqueTrecho;
+
+    public ReceitaEncontrada(Receita receita, double relevancia, String destaqueNome, String destaqueTrecho) {
+        this.receita = receita;
+        this.relevancia = relevancia;
+        this.destaqueNome = destaqueNome;
+        this.destaqueTrecho = destaqueTrecho;
+    }
+
+    public Receita getReceita() {
+        return receita;
+    }
+
+    public double getRelevancia() {
+        return relevancia;
+    }
+
+    public String getDestaqueNome() {
+        return destaqueNome;
+    }
+
+    /** @return Trecho da descrio em volta dos termos encontrados (vazio se a receita no tiver descrio). */
+    public String getDestaqueTrecho() {
+        return destaqueTrecho;
+    }
+}
@@ -0,0 +1,15 @@
+package org.avsytem.dao;
+
+import java.io.IOException;
+
+/**
+ * Lanada por uma FonteDeReceitas quando um registro no pode ser convertido em receita,
+ * mas a leitura dos registros seguintes ainda  possvel.
+ */
+public class RegistroInvalidoException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public RegistroInvalidoException(String message) {
+        super(message);
+    }
+}
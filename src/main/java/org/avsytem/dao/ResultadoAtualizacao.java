@@ -0,0 +1,65 @@
+package org.avsytem.dao;
+
+/**
+ * Quantas linhas uma atualizao de receita realmente escreveu, por tipo de operao.
+ * Serve para medir a reduo de escrita do update por diferena em relao ao antigo
+ * "apaga tudo e reinsere".
+ */
+public class ResultadoAtualizacao {
+
+    private int receitasAtualizadas;
+    private int linhasInseridas;
+    private int linhasAtualizadas;
+    private int linhasRemovidas;
+
+    void receitaAtualizada() {
+        receitasAtualizadas++;
+    }
+
+    void inseridas(int quantidade) {
+        linhasInseridas += quantidade;
+    }
+
+    void atualizadas(int quantidade) {
+        linhasAtualizadas += quantidade;
+    }
+
+    void removidas(int quantidade) {
+        linhasRemovidas += quantidade;
+    }
+
+    /** @return 1 se a linha de receitas foi alterada, 0 se os campos j estavam iguais. */
+    public int getReceitasAtualizadas() {
+        return receitasAtualizadas;
+    }
+
+    /** @return Ingredientes e passos inseridos. */
+    public int getLinhasInseridas() {
+        return linhasInseridas;
+    }
+
+    /** @return Ingredientes e passos alterados no lugar. */
+    public int getLinhasAtualizadas() {
+        return linhasAtualizadas;
+    }
+
+    /** @return Ingredientes e passos removidos. */
+    public int getLinhasRemovidas() {
+        return linhasRemovidas;
+    }
+
+    /** @return Total de linhas escritas; 0 quando a receita enviada era idntica  gravada. */
+    public int getTotal() {
+        return receitasAtualizadas + linhasInseridas + linhasAtualizadas + linhasRemovidas;
+    }
+
+    @Override
+    public String toString() {
+        return "ResultadoAtualizacao{" +
+                "receitasAtualizadas=" + receitasAtualizadas +
+                ", linhasInseridas=" + linhasInseridas +
+                ", linhasAtualizadas=" + linhasAtualizadas +
+                ", linhasRemovidas=" + linhasRemovidas +
+                '}';
+    }
+}
@@ -0,0 +1,25 @@
+package org.avsytem.dao;
+
+import java.util.List;
+
+/**
+ * Uma pgina de resultados da busca textual, em ordem de relevncia, e o total de receitas encontradas.
+ */
+public class ResultadoBusca {
+
+    private final List<ReceitaEncontrada> receitas;
+    private final int total;
+
+    public ResultadoBusca(List<ReceitaEncontrada> receitas, int total) {
+        this.receitas = receitas;
+        this.total = total;
+    }
+
+    public List<ReceitaEncontrada> getReceitas() {
+        return receitas;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+}
@@ -0,0 +1,97 @@
+package org.avsytem.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Resultado de uma gravao ou remoo em lote: um item por receita enviada, na mesma ordem,
+ * dizendo o que aconteceu com ela.
+ */
+public class ResultadoDoLote {
+
+    public static final String CRIADA = "criada";
+    public static final String ATUALIZADA = "atualizada";
+    public static final String INALTERADA = "inalterada";
+    public static final String REMOVIDA = "removida";
+    public static final String NAO_ENCONTRADA = "nao_encontrada";
+
+    private final List<Item> itens;
+
+    ResultadoDoLote(int tamanho) {
+        this.itens = new ArrayList<>(tamanho);
+    }
+
+    Item adicionar(int id, String status) {
+        Item item = new Item(id, status);
+        itens.add(item);
+        return item;
+    }
+
+    /** @return Os itens, na ordem em que as receitas foram enviadas. */
+    public List<Item> getItens() {
+        return Collections.unmodifiableList(itens);
+    }
+
+    /** @return Quantos itens terminaram com o status informado. */
+    public int contar(String status) {
+        int total = 0;
+        for (Item item : itens) {
+            if (item.status.equals(status)) total++;
+        }
+        return total;
+    }
+
+    /** @return Linhas escritas no banco pelo lote inteiro; 0 quando nada mudou. */
+    public int getLinhasAlteradas() {
+        int total = 0;
+        for (Item item : itens) {
+            total += item.linhasAlteradas;
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        return "ResultadoDoLote{" + CRIADA + "=" + contar(CRIADA) + ", " + ATUALIZADA + "=" + contar(ATUALIZADA)
+                + ", " + INALTERADA + "=" + contar(INALTERADA) + ", " + REMOVIDA + "=" + contar(REMOVIDA)
+                + ", " + NAO_ENCONTRADA + "=" + contar(NAO_ENCONTRADA) + '}';
+    }
+
+    /**
+     * O destino de uma receita do lote.
+     */
+    public static class Item {
+        private int id;
+        private String status;
+        private int linhasAlteradas;
+
+        Item(int id, String status) {
+            this.id = id;
+            this.status = status;
+        }
+
+        void concluir(String status, int linhasAlteradas) {
+            this.status = status;
+            this.linhasAlteradas = linhasAlteradas;
+        }
+
+        /** @return O ID da receita (o gerado, para as criadas). */
+        public int getId() {
+            return id;
+        }
+
+        void setId(int id) {
+            this.id = id;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        /** @return Linhas de receitas, ingredientes e passos escritas para esta receita. */
+        public int getLinhasAlteradas() {
+            return linhasAlteradas;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.avsytem.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Resultado de uma importao em massa: quantos registros foram lidos, gravados e recusados,
+ * e o motivo de cada recusa (limitado aos primeiros MAXIMO_ERROS, para no crescer com o arquivo).
+ */
+public class ResultadoImportacao {
+
+    public static final int MAXIMO_ERROS = 100;
+
+    private int lidos;
+    private int importadas;
+    private int rejeitadas;
+    private final List<Erro> erros = new ArrayList<>();
+    private String interrupcao;
+
+    void lido() {
+        lidos++;
+    }
+
+    void importadas(int quantidade) {
+        importadas += quantidade;
+    }
+
+    void rejeitar(int registro, String mensagem) {
+        rejeitadas++;
+        if (erros.size() < MAXIMO_ERROS) {
+            erros.add(new Erro(registro, mensagem));
+        }
+    }
+
+    void interromper(String motivo) {
+        interrupcao = motivo;
+    }
+
+    /** @return Registros lidos do corpo da requisio, vlidos ou no. */
+    public int getLidos() {
+        return lidos;
+    }
+
+    /** @return Receitas efetivamente gravadas. */
+    public int getImportadas() {
+        return importadas;
+    }
+
+    /** @return Registros recusados, inclusive os que no aparecem em getErros(). */
+    public int getRejeitadas() {
+        return rejeitadas;
+    }
+
+    public List<Erro> getErros() {
+        return Collections.unmodifiableList(erros);
+    }
+
+    /** @return Por que a leitura parou antes do fim do corpo, ou null se ele foi lido inteiro. */
+    public String getInterrupcao() {
+        return interrupcao;
+    }
+
+    /**
+     * Um registro recusado.
+     */
+    public static final class Erro {
+        private final int registro;
+        private final String mensagem;
+
+        Erro(int registro, String mensagem) {
+            this.registro = registro;
+            this.mensagem = mensagem;
+        }
+
+        /** @return A posio do registro no corpo, comeando em 1. */
+        public int getRegistro() {
+            return registro;
+        }
+
+        public String getMensagem() {
+            return mensagem;
+        }
+    }
+}
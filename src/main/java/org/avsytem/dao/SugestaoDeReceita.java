@@ -0,0 +1,46 @@
+package org.avsytem.dao;
+
+import java.util.List;
+
+/**
+ * Uma receita sugerida para os ingredientes que o usurio tem em mos.
+ */
+public class SugestaoDeReceita {
+
+    private final int id;
+    private final String nome;
+    private final int totalIngredientes;
+    private final int disponiveis;
+    private final List<String> faltando;
+
+    public SugestaoDeReceita(int id, String nome, int totalIngredientes, int disponiveis, List<String> faltando) {
+        this.id = id;
+        this.nome = nome;
+        this.totalIngredientes = totalIngredientes;
+        this.disponiveis = disponiveis;
+        this.faltando = faltando;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getNome() {
+        return nome;
+    }
+
+    /** @return Ingredientes distintos da receita. */
+    public int getTotalIngredientes() {
+        return totalIngredientes;
+    }
+
+    /** @return Quantos deles o usurio informou ter. */
+    public int getDisponiveis() {
+        return disponiveis;
+    }
+
+    /** @return Os ingredientes que faltam, com o nome como cadastrado. */
+    public List<String> getFaltando() {
+        return faltando;
+    }
+}
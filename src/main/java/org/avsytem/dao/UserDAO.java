@@ -1,12 +1,13 @@
 package org.avsytem.dao;
 
-import org.mindrot.jbcrypt.BCrypt;
+import org.avsytem.metricas.MetodoMedido;
 
 import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collections;
 import java.util.logging.Logger;
 
 /**
@@ -20,98 +21,165 @@ public class UserDAO {
 
     // 1. As queries so definidas como constantes para clareza e manuteno.
     private static final String INSERT_USER_SQL = "INSERT INTO usuarios (nome_completo, email, username, password_hash) VALUES (?, ?, ?, ?)";
-    private static final String GET_HASH_SQL = "SELECT password_hash FROM usuarios WHERE username = ? AND ativo = true";
-    private static final String DELETE_USER_SQL = "DELETE FROM usuarios WHERE username = ?";
+    private static final String GET_CREDENCIAIS_SQL = "SELECT id, password_hash FROM usuarios WHERE username = ? AND ativo = true";
+    // S troca o hash se ele ainda for o verificado no login (uma troca de senha concorrente vence)
+    private static final String UPDATE_HASH_SQL = "UPDATE usuarios SET password_hash = ? WHERE id = ? AND password_hash = ?";
+    private static final String DELETE_USER_SQL = "DELETE FROM usuarios WHERE username = ? RETURNING id";
+
+    // Tempo de cada mtodo (receitas_dao_segundos)
+    private static final MetodoMedido ADICIONAR = MetodoMedido.de("UserDAO", "adicionar");
+    private static final MetodoMedido BUSCAR_CREDENCIAIS = MetodoMedido.de("UserDAO", "buscarCredenciais");
+    private static final MetodoMedido ATUALIZAR_HASH = MetodoMedido.de("UserDAO", "atualizarHash");
+    private static final MetodoMedido DELETAR = MetodoMedido.de("UserDAO", "deletarPorUsername");
 
     // 2. O DAO armazena a referncia ao pool de conexes.
     private final DataSource dataSource;
+    // Com rplicas de leitura, buscarCredenciais vai para elas (null: tudo no dataSource)
+    private final DataSourceComReplicas replicas;
+    // A excluso avisa no CanalDeAlteracoes, na prpria transao, que os tokens do usurio devem ser revogados
+    private final boolean avisarRevogacoes;
 
     /**
      * Construtor que recebe o DataSource.
      * @param dataSource O pool de conexes a ser usado.
      */
     public UserDAO(DataSource dataSource) {
+        this(dataSource, false);
+    }
+
+    /**
+     * @param dataSource O pool de conexes a ser usado.
+     * @param avisarRevogacoes true para que a excluso de um usurio avise todos os ns (CanalDeAlteracoes.REVOGAR).
+     */
+    public UserDAO(DataSource dataSource, boolean avisarRevogacoes) {
         this.dataSource = dataSource;
+        this.replicas = dataSource instanceof DataSourceComReplicas ? (DataSourceComReplicas) dataSource : null;
+        this.avisarRevogacoes = avisarRevogacoes;
     }
 
     /**
-     * Adiciona um novo usurio ao banco de dados, com a senha criptografada.
+     * Adiciona um novo usurio ao banco de dados.
      * @param nomeCompleto O nome completo do usurio.
      * @param email O email do usurio.
      * @param username O nome de usurio para login.
-     * @param plainTextPassword A senha em texto plano, que ser criptografada.
+     * @param hashDaSenha O hash BCrypt da senha, calculado fora da conexo (VerificadorDeSenhas.gerarHash,
+     *                    no pool limitado e com o custo configurado).
      * @throws SQLException se ocorrer um erro no banco, como username duplicado.
      */
-    public void adicionar(String nomeCompleto, String email, String username, String plainTextPassword) throws SQLException {
-        String hashedPassword = BCrypt.hashpw(plainTextPassword, BCrypt.gensalt());
-
-        // 3. O mtodo obtm, usa e fecha sua prpria conexo do pool.
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(INSERT_USER_SQL)) {
-
-            pstmt.setString(1, nomeCompleto);
-            pstmt.setString(2, email);
-            pstmt.setString(3, username);
-            pstmt.setString(4, hashedPassword);
-            pstmt.executeUpdate();
+    public void adicionar(String nomeCompleto, String email, String username, String hashDaSenha) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            // 3. O mtodo obtm, usa e fecha sua prpria conexo do pool.
+            try (Connection conn = dataSource.getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(INSERT_USER_SQL)) {
+
+                pstmt.setString(1, nomeCompleto);
+                pstmt.setString(2, email);
+                pstmt.setString(3, username);
+                pstmt.setString(4, hashDaSenha);
+                pstmt.executeUpdate();
+            } finally {
+                // O login logo depois do cadastro no pode depender da rplica j ter o usurio
+                escreveu(username);
+            }
+        } finally {
+            ADICIONAR.registrar(inicio);
         }
     }
 
     /**
-     * Busca o hash da senha de um usurio pelo seu username.
-     * Retorna o hash se o usurio for encontrado e estiver ativo, caso contrrio, null.
+     * Busca o ID e o hash da senha de um usurio ativo em uma nica consulta.
+     * @return As credenciais, ou null se o usurio no existir ou estiver inativo.
      */
-    public String getPasswordHashByUsername(String username) throws SQLException {
-        // 3. O mtodo obtm, usa e fecha sua prpria conexo do pool.
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(GET_HASH_SQL)) {
-
-            pstmt.setString(1, username);
-
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getString("password_hash");
+    public Credenciais buscarCredenciais(String username) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            // 3. O mtodo obtm, usa e fecha sua prpria conexo do pool (de uma rplica, se houver).
+            try (Connection conn = replicas != null ? replicas.getConnectionDeLeitura(username) : dataSource.getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(GET_CREDENCIAIS_SQL)) {
+
+                pstmt.setString(1, username);
+
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        BUSCAR_CREDENCIAIS.linhasLidas(1);
+                        return new Credenciais(rs.getInt("id"), rs.getString("password_hash"));
+                    }
                 }
             }
+            return null; // Usurio no encontrado ou inativo
+        } finally {
+            BUSCAR_CREDENCIAIS.registrar(inicio);
         }
-        return null; // Usurio no encontrado ou inativo
     }
 
     /**
-     * Deleta um usurio do banco de dados pelo seu username.
-     * @param username O nome de usurio a ser deletado.
-     * @return true se um usurio foi deletado, false caso contrrio.
-     * @throws SQLException se ocorrer um erro no banco.
+     * Regrava o hash da senha com outro custo, depois de um login bem-sucedido.
+     * @param hashAntigo O hash que acabou de ser verificado.
+     * @return true se o hash foi trocado; false se ele mudou nesse meio tempo.
      */
-    public boolean deletarPorUsername(String username) throws SQLException {
-        // 3. O mtodo obtm, usa e fecha sua prpria conexo do pool.
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(DELETE_USER_SQL)) {
-
-            pstmt.setString(1, username);
-            int affectedRows = pstmt.executeUpdate();
-            return affectedRows > 0;
+    public boolean atualizarHash(int usuarioId, String hashAntigo, String hashNovo) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            try (Connection conn = dataSource.getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(UPDATE_HASH_SQL)) {
+
+                pstmt.setString(1, hashNovo);
+                pstmt.setInt(2, usuarioId);
+                pstmt.setString(3, hashAntigo);
+                return pstmt.executeUpdate() > 0;
+            }
+        } finally {
+            ATUALIZAR_HASH.registrar(inicio);
         }
     }
 
     /**
-     * Busca o ID de um usurio pelo seu username.
-     * @param username O nome de usurio.
-     * @return O ID do usurio ou -1 se no for encontrado.
-     * @throws SQLException
+     * Deleta um usurio do banco de dados pelo seu username. Com avisarRevogacoes, o DELETE e o aviso
+     * de revogao vo na mesma transao: os outros ns s revogam se a excluso for gravada.
+     * @param username O nome de usurio a ser deletado.
+     * @return true se um usurio foi deletado, false caso contrrio.
+     * @throws SQLException se ocorrer um erro no banco.
      */
-    public int getIdByUsername(String username) throws SQLException {
-        String sql = "SELECT id FROM usuarios WHERE username = ? AND ativo = true";
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setString(1, username);
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt("id");
+    public boolean deletarPorUsername(String username) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            // 3. O mtodo obtm, usa e fecha sua prpria conexo do pool.
+            try (Connection conn = dataSource.getConnection()) {
+                boolean autoCommitOriginal = conn.getAutoCommit();
+                try {
+                    conn.setAutoCommit(!avisarRevogacoes);
+                    Integer usuarioId = null;
+                    try (PreparedStatement pstmt = conn.prepareStatement(DELETE_USER_SQL)) {
+                        pstmt.setString(1, username);
+                        try (ResultSet rs = pstmt.executeQuery()) {
+                            if (rs.next()) usuarioId = rs.getInt(1);
+                        }
+                    }
+                    if (avisarRevogacoes) {
+                        if (usuarioId != null) {
+                            CanalDeAlteracoes.avisar(conn, usuarioId, CanalDeAlteracoes.REVOGAR, Collections.<Integer>emptyList());
+                        }
+                        conn.commit();
+                    }
+                    return usuarioId != null;
+                } catch (SQLException e) {
+                    if (avisarRevogacoes) conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(autoCommitOriginal);
                 }
+            } finally {
+                escreveu(username);
             }
+        } finally {
+            DELETAR.registrar(inicio);
+        }
+    }
+
+    private void escreveu(String username) {
+        if (replicas != null) {
+            replicas.escreveu(username);
         }
-        return -1; // Retorna -1 se o usurio no for encontrado
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,141 @@
+package org.avsytem.eventos;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Uma conexo aberta em /receitas/eventos: a requisio assncrona e a fila dos eventos que ainda no couberam nela.
+ *
+ * As escritas so no bloqueantes: enviar() escreve enquanto o isReady() da sada permitir e o restante fica na
+ * fila at o onWritePossible(). Quem no acompanha (fila cheia)  encerrado; o EventSource reconecta e recarrega.
+ * Todos os mtodos que tocam a sada so sincronizados, porque ela  usada pela thread do ouvinte, pela dos
+ * heartbeats e pelas do Tomcat.
+ */
+final class AssinaturaDeEventos implements WriteListener, AsyncListener {
+
+    private final CentralDeEventos central;
+    private final int usuarioId;
+    private final AsyncContext async;
+    private final ServletOutputStream saida;
+    private final int filaMaxima;
+    private final Deque<byte[]> fila = new ArrayDeque<>();
+
+    private boolean escutando;
+    private boolean pendenteFlush;
+    private boolean encerrada;
+
+    /**
+     * @param inicio Os primeiros bytes da resposta, enviados assim que a sada estiver pronta.
+     */
+    AssinaturaDeEventos(CentralDeEventos central, int usuarioId, AsyncContext async, ServletOutputStream saida, int filaMaxima, byte[] inicio) {
+        this.central = central;
+        this.usuarioId = usuarioId;
+        this.async = async;
+        this.saida = saida;
+        this.filaMaxima = filaMaxima;
+        fila.add(inicio);
+    }
+
+    int getUsuarioId() {
+        return usuarioId;
+    }
+
+    /**
+     * Passa a sada para o modo no bloqueante; at aqui os eventos s eram enfileirados.
+     * Chamado uma vez, na thread da requisio.
+     */
+    synchronized void escutar() {
+        if (encerrada) return;
+        escutando = true;
+        saida.setWriteListener(this);
+    }
+
+    /**
+     * Enfileira o evento e escreve o que a conexo aceitar agora, sem esperar.
+     * @return false se a conexo j estava encerrada ou foi encerrada agora por no acompanhar os eventos.
+     */
+    synchronized boolean enviar(byte[] evento) {
+        if (encerrada) return false;
+        if (fila.size() >= filaMaxima) {
+            CentralDeEventos.DESCARTADOS.incrementar();
+            encerrar();
+            return false;
+        }
+        fila.add(evento);
+        escrever();
+        return true;
+    }
+
+    /**
+     * Encerra a requisio (se ainda estiver aberta) e a retira da central.
+     */
+    synchronized void encerrar() {
+        if (encerrada) return;
+        encerrada = true;
+        fila.clear();
+        central.remover(this);
+        try {
+            async.complete();
+        } catch (IllegalStateException e) {
+            // O continer j encerrou a requisio (cliente desconectou)
+        }
+    }
+
+    @Override
+    public synchronized void onWritePossible() {
+        escrever();
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        encerrar();
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+        encerrar();
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+        encerrar();
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+        encerrar();
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+    }
+
+    /**
+     * Escreve a fila e d flush enquanto a sada aceitar; quando ela no aceita, o Tomcat chama onWritePossible() depois.
+     */
+    private void escrever() {
+        if (!escutando) return;
+        try {
+            while (!encerrada && saida.isReady()) {
+                byte[] proximo = fila.poll();
+                if (proximo != null) {
+                    saida.write(proximo);
+                    pendenteFlush = true;
+                } else if (pendenteFlush) {
+                    pendenteFlush = false;
+                    saida.flush();
+                } else {
+                    return;
+                }
+            }
+        } catch (IOException | IllegalStateException e) {
+            encerrar();
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package org.avsytem.eventos;
+
+import org.avsytem.dao.CanalDeAlteracoes;
+import org.avsytem.dao.ReceitaDAO;
+import org.avsytem.metricas.Contador;
+import org.avsytem.metricas.Metricas;
+import org.avsytem.security.TokenDeAcesso;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Feed de alteraes das receitas (context-param eventos): as escritas do ReceitaDAO avisam pelo NOTIFY do
+ * PostgreSQL (CanalDeAlteracoes), cada n mantm uma nica conexo em LISTEN (OuvinteDeAlteracoes) e repassa
+ * cada aviso, como Server-Sent Event, s abas abertas do usurio (GET /receitas/eventos, EventosServlet).
+ *
+ * Assinante parado no ocupa thread: a requisio fica em modo assncrono e as escritas so no bloqueantes
+ * (AssinaturaDeEventos). A thread do ouvinte s enfileira o evento e escreve o que a conexo aceitar; o resto
+ * sai quando o Tomcat avisar que ela aceita mais bytes. Por n, so duas threads no total: a do ouvinte e a
+ * dos heartbeats, que mantm as conexes abertas nos proxies e revelam os clientes que j foram embora.
+ *
+ * Os eventos no so guardados: quem se conecta (ou reconecta) recarrega a listagem e passa a receber os
+ * avisos dali em diante. Se o prprio ouvinte perder a conexo com o banco, todos recebem "recarregar" ao
+ * voltar, j que os avisos do intervalo se perderam.
+ *
+ * Os mesmos avisos mantm em dia os DAOs acompanhados (acompanhar): as escritas de outros ns avanam a verso
+ * do usurio (usada no ETag) e invalidam o cache dele antes que o evento chegue s abas, que ento recarregam
+ * com dados novos.
+ */
+public class CentralDeEventos implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(CentralDeEventos.class.getName());
+
+    private static final Set<String> TIPOS = new HashSet<>(Arrays.asList(CanalDeAlteracoes.CRIADA,
+            CanalDeAlteracoes.ATUALIZADA, CanalDeAlteracoes.REMOVIDA, CanalDeAlteracoes.RECARREGAR));
+    // Intervalo de reconexo sugerido ao EventSource; tambm  o primeiro envio, que libera os cabealhos
+    private static final byte[] INICIO = "retry: 5000\n\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] RECARREGAR = evento(CanalDeAlteracoes.RECARREGAR, new ArrayList<>());
+
+    private static final Contador ENVIADOS = Metricas.contador("receitas_eventos_enviados_total",
+            "Eventos de alterao entregues s conexes de /receitas/eventos.");
+    static final Contador DESCARTADOS = Metricas.contador("receitas_eventos_descartados_total",
+            "Conexes de /receitas/eventos encerradas por no acompanharem os eventos.");
+
+    private final ConcurrentMap<Integer, Set<AssinaturaDeEventos>> assinaturas = new ConcurrentHashMap<>();
+    private final AtomicInteger assinantes = new AtomicInteger();
+    private final int maximoAssinantes;
+    private final int filaMaxima;
+    private final long heartbeatMillis;
+    private final long duracaoMaximaMillis;
+    private final OuvinteDeAlteracoes ouvinte;
+    private final List<ReceitaDAO> daos = new CopyOnWriteArrayList<>();
+    private volatile TokenDeAcesso tokens;
+    private ScheduledExecutorService heartbeats;
+    private Thread threadDoOuvinte;
+
+    /**
+     * @param conexoes De onde o ouvinte tira a conexo que fica em LISTEN (o primrio; as rplicas no recebem NOTIFY).
+     * @param maximoAssinantes Conexes abertas neste n; acima disso, assinar() recusa.
+     * @param filaMaxima Eventos esperando a conexo do cliente aceitar bytes; acima disso ela  encerrada.
+     * @param heartbeatMillis Intervalo do comentrio vazio enviado a todas as conexes.
+     * @param duracaoMaximaMillis Tempo de vida de cada conexo (0: sem limite); o EventSource reconecta e a autenticao  refeita.
+     */
+    public CentralDeEventos(DataSource conexoes, int maximoAssinantes, int filaMaxima, long heartbeatMillis, long duracaoMaximaMillis) {
+        this.maximoAssinantes = maximoAssinantes;
+        this.filaMaxima = filaMaxima;
+        this.heartbeatMillis = heartbeatMillis;
+        this.duracaoMaximaMillis = duracaoMaximaMillis;
+        this.ouvinte = new OuvinteDeAlteracoes(conexoes, this);
+    }
+
+    /**
+     * Inicia a thread do ouvinte e a dos heartbeats. Sem banco na subida, o ouvinte tenta de novo em segundo plano.
+     */
+    public synchronized void iniciar() {
+        if (threadDoOuvinte != null) return;
+        threadDoOuvinte = new Thread(ouvinte, "ouvinte-de-alteracoes");
+        threadDoOuvinte.setDaemon(true);
+        threadDoOuvinte.start();
+
+        heartbeats = Executors.newSingleThreadScheduledExecutor(tarefa -> {
+            Thread thread = new Thread(tarefa, "heartbeat-de-eventos");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeats.scheduleWithFixedDelay(() -> enviarParaTodos(HEARTBEAT), heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Passa a avisar o DAO das escritas feitas em outros ns (ReceitaDAO.registrarAlteracaoExterna) e dos
+     * avisos perdidos enquanto o ouvinte esteve sem conexo (ReceitaDAO.registrarAvisosPerdidos).
+     */
+    public void acompanhar(ReceitaDAO dao) {
+        daos.add(dao);
+    }
+
+    /**
+     * Passa a aplicar neste n as revogaes de tokens feitas nos outros (excluso de conta, CanalDeAlteracoes.REVOGAR).
+     */
+    public void acompanhar(TokenDeAcesso tokens) {
+        this.tokens = tokens;
+    }
+
+    /**
+     * Coloca a requisio em modo assncrono e a registra para receber os eventos do usurio.
+     * Deve ser chamado pela servlet, na thread da requisio.
+     * @return false, sem tocar na resposta, se o limite de conexes deste n j foi atingido.
+     */
+    public boolean assinar(HttpServletRequest request, HttpServletResponse response, int usuarioId) throws IOException {
+        if (assinantes.incrementAndGet() > maximoAssinantes) {
+            assinantes.decrementAndGet();
+            return false;
+        }
+        response.setContentType("text/event-stream");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        // Proxies como o nginx seguram a resposta em buffer se no forem avisados
+        response.setHeader("X-Accel-Buffering", "no");
+
+        AsyncContext async = request.startAsync(request, response);
+        async.setTimeout(duracaoMaximaMillis);
+        ServletOutputStream saida = response.getOutputStream();
+        AssinaturaDeEventos assinatura = new AssinaturaDeEventos(this, usuarioId, async, saida, filaMaxima, INICIO);
+        async.addListener(assinatura);
+        assinaturas.compute(usuarioId, (id, doUsuario) -> {
+            Set<AssinaturaDeEventos> conjunto = doUsuario != null ? doUsuario : ConcurrentHashMap.newKeySet();
+            conjunto.add(assinatura);
+            return conjunto;
+        });
+        assinatura.escutar();
+        return true;
+    }
+
+    /**
+     * @return Conexes abertas neste n.
+     */
+    public int getAssinantes() {
+        return assinantes.get();
+    }
+
+    /**
+     * @return true se o ouvinte est em LISTEN no banco neste momento.
+     */
+    public boolean isConectado() {
+        return ouvinte.isConectado();
+    }
+
+    /**
+     * Para o ouvinte e os heartbeats e encerra todas as conexes abertas; os clientes tentam reconectar.
+     */
+    @Override
+    public synchronized void close() {
+        if (threadDoOuvinte != null) {
+            threadDoOuvinte.interrupt();
+            try {
+                threadDoOuvinte.join(OuvinteDeAlteracoes.ESPERA_POR_AVISOS_MILLIS * 2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (heartbeats != null) {
+            heartbeats.shutdownNow();
+        }
+        for (Set<AssinaturaDeEventos> doUsuario : assinaturas.values()) {
+            for (AssinaturaDeEventos assinatura : doUsuario) {
+                assinatura.encerrar();
+            }
+        }
+    }
+
+    // --- CHAMADOS PELO OUVINTE E PELAS ASSINATURAS ---
+
+    /**
+     * Repassa um aviso do banco s conexes do usurio. Avisos fora do formato so ignorados; os de revogao
+     * s vo ao TokenDeAcesso acompanhado.
+     */
+    void publicar(CanalDeAlteracoes.Alteracao alteracao) {
+        if (alteracao != null && CanalDeAlteracoes.REVOGAR.equals(alteracao.getTipo())) {
+            TokenDeAcesso acompanhados = tokens;
+            if (acompanhados != null && !alteracao.isDesteNo()) {
+                acompanhados.revogar(alteracao.getUsuarioId());
+            }
+            return;
+        }
+        if (alteracao == null || !TIPOS.contains(alteracao.getTipo())) {
+            LOGGER.log(Level.FINE, "Aviso ignorado no canal " + CanalDeAlteracoes.CANAL);
+            return;
+        }
+        for (ReceitaDAO dao : daos) {
+            dao.registrarAlteracaoExterna(alteracao);
+        }
+        Set<AssinaturaDeEventos> doUsuario = assinaturas.get(alteracao.getUsuarioId());
+        if (doUsuario == null) return;
+        byte[] evento = evento(alteracao.getTipo(), alteracao.getReceitaIds());
+        for (AssinaturaDeEventos assinatura : doUsuario) {
+            if (assinatura.enviar(evento)) {
+                ENVIADOS.incrementar();
+            }
+        }
+    }
+
+    /**
+     * O ouvinte (re)conectou: os avisos do intervalo se perderam, os DAOs esquecem as verses e todos recarregam.
+     */
+    void recarregarTodos() {
+        for (ReceitaDAO dao : daos) {
+            dao.registrarAvisosPerdidos();
+        }
+        enviarParaTodos(RECARREGAR);
+    }
+
+    void remover(AssinaturaDeEventos assinatura) {
+        assinaturas.computeIfPresent(assinatura.getUsuarioId(), (id, doUsuario) -> {
+            if (doUsuario.remove(assinatura)) {
+                assinantes.decrementAndGet();
+            }
+            return doUsuario.isEmpty() ? null : doUsuario;
+        });
+    }
+
+    // --- MTODOS PRIVADOS AUXILIARES ---
+
+    private void enviarParaTodos(byte[] bytes) {
+        for (Set<AssinaturaDeEventos> doUsuario : assinaturas.values()) {
+            for (AssinaturaDeEventos assinatura : doUsuario) {
+                assinatura.enviar(bytes);
+            }
+        }
+    }
+
+    /**
+     * Um evento "receitas" com o JSON {"tipo": ..., "ids": [...]}; o tipo j foi conferido com a lista conhecida.
+     */
+    private static byte[] evento(String tipo, List<Integer> receitaIds) {
+        StringBuilder evento = new StringBuilder(48 + 8 * receitaIds.size());
+        evento.append("event: receitas\ndata: {\"tipo\": \"").append(tipo).append("\", \"ids\": [");
+        for (int i = 0; i < receitaIds.size(); i++) {
+            if (i > 0) evento.append(',');
+            evento.append(receitaIds.get(i));
+        }
+        evento.append("]}\n\n");
+        return evento.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,95 @@
+package org.avsytem.eventos;
+
+import org.avsytem.dao.CanalDeAlteracoes;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A conexo em LISTEN no canal receitas_alteradas, uma por n, com sua thread.
+ *
+ * Espera os avisos com PGConnection.getNotifications(timeout), que s l o socket (nada vai ao banco enquanto
+ * no houver avisos); a cada VALIDACAO_MILLIS a conexo  testada, para notar um banco que sumiu sem fechar o
+ * socket. Perdida a conexo, tenta de novo com espera crescente e, ao voltar, manda todos recarregarem.
+ */
+final class OuvinteDeAlteracoes implements Runnable {
+
+    private static final Logger LOGGER = Logger.getLogger(OuvinteDeAlteracoes.class.getName());
+
+    // Tambm  quanto a thread pode demorar para perceber a interrupo no close()
+    static final int ESPERA_POR_AVISOS_MILLIS = 1000;
+    private static final long VALIDACAO_MILLIS = 30000;
+    private static final long RECONEXAO_INICIAL_MILLIS = 1000;
+    private static final long RECONEXAO_MAXIMA_MILLIS = 30000;
+
+    private final DataSource conexoes;
+    private final CentralDeEventos central;
+    private volatile boolean conectado;
+
+    OuvinteDeAlteracoes(DataSource conexoes, CentralDeEventos central) {
+        this.conexoes = conexoes;
+        this.central = central;
+    }
+
+    boolean isConectado() {
+        return conectado;
+    }
+
+    @Override
+    public void run() {
+        long esperaReconexao = RECONEXAO_INICIAL_MILLIS;
+        boolean jaConectou = false;
+        while (!Thread.currentThread().isInterrupted()) {
+            try (Connection conn = conexoes.getConnection()) {
+                conn.setAutoCommit(true);
+                try (Statement st = conn.createStatement()) {
+                    st.execute("LISTEN " + CanalDeAlteracoes.CANAL);
+                }
+                PGConnection pg = conn.unwrap(PGConnection.class);
+                conectado = true;
+                // Quem se conectou enquanto o ouvinte estava fora pode ter perdido avisos
+                central.recarregarTodos();
+                if (jaConectou) {
+                    LOGGER.info("Ouvinte de alteraes reconectado ao banco.");
+                }
+                jaConectou = true;
+                esperaReconexao = RECONEXAO_INICIAL_MILLIS;
+
+                long ultimaValidacao = System.nanoTime();
+                while (!Thread.currentThread().isInterrupted()) {
+                    PGNotification[] avisos = pg.getNotifications(ESPERA_POR_AVISOS_MILLIS);
+                    if (avisos != null) {
+                        for (PGNotification aviso : avisos) {
+                            central.publicar(CanalDeAlteracoes.ler(aviso.getParameter()));
+                        }
+                    }
+                    if (System.nanoTime() - ultimaValidacao > VALIDACAO_MILLIS * 1_000_000) {
+                        if (!conn.isValid(5)) {
+                            throw new SQLException("Conexo do LISTEN deixou de responder.");
+                        }
+                        ultimaValidacao = System.nanoTime();
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (Thread.currentThread().isInterrupted()) break;
+                LOGGER.log(Level.WARNING, "Ouvinte de alteraes sem conexo com o banco; nova tentativa em "
+                        + esperaReconexao + " ms.", e);
+            } finally {
+                conectado = false;
+            }
+
+            try {
+                Thread.sleep(esperaReconexao);
+            } catch (InterruptedException e) {
+                break;
+            }
+            esperaReconexao = Math.min(esperaReconexao * 2, RECONEXAO_MAXIMA_MILLIS);
+        }
+    }
+}
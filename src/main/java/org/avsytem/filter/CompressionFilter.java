@@ -0,0 +1,291 @@
+package org.avsytem.filter;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Comprime as respostas (JSON das servlets e arquivos estticos do ExtJS) conforme o Accept-Encoding.
+ *
+ * - Negocia gzip ou, na falta dele, deflate, respeitando os pesos (q) enviados pelo navegador.
+ * - Respostas dinmicas passam por um wrapper que s decide comprimir quando a sada ultrapassa
+ *   o tamanho mnimo; a partir da os bytes seguem em streaming, sem acumular a resposta inteira.
+ * - Arquivos estticos compressveis so servidos a partir de uma variante gzip pr-computada:
+ *   o arquivo ".gz" ao lado do original, se existir e estiver atualizado, ou uma cpia gerada
+ *   uma nica vez no diretrio temporrio da aplicao.
+ *
+ * Parmetros de inicializao (web.xml):
+ * - tamanhoMinimo: respostas menores que isso (em bytes) no so comprimidas. Padro: 1024.
+ * - caminhosExcluidos: caminhos (separados por vrgula) que passam direto, sem o wrapper, como o feed de
+ *   alteraes: cada evento precisa sair na hora e a escrita  no bloqueante. Um caminho terminado em
+ *   "/*" exclui tambm tudo abaixo dele.
+ */
+public class CompressionFilter implements Filter {
+
+    private static final Logger LOGGER = Logger.getLogger(CompressionFilter.class.getName());
+
+    static final String GZIP = "gzip";
+    static final String DEFLATE = "deflate";
+
+    private ServletContext servletContext;
+    private int tamanhoMinimo = 1024;
+    private final List<String> caminhosExcluidos = new ArrayList<>();
+    private File diretorioVariantes;
+
+    @Override
+    public void init(FilterConfig fConfig) throws ServletException {
+        servletContext = fConfig.getServletContext();
+        String minimo = fConfig.getInitParameter("tamanhoMinimo");
+        if (minimo != null) {
+            tamanhoMinimo = Integer.parseInt(minimo.trim());
+        }
+        String excluidos = fConfig.getInitParameter("caminhosExcluidos");
+        if (excluidos != null) {
+            for (String caminho : excluidos.split(",")) {
+                if (!caminho.trim().isEmpty()) caminhosExcluidos.add(caminho.trim());
+            }
+        }
+        File tempDir = (File) servletContext.getAttribute(ServletContext.TEMPDIR);
+        if (tempDir != null) {
+            diretorioVariantes = new File(tempDir, "gzip");
+        }
+    }
+
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) req;
+        HttpServletResponse response = (HttpServletResponse) res;
+
+        String codificacao = negociar(request.getHeader("Accept-Encoding"));
+        if (codificacao == null || request.getHeader("Range") != null || excluido(request)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        response.addHeader("Vary", "Accept-Encoding");
+
+        if (GZIP.equals(codificacao) && servirVarianteEstatica(request, response)) {
+            return;
+        }
+
+        CompressionResponseWrapper wrapper = new CompressionResponseWrapper(response, codificacao, tamanhoMinimo);
+        chain.doFilter(new EtagRequestWrapper(request), wrapper);
+
+        if (request.isAsyncStarted()) {
+            request.getAsyncContext().addListener(new AsyncListener() {
+                @Override
+                public void onComplete(AsyncEvent event) throws IOException {
+                    wrapper.finalizar();
+                }
+
+                @Override
+                public void onTimeout(AsyncEvent event) {
+                }
+
+                @Override
+                public void onError(AsyncEvent event) {
+                }
+
+                @Override
+                public void onStartAsync(AsyncEvent event) {
+                }
+            });
+        } else {
+            wrapper.finalizar();
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    /**
+     * Escolhe a codificao de maior peso aceita pelo cliente; gzip vence deflate em caso de empate.
+     * @return "gzip", "deflate" ou null se nenhuma das duas for aceita.
+     */
+    static String negociar(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isEmpty()) return null;
+
+        double pesoGzip = -1;
+        double pesoDeflate = -1;
+        double pesoCuringa = -1;
+        for (String item : acceptEncoding.split(",")) {
+            String[] partes = item.trim().split(";");
+            String nome = partes[0].trim().toLowerCase(Locale.ROOT);
+            double peso = 1;
+            for (int i = 1; i < partes.length; i++) {
+                String parametro = partes[i].trim();
+                if (parametro.startsWith("q=")) {
+                    try {
+                        peso = Double.parseDouble(parametro.substring(2));
+                    } catch (NumberFormatException e) {
+                        peso = 0;
+                    }
+                }
+            }
+            if (GZIP.equals(nome) || "x-gzip".equals(nome)) pesoGzip = peso;
+            else if (DEFLATE.equals(nome)) pesoDeflate = peso;
+            else if ("*".equals(nome)) pesoCuringa = peso;
+        }
+        if (pesoGzip < 0) pesoGzip = pesoCuringa;
+        if (pesoDeflate < 0) pesoDeflate = pesoCuringa;
+
+        if (pesoGzip > 0 && pesoGzip >= pesoDeflate) return GZIP;
+        if (pesoDeflate > 0) return DEFLATE;
+        return null;
+    }
+
+    private boolean excluido(HttpServletRequest request) {
+        if (caminhosExcluidos.isEmpty()) return false;
+        String caminho = request.getServletPath() + (request.getPathInfo() == null ? "" : request.getPathInfo());
+        for (String excluido : caminhosExcluidos) {
+            if (excluido.endsWith("/*")) {
+                String base = excluido.substring(0, excluido.length() - 2);
+                if (caminho.equals(base) || caminho.startsWith(base + "/")) return true;
+            } else if (caminho.equals(excluido)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tipos de contedo que valem a pena comprimir (texto, e CBOR/Smile, que so quase s o texto
+     * das receitas). Imagens, swf etc. j so comprimidos.
+     */
+    static boolean tipoCompressivel(String contentType) {
+        if (contentType == null) return false;
+        String tipo = contentType.toLowerCase(Locale.ROOT);
+        int separador = tipo.indexOf(';');
+        if (separador >= 0) tipo = tipo.substring(0, separador).trim();
+        return (tipo.startsWith("text/") && !tipo.equals("text/event-stream"))
+                || tipo.equals("application/json")
+                || tipo.equals("application/cbor")
+                || tipo.equals("application/x-jackson-smile")
+                || tipo.equals("application/javascript")
+                || tipo.equals("application/x-javascript")
+                || tipo.equals("application/xml")
+                || tipo.equals("image/svg+xml");
+    }
+
+    /**
+     * Serve um arquivo esttico compressvel a partir da sua variante gzip.
+     * @return true se a resposta foi escrita aqui; false para seguir pela cadeia normal.
+     */
+    private boolean servirVarianteEstatica(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String metodo = request.getMethod();
+        if (!"GET".equals(metodo) && !"HEAD".equals(metodo)) return false;
+
+        String caminho = request.getServletPath() + (request.getPathInfo() == null ? "" : request.getPathInfo());
+        String caminhoMinusculo = caminho.toLowerCase(Locale.ROOT);
+        if (caminhoMinusculo.endsWith(".jsp") || caminhoMinusculo.startsWith("/web-inf") || caminhoMinusculo.startsWith("/meta-inf")) {
+            return false;
+        }
+
+        String tipo = servletContext.getMimeType(caminho);
+        if (!tipoCompressivel(tipo)) return false;
+
+        String caminhoReal = servletContext.getRealPath(caminho);
+        if (caminhoReal == null) return false;
+        File original = new File(caminhoReal);
+        if (!original.isFile() || original.length() < tamanhoMinimo) return false;
+
+        File variante = localizarVariante(caminho, original);
+        if (variante == null) return false;
+
+        long ultimaModificacao = original.lastModified();
+        long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+        if (ifModifiedSince >= 0 && ultimaModificacao / 1000 <= ifModifiedSince / 1000) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return true;
+        }
+
+        response.setContentType(tipo);
+        response.setHeader("Content-Encoding", GZIP);
+        response.setDateHeader("Last-Modified", ultimaModificacao);
+        response.setContentLengthLong(variante.length());
+        if ("GET".equals(metodo)) {
+            Files.copy(variante.toPath(), response.getOutputStream());
+        }
+        return true;
+    }
+
+    /**
+     * Procura o ".gz" empacotado ao lado do arquivo; se no houver, usa (ou gera) a cpia no diretrio temporrio.
+     * @return A variante atualizada, ou null se no for possvel obt-la.
+     */
+    private File localizarVariante(String caminho, File original) {
+        File empacotada = new File(original.getPath() + ".gz");
+        if (empacotada.isFile() && empacotada.lastModified() >= original.lastModified()) {
+            return empacotada;
+        }
+        if (diretorioVariantes == null) return null;
+
+        File gerada = new File(diretorioVariantes, caminho + ".gz");
+        if (gerada.isFile() && gerada.lastModified() == original.lastModified()) {
+            return gerada;
+        }
+        try {
+            File pasta = gerada.getParentFile();
+            if (!pasta.isDirectory() && !pasta.mkdirs() && !pasta.isDirectory()) {
+                return null;
+            }
+            File temporaria = File.createTempFile("variante", ".tmp", pasta);
+            try (InputStream in = Files.newInputStream(original.toPath());
+                 OutputStream out = new GZIPOutputStream(Files.newOutputStream(temporaria.toPath()), 8192)) {
+                byte[] buffer = new byte[8192];
+                int lidos;
+                while ((lidos = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, lidos);
+                }
+            }
+            temporaria.setLastModified(original.lastModified());
+            Files.move(temporaria.toPath(), gerada.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return gerada;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "No foi possvel gerar a variante gzip de " + caminho, e);
+            return null;
+        }
+    }
+
+    /**
+     * Remove o sufixo de codificao que o wrapper acrescenta aos ETags das respostas comprimidas,
+     * para que as servlets comparem o If-None-Match com o ETag que elas mesmas geraram.
+     */
+    private static final class EtagRequestWrapper extends HttpServletRequestWrapper {
+
+        EtagRequestWrapper(HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        public String getHeader(String name) {
+            String valor = super.getHeader(name);
+            if (valor != null && "If-None-Match".equalsIgnoreCase(name)) {
+                valor = valor.replace(CompressionResponseWrapper.SUFIXO_ETAG_GZIP, "\"")
+                        .replace(CompressionResponseWrapper.SUFIXO_ETAG_DEFLATE, "\"");
+            }
+            return valor;
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package org.avsytem.filter;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Wrapper usado pelo CompressionFilter nas respostas dinmicas.
+ *
+ * Os primeiros bytes ficam num buffer do tamanho mnimo configurado. Se a resposta terminar
+ * antes de encher o buffer, ela sai sem compresso e com Content-Length; se passar do mnimo
+ * (ou se a servlet der flush antes disso), os cabealhos so ajustados e o restante segue em
+ * streaming pelo compressor, com flush sncrono para no segurar dados de respostas longas.
+ *
+ * Escrita no bloqueante (setWriteListener) s  aceita antes de a compresso comear: a resposta
+ * passa a sair sem compresso, direto pela sada do continer, que cuida do WriteListener e do isReady.
+ */
+class CompressionResponseWrapper extends HttpServletResponseWrapper {
+
+    static final String SUFIXO_ETAG_GZIP = "-gzip\"";
+    static final String SUFIXO_ETAG_DEFLATE = "-deflate\"";
+
+    private final String codificacao;
+    private final int tamanhoMinimo;
+
+    private SaidaComprimida saida;
+    private PrintWriter writer;
+    private long contentLengthDeclarado = -1;
+
+    CompressionResponseWrapper(HttpServletResponse response, String codificacao, int tamanhoMinimo) {
+        super(response);
+        this.codificacao = codificacao;
+        this.tamanhoMinimo = tamanhoMinimo;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (writer != null) {
+            throw new IllegalStateException("getWriter() j foi chamado nesta resposta.");
+        }
+        if (saida == null) {
+            saida = new SaidaComprimida();
+        }
+        return saida;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            if (saida != null) {
+                throw new IllegalStateException("getOutputStream() j foi chamado nesta resposta.");
+            }
+            saida = new SaidaComprimida();
+            writer = new PrintWriter(new OutputStreamWriter(saida, getCharacterEncoding()));
+        }
+        return writer;
+    }
+
+    @Override
+    public void setContentLength(int len) {
+        setContentLengthLong(len);
+    }
+
+    @Override
+    public void setContentLengthLong(long len) {
+        // S repassa se a resposta certamente no ser comprimida; caso contrrio o tamanho muda
+        contentLengthDeclarado = len;
+        if (len < tamanhoMinimo) {
+            super.setContentLengthLong(len);
+        }
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        if ("Content-Length".equalsIgnoreCase(name)) {
+            setContentLengthLong(Long.parseLong(value));
+        } else {
+            super.setHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        if ("Content-Length".equalsIgnoreCase(name)) {
+            setContentLengthLong(Long.parseLong(value));
+        } else {
+            super.addHeader(name, value);
+        }
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        } else if (saida != null) {
+            saida.flush();
+        }
+        super.flushBuffer();
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        saida = null;
+        writer = null;
+        contentLengthDeclarado = -1;
+    }
+
+    @Override
+    public void resetBuffer() {
+        super.resetBuffer();
+        if (saida != null) {
+            saida.descartarBuffer();
+        }
+    }
+
+    /**
+     * Fecha o compressor (escrevendo o trailer gzip) ou despeja o buffer sem compresso.
+     * Chamado pelo filtro quando a requisio termina.
+     */
+    void finalizar() throws IOException {
+        if (writer != null) {
+            writer.close();
+        } else if (saida != null) {
+            saida.close();
+        } else if (((HttpServletResponse) getResponse()).getStatus() == HttpServletResponse.SC_NOT_MODIFIED) {
+            // O 304 precisa repetir o ETag da representao comprimida que o cliente tem em cache
+            marcarEtag((HttpServletResponse) getResponse());
+        }
+    }
+
+    private void marcarEtag(HttpServletResponse response) {
+        String etag = response.getHeader("ETag");
+        if (etag != null && !etag.startsWith("W/") && etag.endsWith("\"")) {
+            String sufixo = CompressionFilter.GZIP.equals(codificacao) ? SUFIXO_ETAG_GZIP : SUFIXO_ETAG_DEFLATE;
+            response.setHeader("ETag", etag.substring(0, etag.length() - 1) + sufixo);
+        }
+    }
+
+    private boolean deveComprimir() {
+        HttpServletResponse response = (HttpServletResponse) getResponse();
+        int status = response.getStatus();
+        return status != HttpServletResponse.SC_NO_CONTENT
+                && status != HttpServletResponse.SC_NOT_MODIFIED
+                && status != HttpServletResponse.SC_PARTIAL_CONTENT
+                && !response.containsHeader("Content-Encoding")
+                && !(contentLengthDeclarado >= 0 && contentLengthDeclarado < tamanhoMinimo)
+                && CompressionFilter.tipoCompressivel(response.getContentType());
+    }
+
+    private final class SaidaComprimida extends ServletOutputStream {
+
+        private byte[] buffer = new byte[Math.max(tamanhoMinimo, 1)];
+        private int tamanhoBuffer;
+        private OutputStream destino;
+        // A sada do continer, quando a resposta segue sem compresso
+        private ServletOutputStream direta;
+        private boolean fechada;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (fechada) throw new IOException("Sada j foi fechada.");
+            if (destino == null) {
+                if (tamanhoBuffer + len <= tamanhoMinimo) {
+                    System.arraycopy(b, off, buffer, tamanhoBuffer, len);
+                    tamanhoBuffer += len;
+                    return;
+                }
+                decidir(true);
+            }
+            destino.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (fechada) return;
+            if (destino == null) {
+                decidir(true);
+            }
+            destino.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (fechada) return;
+            if (destino == null) {
+                decidir(false);
+            }
+            fechada = true;
+            destino.close();
+        }
+
+        void descartarBuffer() {
+            tamanhoBuffer = 0;
+        }
+
+        /**
+         * Define o destino dos bytes e despeja o buffer nele.
+         * @param podeComprimir false quando a resposta terminou sem ultrapassar o tamanho mnimo.
+         */
+        private void decidir(boolean podeComprimir) throws IOException {
+            HttpServletResponse response = (HttpServletResponse) getResponse();
+            OutputStream original = response.getOutputStream();
+
+            if (podeComprimir && deveComprimir()) {
+                response.setHeader("Content-Encoding", codificacao);
+                marcarEtag(response);
+                destino = CompressionFilter.GZIP.equals(codificacao)
+                        ? new GZIPOutputStream(original, 8192, true)
+                        : new DeflaterOutputStream(original, new Deflater(Deflater.DEFAULT_COMPRESSION), 8192, true) {
+                            @Override
+                            public void close() throws IOException {
+                                try {
+                                    super.close();
+                                } finally {
+                                    def.end();
+                                }
+                            }
+                        };
+            } else {
+                if (!podeComprimir && !response.isCommitted()) {
+                    response.setContentLength(tamanhoBuffer);
+                }
+                destino = direta = response.getOutputStream();
+            }
+            destino.write(buffer, 0, tamanhoBuffer);
+            buffer = null;
+        }
+
+        @Override
+        public boolean isReady() {
+            return direta == null || direta.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            if (destino == null) {
+                // Ainda no decidiu: desiste da compresso, que bloquearia no flush do compressor
+                try {
+                    destino = direta = ((HttpServletResponse) getResponse()).getOutputStream();
+                    destino.write(buffer, 0, tamanhoBuffer);
+                    buffer = null;
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            if (direta == null) {
+                throw new IllegalStateException("A resposta j est sendo comprimida; a escrita no bloqueante no  suportada.");
+            }
+            direta.setWriteListener(writeListener);
+        }
+    }
+}
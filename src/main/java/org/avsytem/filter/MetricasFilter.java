@@ -0,0 +1,136 @@
+package org.avsytem.filter;
+
+import org.avsytem.metricas.Contador;
+import org.avsytem.metricas.Histograma;
+import org.avsytem.metricas.Metricas;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletMapping;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Mede cada requisio: tempo total (incluindo a parte assncrona, at o AsyncContext completar),
+ * bytes recebidos e enviados e a classe do status, por servlet e ao.
+ *
+ * A ao da ReceitaServlet vem do parmetro "action", restrito s aes conhecidas para no criar
+ * sries sem limite; nas demais servlets  o mtodo HTTP. O parmetro s  lido depois da cadeia,
+ * quando a servlet j o leu (e o AuthenticationFilter j definiu a codificao).
+ * Mapeado antes dos outros filtros, enxerga os bytes j comprimidos.
+ */
+public class MetricasFilter implements Filter {
+
+    private static final Set<String> ACOES_RECEITAS = new HashSet<>(Arrays.asList(
+            "listar", "buscar", "sugerir", "obter", "exportar", "importar", "deletar", "salvarLote", "deletarLote"));
+    private static final String[] CLASSES_STATUS = {"1xx", "2xx", "3xx", "4xx", "5xx"};
+
+    // servlet -> ao -> sries, para no procurar no registro (nem concatenar rtulos) a cada requisio
+    private final ConcurrentMap<String, ConcurrentMap<String, Series>> series = new ConcurrentHashMap<>();
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) req;
+        HttpServletResponse response = (HttpServletResponse) res;
+        long inicio = System.nanoTime();
+        HttpServletMapping mapeamento = request.getHttpServletMapping();
+        String servlet = mapeamento == null ? "desconhecido" : mapeamento.getServletName();
+        MetricasResponseWrapper wrapper = new MetricasResponseWrapper(response);
+
+        boolean falhou = true;
+        try {
+            chain.doFilter(request, wrapper);
+            falhou = false;
+        } finally {
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        registrar(servlet, request, wrapper, inicio, false);
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                    }
+                });
+            } else {
+                // Uma exceo vira 500 no container, mas o status ainda no foi trocado aqui
+                registrar(servlet, request, wrapper, inicio, falhou);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    private void registrar(String servlet, HttpServletRequest request, MetricasResponseWrapper response, long inicio, boolean falhou) {
+        Series s = series.computeIfAbsent(servlet, n -> new ConcurrentHashMap<>())
+                .computeIfAbsent(acao(servlet, request), a -> new Series(servlet, a));
+        s.tempo.registrarDesde(inicio);
+        s.bytesEnviados.somar(response.getEscritos());
+        long recebidos = request.getContentLengthLong();
+        if (recebidos > 0) {
+            s.bytesRecebidos.somar(recebidos);
+        }
+        int status = falhou ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR : response.getStatus();
+        s.respostas[Math.max(0, Math.min(status / 100 - 1, 4))].incrementar();
+    }
+
+    private static String acao(String servlet, HttpServletRequest request) {
+        switch (servlet) {
+            case "ReceitaServlet":
+                String action = request.getParameter("action");
+                if (action != null && ACOES_RECEITAS.contains(action)) return action;
+                return "POST".equals(request.getMethod()) ? "salvar" : "invalida";
+            case "LoginServlet":
+                return "login";
+            default:
+                return request.getMethod().toLowerCase();
+        }
+    }
+
+    private static final class Series {
+        private final Histograma tempo;
+        private final Contador bytesEnviados;
+        private final Contador bytesRecebidos;
+        private final Contador[] respostas = new Contador[CLASSES_STATUS.length];
+
+        Series(String servlet, String acao) {
+            tempo = Metricas.histograma("receitas_http_requisicao_segundos",
+                    "Tempo total das requisies, da entrada no filtro at o fim da resposta.", "servlet", servlet, "acao", acao);
+            bytesEnviados = Metricas.contador("receitas_http_bytes_enviados_total",
+                    "Bytes do corpo das respostas (aps compresso).", "servlet", servlet, "acao", acao);
+            bytesRecebidos = Metricas.contador("receitas_http_bytes_recebidos_total",
+                    "Bytes do corpo das requisies (Content-Length).", "servlet", servlet, "acao", acao);
+            for (int i = 0; i < respostas.length; i++) {
+                respostas[i] = Metricas.contador("receitas_http_respostas_total",
+                        "Respostas por classe de status.", "servlet", servlet, "acao", acao, "status", CLASSES_STATUS[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package org.avsytem.filter;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+
+/**
+ * Wrapper usado pelo MetricasFilter: conta os bytes escritos no corpo (os caracteres, quando a
+ * servlet usa getWriter()) sem bufferizar nada, repassando cada escrita na hora para a resposta original.
+ */
+class MetricasResponseWrapper extends HttpServletResponseWrapper {
+
+    private long escritos;
+    private ServletOutputStream saida;
+    private PrintWriter writer;
+
+    MetricasResponseWrapper(HttpServletResponse response) {
+        super(response);
+    }
+
+    long getEscritos() {
+        return escritos;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (saida == null) {
+            saida = new SaidaContada(super.getOutputStream());
+        }
+        return saida;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            writer = new PrintWriter(new WriterContado(super.getWriter()));
+        }
+        return writer;
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        saida = null;
+        writer = null;
+    }
+
+    private final class SaidaContada extends ServletOutputStream {
+        private final ServletOutputStream original;
+
+        SaidaContada(ServletOutputStream original) {
+            this.original = original;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            original.write(b);
+            escritos++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            original.write(b, off, len);
+            escritos += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            original.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            original.close();
+        }
+
+        @Override
+        public boolean isReady() {
+            return original.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            original.setWriteListener(writeListener);
+        }
+    }
+
+    private final class WriterContado extends Writer {
+        private final Writer original;
+
+        WriterContado(Writer original) {
+            this.original = original;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            original.write(cbuf, off, len);
+            escritos += len;
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            original.write(str, off, len);
+            escritos += len;
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            original.write(c);
+            escritos++;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            original.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            original.close();
+        }
+    }
+}
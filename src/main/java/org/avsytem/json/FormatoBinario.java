@@ -0,0 +1,111 @@
+package org.avsytem.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.avsytem.model.Receita;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+
+/**
+ * Codificaes binrias oferecidas s integraes que puxam as receitas em massa. O modelo  o mesmo
+ * do JSON da listagem (mesmos campos, escritos pelo ReceitaJson); muda s a codificao, que
+ * dispensa o parse de texto e escreve nmeros e tamanhos de string em binrio.
+ */
+public enum FormatoBinario {
+
+    CBOR("application/cbor", new CBORFactory()),
+    SMILE("application/x-jackson-smile", new SmileFactory());
+
+    private final String tipo;
+    private final JsonFactory fabrica;
+    private final ObjectMapper mapper;
+
+    FormatoBinario(String tipo, JsonFactory fabrica) {
+        this.tipo = tipo;
+        this.fabrica = fabrica;
+        this.mapper = new ObjectMapper(fabrica).configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+
+    /**
+     * @return O Content-Type da resposta.
+     */
+    public String getTipo() {
+        return tipo;
+    }
+
+    public JsonGenerator criarGerador(OutputStream saida) throws IOException {
+        return fabrica.createGenerator(saida);
+    }
+
+    /**
+     * L uma receita no formato da listagem (o mesmo do jsonData do formulrio).
+     */
+    public Receita lerReceita(InputStream entrada) throws IOException {
+        return mapper.readValue(entrada, Receita.class);
+    }
+
+    /**
+     * Escolhe o formato da resposta pelo cabealho Accept. Um formato binrio s  usado quando pedido
+     * com qualidade maior que a do JSON (application/json, application/* ou *&#47;*), ento navegadores
+     * e o ExtJS continuam recebendo JSON.
+     * @return O formato binrio, ou null para responder JSON.
+     */
+    public static FormatoBinario negociar(String accept) {
+        if (accept == null) return null;
+        double qualidadeJson = 0;
+        double qualidadeEscolhido = 0;
+        FormatoBinario escolhido = null;
+        for (String item : accept.split(",")) {
+            String[] partes = item.split(";");
+            String tipo = partes[0].trim().toLowerCase(Locale.ROOT);
+            double qualidade = qualidade(partes);
+            if (tipo.equals("application/json") || tipo.equals("application/*") || tipo.equals("*/*")) {
+                qualidadeJson = Math.max(qualidadeJson, qualidade);
+                continue;
+            }
+            for (FormatoBinario formato : values()) {
+                if (formato.tipo.equals(tipo) && qualidade > qualidadeEscolhido) {
+                    escolhido = formato;
+                    qualidadeEscolhido = qualidade;
+                }
+            }
+        }
+        return qualidadeEscolhido > qualidadeJson ? escolhido : null;
+    }
+
+    /**
+     * @return O formato binrio do corpo da requisio, ou null se o Content-Type no for um deles.
+     */
+    public static FormatoBinario doConteudo(String contentType) {
+        if (contentType == null) return null;
+        String tipo = contentType.toLowerCase(Locale.ROOT);
+        int separador = tipo.indexOf(';');
+        if (separador >= 0) tipo = tipo.substring(0, separador);
+        tipo = tipo.trim();
+        for (FormatoBinario formato : values()) {
+            if (formato.tipo.equals(tipo)) return formato;
+        }
+        return null;
+    }
+
+    private static double qualidade(String[] parametros) {
+        for (int i = 1; i < parametros.length; i++) {
+            String parametro = parametros[i].trim();
+            if (parametro.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parametro.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,88 @@
+package org.avsytem.json;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.avsytem.dao.FonteDeReceitas;
+import org.avsytem.dao.RegistroInvalidoException;
+import org.avsytem.model.Receita;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * L, de forma incremental, o corpo de uma importao em massa: um array JSON de receitas
+ * ou NDJSON (um objeto por linha). Usa os mesmos nomes de campos da listagem.
+ *
+ * No NDJSON cada linha  independente, ento uma linha malformada  s um registro invlido.
+ * No array, um erro de sintaxe impede achar o incio do prximo elemento e encerra a leitura;
+ * j um elemento bem formado com tipos errados  apenas recusado.
+ */
+public class LeitorDeReceitas implements FonteDeReceitas {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final BufferedReader linhas;
+    private final JsonParser parser;
+    private boolean iniciado;
+
+    /**
+     * @param corpo O corpo da requisio, em UTF-8.
+     * @param ndjson true para um objeto por linha; false para um array JSON.
+     */
+    public LeitorDeReceitas(InputStream corpo, boolean ndjson) throws IOException {
+        if (ndjson) {
+            this.linhas = new BufferedReader(new InputStreamReader(corpo, StandardCharsets.UTF_8));
+            this.parser = null;
+        } else {
+            this.linhas = null;
+            this.parser = MAPPER.createParser(corpo);
+        }
+    }
+
+    @Override
+    public Receita proxima() throws IOException {
+        return linhas != null ? proximaLinha() : proximoElemento();
+    }
+
+    private Receita proximaLinha() throws IOException {
+        String linha;
+        do {
+            linha = linhas.readLine();
+            if (linha == null) return null;
+        } while (linha.trim().isEmpty());
+
+        try {
+            return MAPPER.readValue(linha, Receita.class);
+        } catch (JsonProcessingException e) {
+            throw new RegistroInvalidoException(e.getOriginalMessage());
+        }
+    }
+
+    private Receita proximoElemento() throws IOException {
+        if (!iniciado) {
+            iniciado = true;
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("O corpo deve ser um array JSON de receitas.");
+            }
+        }
+
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.END_ARRAY) return null;
+        if (token == null) throw new IOException("Fim inesperado do corpo: o array JSON no foi fechado.");
+
+        JsonNode elemento = parser.readValueAsTree();
+        try {
+            return MAPPER.treeToValue(elemento, Receita.class);
+        } catch (JsonProcessingException e) {
+            throw new RegistroInvalidoException(e.getOriginalMessage());
+        }
+    }
+}
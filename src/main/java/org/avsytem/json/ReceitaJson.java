@@ -0,0 +1,68 @@
+package org.avsytem.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.avsytem.model.Ingrediente;
+import org.avsytem.model.Passo;
+import org.avsytem.model.Receita;
+
+import java.io.IOException;
+
+/**
+ * Escrita de receitas com o JsonGenerator do Jackson, campo a campo e sem reflexo.
+ * Produz o mesmo formato que o Gson usa na resposta da listagem (mesmos nomes de campos,
+ * campos nulos omitidos), para que a grid no perceba diferena entre os dois caminhos.
+ */
+public final class ReceitaJson {
+
+    private ReceitaJson() {
+    }
+
+    public static void escrever(JsonGenerator json, Receita receita) throws IOException {
+        json.writeStartObject();
+        escreverCampos(json, receita);
+        json.writeEndObject();
+    }
+
+    /**
+     * Escreve os campos da receita no objeto j aberto, para quem precisa acrescentar outros campos
+     * (ex.: relevncia e destaques da busca).
+     */
+    public static void escreverCampos(JsonGenerator json, Receita receita) throws IOException {
+        json.writeNumberField("id", receita.getId());
+        json.writeNumberField("usuario_id", receita.getUsuario_id());
+        escreverTexto(json, "nome", receita.getNome());
+        escreverTexto(json, "descricao", receita.getDescricao());
+        json.writeNumberField("tempoDePreparo", receita.getTempoDePreparo());
+        json.writeNumberField("porcoes", receita.getPorcoes());
+        escreverTexto(json, "dificuldade", receita.getDificuldade());
+
+        if (receita.getIngredientes() != null) {
+            json.writeArrayFieldStart("ingredientes");
+            for (Ingrediente ingrediente : receita.getIngredientes()) {
+                json.writeStartObject();
+                escreverTexto(json, "nome", ingrediente.getNome());
+                json.writeNumberField("quantidade", ingrediente.getQuantidade());
+                escreverTexto(json, "unidade", ingrediente.getUnidade());
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+        }
+
+        if (receita.getPassos() != null) {
+            json.writeArrayFieldStart("passos");
+            for (Passo passo : receita.getPassos()) {
+                json.writeStartObject();
+                json.writeNumberField("ordem", passo.getOrdem());
+                escreverTexto(json, "descricao", passo.getDescricao());
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+        }
+    }
+
+    private static void escreverTexto(JsonGenerator json, String campo, String valor) throws IOException {
+        if (valor != null) {
+            json.writeStringField(campo, valor);
+        }
+    }
+}
@@ -1,5 +1,19 @@
 package org.avsytem.listener;
 
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.avsytem.async.ExecutorDeRequisicoes;
+import org.avsytem.dao.CanalDeAlteracoes;
+import org.avsytem.dao.DataSourceComReplicas;
+import org.avsytem.dao.ModeloDeLeitura;
+import org.avsytem.dao.PoolDeConexoes;
+import org.avsytem.dao.ReceitaDAO;
+import org.avsytem.eventos.CentralDeEventos;
+import org.avsytem.metricas.DataSourceMedido;
+import org.avsytem.metricas.Metricas;
+import org.avsytem.security.TokenDeAcesso;
+import org.avsytem.security.VerificadorDeSenhas;
+
 import javax.naming.Context;
 import javax.naming.InitialContext;
 import javax.naming.NamingException;
@@ -8,7 +22,14 @@ import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 import javax.servlet.annotation.WebListener;
 import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -30,18 +51,101 @@ public class AppLifecycleListener implements ServletContextListener {
         LOGGER.info("Iniciando aplicao: Configurando recursos compartilhados.");
 
         try {
-            // 2. Faz o JNDI Lookup do DataSource (apenas uma vez!)
-            Context initContext = new InitialContext();
-            Context envContext = (Context) initContext.lookup("java:/comp/env");
-            DataSource dataSource = (DataSource) envContext.lookup("jdbc/PostgresDB");
+            ServletContext servletContext = sce.getServletContext();
+            boolean eventos = Boolean.parseBoolean(parametro(servletContext, "eventos", "false"));
+            verificarVariosNos(servletContext, eventos);
+
+            // 2. O DataSource vem do JNDI (pool do Tomcat, META-INF/context.xml) ou, com o context-param
+            // poolDeConexoes=aplicacao, de um pool criado aqui mesmo e configurado pelo web.xml
+            DataSource dataSource;
+            if ("aplicacao".equals(parametro(servletContext, "poolDeConexoes", "jndi"))) {
+                PoolDeConexoes pool = new PoolDeConexoes("primario", servletContext::getInitParameter);
+                servletContext.setAttribute("poolDeConexoes", pool);
+                dataSource = pool.getDataSource();
+                LOGGER.info("Pool de conexes da aplicao: " + pool.getDescricao() + ".");
+            } else {
+                // Faz o JNDI Lookup do DataSource (apenas uma vez!)
+                Context initContext = new InitialContext();
+                Context envContext = (Context) initContext.lookup("java:/comp/env");
+                dataSource = (DataSource) envContext.lookup("jdbc/PostgresDB");
+            }
 
             // 3. Armazena a instncia do DataSource no ServletContext
             // O ServletContext  um "mapa" global, compartilhado por toda a aplicao.
-            ServletContext servletContext = sce.getServletContext();
-            servletContext.setAttribute("dataSource", dataSource);
+            // Embrulhado para medir a espera por conexo (receitas_pool_espera_segundos)
+            DataSource medido = new DataSourceMedido(dataSource);
+            // Com rplicas (context-param "replicas"), os DAOs mandam suas leituras para elas
+            DataSourceComReplicas comReplicas = criarReplicas(servletContext, medido);
+            if (comReplicas != null) {
+                servletContext.setAttribute("replicas", comReplicas);
+                LOGGER.info("Leituras distribudas entre as rplicas: " + comReplicas.getDescricao() + ".");
+            }
+            servletContext.setAttribute("dataSource", comReplicas != null ? comReplicas : medido);
 
             LOGGER.info("DataSource configurado e armazenado no ServletContext com sucesso.");
 
+            // 4. Executor das requisies assncronas das servlets (context-param "execucaoAssincrona")
+            ExecutorDeRequisicoes executor = criarExecutor(servletContext);
+            if (executor != null) {
+                servletContext.setAttribute("executorDeRequisicoes", executor);
+                Metricas.medidor("receitas_async_em_execucao", "Requisies executando no executor assncrono.", executor::getEmExecucao);
+                Metricas.medidor("receitas_async_aguardando", "Requisies aceitas esperando vez no executor assncrono.", executor::getAguardando);
+                LOGGER.info("Requisies processadas em modo assncrono: " + executor.getDescricao() + ".");
+            }
+
+            // 5. Pool do BCrypt, compartilhado pelo login e pelo cadastro (context-params bcrypt*)
+            servletContext.setAttribute("verificadorDeSenhas", new VerificadorDeSenhas(
+                    Integer.parseInt(parametro(servletContext, "bcryptCusto", "10")),
+                    Integer.parseInt(parametro(servletContext, "bcryptThreads", Integer.toString(Runtime.getRuntime().availableProcessors()))),
+                    Integer.parseInt(parametro(servletContext, "bcryptFila", "64")),
+                    Long.parseLong(parametro(servletContext, "bcryptEsperaMaximaMillis", "3000"))));
+
+            // 6. Token de acesso assinado no lugar da sesso (context-param "autenticacao")
+            if ("token".equals(parametro(servletContext, "autenticacao", "sessao"))) {
+                servletContext.setAttribute("tokenDeAcesso", criarTokenDeAcesso(servletContext));
+            }
+
+            // 7. Modelo de leitura por documento (context-param "leituraPorDocumento"): as escritas mantm receitas_doc
+            // e a verificao em segundo plano grava os documentos que faltam ou divergem
+            ModeloDeLeitura documentos = null;
+            if (Boolean.parseBoolean(parametro(servletContext, "leituraPorDocumento", "false"))) {
+                documentos = criarModeloDeLeitura(servletContext, medido);
+                servletContext.setAttribute("modeloDeLeitura", documentos);
+            }
+
+            // 8. Feed de alteraes (context-param "eventos"): LISTEN/NOTIFY no primrio, repassado em Server-Sent Events
+            if (eventos) {
+                PoolDeConexoes pool = (PoolDeConexoes) servletContext.getAttribute("poolDeConexoes");
+                CentralDeEventos central = criarCentralDeEventos(servletContext, pool != null ? pool.getDataSourceDedicado() : dataSource);
+                // Com tokens, a excluso de uma conta em qualquer n revoga os tokens dela em todos
+                TokenDeAcesso tokens = (TokenDeAcesso) servletContext.getAttribute("tokenDeAcesso");
+                if (tokens != null) {
+                    central.acompanhar(tokens);
+                }
+                servletContext.setAttribute("centralDeEventos", central);
+            }
+
+            // 9. Expurgo dirio das lpides da sincronizao incremental (context-param "sincronizacaoRetencaoDias", 0 desliga)
+            int retencaoDias = Integer.parseInt(parametro(servletContext, "sincronizacaoRetencaoDias", "30"));
+            if (retencaoDias > 0) {
+                servletContext.setAttribute("expurgoDeRemocoes", agendarExpurgoDeRemocoes(medido, retencaoDias));
+            }
+
+            // 10. Gson compartilhado pelas servlets, para que o aquecimento monte os adaptadores da instncia que elas usam
+            Gson gson = new GsonBuilder().setPrettyPrinting().create();
+            servletContext.setAttribute("gson", gson);
+
+            // 11. Aquecimento em segundo plano (context-param "aquecimento"); o /saude responde 503 at ele terminar
+            if (Boolean.parseBoolean(parametro(servletContext, "aquecimento", "false"))) {
+                Aquecimento aquecimento = new Aquecimento(comReplicas != null ? comReplicas : medido, documentos, gson,
+                        Integer.parseInt(parametro(servletContext, "aquecimentoConexoes", "10")),
+                        Integer.parseInt(parametro(servletContext, "aquecimentoReceitas", "50")),
+                        Integer.parseInt(parametro(servletContext, "aquecimentoIteracoes", "20")),
+                        Long.parseLong(parametro(servletContext, "aquecimentoMaximoMillis", "20000")));
+                servletContext.setAttribute("aquecimento", aquecimento);
+                aquecimento.iniciar();
+            }
+
         } catch (NamingException e) {
             LOGGER.log(Level.SEVERE, "ERRO CRTICO: No foi possvel inicializar o DataSource. A aplicao no funcionar corretamente.", e);
             // Em um cenrio real, isso deveria impedir a aplicao de iniciar.
@@ -56,7 +160,174 @@ public class AppLifecycleListener implements ServletContextListener {
     @Override
     public void contextDestroyed(ServletContextEvent sce) {
         LOGGER.info("Finalizando aplicao: Liberando recursos.");
-        // Se o DataSource precisasse ser fechado manualmente (raro em pools gerenciados),
-        // o cdigo viria aqui.
+        Aquecimento aquecimento = (Aquecimento) sce.getServletContext().getAttribute("aquecimento");
+        if (aquecimento != null) {
+            aquecimento.cancelar();
+        }
+        ExecutorDeRequisicoes executor = (ExecutorDeRequisicoes) sce.getServletContext().getAttribute("executorDeRequisicoes");
+        if (executor != null) {
+            executor.encerrar(10000);
+        }
+        VerificadorDeSenhas verificador = (VerificadorDeSenhas) sce.getServletContext().getAttribute("verificadorDeSenhas");
+        if (verificador != null) {
+            verificador.encerrar();
+        }
+        // Encerra as conexes de /receitas/eventos; os navegadores reconectam no prximo n
+        CentralDeEventos central = (CentralDeEventos) sce.getServletContext().getAttribute("centralDeEventos");
+        if (central != null) {
+            central.close();
+        }
+        ModeloDeLeitura documentos = (ModeloDeLeitura) sce.getServletContext().getAttribute("modeloDeLeitura");
+        if (documentos != null) {
+            documentos.close();
+        }
+        ScheduledExecutorService expurgo = (ScheduledExecutorService) sce.getServletContext().getAttribute("expurgoDeRemocoes");
+        if (expurgo != null) {
+            expurgo.shutdownNow();
+        }
+        // O pool do JNDI  do Tomcat; s os pools da aplicao so fechados aqui, depois do executor,
+        // para que as requisies que ainda estavam terminando consigam devolver suas conexes
+        DataSourceComReplicas replicas = (DataSourceComReplicas) sce.getServletContext().getAttribute("replicas");
+        if (replicas != null) {
+            replicas.close();
+        }
+        PoolDeConexoes pool = (PoolDeConexoes) sce.getServletContext().getAttribute("poolDeConexoes");
+        if (pool != null) {
+            pool.close();
+            LOGGER.info("Pool de conexes da aplicao fechado.");
+        }
+    }
+
+    /**
+     * @return O executor configurado no web.xml, ou null se execucaoAssincrona for "desligada".
+     */
+    private static ExecutorDeRequisicoes criarExecutor(ServletContext servletContext) {
+        String modalidade = parametro(servletContext, "execucaoAssincrona", "pool");
+        if ("desligada".equals(modalidade)) return null;
+        return ExecutorDeRequisicoes.criar(modalidade,
+                Integer.parseInt(parametro(servletContext, "asyncThreads", "32")),
+                Integer.parseInt(parametro(servletContext, "asyncFila", "200")),
+                Long.parseLong(parametro(servletContext, "asyncEsperaMaximaMillis", "2000")));
+    }
+
+    /**
+     * Um pool por URL do context-param "replicas" (separadas por vrgula). Os parmetros replica* (replicaUsuario,
+     * replicaMaximo, replicaEsperaMaximaMillis...) valem para as rplicas no lugar dos pool* equivalentes.
+     * @return O roteador das leituras, ou null se no houver rplicas configuradas.
+     */
+    private static DataSourceComReplicas criarReplicas(ServletContext servletContext, DataSource primario) {
+        List<PoolDeConexoes> pools = new ArrayList<>();
+        for (String url : parametro(servletContext, "replicas", "").split(",")) {
+            if (url.trim().isEmpty()) continue;
+            pools.add(new PoolDeConexoes("replica" + (pools.size() + 1), nome -> {
+                if ("poolUrl".equals(nome)) return url.trim();
+                String proprio = servletContext.getInitParameter("replica" + nome.substring("pool".length()));
+                return proprio != null && !proprio.trim().isEmpty() ? proprio : servletContext.getInitParameter(nome);
+            }));
+        }
+        if (pools.isEmpty()) return null;
+        return new DataSourceComReplicas(primario, pools,
+                DataSourceComReplicas.Estrategia.deNome(parametro(servletContext, "replicaEstrategia", "rodizio")),
+                Long.parseLong(parametro(servletContext, "replicaJanelaMillis", "5000")),
+                Long.parseLong(parametro(servletContext, "replicaVerificacaoMillis", "2000")),
+                Long.parseLong(parametro(servletContext, "replicaAtrasoMaximoMillis", "1000")));
+    }
+
+    /**
+     * O modelo de leitura com a verificao agendada: logo na subida (reconstruo do que faltar) e a cada
+     * leituraPorDocumentoVerificacaoMinutos (0: s na subida). Os documentos so verificados no primrio.
+     */
+    private static ModeloDeLeitura criarModeloDeLeitura(ServletContext servletContext, DataSource primario) {
+        ModeloDeLeitura documentos = new ModeloDeLeitura(primario);
+        Metricas.medidor("receitas_documentos_faltando", "Receitas sem documento na ltima verificao do modelo de leitura.",
+                () -> documentos.getUltimaVerificacao() == null ? 0 : documentos.getUltimaVerificacao().getFaltando());
+        Metricas.medidor("receitas_documentos_divergentes", "Documentos diferentes das tabelas normalizadas na ltima verificao.",
+                () -> documentos.getUltimaVerificacao() == null ? 0 : documentos.getUltimaVerificacao().getDivergentes());
+        long intervaloMinutos = Long.parseLong(parametro(servletContext, "leituraPorDocumentoVerificacaoMinutos", "60"));
+        documentos.verificarPeriodicamente(TimeUnit.MINUTES.toMillis(intervaloMinutos));
+        LOGGER.info("Listagem pelo modelo de leitura por documento (receitas_doc).");
+        return documentos;
+    }
+
+    /**
+     * A central do feed de alteraes, j ouvindo o canal. O ouvinte segura uma conexo do primrio enquanto
+     * a aplicao estiver no ar: com o pool da aplicao ela  aberta fora dele (getDataSourceDedicado);
+     * com o JNDI, sai do pool do Tomcat e ocupa uma das suas vagas.
+     */
+    private static CentralDeEventos criarCentralDeEventos(ServletContext servletContext, DataSource primario) {
+        CentralDeEventos central = new CentralDeEventos(primario,
+                Integer.parseInt(parametro(servletContext, "eventosMaximoAssinantes", "10000")),
+                Integer.parseInt(parametro(servletContext, "eventosFilaMaxima", "64")),
+                TimeUnit.SECONDS.toMillis(Long.parseLong(parametro(servletContext, "eventosHeartbeatSegundos", "25"))),
+                TimeUnit.MINUTES.toMillis(Long.parseLong(parametro(servletContext, "eventosDuracaoMaximaMinutos", "30"))));
+        Metricas.medidor("receitas_eventos_assinantes", "Conexes abertas em /receitas/eventos neste n.", central::getAssinantes);
+        Metricas.medidor("receitas_eventos_ouvinte_conectado", "1 se o ouvinte do feed de alteraes est em LISTEN no banco.",
+                () -> central.isConectado() ? 1 : 0);
+        central.iniciar();
+        LOGGER.info("Feed de alteraes em /receitas/eventos (LISTEN " + CanalDeAlteracoes.CANAL + ").");
+        return central;
+    }
+
+    /**
+     * Uma vez por dia (a primeira depois de um minuto, fora do aquecimento), no primrio, apaga as lpides de
+     * receitas_removidas mais antigas que a reteno. Com vrios ns, todos expurgam; o DELETE  idempotente.
+     */
+    private static ScheduledExecutorService agendarExpurgoDeRemocoes(DataSource primario, int retencaoDias) {
+        ReceitaDAO dao = new ReceitaDAO(primario);
+        ScheduledExecutorService expurgo = Executors.newSingleThreadScheduledExecutor(tarefa -> {
+            Thread thread = new Thread(tarefa, "expurgo-de-remocoes");
+            thread.setDaemon(true);
+            return thread;
+        });
+        expurgo.scheduleWithFixedDelay(() -> {
+            try {
+                int expurgadas = dao.expurgarRemocoes(retencaoDias);
+                if (expurgadas > 0) {
+                    LOGGER.info(expurgadas + " lpide(s) de receitas removidas h mais de " + retencaoDias + " dias expurgada(s).");
+                }
+            } catch (SQLException e) {
+                LOGGER.log(Level.WARNING, "Falha ao expurgar as lpides de receitas removidas; nova tentativa amanh.", e);
+            }
+        }, 1, TimeUnit.DAYS.toMinutes(1), TimeUnit.MINUTES);
+        return expurgo;
+    }
+
+    /**
+     * Com autenticacao=token e um tokenSegredo, o token vale em qualquer n e o balanceador pode mandar cada
+     * requisio para um n diferente. A verso das receitas (ETag), o cache e o ndice de ingredientes so de
+     * cada processo e s enxergam as escritas dos outros ns pelo feed de alteraes: sem eventos=true, um n
+     * responderia 304 (e sugestes) com os dados de antes. Verificado antes de criar qualquer recurso, para que
+     * a aplicao no suba pela metade. Sem tokenSegredo o token s vale no n que o emitiu.
+     * @throws IllegalStateException com tokenSegredo e sem eventos=true.
+     */
+    private static void verificarVariosNos(ServletContext servletContext, boolean eventos) {
+        if ("token".equals(parametro(servletContext, "autenticacao", "sessao"))
+                && !parametro(servletContext, "tokenSegredo", "").isEmpty() && !eventos) {
+            throw new IllegalStateException("autenticacao=token com tokenSegredo (vrios ns) exige eventos=true: sem o feed de "
+                    + "alteraes, cada n continuaria respondendo com os dados de antes das escritas feitas nos outros.");
+        }
+    }
+
+    /**
+     * Sem tokenSegredo, um segredo aleatrio serve para um n s e os tokens no sobrevivem ao redeploy.
+     */
+    private static TokenDeAcesso criarTokenDeAcesso(ServletContext servletContext) {
+        String segredo = parametro(servletContext, "tokenSegredo", "");
+        byte[] chave;
+        if (segredo.isEmpty()) {
+            chave = new byte[32];
+            new SecureRandom().nextBytes(chave);
+            LOGGER.warning("autenticacao=token sem tokenSegredo: usando um segredo aleatrio, vlido s neste n e at o prximo deploy.");
+        } else {
+            chave = segredo.getBytes(StandardCharsets.UTF_8);
+        }
+        long validadeSegundos = Long.parseLong(parametro(servletContext, "tokenValidadeSegundos", "900"));
+        LOGGER.info("Autenticao por token assinado (HMAC-SHA256), vlido por " + validadeSegundos + " s.");
+        return new TokenDeAcesso(chave, validadeSegundos * 1000);
+    }
+
+    private static String parametro(ServletContext servletContext, String nome, String padrao) {
+        String valor = servletContext.getInitParameter(nome);
+        return valor == null || valor.trim().isEmpty() ? padrao : valor.trim();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,444 @@
+package org.avsytem.listener;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.gson.Gson;
+import org.avsytem.dao.ConsultaPaginada;
+import org.avsytem.dao.ConsumidorDeDocumentos;
+import org.avsytem.dao.ConsumidorDeReceitas;
+import org.avsytem.dao.Credenciais;
+import org.avsytem.dao.ModeloDeLeitura;
+import org.avsytem.dao.OrdenacaoReceita;
+import org.avsytem.dao.PaginaReceitas;
+import org.avsytem.dao.ReceitaDAO;
+import org.avsytem.dao.UserDAO;
+import org.avsytem.json.FormatoBinario;
+import org.avsytem.json.ReceitaJson;
+import org.avsytem.model.Ingrediente;
+import org.avsytem.model.Passo;
+import org.avsytem.model.Receita;
+import org.mindrot.jbcrypt.BCrypt;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Aquecimento da aplicao logo depois do deploy, em uma thread prpria, para que as primeiras
+ * requisies reais no paguem o custo de tudo que  feito s no primeiro uso:
+ *
+ * 1. Enche o pool: pega "conexoes" conexes ao mesmo tempo e as devolve.
+ * 2. Em uma nica transao, sempre desfeita no fim, cria pelos prprios DAOs um usurio sinttico com
+ *    "receitas" receitas, repete "iteracoes" vezes todos os mtodos de leitura sobre ele e ento o atualiza,
+ *    importa e regrava o hash, o que executa tambm o SQL das escritas. Nada disso chega a ser gravado: o
+ *    banco, o modelo de leitura e o feed de alteraes (o NOTIFY s sai no commit) nunca veem esses dados.
+ * 3. Em "conexoes" threads ao mesmo tempo (cada uma com uma conexo diferente do pool), repete
+ *    "iteracoes" vezes as mesmas leituras, agora s leitura e sem linhas a devolver, e a serializao das
+ *    receitas lidas na transao (Gson compartilhado com a ReceitaServlet, JsonGenerator, CBOR/Smile e o
+ *    parse do POST). Isso prepara no cache de statements de cada conexo o SQL de cada mtodo, monta os
+ *    adaptadores do Gson e d ao JIT as passadas de que ele precisa para compilar a serializao.
+ *
+ * Tudo respeita o prazo "maximoMillis": estourado, as passadas param, a transao  desfeita e a
+ * aplicao  dada como pronta assim mesmo, com um aviso no log. Uma falha (ex.: banco fora do ar)
+ * tambm s gera um aviso. At terminar, o /saude responde 503.
+ */
+public final class Aquecimento {
+
+    private static final Logger LOGGER = Logger.getLogger(Aquecimento.class.getName());
+
+    private static final String[] INGREDIENTES = {"farinha", "ovo", "leite", "acar", "manteiga", "sal",
+            "fermento", "tomate", "cebola", "alho", "azeite", "arroz", "feijo", "queijo", "frango", "batata"};
+    private static final String[] UNIDADES = {"g", "ml", "unidade", "colher", "xcara"};
+    private static final String[] DIFICULDADES = {"Fcil", "Mdia", "Difcil"};
+
+    private final DataSource dataSource;
+    private final ModeloDeLeitura documentos;
+    private final Gson gson;
+    private final int conexoes;
+    private final int receitas;
+    private final int iteracoes;
+    private final long maximoMillis;
+
+    private volatile boolean pronto;
+    private volatile boolean cancelado;
+    private volatile long duracaoMillis = -1;
+    private Thread thread;
+
+    /**
+     * @param documentos O modelo de leitura por documento, se ligado: as escritas sintticas o mantm e as passadas o leem.
+     * @param gson A instncia usada pela ReceitaServlet, para que os adaptadores montados aqui sejam os dela.
+     * @param conexoes Conexes pegas ao mesmo tempo ao encher o pool, e threads das passadas.
+     * @param receitas Receitas do usurio sinttico.
+     * @param iteracoes Passadas de leitura e serializao por thread.
+     * @param maximoMillis Prazo total do aquecimento.
+     */
+    public Aquecimento(DataSource dataSource, ModeloDeLeitura documentos, Gson gson, int conexoes, int receitas, int iteracoes,
+                       long maximoMillis) {
+        this.dataSource = dataSource;
+        this.documentos = documentos;
+        this.gson = gson;
+        this.conexoes = Math.max(1, conexoes);
+        this.receitas = Math.max(1, receitas);
+        this.iteracoes = Math.max(1, iteracoes);
+        this.maximoMillis = maximoMillis;
+    }
+
+    /**
+     * Comea o aquecimento em segundo plano; contextInitialized no espera por ele.
+     */
+    public synchronized void iniciar() {
+        thread = new Thread(this::executar, "aquecimento");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Chamado no contextDestroyed: interrompe as passadas (a transao dos dados sintticos  desfeita).
+     */
+    public synchronized void cancelar() {
+        cancelado = true;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * @return true depois que o aquecimento terminou, bem ou mal.
+     */
+    public boolean isPronto() {
+        return pronto;
+    }
+
+    /**
+     * @return Quanto o aquecimento levou, ou -1 se ainda no terminou.
+     */
+    public long getDuracaoMillis() {
+        return duracaoMillis;
+    }
+
+    // --- MTODOS PRIVADOS AUXILIARES ---
+
+    private void executar() {
+        long inicio = System.nanoTime();
+        long prazo = inicio + TimeUnit.MILLISECONDS.toNanos(maximoMillis);
+        AtomicLong passadas = new AtomicLong();
+        String resultado = "concludo";
+        try {
+            encherPool(prazo);
+            aquecerComDadosSinteticos(prazo, passadas);
+            if (System.nanoTime() - prazo > 0) {
+                resultado = "interrompido pelo prazo de " + maximoMillis + " ms";
+            }
+        } catch (Exception e) {
+            resultado = "interrompido por falha (" + e + ")";
+            LOGGER.log(Level.WARNING, "Falha no aquecimento; a aplicao segue sem ele.", e);
+        } finally {
+            duracaoMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio);
+            pronto = true;
+            LOGGER.info("Aquecimento " + resultado + " em " + duracaoMillis + " ms (" + passadas.get()
+                    + " passadas em " + conexoes + " threads).");
+        }
+    }
+
+    private void encherPool(long prazo) throws SQLException {
+        List<Connection> emprestadas = new ArrayList<>(conexoes);
+        try {
+            for (int i = 0; i < conexoes && dentroDoPrazo(prazo); i++) {
+                emprestadas.add(dataSource.getConnection());
+            }
+        } finally {
+            for (Connection conn : emprestadas) {
+                conn.close();
+            }
+        }
+    }
+
+    private void aquecerComDadosSinteticos(long prazo, AtomicLong passadas) throws Exception {
+        String username = "aquecimento_" + UUID.randomUUID().toString().replace("-", "");
+        // Lido pelas threads das passadas: concorrente
+        Map<OrdenacaoReceita, String> cursores = new ConcurrentHashMap<>();
+        JsonFactory jsonFactory = new JsonFactory();
+        int usuarioId;
+        List<Receita> lidas;
+
+        try (Connection conn = dataSource.getConnection()) {
+            boolean autoCommitOriginal = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                DataSource transacao = new TransacaoDescartada(conn);
+                UserDAO userDAO = new UserDAO(transacao);
+                // Sem cache: a ideia  justamente executar as consultas
+                ReceitaDAO dao = new ReceitaDAO(transacao, documentos);
+
+                // Senha aleatria descartada: ningum entra com este usurio, ento o custo mnimo basta
+                String hashDaSenha = BCrypt.hashpw(UUID.randomUUID().toString(), BCrypt.gensalt(4));
+                userDAO.adicionar("Aquecimento", username + "@aquecimento.invalid", username, hashDaSenha);
+                Credenciais credenciais = userDAO.buscarCredenciais(username);
+                usuarioId = credenciais.getUsuarioId();
+                List<Integer> ids = new ArrayList<>(receitas);
+                for (int i = 0; i < receitas && dentroDoPrazo(prazo); i++) {
+                    Receita receita = sintetica(i);
+                    receita.setUsuario_id(usuarioId);
+                    dao.adicionar(receita);
+                    ids.add(receita.getId());
+                }
+                lidas = dao.listar(usuarioId);
+                for (int i = 0; i < iteracoes && dentroDoPrazo(prazo); i++) {
+                    passada(dao, userDAO, jsonFactory, usuarioId, username, i, lidas, cursores);
+                    passadas.incrementAndGet();
+                }
+                escritas(dao, userDAO, credenciais, ids);
+            } finally {
+                conn.rollback();
+                conn.setAutoCommit(autoCommitOriginal);
+            }
+        }
+
+        passadas(new ReceitaDAO(dataSource, documentos), new UserDAO(dataSource), usuarioId, username, lidas, cursores,
+                prazo, passadas);
+    }
+
+    private void passadas(ReceitaDAO dao, UserDAO userDAO, int usuarioId, String username, List<Receita> lidas,
+                          Map<OrdenacaoReceita, String> cursores, long prazo, AtomicLong passadas) throws Exception {
+        ExecutorService threads = Executors.newFixedThreadPool(conexoes, tarefa -> {
+            Thread thread = new Thread(tarefa, "aquecimento-passadas");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> tarefas = new ArrayList<>();
+            for (int t = 0; t < conexoes; t++) {
+                tarefas.add(threads.submit(() -> {
+                    JsonFactory jsonFactory = new JsonFactory();
+                    for (int i = 0; i < iteracoes && dentroDoPrazo(prazo); i++) {
+                        passada(dao, userDAO, jsonFactory, usuarioId, username, i, lidas, cursores);
+                        passadas.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> tarefa : tarefas) {
+                long restante = prazo - System.nanoTime();
+                // A passada em andamento termina logo depois do prazo; no h por que esperar alm de um pouco
+                tarefa.get(Math.max(restante, TimeUnit.SECONDS.toNanos(5)), TimeUnit.NANOSECONDS);
+            }
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    /**
+     * Uma passada: as mesmas leituras e serializaes que a listagem, a paginao, a busca, a sugesto,
+     * a exportao e o login fazem. Fora da transao as leituras no acham linhas, ento o cursor da segunda
+     * pgina e as receitas serializadas so os da transao.
+     */
+    private void passada(ReceitaDAO dao, UserDAO userDAO, JsonFactory jsonFactory, int usuarioId, String username,
+                         int iteracao, List<Receita> lidas, Map<OrdenacaoReceita, String> cursores) throws Exception {
+        dao.listar(usuarioId);
+
+        OrdenacaoReceita ordenacao = OrdenacaoReceita.values()[iteracao % OrdenacaoReceita.values().length];
+        PaginaReceitas pagina = dao.listarPagina(usuarioId, new ConsultaPaginada(ordenacao, iteracao % 2 == 1, 0, 25, null));
+        if (pagina.getProximoCursor() != null) {
+            cursores.putIfAbsent(ordenacao, pagina.getProximoCursor());
+        }
+        String cursor = cursores.get(ordenacao);
+        if (cursor != null) {
+            dao.listarPagina(usuarioId, new ConsultaPaginada(ordenacao, iteracao % 2 == 1, 0, 25, cursor));
+        }
+        dao.buscar(usuarioId, "sintetica " + INGREDIENTES[iteracao % INGREDIENTES.length], 0, 25);
+        dao.sugerir(usuarioId, Arrays.asList(INGREDIENTES).subList(0, 6), 3, 25);
+        dao.percorrer(usuarioId, new Descarte());
+        if (documentos != null) {
+            dao.listarPaginaDeDocumentos(usuarioId, new ConsultaPaginada(ordenacao, iteracao % 2 == 1, 0, 25, null));
+            dao.percorrerDocumentos(usuarioId, new Descarte());
+        }
+        dao.exportar(usuarioId, 0, new Descarte());
+        userDAO.buscarCredenciais(username);
+        if (lidas.isEmpty()) return;
+
+        String json = gson.toJson(lidas);
+        gson.fromJson(gson.toJson(lidas.get(iteracao % lidas.size())), Receita.class);
+        try (JsonGenerator gerador = jsonFactory.createGenerator(new SaidaDescartada(), JsonEncoding.UTF8)) {
+            gerador.writeStartArray();
+            for (Receita receita : lidas) {
+                ReceitaJson.escrever(gerador, receita);
+            }
+            gerador.writeEndArray();
+        }
+        for (FormatoBinario formato : FormatoBinario.values()) {
+            try (JsonGenerator gerador = formato.criarGerador(new SaidaDescartada())) {
+                gerador.writeStartArray();
+                for (Receita receita : lidas) {
+                    ReceitaJson.escrever(gerador, receita);
+                }
+                gerador.writeEndArray();
+            }
+            // O POST binrio de uma receita
+            ByteArrayOutputStream corpo = new ByteArrayOutputStream();
+            try (JsonGenerator gerador = formato.criarGerador(corpo)) {
+                ReceitaJson.escrever(gerador, lidas.get(iteracao % lidas.size()));
+            }
+            formato.lerReceita(new ByteArrayInputStream(corpo.toByteArray()));
+        }
+        if (json.isEmpty()) throw new IllegalStateException("Serializao vazia.");
+    }
+
+    /**
+     * Executa o SQL das escritas que a criao dos dados sintticos no passa: update por diferena,
+     * importao (COPY), remoo e regravao do hash (sem efeito: o hash no confere). Tudo na transao desfeita.
+     */
+    private void escritas(ReceitaDAO dao, UserDAO userDAO, Credenciais credenciais, List<Integer> ids) throws Exception {
+        if (cancelado || ids.isEmpty()) return;
+        Receita alterada = sintetica(ids.size());
+        alterada.setId(ids.get(0));
+        alterada.setUsuario_id(credenciais.getUsuarioId());
+        dao.atualizar(alterada);
+
+        Iterator<Receita> importadas = Arrays.asList(sintetica(ids.size() + 1), sintetica(ids.size() + 2)).iterator();
+        dao.importar(credenciais.getUsuarioId(), () -> importadas.hasNext() ? importadas.next() : null, parcial -> { });
+        dao.deletar(ids.get(ids.size() - 1), credenciais.getUsuarioId());
+
+        userDAO.atualizarHash(credenciais.getUsuarioId(), credenciais.getHashDaSenha() + "!", credenciais.getHashDaSenha());
+    }
+
+    private boolean dentroDoPrazo(long prazo) {
+        return !cancelado && System.nanoTime() - prazo < 0;
+    }
+
+    private static Receita sintetica(int i) {
+        Receita receita = new Receita();
+        receita.setNome("Receita sinttica " + i);
+        receita.setDescricao("Receita sinttica do aquecimento, com " + INGREDIENTES[i % INGREDIENTES.length]
+                + " e " + INGREDIENTES[(i + 5) % INGREDIENTES.length] + ".");
+        receita.setTempoDePreparo(10 + i % 90);
+        receita.setPorcoes(1 + i % 8);
+        receita.setDificuldade(DIFICULDADES[i % DIFICULDADES.length]);
+        for (int j = 0; j < 8; j++) {
+            receita.getIngredientes().add(new Ingrediente(INGREDIENTES[(i + j * 3) % INGREDIENTES.length],
+                    50 + (i * 7 + j * 13) % 450, UNIDADES[(i + j) % UNIDADES.length]));
+        }
+        for (int j = 1; j <= 6; j++) {
+            receita.getPassos().add(new Passo(j, "Passo " + j + " da receita sinttica " + i + ": misture e reserve."));
+        }
+        return receita;
+    }
+
+    /**
+     * Entrega aos DAOs sempre a mesma conexo, j em uma transao aberta pelo aquecimento: os commits, o
+     * close e as trocas de autocommit, isolamento e somente leitura que os DAOs fazem (o PostgreSQL recusa as
+     * duas ltimas no meio de uma transao) so ignorados, de modo que o rollback final desfaz tudo.
+     */
+    private static final class TransacaoDescartada implements DataSource {
+
+        private final Connection conexao;
+
+        TransacaoDescartada(Connection transacao) {
+            this.conexao = (Connection) Proxy.newProxyInstance(Aquecimento.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, (proxy, metodo, args) -> {
+                        switch (metodo.getName()) {
+                            case "close":
+                            case "commit":
+                            case "setAutoCommit":
+                            case "setTransactionIsolation":
+                            case "setReadOnly":
+                                return null;
+                            default:
+                                try {
+                                    return metodo.invoke(transacao, args);
+                                } catch (InvocationTargetException e) {
+                                    throw e.getCause();
+                                }
+                        }
+                    });
+        }
+
+        @Override
+        public Connection getConnection() {
+            return conexao;
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) {
+            return conexao;
+        }
+
+        @Override
+        public PrintWriter getLogWriter() {
+            return null;
+        }
+
+        @Override
+        public void setLogWriter(PrintWriter out) {
+        }
+
+        @Override
+        public void setLoginTimeout(int seconds) {
+        }
+
+        @Override
+        public int getLoginTimeout() {
+            return 0;
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> iface) throws SQLException {
+            throw new SQLException("No embrulha " + iface.getName());
+        }
+
+        @Override
+        public boolean isWrapperFor(Class<?> iface) {
+            return false;
+        }
+    }
+
+    private static final class Descarte implements ConsumidorDeReceitas, ConsumidorDeDocumentos {
+        @Override
+        public void total(int total) {
+        }
+
+        @Override
+        public void receita(Receita receita) {
+        }
+
+        @Override
+        public void documento(byte[] json) {
+        }
+    }
+
+    private static final class SaidaDescartada extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package org.avsytem.metricas;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contador que s cresce (tipo counter do Prometheus).
+ */
+public final class Contador {
+
+    private final LongAdder valor = new LongAdder();
+
+    Contador() {
+    }
+
+    public void incrementar() {
+        valor.increment();
+    }
+
+    public void somar(long quantidade) {
+        valor.add(quantidade);
+    }
+
+    public long valor() {
+        return valor.sum();
+    }
+}
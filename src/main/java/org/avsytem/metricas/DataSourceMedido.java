@@ -0,0 +1,86 @@
+package org.avsytem.metricas;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.logging.Logger;
+
+/**
+ * DataSource que mede quanto tempo cada getConnection() espera pelo pool (receitas_pool_espera_segundos)
+ * e conta as falhas (ex.: pool esgotado alm de maxWaitMillis). As conexes no so embrulhadas.
+ */
+public class DataSourceMedido implements DataSource {
+
+    private final DataSource dataSource;
+    private final Histograma espera = Metricas.histograma("receitas_pool_espera_segundos",
+            "Tempo de espera para obter uma conexo do pool.");
+    private final Contador falhas = Metricas.contador("receitas_pool_falhas_total",
+            "Pedidos de conexo que falharam (pool esgotado ou banco indisponvel).");
+
+    public DataSourceMedido(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            return dataSource.getConnection();
+        } catch (SQLException e) {
+            falhas.incrementar();
+            throw e;
+        } finally {
+            espera.registrarDesde(inicio);
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            return dataSource.getConnection(username, password);
+        } catch (SQLException e) {
+            falhas.incrementar();
+            throw e;
+        } finally {
+            espera.registrarDesde(inicio);
+        }
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return dataSource.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        dataSource.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        dataSource.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return dataSource.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return dataSource.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return iface.isInstance(dataSource) ? iface.cast(dataSource) : dataSource.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(dataSource) || dataSource.isWrapperFor(iface);
+    }
+}
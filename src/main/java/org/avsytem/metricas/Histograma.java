@@ -0,0 +1,59 @@
+package org.avsytem.metricas;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de latncias com faixas fixas em potncias de 2 (de ~1 s a ~34 s), no estilo do
+ * HdrHistogram com um dgito significativo: o erro de cada medida  de no mximo 2x, o bastante
+ * para percentis de latncia, e a gravao custa um numberOfLeadingZeros e dois LongAdder.increment,
+ * sem alocar nem travar. As faixas so as do tipo histogram do Prometheus (contagens acumuladas por "le").
+ */
+public final class Histograma {
+
+    // Limite superior da primeira faixa: 2^10 ns (~1 s)
+    static final int EXPOENTE_INICIAL = 10;
+    // Faixas finitas; a ltima vai at 2^35 ns (~34 s) e depois dela s resta +Inf
+    static final int FAIXAS = 26;
+
+    private final LongAdder[] contagens = new LongAdder[FAIXAS + 1];
+    private final LongAdder somaNanos = new LongAdder();
+
+    Histograma() {
+        for (int i = 0; i < contagens.length; i++) {
+            contagens[i] = new LongAdder();
+        }
+    }
+
+    public void registrar(long nanos) {
+        contagens[faixa(nanos)].increment();
+        somaNanos.add(nanos);
+    }
+
+    /**
+     * @param inicioNanos Um System.nanoTime() lido no incio da operao.
+     */
+    public void registrarDesde(long inicioNanos) {
+        registrar(System.nanoTime() - inicioNanos);
+    }
+
+    static int faixa(long nanos) {
+        if (nanos <= 1L << EXPOENTE_INICIAL) return 0;
+        int expoente = 64 - Long.numberOfLeadingZeros(nanos - 1);
+        return Math.min(expoente - EXPOENTE_INICIAL, FAIXAS);
+    }
+
+    /**
+     * @return As contagens de cada faixa (no acumuladas); a ltima  a das medidas acima de ~34 s.
+     */
+    long[] contagens() {
+        long[] copia = new long[contagens.length];
+        for (int i = 0; i < contagens.length; i++) {
+            copia[i] = contagens[i].sum();
+        }
+        return copia;
+    }
+
+    long somaNanos() {
+        return somaNanos.sum();
+    }
+}
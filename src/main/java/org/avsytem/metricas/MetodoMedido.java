@@ -0,0 +1,30 @@
+package org.avsytem.metricas;
+
+/**
+ * Tempo e linhas lidas de um mtodo de DAO, nas sries receitas_dao_segundos e receitas_dao_linhas_lidas_total.
+ * Criado uma vez, em uma constante, para que a medio no precise procurar a srie a cada chamada.
+ */
+public final class MetodoMedido {
+
+    private final Histograma tempo;
+    private final Contador linhas;
+
+    private MetodoMedido(String dao, String metodo) {
+        this.tempo = Metricas.histograma("receitas_dao_segundos", "Tempo dos mtodos dos DAOs, incluindo a espera por conexo.",
+                "dao", dao, "metodo", metodo);
+        this.linhas = Metricas.contador("receitas_dao_linhas_lidas_total", "Linhas lidas do banco pelos mtodos dos DAOs.",
+                "dao", dao, "metodo", metodo);
+    }
+
+    public static MetodoMedido de(String dao, String metodo) {
+        return new MetodoMedido(dao, metodo);
+    }
+
+    public void registrar(long inicioNanos) {
+        tempo.registrarDesde(inicioNanos);
+    }
+
+    public void linhasLidas(long quantidade) {
+        linhas.somar(quantidade);
+    }
+}
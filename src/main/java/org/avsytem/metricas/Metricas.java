@@ -0,0 +1,132 @@
+package org.avsytem.metricas;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Registro global das mtricas da aplicao e sua exposio no formato texto do Prometheus (0.0.4).
+ *
+ * Cada mtrica tem um nome, um texto de ajuda e sries identificadas por pares de rtulos
+ * ("metodo", "listar", ...). Pedir de novo a mesma srie devolve a mesma instncia, ento quem
+ * mede guarda a srie em uma constante (ou em um mapa prprio) e o caminho quente s grava.
+ * Valores mantidos por outras classes (filas, contadores do cache) entram como funes lidas na coleta.
+ */
+public final class Metricas {
+
+    private static final String HISTOGRAMA = "histogram";
+    private static final String CONTADOR = "counter";
+    private static final String MEDIDOR = "gauge";
+
+    // Em ordem de nome, para uma sada estvel
+    private static final ConcurrentMap<String, Familia> FAMILIAS = new ConcurrentSkipListMap<>();
+
+    private Metricas() {
+    }
+
+    public static Histograma histograma(String nome, String ajuda, String... rotulos) {
+        return (Histograma) familia(nome, ajuda, HISTOGRAMA).series.computeIfAbsent(rotulos(rotulos), r -> new Histograma());
+    }
+
+    public static Contador contador(String nome, String ajuda, String... rotulos) {
+        Object serie = familia(nome, ajuda, CONTADOR).series.computeIfAbsent(rotulos(rotulos), r -> new Contador());
+        if (!(serie instanceof Contador)) {
+            throw new IllegalArgumentException("A srie " + nome + rotulos(rotulos) + " j  lida de uma funo.");
+        }
+        return (Contador) serie;
+    }
+
+    /**
+     * Contador mantido por outra classe, lido na coleta. Registrar de novo substitui a funo.
+     */
+    public static void contador(String nome, String ajuda, LongSupplier valor, String... rotulos) {
+        familia(nome, ajuda, CONTADOR).series.put(rotulos(rotulos), valor);
+    }
+
+    /**
+     * Valor instantneo (tamanho de fila, bytes em uso), lido na coleta. Registrar de novo substitui a funo.
+     */
+    public static void medidor(String nome, String ajuda, LongSupplier valor, String... rotulos) {
+        familia(nome, ajuda, MEDIDOR).series.put(rotulos(rotulos), valor);
+    }
+
+    /**
+     * Escreve todas as mtricas no formato texto do Prometheus.
+     */
+    public static void escrever(Writer saida) throws IOException {
+        for (Map.Entry<String, Familia> entrada : FAMILIAS.entrySet()) {
+            String nome = entrada.getKey();
+            Familia familia = entrada.getValue();
+            saida.write("# HELP " + nome + ' ' + familia.ajuda.replace("\\", "\\\\").replace("\n", "\\n") + '\n');
+            saida.write("# TYPE " + nome + ' ' + familia.tipo + '\n');
+            for (Map.Entry<String, Object> serie : new ConcurrentSkipListMap<>(familia.series).entrySet()) {
+                Object valor = serie.getValue();
+                if (valor instanceof Histograma) {
+                    escreverHistograma(saida, nome, serie.getKey(), (Histograma) valor);
+                } else {
+                    long numero = valor instanceof Contador ? ((Contador) valor).valor() : ((LongSupplier) valor).getAsLong();
+                    saida.write(nome + comChaves(serie.getKey()) + ' ' + numero + '\n');
+                }
+            }
+        }
+    }
+
+    private static void escreverHistograma(Writer saida, String nome, String rotulos, Histograma histograma) throws IOException {
+        long[] contagens = histograma.contagens();
+        String prefixo = rotulos.isEmpty() ? "" : rotulos + ',';
+        long acumulado = 0;
+        for (int i = 0; i < Histograma.FAIXAS; i++) {
+            acumulado += contagens[i];
+            double limiteSegundos = (1L << (Histograma.EXPOENTE_INICIAL + i)) / 1e9;
+            saida.write(nome + "_bucket{" + prefixo + "le=\"" + limiteSegundos + "\"} " + acumulado + '\n');
+        }
+        acumulado += contagens[Histograma.FAIXAS];
+        saida.write(nome + "_bucket{" + prefixo + "le=\"+Inf\"} " + acumulado + '\n');
+        saida.write(nome + "_sum" + comChaves(rotulos) + ' ' + histograma.somaNanos() / 1e9 + '\n');
+        saida.write(nome + "_count" + comChaves(rotulos) + ' ' + acumulado + '\n');
+    }
+
+    private static Familia familia(String nome, String ajuda, String tipo) {
+        Familia familia = FAMILIAS.computeIfAbsent(nome, n -> new Familia(ajuda, tipo));
+        if (!familia.tipo.equals(tipo)) {
+            throw new IllegalArgumentException("A mtrica " + nome + " j foi registrada como " + familia.tipo + ".");
+        }
+        return familia;
+    }
+
+    /**
+     * Formata os pares nome/valor como na exposio (metodo="listar",dao="ReceitaDAO"), sem as chaves.
+     */
+    private static String rotulos(String... pares) {
+        if (pares.length % 2 != 0) {
+            throw new IllegalArgumentException("Rtulos devem vir em pares nome/valor.");
+        }
+        StringBuilder texto = new StringBuilder();
+        for (int i = 0; i < pares.length; i += 2) {
+            if (i > 0) texto.append(',');
+            texto.append(pares[i]).append("=\"")
+                    .append(pares[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append('"');
+        }
+        return texto.toString();
+    }
+
+    private static String comChaves(String rotulos) {
+        return rotulos.isEmpty() ? "" : '{' + rotulos + '}';
+    }
+
+    private static final class Familia {
+        private final String ajuda;
+        private final String tipo;
+        private final ConcurrentMap<String, Object> series = new ConcurrentHashMap<>();
+
+        Familia(String ajuda, String tipo) {
+            this.ajuda = ajuda;
+            this.tipo = tipo;
+        }
+    }
+}
@@ -9,7 +9,6 @@ import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import javax.servlet.http.HttpSession;
 
 public class AuthenticationFilter implements Filter {
 
@@ -18,14 +17,12 @@ public class AuthenticationFilter implements Filter {
         req.setCharacterEncoding("ISO-8859-1");
         HttpServletRequest request = (HttpServletRequest) req;
         HttpServletResponse response = (HttpServletResponse) res;
-        HttpSession session = request.getSession(false); // false = no cria uma nova sesso
 
         String loginURI = request.getContextPath() + "/index.jsp";
         String loginServletURI = request.getContextPath() + "/index";
 
-        boolean loggedIn = session != null
-                && session.getAttribute("username") != null
-                && session.getAttribute("usuario_id") != null;
+        // Sesso ou, com autenticacao=token, o token assinado (sem estado no servidor)
+        boolean loggedIn = UsuarioAutenticado.da(request) != null;
 
         boolean loginRequest = request.getRequestURI().equals(loginURI) || request.getRequestURI().equals(loginServletURI);
 
@@ -0,0 +1,74 @@
+package org.avsytem.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limite de tentativas de login por chave (username ou IP), no modelo token bucket: cada chave tem
+ * um balde de "capacidade" fichas que se recarrega continuamente a "capacidade" fichas por minuto,
+ * e cada tentativa gasta uma. Baldes sem uso h mais de alguns minutos j esto cheios e so descartados.
+ */
+public class LimitadorDeTentativas {
+
+    private final int capacidade;
+    private final double fichasPorNano;
+    private final Cache<String, Balde> baldes;
+    private final LongAdder bloqueios = new LongAdder();
+
+    /**
+     * @param tentativasPorMinuto Rajada permitida e ritmo de recarga, por chave.
+     */
+    public LimitadorDeTentativas(int tentativasPorMinuto) {
+        if (tentativasPorMinuto < 1) {
+            throw new IllegalArgumentException("tentativasPorMinuto deve ser positivo: " + tentativasPorMinuto);
+        }
+        this.capacidade = tentativasPorMinuto;
+        this.fichasPorNano = tentativasPorMinuto / (double) TimeUnit.MINUTES.toNanos(1);
+        this.baldes = Caffeine.newBuilder()
+                .maximumSize(100_000)
+                .expireAfterAccess(2, TimeUnit.MINUTES)
+                .build();
+    }
+
+    /**
+     * Gasta uma ficha da chave.
+     * @return 0 se a tentativa pode seguir; seno, em quantos segundos haver ficha de novo.
+     */
+    public long tentar(String chave) {
+        long espera = baldes.get(chave, k -> new Balde(capacidade, System.nanoTime())).consumir(System.nanoTime());
+        if (espera > 0) {
+            bloqueios.increment();
+        }
+        return espera;
+    }
+
+    /**
+     * @return Quantas tentativas foram recusadas pelo limite desde o incio.
+     */
+    public long getBloqueios() {
+        return bloqueios.sum();
+    }
+
+    private final class Balde {
+        private double fichas;
+        private long ultimaRecarga;
+
+        Balde(double fichas, long agora) {
+            this.fichas = fichas;
+            this.ultimaRecarga = agora;
+        }
+
+        synchronized long consumir(long agora) {
+            fichas = Math.min(capacidade, fichas + (agora - ultimaRecarga) * fichasPorNano);
+            ultimaRecarga = agora;
+            if (fichas >= 1) {
+                fichas -= 1;
+                return 0;
+            }
+            return Math.max(1, (long) Math.ceil((1 - fichas) / fichasPorNano / TimeUnit.SECONDS.toNanos(1)));
+        }
+    }
+}
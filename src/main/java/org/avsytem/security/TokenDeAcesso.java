@@ -0,0 +1,249 @@
+package org.avsytem.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.avsytem.metricas.Contador;
+import org.avsytem.metricas.Metricas;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token de acesso assinado (HMAC-SHA256), alternativa  HttpSession quando a aplicao roda em vrios
+ * ns atrs de um balanceador sem sesso fixa nem replicao (context-param autenticacao=token).
+ *
+ * Formato: usuarioId.emitidoEm.expiraEm.username.assinatura, com os instantes em milissegundos, o username
+ * e a assinatura em Base64 URL sem padding. Tudo que o filtro precisa est no prprio token: qualquer n
+ * com o mesmo tokenSegredo o verifica sem consultar o banco nem outro n.
+ *
+ * A verificao l os nmeros direto do texto, confere o prazo e a lista de revogao antes de calcular
+ * o HMAC e usa buffers por thread: s aloca o username e o UsuarioAutenticado de um token vlido.
+ *
+ * Revogao: revogar(usuarioId) recusa, neste n, os tokens do usurio emitidos at aquele instante.
+ * A lista s guarda cada entrada pelo prazo de validade dos tokens, ento continua pequena. Ela  local:
+ * os outros ns s a recebem pelo feed de alteraes (eventos=true, CentralDeEventos.acompanhar), e um
+ * aviso perdido (ouvinte sem conexo) deixa o token valendo l at expirar. Por isso a validade  curta.
+ */
+public final class TokenDeAcesso {
+
+    public static final String COOKIE = "receitas_token";
+
+    private static final String ALGORITMO = "HmacSHA256";
+    private static final int TAMANHO_DA_ASSINATURA = 32;
+    // Maior token aceito; o username  o nico campo de tamanho livre
+    private static final int TAMANHO_MAXIMO = 512;
+    private static final int[] BASE64_URL = new int[128];
+
+    static {
+        Arrays.fill(BASE64_URL, -1);
+        String alfabeto = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+        for (int i = 0; i < alfabeto.length(); i++) {
+            BASE64_URL[alfabeto.charAt(i)] = i;
+        }
+    }
+
+    private final SecretKeySpec chave;
+    private final long validadeMillis;
+    private final Cache<Integer, Long> revogados;
+    private final ThreadLocal<Verificacao> verificacoes;
+
+    private final Contador recusadosPorAssinatura = contadorDeRecusados("assinatura");
+    private final Contador recusadosPorExpiracao = contadorDeRecusados("expirado");
+    private final Contador recusadosPorRevogacao = contadorDeRecusados("revogado");
+
+    /**
+     * @param segredo Chave do HMAC, a mesma em todos os ns; no mnimo 32 bytes.
+     * @param validadeMillis Por quanto tempo um token emitido  aceito.
+     */
+    public TokenDeAcesso(byte[] segredo, long validadeMillis) {
+        if (segredo.length < 32) {
+            throw new IllegalArgumentException("O segredo do token deve ter ao menos 32 bytes: " + segredo.length);
+        }
+        this.chave = new SecretKeySpec(segredo, ALGORITMO);
+        this.validadeMillis = validadeMillis;
+        this.revogados = Caffeine.newBuilder()
+                .expireAfterWrite(validadeMillis, TimeUnit.MILLISECONDS)
+                .build();
+        this.verificacoes = ThreadLocal.withInitial(() -> new Verificacao(novoMac()));
+    }
+
+    /**
+     * @return O token do usurio, vlido por validadeMillis a partir de agora.
+     */
+    public String emitir(int usuarioId, String username) {
+        long agora = System.currentTimeMillis();
+        String conteudo = usuarioId + "." + agora + "." + (agora + validadeMillis) + "."
+                + Base64.getUrlEncoder().withoutPadding().encodeToString(username.getBytes(StandardCharsets.UTF_8));
+        Mac mac = verificacoes.get().mac;
+        byte[] assinatura = mac.doFinal(conteudo.getBytes(StandardCharsets.US_ASCII));
+        return conteudo + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(assinatura);
+    }
+
+    /**
+     * @return O usurio do token, ou null se ele estiver malformado, adulterado, expirado ou revogado.
+     */
+    public UsuarioAutenticado verificar(String token) {
+        if (token == null || token.length() > TAMANHO_MAXIMO) return null;
+        int fimDoId = token.indexOf('.');
+        int fimDaEmissao = token.indexOf('.', fimDoId + 1);
+        int fimDaExpiracao = token.indexOf('.', fimDaEmissao + 1);
+        int fimDoConteudo = token.lastIndexOf('.');
+        if (fimDoId <= 0 || fimDaEmissao < 0 || fimDaExpiracao < 0 || fimDoConteudo <= fimDaExpiracao) return null;
+
+        long usuarioId = numero(token, 0, fimDoId);
+        long emitidoEm = numero(token, fimDoId + 1, fimDaEmissao);
+        long expiraEm = numero(token, fimDaEmissao + 1, fimDaExpiracao);
+        if (usuarioId < 0 || usuarioId > Integer.MAX_VALUE || emitidoEm < 0 || expiraEm < 0) return null;
+
+        // Prazo e revogao primeiro: no custam o HMAC
+        if (expiraEm <= System.currentTimeMillis()) {
+            recusadosPorExpiracao.incrementar();
+            return null;
+        }
+        if (!revogados.asMap().isEmpty()) {
+            Long revogadoEm = revogados.getIfPresent((int) usuarioId);
+            if (revogadoEm != null && emitidoEm <= revogadoEm) {
+                recusadosPorRevogacao.incrementar();
+                return null;
+            }
+        }
+
+        Verificacao verificacao = verificacoes.get();
+        for (int i = 0; i < fimDoConteudo; i++) {
+            char c = token.charAt(i);
+            if (c > 127) return null;
+            verificacao.conteudo[i] = (byte) c;
+        }
+        try {
+            verificacao.mac.update(verificacao.conteudo, 0, fimDoConteudo);
+            verificacao.mac.doFinal(verificacao.calculada, 0);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+        if (!decodificar(token, fimDoConteudo + 1, token.length(), verificacao.recebida)
+                || !MessageDigest.isEqual(verificacao.calculada, verificacao.recebida)) {
+            recusadosPorAssinatura.incrementar();
+            return null;
+        }
+
+        try {
+            String username = new String(Base64.getUrlDecoder().decode(token.substring(fimDaExpiracao + 1, fimDoConteudo)),
+                    StandardCharsets.UTF_8);
+            return new UsuarioAutenticado((int) usuarioId, username);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Recusa, a partir de agora e neste n, os tokens j emitidos para o usurio (ex.: conta excluda).
+     * Os outros ns recebem a revogao pelo CanalDeAlteracoes, se o feed de alteraes estiver ligado.
+     */
+    public void revogar(int usuarioId) {
+        revogados.put(usuarioId, System.currentTimeMillis());
+    }
+
+    /**
+     * @return O token da requisio: cabealho "Authorization: Bearer ..." ou, sem ele, o cookie receitas_token.
+     */
+    public static String doRequest(HttpServletRequest request) {
+        String autorizacao = request.getHeader("Authorization");
+        if (autorizacao != null && autorizacao.regionMatches(true, 0, "Bearer ", 0, 7)) {
+            return autorizacao.substring(7).trim();
+        }
+        Cookie[] cookies = request.getCookies();
+        if (cookies != null) {
+            for (Cookie cookie : cookies) {
+                if (COOKIE.equals(cookie.getName())) return cookie.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return O cookie HttpOnly com o token, expirando junto com ele; null apaga o cookie no navegador.
+     */
+    public Cookie criarCookie(String token, HttpServletRequest request) {
+        Cookie cookie = new Cookie(COOKIE, token == null ? "" : token);
+        cookie.setHttpOnly(true);
+        cookie.setSecure(request.isSecure());
+        cookie.setPath(request.getContextPath().isEmpty() ? "/" : request.getContextPath());
+        cookie.setMaxAge(token == null ? 0 : (int) TimeUnit.MILLISECONDS.toSeconds(validadeMillis));
+        return cookie;
+    }
+
+    // --- MTODOS PRIVADOS AUXILIARES ---
+
+    private Mac novoMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITMO);
+            mac.init(chave);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return O nmero decimal em texto[inicio, fim), ou -1 se no for um.
+     */
+    private static long numero(String texto, int inicio, int fim) {
+        if (fim <= inicio || fim - inicio > 18) return -1;
+        long valor = 0;
+        for (int i = inicio; i < fim; i++) {
+            char c = texto.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            valor = valor * 10 + (c - '0');
+        }
+        return valor;
+    }
+
+    /**
+     * Decodifica Base64 URL sem padding de texto[inicio, fim) em destino, que deve ficar exatamente cheio.
+     */
+    private static boolean decodificar(String texto, int inicio, int fim, byte[] destino) {
+        if ((fim - inicio) != (destino.length * 4 + 2) / 3) return false;
+        int acumulado = 0;
+        int bits = 0;
+        int escritos = 0;
+        for (int i = inicio; i < fim; i++) {
+            char c = texto.charAt(i);
+            int valor = c < 128 ? BASE64_URL[c] : -1;
+            if (valor < 0) return false;
+            acumulado = (acumulado << 6) | valor;
+            bits += 6;
+            if (bits >= 8) {
+                bits -= 8;
+                destino[escritos++] = (byte) (acumulado >> bits);
+            }
+        }
+        // Os bits que sobram do ltimo caractere devem ser zero: uma nica grafia por assinatura
+        return escritos == destino.length && (acumulado & ((1 << bits) - 1)) == 0;
+    }
+
+    private static Contador contadorDeRecusados(String motivo) {
+        return Metricas.contador("receitas_token_recusados_total", "Tokens de acesso recusados, por motivo.", "motivo", motivo);
+    }
+
+    /**
+     * Buffers de uma thread: o Mac no  thread-safe e os arrays evitam alocar a cada verificao.
+     */
+    private static final class Verificacao {
+        private final Mac mac;
+        private final byte[] conteudo = new byte[TAMANHO_MAXIMO];
+        private final byte[] calculada = new byte[TAMANHO_DA_ASSINATURA];
+        private final byte[] recebida = new byte[TAMANHO_DA_ASSINATURA];
+
+        Verificacao(Mac mac) {
+            this.mac = mac;
+        }
+    }
+}
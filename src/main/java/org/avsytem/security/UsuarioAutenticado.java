@@ -0,0 +1,54 @@
+package org.avsytem.security;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+/**
+ * O usurio logado de uma requisio, venha ele do token de acesso (autenticacao=token) ou da HttpSession.
+ * Servlets e filtros devem perguntar aqui em vez de ler os atributos da sesso, para funcionar nos dois modos.
+ */
+public final class UsuarioAutenticado {
+
+    private static final String ATRIBUTO = UsuarioAutenticado.class.getName();
+
+    private final int id;
+    private final String username;
+
+    UsuarioAutenticado(int id, String username) {
+        this.id = id;
+        this.username = username;
+    }
+
+    /**
+     * Resolve o usurio uma vez por requisio (o AuthenticationFilter e a servlet compartilham o resultado).
+     * Com o token habilitado ele tem precedncia; sem token vlido, vale a sesso, se houver.
+     * @return O usurio logado, ou null.
+     */
+    public static UsuarioAutenticado da(HttpServletRequest request) {
+        UsuarioAutenticado usuario = (UsuarioAutenticado) request.getAttribute(ATRIBUTO);
+        if (usuario != null) return usuario;
+
+        TokenDeAcesso tokens = (TokenDeAcesso) request.getServletContext().getAttribute("tokenDeAcesso");
+        if (tokens != null) {
+            usuario = tokens.verificar(TokenDeAcesso.doRequest(request));
+        }
+        if (usuario == null) {
+            HttpSession session = request.getSession(false);
+            if (session != null && session.getAttribute("username") != null && session.getAttribute("usuario_id") != null) {
+                usuario = new UsuarioAutenticado((Integer) session.getAttribute("usuario_id"), (String) session.getAttribute("username"));
+            }
+        }
+        if (usuario != null) {
+            request.setAttribute(ATRIBUTO, usuario);
+        }
+        return usuario;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+}
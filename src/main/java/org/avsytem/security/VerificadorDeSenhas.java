@@ -0,0 +1,190 @@
+package org.avsytem.security;
+
+import org.mindrot.jbcrypt.BCrypt;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Verificao e gerao de senhas BCrypt em um pool prprio, do tamanho do nmero de ncleos, compartilhado
+ * pelo login e pelo cadastro (criado pelo AppLifecycleListener).
+ *
+ * O BCrypt  CPU puro e caro de propsito; rodando nas threads das requisies, uma onda de logins
+ * (ex.: todo mundo entrando de novo depois de um deploy) ocupa todos os ncleos e atrasa os demais
+ * endpoints. Aqui no mximo "threads" hashes so calculados ao mesmo tempo e a fila  limitada:
+ * cheia, verificar() e gerarHash() recusam na hora e o login ou o cadastro responde 503.
+ *
+ * Se o hash verificado tiver custo diferente do configurado, a senha  recalculada com o custo
+ * novo na mesma tarefa, para ser regravada pelo chamador.
+ */
+public class VerificadorDeSenhas {
+
+    private final ThreadPoolExecutor pool;
+    private final int custo;
+    private final long esperaMaximaMillis;
+
+    private final LongAdder aceitas = new LongAdder();
+    private final LongAdder recusadas = new LongAdder();
+    private final LongAdder rejeitadasPorFila = new LongAdder();
+    private final LongAdder rehashes = new LongAdder();
+    private final LongAdder gerados = new LongAdder();
+
+    /**
+     * @param custo O custo (log2 das rodadas) para os hashes novos, entre 4 e 31.
+     * @param threads Quantas verificaes executam ao mesmo tempo.
+     * @param fila Quantas verificaes podem esperar vez.
+     * @param esperaMaximaMillis Quanto cada chamada espera (na fila e no clculo) antes de desistir.
+     */
+    public VerificadorDeSenhas(int custo, int threads, int fila, long esperaMaximaMillis) {
+        if (custo < 4 || custo > 31) {
+            throw new IllegalArgumentException("Custo BCrypt fora do intervalo 4..31: " + custo);
+        }
+        this.custo = custo;
+        this.esperaMaximaMillis = esperaMaximaMillis;
+        AtomicInteger contador = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(fila), tarefa -> {
+            Thread thread = new Thread(tarefa, "bcrypt-" + contador.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        this.pool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Confere a senha no pool, esperando no mximo esperaMaximaMillis.
+     * @return O resultado; Resultado.getHashNovo() != null se o hash deve ser regravado.
+     * @throws RejectedExecutionException Se a fila estiver cheia ou a espera estourar o tempo.
+     */
+    public Resultado verificar(String senha, String hash) throws InterruptedException {
+        return executar(() -> conferir(senha, hash));
+    }
+
+    /**
+     * Calcula no pool o hash de uma senha nova (cadastro), com o custo configurado.
+     * @throws RejectedExecutionException Se a fila estiver cheia ou a espera estourar o tempo.
+     */
+    public String gerarHash(String senha) throws InterruptedException {
+        return executar(() -> {
+            String hash = BCrypt.hashpw(senha, BCrypt.gensalt(custo));
+            gerados.increment();
+            return hash;
+        });
+    }
+
+    private <T> T executar(Callable<T> tarefa) throws InterruptedException {
+        Future<T> futuro;
+        try {
+            futuro = pool.submit(tarefa);
+        } catch (RejectedExecutionException e) {
+            rejeitadasPorFila.increment();
+            throw e;
+        }
+        try {
+            return futuro.get(esperaMaximaMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            futuro.cancel(false);
+            rejeitadasPorFila.increment();
+            throw new RejectedExecutionException("Clculo BCrypt no concludo a tempo.", e);
+        } catch (ExecutionException e) {
+            Throwable causa = e.getCause();
+            throw causa instanceof RuntimeException ? (RuntimeException) causa : new IllegalStateException(causa);
+        }
+    }
+
+    private Resultado conferir(String senha, String hash) {
+        if (senha == null || !BCrypt.checkpw(senha, hash)) {
+            recusadas.increment();
+            return new Resultado(false, null);
+        }
+        aceitas.increment();
+        if (custoDoHash(hash) == custo) {
+            return new Resultado(true, null);
+        }
+        rehashes.increment();
+        return new Resultado(true, BCrypt.hashpw(senha, BCrypt.gensalt(custo)));
+    }
+
+    /**
+     * @return O custo gravado no hash ($2a$10$... -> 10), ou -1 se o formato no for reconhecido.
+     */
+    static int custoDoHash(String hash) {
+        if (hash == null || hash.length() < 7 || hash.charAt(0) != '$' || hash.charAt(3) != '$' || hash.charAt(6) != '$') {
+            return -1;
+        }
+        char dezena = hash.charAt(4);
+        char unidade = hash.charAt(5);
+        if (!Character.isDigit(dezena) || !Character.isDigit(unidade)) return -1;
+        return (dezena - '0') * 10 + (unidade - '0');
+    }
+
+    public void encerrar() {
+        pool.shutdownNow();
+    }
+
+    public int getCusto() {
+        return custo;
+    }
+
+    public long getAceitas() {
+        return aceitas.sum();
+    }
+
+    public long getRecusadas() {
+        return recusadas.sum();
+    }
+
+    public long getRejeitadasPorFila() {
+        return rejeitadasPorFila.sum();
+    }
+
+    public long getRehashes() {
+        return rehashes.sum();
+    }
+
+    /**
+     * @return Hashes de senhas novas calculados por gerarHash().
+     */
+    public long getGerados() {
+        return gerados.sum();
+    }
+
+    /**
+     * @return Quantas verificaes esperam vez neste momento.
+     */
+    public int getTamanhoDaFila() {
+        return pool.getQueue().size();
+    }
+
+    /**
+     * @return Quantas verificaes esto sendo calculadas neste momento.
+     */
+    public int getEmExecucao() {
+        return pool.getActiveCount();
+    }
+
+    public static final class Resultado {
+        private final boolean valida;
+        private final String hashNovo;
+
+        Resultado(boolean valida, String hashNovo) {
+            this.valida = valida;
+            this.hashNovo = hashNovo;
+        }
+
+        public boolean isValida() {
+            return valida;
+        }
+
+        public String getHashNovo() {
+            return hashNovo;
+        }
+    }
+}
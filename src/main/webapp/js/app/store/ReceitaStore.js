@@ -4,15 +4,189 @@ App.store.Receitas = Ext.extend(Ext.data.JsonStore, {
     constructor: function(config){
         config = config || {};
         App.store.Receitas.superclass.constructor.call(this, Ext.apply({
-            // Aponta para a nossa servlet
-            url: 'receitas?action=listar',
+            // Aponta para a nossa servlet. Sempre GET e sem o parâmetro anti-cache (_dc),
+            // para que o navegador revalide a listagem com If-None-Match e aproveite o 304
+            proxy: new Ext.data.HttpProxy({
+                url: 'receitas?action=listar',
+                method: 'GET',
+                disableCaching: false
+            }),
 
             // Define como o JSON de resposta será lido
             root: 'receitas',
             totalProperty: 'total',
+            // O id da receita identifica o registro, para que o feed de alterações o encontre com getById
+            idProperty: 'id',
 
             fields: App.model.Receita,
-            remoteSort: true
+            remoteSort: true,
+            sortInfo: { field: 'nome', direction: 'ASC' }
         }, config));
+
+        // Cursores de keyset por posição (start) da página, válidos apenas para a ordenação atual
+        this.cursores = {};
+        this.on('beforeload', this.aplicarCursor, this);
+        this.on('load', this.guardarCursor, this);
+        this.addEvents('alteracoesaplicadas');
+        // Antes da primeira carga não há o que recarregar (e reload() sem start/limit traria a listagem inteira)
+        this.recarga = new Ext.util.DelayedTask(function() {
+            if (this.lastOptions) this.reload();
+        }, this);
+    },
+
+    // Envia o cursor quando a página pedida começa logo após uma página já carregada,
+    // permitindo que o servidor use keyset em vez de OFFSET
+    aplicarCursor: function(store, options) {
+        var params = options.params || {};
+        var ordenacao = this.sortInfo ? this.sortInfo.field + ' ' + this.sortInfo.direction : '';
+        if (ordenacao !== this.ordenacaoDosCursores) {
+            this.cursores = {};
+            this.ordenacaoDosCursores = ordenacao;
+        }
+        var cursor = params.start ? this.cursores[params.start] : null;
+        if (cursor) {
+            params.cursor = cursor;
+        } else {
+            delete params.cursor;
+        }
+        options.params = params;
+    },
+
+    guardarCursor: function(store, records, options) {
+        var params = options.params || {};
+        var proximoCursor = this.reader.jsonData ? this.reader.jsonData.proximoCursor : null;
+        if (proximoCursor && params.limit) {
+            this.cursores[(params.start || 0) + params.limit] = proximoCursor;
+        }
+    },
+
+    // --- FEED DE ALTERAÇÕES (GET receitas/eventos, Server-Sent Events) ---
+
+    // Abre o feed: as receitas criadas, alteradas e removidas (nesta ou em outra aba) são aplicadas à página
+    // carregada, sem recarregá-la. Sem EventSource no navegador ou com o feed desabilitado no servidor, nada muda
+    acompanharAlteracoes: function() {
+        if (!window.EventSource || this.fonte) return;
+        var fonte = this.fonte = new EventSource('receitas/eventos');
+        fonte.onopen = this.aoConectar.createDelegate(this);
+        fonte.onerror = this.aoPerderConexao.createDelegate(this);
+        fonte.addEventListener('receitas', this.aoReceberAlteracao.createDelegate(this), false);
+    },
+
+    // true enquanto o feed estiver conectado; senão, quem grava precisa recarregar a página
+    isAcompanhandoAlteracoes: function() {
+        return this.conectado === true;
+    },
+
+    // Os eventos não são guardados no servidor: a cada (re)conexão a página é revalidada (o ETag da listagem
+    // faz disso um 304 quando nada mudou)
+    aoConectar: function() {
+        this.conectado = true;
+        this.jaConectou = true;
+        this.recarregarEmBreve();
+    },
+
+    // O EventSource reconecta sozinho; se ele desistir (resposta de erro), tenta de novo mais tarde, a não ser
+    // que nunca tenha conectado (feed desabilitado ou nó cheio): aí a grade volta a recarregar a cada gravação
+    aoPerderConexao: function() {
+        this.conectado = false;
+        if (this.fonte.readyState !== 2) return;
+        this.fonte.close();
+        this.fonte = null;
+        if (this.jaConectou) {
+            this.acompanharAlteracoes.defer(30000, this);
+        }
+    },
+
+    aoReceberAlteracao: function(evento) {
+        var alteracao = Ext.decode(evento.data);
+        var ids = alteracao.ids || [];
+        // Muitas receitas de uma vez (importação) valem uma recarga
+        if (alteracao.tipo === 'recarregar' || ids.length > this.tamanhoDaPagina()) {
+            this.recarregarEmBreve();
+        } else if (alteracao.tipo === 'removida') {
+            this.aplicarRemocoes(ids);
+        } else if (ids.length > 0) {
+            Ext.Ajax.request({
+                url: 'receitas',
+                method: 'GET',
+                params: { action: 'obter', ids: ids.join(',') },
+                success: function(response) {
+                    this.aplicarReceitas(alteracao.tipo, ids, Ext.decode(response.responseText));
+                },
+                failure: this.recarregarEmBreve,
+                scope: this
+            });
+        }
+    },
+
+    aplicarRemocoes: function(ids) {
+        Ext.each(ids, function(id) {
+            var record = this.getById(id);
+            if (record) {
+                this.remove(record);
+            }
+            this.totalLength = Math.max(0, this.totalLength - 1);
+        }, this);
+        this.fireEvent('alteracoesaplicadas', this);
+    },
+
+    // Atualizadas: substituídas no lugar. Criadas: inseridas se, pela ordenação, caírem na página carregada.
+    // As que não voltaram do servidor foram removidas nesse meio tempo
+    aplicarReceitas: function(tipo, ids, resposta) {
+        var encontradas = {};
+        Ext.each(this.reader.readRecords(resposta).records, function(novo) {
+            encontradas[novo.id] = true;
+            var antigo = this.getById(novo.id);
+            if (antigo) {
+                var posicao = this.indexOf(antigo);
+                this.remove(antigo);
+                this.insert(posicao, novo);
+                return;
+            }
+            if (tipo === 'criada') {
+                this.totalLength++;
+                var destino = this.posicaoNaPagina(novo);
+                if (destino >= 0) {
+                    this.insert(destino, novo);
+                }
+            }
+        }, this);
+        var removidas = [];
+        Ext.each(ids, function(id) {
+            if (!encontradas[id] && this.getById(id)) removidas.push(id);
+        }, this);
+        if (removidas.length > 0) {
+            this.aplicarRemocoes(removidas);
+        } else {
+            this.fireEvent('alteracoesaplicadas', this);
+        }
+    },
+
+    // Onde a receita entra na página carregada, pela ordenação atual; -1 se ela pertence a outra página
+    posicaoNaPagina: function(record) {
+        var campo = this.sortInfo ? this.sortInfo.field : 'id';
+        var sinal = this.sortInfo && this.sortInfo.direction === 'DESC' ? -1 : 1;
+        var comparar = function(a, b) {
+            var x = a.get(campo), y = b.get(campo);
+            if (typeof x === 'string' && typeof y === 'string') return sinal * x.localeCompare(y);
+            return sinal * (x < y ? -1 : (x > y ? 1 : 0));
+        };
+        var inicio = this.lastOptions && this.lastOptions.params ? this.lastOptions.params.start || 0 : 0;
+        var quantidade = this.getCount();
+        if (quantidade === 0) return inicio === 0 ? 0 : -1;
+        if (inicio > 0 && comparar(record, this.getAt(0)) < 0) return -1;
+        for (var i = 0; i < quantidade; i++) {
+            if (comparar(record, this.getAt(i)) < 0) return i;
+        }
+        // Depois da última linha: só entra se esta for a última página
+        return inicio + quantidade >= this.totalLength - 1 ? quantidade : -1;
+    },
+
+    tamanhoDaPagina: function() {
+        return this.lastOptions && this.lastOptions.params && this.lastOptions.params.limit ? this.lastOptions.params.limit : 30;
+    },
+
+    recarregarEmBreve: function() {
+        this.recarga.delay(300);
     }
-});
\ No newline at end of file
+});
@@ -2,7 +2,7 @@ Ext.ns('App.view');
 
 App.view.ReceitaGrid = Ext.extend(Ext.grid.GridPanel, {
     initComponent: function(){
-        this.store = new App.store.Receitas({ autoLoad: true });
+        this.store = new App.store.Receitas({ autoLoad: { params: { start: 0, limit: 30 } } });
 
         Ext.apply(this, {
             title: 'Gerenciador de Receitas',
@@ -28,6 +28,7 @@ App.view.ReceitaGrid = Ext.extend(Ext.grid.GridPanel, {
             ],
             viewConfig: { forceFit: true, autoExpandColumn: 'nome_col' },
             tbar: [{ text: 'Nova Receita', iconCls: 'x-btn-text-icon-add', handler: this.onNew, scope: this },
+                { text: 'Deletar Selecionadas', iconCls: 'x-btn-text-icon-delete', handler: this.onDeleteSelected, scope: this },
                 '->',
                 {
                     text: 'Configuraes',
@@ -50,18 +51,30 @@ App.view.ReceitaGrid = Ext.extend(Ext.grid.GridPanel, {
         });
 
         App.view.ReceitaGrid.superclass.initComponent.call(this);
+
+        // Com o feed de alteraes, gravaes (desta e de outras abas) chegam por /receitas/eventos
+        // e a pgina  atualizada no lugar; o rodap s precisa refletir o novo total
+        this.store.on('alteracoesaplicadas', function() { this.getBottomToolbar().updateInfo(); }, this);
+        this.store.acompanharAlteracoes();
+    },
+
+    // Sem o feed conectado, a pgina  recarregada depois de cada gravao
+    recarregarSemFeed: function() {
+        if (!this.store.isAcompanhandoAlteracoes()) {
+            this.store.reload();
+        }
     },
 
     onNew: function() {
         var win = new App.view.ReceitaWindow();
-        win.on('receitasalva', function() { this.store.reload(); }, this);
+        win.on('receitasalva', this.recarregarSemFeed, this);
         win.show();
     },
 
     onEdit: function(grid, rowIndex) {
         var record = grid.getStore().getAt(rowIndex);
         var win = new App.view.ReceitaWindow({ record: record });
-        win.on('receitasalva', function() { this.store.reload(); }, this);
+        win.on('receitasalva', this.recarregarSemFeed, this);
         win.show();
     },
 
@@ -83,6 +96,39 @@ App.view.ReceitaGrid = Ext.extend(Ext.grid.GridPanel, {
         });
     },
 
+    // Ctrl/Shift + clique seleciona vrias linhas; todas vo numa nica requisio (action=deletarLote)
+    onDeleteSelected: function() {
+        var records = this.getSelectionModel().getSelections();
+        if (records.length === 0) {
+            Ext.Msg.alert('Aviso', 'Selecione as receitas a deletar (Ctrl ou Shift + clique).');
+            return;
+        }
+        var ids = [];
+        Ext.each(records, function(record) { ids.push(record.get('id')); });
+        Ext.Msg.confirm('Confirmar Excluso', 'Tem certeza que deseja deletar ' + records.length + ' receita(s)?', function(btn) {
+            if (btn === 'yes') {
+                this.loadMask.show();
+                Ext.Ajax.request({
+                    url: 'receitas?action=deletarLote',
+                    params: { ids: ids.join(',') },
+                    success: function(response) {
+                        this.loadMask.hide();
+                        var resposta = Ext.decode(response.responseText);
+                        this.recarregarSemFeed();
+                        if (!resposta.success) {
+                            Ext.Msg.alert('Erro', resposta.message || 'Falha ao deletar as receitas.');
+                        }
+                    },
+                    failure: function() {
+                        this.loadMask.hide();
+                        Ext.Msg.alert('Erro', 'Erro de comunicao com o servidor.');
+                    },
+                    scope: this
+                });
+            }
+        }, this);
+    },
+
     onDelete: function(grid, rowIndex) {
         var record = grid.getStore().getAt(rowIndex);
         Ext.Msg.confirm('Confirmar Excluso', 'Tem certeza que deseja deletar a receita "' + record.get('nome') + '"?', function(btn) {
@@ -94,7 +140,7 @@ App.view.ReceitaGrid = Ext.extend(Ext.grid.GridPanel, {
                     success: function(response) {
                         grid.loadMask.hide();
                         if (Ext.decode(response.responseText).success) {
-                            grid.getStore().reload();
+                            grid.recarregarSemFeed();
                         } else {
                             Ext.Msg.alert('Erro', 'Falha ao deletar a receita.');
                         }
@@ -0,0 +1,102 @@
+package org.avsytem.dao;
+
+import org.avsytem.model.Receita;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConsultaPaginadaTest {
+
+    @Test
+    public void semCursorUsaODeslocamento() {
+        ConsultaPaginada consulta = new ConsultaPaginada(OrdenacaoReceita.NOME, false, 40, 20, null);
+
+        assertFalse(consulta.temCursor());
+        assertEquals(40, consulta.getDeslocamento());
+        assertFalse(new ConsultaPaginada(OrdenacaoReceita.NOME, false, 0, 20, "").temCursor());
+    }
+
+    @Test
+    public void limiteEDeslocamentoFicamNaFaixaPermitida() {
+        ConsultaPaginada grande = new ConsultaPaginada(OrdenacaoReceita.NOME, false, -5, 100000, null);
+        ConsultaPaginada pequena = new ConsultaPaginada(OrdenacaoReceita.NOME, false, 0, 0, null);
+
+        assertEquals(0, grande.getDeslocamento());
+        assertEquals(ConsultaPaginada.LIMITE_MAXIMO, grande.getLimite());
+        assertEquals(1, pequena.getLimite());
+    }
+
+    @Test
+    public void cursorDeTextoVoltaIgualMesmoComDoisPontos() {
+        Receita ultima = receita(42, "Bolo: fub com goiabada", null, 35);
+        String cursor = ConsultaPaginada.cursor(ultima.getId(), OrdenacaoReceita.NOME.chave(ultima));
+
+        ConsultaPaginada consulta = new ConsultaPaginada(OrdenacaoReceita.NOME, false, 99, 20, cursor);
+
+        assertTrue(consulta.temCursor());
+        assertEquals(Integer.valueOf(42), consulta.getCursorId());
+        assertEquals("Bolo: fub com goiabada", consulta.getCursorValor());
+    }
+
+    @Test
+    public void cursorNumericoVoltaComoInteiro() {
+        Receita ultima = receita(7, "Po", null, 90);
+        String cursor = ConsultaPaginada.cursor(ultima.getId(), OrdenacaoReceita.TEMPO_PREPARO.chave(ultima));
+
+        ConsultaPaginada consulta = new ConsultaPaginada(OrdenacaoReceita.TEMPO_PREPARO, true, 0, 20, cursor);
+
+        assertEquals("7:90", cursor);
+        assertEquals(Integer.valueOf(90), consulta.getCursorValor());
+    }
+
+    @Test
+    public void dificuldadeNulaViraTextoVazioComoNoCoalesce() {
+        Receita ultima = receita(3, "Arroz", null, 20);
+        String cursor = ConsultaPaginada.cursor(ultima.getId(), OrdenacaoReceita.DIFICULDADE.chave(ultima));
+
+        ConsultaPaginada consulta = new ConsultaPaginada(OrdenacaoReceita.DIFICULDADE, false, 0, 20, cursor);
+
+        assertEquals("3:", cursor);
+        assertEquals("", consulta.getCursorValor());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cursorSemSeparadorERecusado() {
+        new ConsultaPaginada(OrdenacaoReceita.NOME, false, 0, 20, "42");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cursorSemIdERecusado() {
+        new ConsultaPaginada(OrdenacaoReceita.NOME, false, 0, 20, ":Bolo");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cursorComIdNaoNumericoERecusado() {
+        new ConsultaPaginada(OrdenacaoReceita.NOME, false, 0, 20, "x:Bolo");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void valorNaoNumericoEmOrdenacaoNumericaERecusado() {
+        new ConsultaPaginada(OrdenacaoReceita.PORCOES, false, 0, 20, "5:muitas");
+    }
+
+    @Test
+    public void ordenacaoForaDaListaBrancaCaiEmNome() {
+        assertEquals(OrdenacaoReceita.TEMPO_PREPARO, OrdenacaoReceita.deCampo("tempoDePreparo"));
+        assertEquals(OrdenacaoReceita.TEMPO_PREPARO, OrdenacaoReceita.deCampo("tempo_preparo_min"));
+        assertEquals(OrdenacaoReceita.PORCOES, OrdenacaoReceita.deCampo("PORCOES"));
+        assertEquals(OrdenacaoReceita.NOME, OrdenacaoReceita.deCampo("nome; DROP TABLE receitas"));
+        assertEquals(OrdenacaoReceita.NOME, OrdenacaoReceita.deCampo(null));
+    }
+
+    private static Receita receita(int id, String nome, String dificuldade, int tempoDePreparo) {
+        Receita receita = new Receita();
+        receita.setId(id);
+        receita.setNome(nome);
+        receita.setDificuldade(dificuldade);
+        receita.setTempoDePreparo(tempoDePreparo);
+        return receita;
+    }
+}
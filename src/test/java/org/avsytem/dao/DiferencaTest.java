@@ -0,0 +1,159 @@
+package org.avsytem.dao;
+
+import org.avsytem.model.Ingrediente;
+import org.avsytem.model.Passo;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DiferencaTest {
+
+    private static final Ingrediente A = new Ingrediente("farinha", 2, "xcara");
+    private static final Ingrediente B = new Ingrediente("ovo", 3, "un");
+    private static final Ingrediente C = new Ingrediente("leite", 1, "xcara");
+    private static final Ingrediente D = new Ingrediente("acar", 1.5, "xcara");
+    private static final Ingrediente X = new Ingrediente("fermento", 1, "colher");
+
+    @Test
+    public void listaIgualNaoEscreveNada() {
+        Map<Integer, Ingrediente> atuais = gravadas(A, B, C);
+        Diferenca<Ingrediente> diferenca = Diferenca.calcular(atuais, Arrays.asList(A, B, C));
+
+        assertEscritas(diferenca, 0, 0, 0);
+        assertEquals(Arrays.asList(A, B, C), aplicar(atuais, diferenca));
+    }
+
+    @Test
+    public void reordenarRegravaAsPosicoesQueMudaram() {
+        Map<Integer, Ingrediente> atuais = gravadas(A, B, C);
+        Diferenca<Ingrediente> diferenca = Diferenca.calcular(atuais, Arrays.asList(C, A, B));
+
+        assertEscritas(diferenca, 3, 0, 0);
+        assertEquals(Arrays.asList(C, A, B), aplicar(atuais, diferenca));
+    }
+
+    @Test
+    public void trocarDoisMantemOsDemais() {
+        Map<Integer, Ingrediente> atuais = gravadas(A, B, C);
+        Diferenca<Ingrediente> diferenca = Diferenca.calcular(atuais, Arrays.asList(B, A, C));
+
+        assertEscritas(diferenca, 2, 0, 0);
+        assertEquals(Arrays.asList(B, A, C), aplicar(atuais, diferenca));
+    }
+
+    @Test
+    public void inserirNoMeioRegravaDaliEmDiante() {
+        Map<Integer, Ingrediente> atuais = gravadas(A, B, C);
+        Diferenca<Ingrediente> diferenca = Diferenca.calcular(atuais, Arrays.asList(A, X, B, C));
+
+        assertEscritas(diferenca, 2, 1, 0);
+        assertEquals(Arrays.asList(A, X, B, C), aplicar(atuais, diferenca));
+    }
+
+    @Test
+    public void removerDoMeioRegravaDaliEmDiante() {
+        Map<Integer, Ingrediente> atuais = gravadas(A, B, C, D);
+        Diferenca<Ingrediente> diferenca = Diferenca.calcular(atuais, Arrays.asList(A, C, D));
+
+        assertEscritas(diferenca, 2, 0, 1);
+        assertEquals(Collections.singletonList(4), diferenca.remover);
+        assertEquals(Arrays.asList(A, C, D), aplicar(atuais, diferenca));
+    }
+
+    @Test
+    public void removerEAcrescentarMantemAOrdemEnviada() {
+        // [A(1), B(2), C(3)] -> [A, C, D]: manter C(3) e regravar B(2) como D leria A, D, C
+        Map<Integer, Ingrediente> atuais = gravadas(A, B, C);
+        Diferenca<Ingrediente> diferenca = Diferenca.calcular(atuais, Arrays.asList(A, C, D));
+
+        assertEscritas(diferenca, 2, 0, 0);
+        assertEquals(Arrays.asList(A, C, D), aplicar(atuais, diferenca));
+    }
+
+    @Test
+    public void acrescentarNoFimSoInsere() {
+        Map<Integer, Ingrediente> atuais = gravadas(A, B);
+        Diferenca<Ingrediente> diferenca = Diferenca.calcular(atuais, Arrays.asList(A, B, C));
+
+        assertEscritas(diferenca, 0, 1, 0);
+        assertEquals(Arrays.asList(A, B, C), aplicar(atuais, diferenca));
+    }
+
+    @Test
+    public void listaVaziaOuNulaRemoveTudo() {
+        Map<Integer, Ingrediente> atuais = gravadas(A, B);
+
+        assertEscritas(Diferenca.calcular(atuais, Collections.<Ingrediente>emptyList()), 0, 0, 2);
+        assertEscritas(Diferenca.calcular(atuais, null), 0, 0, 2);
+    }
+
+    @Test
+    public void semLinhasGravadasInsereTudoNaOrdem() {
+        Map<Integer, Ingrediente> atuais = new TreeMap<>();
+        Diferenca<Ingrediente> diferenca = Diferenca.calcular(atuais, Arrays.asList(C, A));
+
+        assertEscritas(diferenca, 0, 2, 0);
+        assertEquals(Arrays.asList(C, A), diferenca.inserir);
+    }
+
+    @Test
+    public void posicaoSegueOIdMesmoComIdsForaDeOrdemNoMapa() {
+        // Passos chegam ordenados por (ordem, id), no por id
+        Map<Integer, Passo> atuais = new LinkedHashMap<>();
+        atuais.put(7, new Passo(1, "misturar"));
+        atuais.put(3, new Passo(1, "untar a forma"));
+        List<Passo> novos = Arrays.asList(new Passo(1, "untar a forma"), new Passo(1, "misturar"));
+
+        Diferenca<Passo> diferenca = Diferenca.calcular(atuais, novos);
+
+        assertEscritas(diferenca, 0, 0, 0);
+        assertEquals(novos, aplicar(atuais, diferenca));
+    }
+
+    // --- MTODOS PRIVADOS AUXILIARES ---
+
+    /**
+     * As linhas gravadas com ids 1..n, na ordem em que o banco as devolve.
+     */
+    private static Map<Integer, Ingrediente> gravadas(Ingrediente... ingredientes) {
+        Map<Integer, Ingrediente> linhas = new TreeMap<>();
+        for (int i = 0; i < ingredientes.length; i++) {
+            linhas.put(i + 1, ingredientes[i]);
+        }
+        return linhas;
+    }
+
+    /**
+     * Aplica a diferena como o ReceitaDAO (UPDATE, INSERT com ids novos maiores, DELETE) e rel por id.
+     */
+    private static <T> List<T> aplicar(Map<Integer, T> atuais, Diferenca<T> diferenca) {
+        TreeMap<Integer, T> tabela = new TreeMap<>(atuais);
+        for (Map.Entry<Integer, T> alteracao : diferenca.alterar) {
+            assertTrue(tabela.containsKey(alteracao.getKey()));
+            tabela.put(alteracao.getKey(), alteracao.getValue());
+        }
+        int proximoId = tabela.isEmpty() ? 1 : tabela.lastKey() + 1;
+        for (T novo : diferenca.inserir) {
+            tabela.put(proximoId++, novo);
+        }
+        for (Integer id : diferenca.remover) {
+            assertTrue(tabela.remove(id) != null);
+        }
+        return new ArrayList<>(tabela.values());
+    }
+
+    private static void assertEscritas(Diferenca<?> diferenca, int alterar, int inserir, int remover) {
+        assertEquals("UPDATEs", alterar, diferenca.alterar.size());
+        assertEquals("INSERTs", inserir, diferenca.inserir.size());
+        assertEquals("DELETEs", remover, diferenca.remover.size());
+    }
+}
@@ -0,0 +1,86 @@
+package org.avsytem.dao;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ReceitaDAOTest {
+
+    // --- BUSCA (tsquery de prefixos e destaque) ---
+
+    @Test
+    public void cadaPalavraViraUmPrefixo() {
+        assertEquals("bolo:* & choc:*", ReceitaDAO.montarConsultaPorPrefixo("bolo choc"));
+    }
+
+    @Test
+    public void acentosSaoMantidosEMaiusculasViramMinusculas() {
+        assertEquals("acar:* & mascavo:*", ReceitaDAO.montarConsultaPorPrefixo("  ACAR   Mascavo "));
+    }
+
+    @Test
+    public void operadoresDaTsqueryNaoPassam() {
+        assertEquals("bolo:* & fuba:* & x:*",
+                ReceitaDAO.montarConsultaPorPrefixo("bolo & !fuba | (x:*) <-> ''"));
+        assertEquals("d:* & gua:*", ReceitaDAO.montarConsultaPorPrefixo("d'gua"));
+    }
+
+    @Test
+    public void textoSemPalavrasNaoViraConsulta() {
+        assertNull(ReceitaDAO.montarConsultaPorPrefixo(null));
+        assertNull(ReceitaDAO.montarConsultaPorPrefixo(""));
+        assertNull(ReceitaDAO.montarConsultaPorPrefixo(" &|!:*() "));
+    }
+
+    @Test
+    public void quantidadeDeTermosELimitada() {
+        StringBuilder termos = new StringBuilder();
+        for (int i = 0; i < ReceitaDAO.MAXIMO_TERMOS_BUSCA + 5; i++) {
+            termos.append("t").append(i).append(' ');
+        }
+
+        String consulta = ReceitaDAO.montarConsultaPorPrefixo(termos.toString());
+
+        assertEquals(ReceitaDAO.MAXIMO_TERMOS_BUSCA, consulta.split(" & ").length);
+        assertEquals("t0:*", consulta.split(" & ")[0]);
+    }
+
+    @Test
+    public void destaqueEscapaOHtmlETrocaOsMarcadores() {
+        assertEquals("Bolo de <mark>chocolate</mark> &amp; &lt;script&gt; &quot;caseiro&quot; d&#39;gua",
+                ReceitaDAO.destacar("Bolo de \u0001chocolate\u0002 & <script> \"caseiro\" d'gua"));
+        assertEquals("", ReceitaDAO.destacar(null));
+    }
+
+    // --- SINCRONIZAO INCREMENTAL (since e lpides) ---
+
+    @Test
+    public void semSincronizacaoAnteriorVaiTudo() {
+        assertTrue(ReceitaDAO.exigeListaCompleta(0, 0));
+        assertTrue(ReceitaDAO.exigeListaCompleta(0, 500));
+        assertTrue(ReceitaDAO.exigeListaCompleta(-7, 0));
+    }
+
+    @Test
+    public void semExpurgoADiferencaBasta() {
+        assertFalse(ReceitaDAO.exigeListaCompleta(1, 0));
+        assertFalse(ReceitaDAO.exigeListaCompleta(Long.MAX_VALUE, 0));
+    }
+
+    @Test
+    public void desdeIgualAVersaoMinimaAindaTemTodasAsLapides() {
+        // O expurgo s apagou lpides com versao < 500, e a diferena l versao >= desde
+        assertFalse(ReceitaDAO.exigeListaCompleta(500, 500));
+        assertFalse(ReceitaDAO.exigeListaCompleta(501, 500));
+    }
+
+    @Test
+    public void desdeAnteriorAoExpurgoVoltaCompleta() {
+        // A lpide de versao 499, que o cliente ainda no viu, pode ter sido apagada
+        assertTrue(ReceitaDAO.exigeListaCompleta(499, 500));
+        assertTrue(ReceitaDAO.exigeListaCompleta(1, 500));
+    }
+}
@@ -0,0 +1,115 @@
+package org.avsytem.security;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class TokenDeAcessoTest {
+
+    private static final String ALFABETO = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+    private static final long VALIDADE = 60_000;
+
+    private final TokenDeAcesso tokens = new TokenDeAcesso(segredo('a'), VALIDADE);
+
+    @Test
+    public void tokenEmitidoVoltaComOUsuario() {
+        UsuarioAutenticado usuario = tokens.verificar(tokens.emitir(42, "joo.silva"));
+
+        assertNotNull(usuario);
+        assertEquals(42, usuario.getId());
+        assertEquals("joo.silva", usuario.getUsername());
+    }
+
+    @Test
+    public void conteudoAlteradoERecusado() {
+        String token = tokens.emitir(42, "joao");
+
+        assertNull(tokens.verificar("43" + token.substring(2)));
+        assertNull(tokens.verificar(token.replace(".am9hbw.", ".bWFyaWE.")));
+    }
+
+    @Test
+    public void assinaturaAlteradaERecusada() {
+        String token = tokens.emitir(42, "joao");
+        int meio = token.lastIndexOf('.') + 10;
+        char trocado = token.charAt(meio) == 'A' ? 'B' : 'A';
+
+        assertNull(tokens.verificar(token.substring(0, meio) + trocado + token.substring(meio + 1)));
+    }
+
+    @Test
+    public void tokenDeOutroSegredoERecusado() {
+        TokenDeAcesso outro = new TokenDeAcesso(segredo('b'), VALIDADE);
+
+        assertNull(tokens.verificar(outro.emitir(42, "joao")));
+    }
+
+    @Test
+    public void tokenExpiradoERecusado() throws InterruptedException {
+        TokenDeAcesso curtos = new TokenDeAcesso(segredo('a'), 1);
+        String token = curtos.emitir(42, "joao");
+        Thread.sleep(5);
+
+        assertNull(curtos.verificar(token));
+    }
+
+    @Test
+    public void assinaturaSoTemUmaGrafiaEmBase64() {
+        String token = tokens.emitir(42, "joao");
+        char ultimo = token.charAt(token.length() - 1);
+        // 32 bytes em 43 caracteres: os 2 bits que sobram do ltimo devem ser zero
+        char naoCanonico = ALFABETO.charAt(ALFABETO.indexOf(ultimo) + 1);
+        String semUltimo = token.substring(0, token.length() - 1);
+
+        assertNull(tokens.verificar(semUltimo + naoCanonico));
+        assertNull(tokens.verificar(token + "="));
+        assertNull(tokens.verificar(semUltimo));
+        assertNull(tokens.verificar(semUltimo + "+"));
+    }
+
+    @Test
+    public void tokenMalformadoERecusado() {
+        String token = tokens.emitir(42, "joao");
+
+        assertNull(tokens.verificar(null));
+        assertNull(tokens.verificar(""));
+        assertNull(tokens.verificar("abc"));
+        assertNull(tokens.verificar("1.2.3"));
+        assertNull(tokens.verificar("x" + token));
+        assertNull(tokens.verificar("-1" + token.substring(2)));
+        assertNull(tokens.verificar(token.substring(0, token.indexOf('.') + 1) + "1e3" + token.substring(token.indexOf('.', 3))));
+    }
+
+    @Test
+    public void tokenLongoDemaisERecusadoSemVerificar() {
+        char[] username = new char[600];
+        Arrays.fill(username, 'u');
+
+        assertNull(tokens.verificar(tokens.emitir(42, new String(username))));
+    }
+
+    @Test
+    public void revogarRecusaSoOsTokensJaEmitidosDoUsuario() throws InterruptedException {
+        String doUsuario = tokens.emitir(42, "joao");
+        String deOutro = tokens.emitir(7, "maria");
+
+        tokens.revogar(42);
+        Thread.sleep(2);
+        String novo = tokens.emitir(42, "joao");
+
+        assertNull(tokens.verificar(doUsuario));
+        assertNotNull(tokens.verificar(deOutro));
+        assertNotNull(tokens.verificar(novo));
+    }
+
+    private static byte[] segredo(char preenchimento) {
+        char[] segredo = new char[32];
+        Arrays.fill(segredo, preenchimento);
+        return new String(segredo).getBytes(StandardCharsets.US_ASCII);
+    }
+}